@@ -0,0 +1,180 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.benchmark;
+
+import com.google.gdata.data.BaseFeed;
+import com.google.gdata.data.ExtensionProfile;
+import com.google.gdata.data.analytics.DataFeed;
+import com.google.gdata.data.calendar.CalendarEventFeed;
+import com.google.gdata.data.contacts.ContactFeed;
+import com.google.gdata.data.docs.DocumentListFeed;
+import com.google.gdata.data.spreadsheet.CellFeed;
+import com.google.gdata.util.common.base.Charsets;
+import com.google.gdata.util.common.io.CharStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The benchmark corpus: one captured Atom feed for each of the services whose
+ * traffic dominates client usage.  Each document can be loaded at its
+ * original size or with its entries repeated, so the same content measures
+ * both per-request overhead and per-entry throughput.
+ *
+ *
+ */
+public enum Corpus {
+
+  /** Contacts feed with names, emails, addresses and group memberships. */
+  CONTACTS("contacts.xml") {
+    @Override
+    public BaseFeed<?, ?> newFeed() {
+      return new ContactFeed();
+    }
+  },
+
+  /** Calendar event feed with attendees, reminders and recurrences. */
+  CALENDAR("calendar.xml") {
+    @Override
+    public BaseFeed<?, ?> newFeed() {
+      return new CalendarEventFeed();
+    }
+  },
+
+  /** Spreadsheet cell feed, one small entry per cell. */
+  CELLS("cells.xml") {
+    @Override
+    public BaseFeed<?, ?> newFeed() {
+      return new CellFeed();
+    }
+  },
+
+  /** Documents list feed with resource ids, feed links and media links. */
+  DOCS("docs.xml") {
+    @Override
+    public BaseFeed<?, ?> newFeed() {
+      return new DocumentListFeed();
+    }
+  },
+
+  /** Analytics data feed with dimension and metric rows. */
+  ANALYTICS("analytics.xml") {
+    @Override
+    public BaseFeed<?, ?> newFeed() {
+      return new DataFeed();
+    }
+  };
+
+  private static final String ENTRY_START = "<entry";
+  private static final String ENTRY_END = "</entry>";
+
+  /** Matches a namespace declaration on the feed element. */
+  private static final Pattern NAMESPACE_DECL =
+      Pattern.compile("xmlns(?::\\w+)?='[^']*'");
+
+  private final String resourceName;
+  private String template;
+
+  private Corpus(String resourceName) {
+    this.resourceName = resourceName;
+  }
+
+  /**
+   * Returns a new, empty instance of the legacy feed type for this document.
+   */
+  public abstract BaseFeed<?, ?> newFeed();
+
+  /**
+   * Returns a new extension profile with the extensions of this document's
+   * feed type declared.
+   */
+  public ExtensionProfile newExtensionProfile() {
+    ExtensionProfile extProfile = new ExtensionProfile();
+    newFeed().declareExtensions(extProfile);
+    return extProfile;
+  }
+
+  /**
+   * Returns the document with its entries repeated the given number of times.
+   *
+   * @param copies number of times the entries appear; 1 returns the document
+   *     as captured
+   * @throws IOException if the document cannot be read
+   */
+  public String load(int copies) throws IOException {
+    if (copies < 1) {
+      throw new IllegalArgumentException("copies must be positive: " + copies);
+    }
+    String doc = getTemplate();
+    if (copies == 1) {
+      return doc;
+    }
+    int start = doc.indexOf(ENTRY_START);
+    int end = doc.lastIndexOf(ENTRY_END) + ENTRY_END.length();
+    String entries = doc.substring(start, end);
+    StringBuilder sb = new StringBuilder(
+        doc.length() + (copies - 1) * entries.length());
+    sb.append(doc, 0, end);
+    for (int i = 1; i < copies; i++) {
+      sb.append(entries);
+    }
+    sb.append(doc, end, doc.length());
+    return sb.toString();
+  }
+
+  /**
+   * Returns the first entry of the document as a standalone document, with
+   * the namespace declarations of the feed copied onto it.
+   *
+   * @throws IOException if the document cannot be read
+   */
+  public String loadEntry() throws IOException {
+    String doc = getTemplate();
+    int feedStart = doc.indexOf("<feed");
+    String feedTag = doc.substring(feedStart, doc.indexOf('>', feedStart));
+    int start = doc.indexOf(ENTRY_START);
+    int end = doc.indexOf(ENTRY_END, start) + ENTRY_END.length();
+
+    StringBuilder sb = new StringBuilder(ENTRY_START);
+    Matcher m = NAMESPACE_DECL.matcher(feedTag);
+    while (m.find()) {
+      sb.append(' ').append(m.group());
+    }
+    sb.append(doc, start + ENTRY_START.length(), end);
+    return sb.toString();
+  }
+
+  private synchronized String getTemplate() throws IOException {
+    if (template == null) {
+      InputStream in = Corpus.class.getResourceAsStream(
+          "corpus/" + resourceName);
+      if (in == null) {
+        throw new IOException("Missing corpus document: " + resourceName);
+      }
+      try {
+        template = CharStreams.toString(
+            new InputStreamReader(in, Charsets.UTF_8));
+      } finally {
+        in.close();
+      }
+    }
+    return template;
+  }
+}
@@ -0,0 +1,108 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.benchmark;
+
+import com.google.gdata.data.DateTime;
+import com.google.gdata.util.ParseException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link DateTime} parsing and formatting for the forms found in
+ * feeds: xs:dateTime in UTC and with a time zone shift, xs:date, and the
+ * RFC 822 form used in HTTP headers.
+ *
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DateTimeBenchmark {
+
+  private String utcDateTime;
+  private String shiftedDateTime;
+  private String date;
+  private String rfc822;
+
+  private DateTime utcValue;
+  private DateTime shiftedValue;
+
+  @Setup
+  public void setUp() {
+    utcDateTime = "2008-12-10T04:45:03.331Z";
+    shiftedDateTime = "2009-05-23T10:00:00.000-07:00";
+    date = "2009-06-02";
+    rfc822 = "Wed, 10 Dec 2008 04:45:03 GMT";
+
+    utcValue = DateTime.parseDateTime(utcDateTime);
+    shiftedValue = DateTime.parseDateTime(shiftedDateTime);
+  }
+
+  @Benchmark
+  public DateTime parseUtcDateTime() {
+    return DateTime.parseDateTime(utcDateTime);
+  }
+
+  @Benchmark
+  public DateTime parseShiftedDateTime() {
+    return DateTime.parseDateTime(shiftedDateTime);
+  }
+
+  @Benchmark
+  public DateTime parseDate() {
+    return DateTime.parseDate(date);
+  }
+
+  @Benchmark
+  public DateTime parseDateTimeChoice() {
+    return DateTime.parseDateTimeChoice(shiftedDateTime);
+  }
+
+  @Benchmark
+  public DateTime parseRfc822() throws ParseException {
+    return DateTime.parseRfc822(rfc822);
+  }
+
+  @Benchmark
+  public String formatUtcDateTime() {
+    return utcValue.toString();
+  }
+
+  @Benchmark
+  public String formatShiftedDateTime() {
+    return shiftedValue.toString();
+  }
+
+  @Benchmark
+  public String formatRfc822() {
+    return utcValue.toStringRfc822();
+  }
+}
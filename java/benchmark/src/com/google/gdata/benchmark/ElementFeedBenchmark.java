@@ -0,0 +1,120 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.benchmark;
+
+import com.google.gdata.model.Element;
+import com.google.gdata.model.ElementMetadata;
+import com.google.gdata.model.MetadataRegistry;
+import com.google.gdata.model.atom.Feed;
+import com.google.gdata.model.transforms.atom.AtomVersionTransforms;
+import com.google.gdata.model.transforms.atompub.AtompubVersionTransforms;
+import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.common.base.Charsets;
+import com.google.gdata.wireformats.WireFormat;
+import com.google.gdata.wireformats.input.InputProperties;
+import com.google.gdata.wireformats.input.InputPropertiesBuilder;
+import com.google.gdata.wireformats.output.OutputProperties;
+import com.google.gdata.wireformats.output.OutputPropertiesBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing and generation of the corpus through the
+ * {@link Element} data model and the XML {@link WireFormat}.  The schema is
+ * the one a {@link com.google.gdata.client.Service} starts with, so service
+ * specific extensions are carried as undeclared elements, which is the path
+ * most new-model clients take for extensions they do not register.
+ *
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ElementFeedBenchmark {
+
+  @Param({"CONTACTS", "CALENDAR", "CELLS", "DOCS", "ANALYTICS"})
+  public Corpus corpus;
+
+  /** Number of times the corpus entries are repeated. */
+  @Param({"1", "50"})
+  public int copies;
+
+  private String document;
+  private InputProperties inProps;
+  private OutputProperties outProps;
+  private Feed parsedFeed;
+
+  @Setup
+  public void setUp() throws IOException, ServiceException {
+    MetadataRegistry registry = new MetadataRegistry();
+    Feed.registerMetadata(registry);
+    AtomVersionTransforms.addTransforms(registry);
+    AtompubVersionTransforms.addTransforms(registry);
+    ElementMetadata<?, ?> metadata = registry.createSchema().bind(Feed.KEY);
+
+    document = corpus.load(copies);
+    inProps = new InputPropertiesBuilder()
+        .setElementMetadata(metadata)
+        .setExpectType(Feed.class)
+        .build();
+    outProps = new OutputPropertiesBuilder()
+        .setElementMetadata(metadata)
+        .build();
+    parsedFeed = parse();
+  }
+
+  @Benchmark
+  public Feed parse() throws IOException, ServiceException {
+    return (Feed) WireFormat.XML.createParser(
+        inProps, new StringReader(document), Charsets.UTF_8).parse(new Feed());
+  }
+
+  @Benchmark
+  public String generate() throws IOException, ServiceException {
+    return generate(parsedFeed);
+  }
+
+  @Benchmark
+  public String roundTrip() throws IOException, ServiceException {
+    return generate(parse());
+  }
+
+  private String generate(Feed feed) throws IOException, ServiceException {
+    StringWriter sw = new StringWriter(document.length());
+    WireFormat.XML.createGenerator(
+        outProps, sw, Charsets.UTF_8, false).generate(feed);
+    return sw.toString();
+  }
+}
@@ -0,0 +1,106 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.benchmark;
+
+import com.google.gdata.data.BaseFeed;
+import com.google.gdata.data.ExtensionProfile;
+import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.common.xml.XmlWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing and generation of the corpus through the legacy
+ * {@link BaseFeed} data model and its {@link ExtensionProfile}.  Each
+ * benchmark runs against a mutable and a frozen profile, so the cost of
+ * extension lookup shows up separately from the cost of the XML work.
+ *
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LegacyFeedBenchmark {
+
+  @Param({"CONTACTS", "CALENDAR", "CELLS", "DOCS", "ANALYTICS"})
+  public Corpus corpus;
+
+  /** Number of times the corpus entries are repeated. */
+  @Param({"1", "50"})
+  public int copies;
+
+  /** Whether the extension profile is frozen before parsing. */
+  @Param({"false", "true"})
+  public boolean frozen;
+
+  private String document;
+  private ExtensionProfile extProfile;
+  private BaseFeed<?, ?> parsedFeed;
+
+  @Setup
+  public void setUp() throws IOException, ServiceException {
+    document = corpus.load(copies);
+    extProfile = corpus.newExtensionProfile();
+    if (frozen) {
+      extProfile.freeze();
+    }
+    parsedFeed = parse();
+  }
+
+  @Benchmark
+  public BaseFeed<?, ?> parse() throws IOException, ServiceException {
+    BaseFeed<?, ?> feed = corpus.newFeed();
+    feed.parseAtom(extProfile, new StringReader(document));
+    return feed;
+  }
+
+  @Benchmark
+  public String generate() throws IOException {
+    return generate(parsedFeed);
+  }
+
+  @Benchmark
+  public String roundTrip() throws IOException, ServiceException {
+    return generate(parse());
+  }
+
+  private String generate(BaseFeed<?, ?> feed) throws IOException {
+    StringWriter sw = new StringWriter(document.length());
+    XmlWriter w = new XmlWriter(sw);
+    feed.generateAtom(w, extProfile);
+    w.flush();
+    return sw.toString();
+  }
+}
@@ -0,0 +1,125 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.benchmark;
+
+import com.google.gdata.client.Service;
+import com.google.gdata.data.BaseFeed;
+import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.common.base.Charsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a complete {@link Service#getFeed} request: building the request,
+ * the HTTP exchange over loopback, response header handling and feed
+ * parsing.  The server is an in-process stub that answers every request with
+ * the same corpus document, so the figures exclude network and server time
+ * and track only what the client library spends per request.
+ *
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ServiceGetFeedBenchmark {
+
+  private static final String FEED_PATH = "/feeds/default/full";
+
+  @Param({"CONTACTS", "CALENDAR", "CELLS", "DOCS", "ANALYTICS"})
+  public Corpus corpus;
+
+  /** Number of times the corpus entries are repeated. */
+  @Param({"1", "50"})
+  public int copies;
+
+  private HttpServer server;
+  private ExecutorService executor;
+  private Service service;
+  private URL feedUrl;
+  private Class<? extends BaseFeed> feedClass;
+
+  @Setup
+  public void setUp() throws IOException {
+    final byte[] body = corpus.load(copies).getBytes(Charsets.UTF_8.name());
+
+    executor = Executors.newCachedThreadPool();
+    server = HttpServer.create(
+        new InetSocketAddress(InetAddress.getByName("localhost"), 0), 0);
+    server.createContext(FEED_PATH, new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        while (in.read() != -1) {}
+        in.close();
+
+        exchange.getResponseHeaders().set("Content-Type",
+            "application/atom+xml; charset=UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+      }
+    });
+    server.setExecutor(executor);
+    server.start();
+
+    feedUrl = new URL("http", "localhost", server.getAddress().getPort(),
+        FEED_PATH);
+    service = new Service();
+    BaseFeed<?, ?> feed = corpus.newFeed();
+    feed.declareExtensions(service.getExtensionProfile());
+    feedClass = feed.getClass();
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  @Benchmark
+  public BaseFeed<?, ?> getFeed() throws IOException, ServiceException {
+    return service.getFeed(feedUrl, feedClass);
+  }
+}
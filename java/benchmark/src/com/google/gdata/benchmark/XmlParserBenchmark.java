@@ -0,0 +1,135 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.benchmark;
+
+import com.google.gdata.util.Namespaces;
+import com.google.gdata.util.ParseException;
+import com.google.gdata.util.XmlParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.Attributes;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link XmlParser} on its own, with element handlers that only
+ * count what they see.  The gap between this and
+ * {@link LegacyFeedBenchmark#parse} is the cost of the data model.
+ *
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class XmlParserBenchmark {
+
+  /** Size of the parsed document. */
+  public enum Size {
+
+    /** A single entry. */
+    ENTRY,
+
+    /** The feed as captured. */
+    FEED,
+
+    /** The feed with its entries repeated 100 times. */
+    LARGE_FEED
+  }
+
+  @Param({"CONTACTS", "CALENDAR", "CELLS", "DOCS", "ANALYTICS"})
+  public Corpus corpus;
+
+  @Param({"ENTRY", "FEED", "LARGE_FEED"})
+  public Size size;
+
+  private String document;
+  private String rootName;
+
+  @Setup
+  public void setUp() throws IOException {
+    switch (size) {
+      case ENTRY:
+        document = corpus.loadEntry();
+        rootName = "entry";
+        break;
+      case FEED:
+        document = corpus.load(1);
+        rootName = "feed";
+        break;
+      case LARGE_FEED:
+        document = corpus.load(100);
+        rootName = "feed";
+        break;
+    }
+  }
+
+  @Benchmark
+  public int parse() throws IOException, ParseException {
+    CountingHandler root = new CountingHandler(new int[1]);
+    new XmlParser().parse(new StringReader(document), root,
+        Namespaces.atom, rootName);
+    return root.count[0];
+  }
+
+  /**
+   * Element handler that accepts any child and counts elements, attributes
+   * and text characters into a counter shared by the whole document.
+   */
+  private static class CountingHandler extends XmlParser.ElementHandler {
+
+    private final int[] count;
+
+    CountingHandler(int[] count) {
+      this.count = count;
+    }
+
+    @Override
+    public XmlParser.ElementHandler getChildHandler(String namespace,
+        String localName, Attributes attrs) {
+      return new CountingHandler(count);
+    }
+
+    @Override
+    public void processAttribute(String namespace, String localName,
+        String value) {
+      count[0]++;
+    }
+
+    @Override
+    public void processEndElement() {
+      count[0]++;
+      if (value != null) {
+        count[0] += value.length();
+      }
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.benchmark;
+
+import com.google.gdata.util.Namespaces;
+import com.google.gdata.util.common.xml.XmlNamespace;
+import com.google.gdata.util.common.xml.XmlWriter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link XmlWriter} on its own, writing a feed shaped like the
+ * contacts corpus straight from strings.  Text either needs no escaping or
+ * is dense with markup characters, so both sides of the escaping code are
+ * covered.
+ *
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class XmlWriterBenchmark {
+
+  @Param({"1", "100"})
+  public int entries;
+
+  /** Whether text and attribute values contain characters to escape. */
+  @Param({"false", "true"})
+  public boolean markup;
+
+  private String title;
+  private String content;
+  private String href;
+  private List<XmlNamespace> namespaceDecls;
+
+  @Setup
+  public void setUp() {
+    if (markup) {
+      title = "Darcy & Bingley <Netherfield>";
+      content = "\"Pride\" & 'Prejudice' <chapter 1> & <chapter 2>";
+      href = "http://www.example.com/feeds?q=a&b=\"c\"&d=<e>";
+    } else {
+      title = "Fitzwilliam Darcy";
+      content = "Met at the Meryton assembly and again at Netherfield.";
+      href = "http://www.example.com/m8/feeds/contacts/default/full";
+    }
+    namespaceDecls = Arrays.asList(Namespaces.atomNs, Namespaces.gNs,
+        Namespaces.getOpenSearchNs(), Namespaces.getAtomPubNs());
+  }
+
+  @Benchmark
+  public String write() throws IOException {
+    StringWriter sw = new StringWriter();
+    XmlWriter w = new XmlWriter(sw);
+    w.startElement(Namespaces.atomNs, "feed", null, namespaceDecls);
+    w.simpleElement(Namespaces.atomNs, "id", null, href);
+    w.simpleElement(Namespaces.atomNs, "title", null, title);
+    for (int i = 0; i < entries; i++) {
+      writeEntry(w, i);
+    }
+    w.endElement(Namespaces.atomNs, "feed");
+    w.flush();
+    return sw.toString();
+  }
+
+  private void writeEntry(XmlWriter w, int i) throws IOException {
+    w.startElement(Namespaces.atomNs, "entry", null, null);
+    w.simpleElement(Namespaces.atomNs, "id", null, href + '/' + i);
+    w.simpleElement(Namespaces.atomNs, "updated", null,
+        "2008-12-10T04:45:03.331Z");
+    w.simpleElement(Namespaces.atomNs, "title", null, title);
+
+    List<XmlWriter.Attribute> attrs = new ArrayList<XmlWriter.Attribute>(2);
+    attrs.add(new XmlWriter.Attribute("type", "text"));
+    w.simpleElement(Namespaces.atomNs, "content", attrs, content);
+
+    attrs = new ArrayList<XmlWriter.Attribute>(3);
+    attrs.add(new XmlWriter.Attribute("rel", "self"));
+    attrs.add(new XmlWriter.Attribute("type", "application/atom+xml"));
+    attrs.add(new XmlWriter.Attribute("href", href));
+    w.simpleElement(Namespaces.atomNs, "link", attrs, null);
+
+    attrs = new ArrayList<XmlWriter.Attribute>(3);
+    attrs.add(new XmlWriter.Attribute("rel",
+        "http://schemas.google.com/g/2005#home"));
+    attrs.add(new XmlWriter.Attribute("address", "fitz@gmail.com"));
+    attrs.add(new XmlWriter.Attribute("primary", true));
+    w.simpleElement(Namespaces.gNs, "email", attrs, null);
+    w.endElement(Namespaces.atomNs, "entry");
+  }
+}
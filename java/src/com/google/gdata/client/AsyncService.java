@@ -0,0 +1,320 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.gdata.util.common.base.Preconditions;
+import com.google.gdata.data.IEntry;
+import com.google.gdata.data.IFeed;
+
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * The AsyncService class runs the operations of a {@link Service} on an
+ * {@link Executor} and returns their results as {@link ListenableFuture}s,
+ * so that callers do not need to dedicate a thread to each request in
+ * flight.
+ * <p>
+ * Each operation is executed by calling the matching blocking method of
+ * the wrapped service from a task submitted to the executor. Any handling
+ * the service applies to a request, such as the redirect and session
+ * expiration retries of {@link GoogleService}, therefore also runs on the
+ * executor. Failures are reported through the future: {@link
+ * java.util.concurrent.Future#get()} throws an {@link ExecutionException}
+ * whose cause is the {@link java.io.IOException} or
+ * {@link com.google.gdata.util.ServiceException} thrown by the service.
+ * <p>
+ * Requests block the executor thread running them while waiting for the
+ * server, so the number of requests in flight is bounded by the executor.
+ * An executor that creates cheap threads on demand, such as one running
+ * each task on a new virtual thread, allows very large numbers of
+ * concurrent requests.
+ *
+ *
+ */
+public class AsyncService {
+
+  private final Service service;
+  private final Executor executor;
+
+  /**
+   * Constructs an AsyncService.
+   *
+   * @param service the service used to execute requests.
+   * @param executor the executor that runs the requests.
+   */
+  public AsyncService(Service service, Executor executor) {
+    this.service = Preconditions.checkNotNull(service, "service");
+    this.executor = Preconditions.checkNotNull(executor, "executor");
+  }
+
+  /**
+   * Returns the service used to execute requests.
+   */
+  public Service getService() {
+    return service;
+  }
+
+  /**
+   * Returns the executor that runs the requests.
+   */
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Retrieves a feed asynchronously.
+   *
+   * @see Service#getFeed(URL, Class)
+   */
+  public <F extends IFeed> ListenableFuture<F> getFeed(final URL feedUrl,
+      final Class<F> feedClass) {
+    return submit(new Callable<F>() {
+      public F call() throws Exception {
+        return service.getFeed(feedUrl, feedClass);
+      }
+    });
+  }
+
+  /**
+   * Retrieves a feed asynchronously if its entity tag has changed.
+   *
+   * @see Service#getFeed(URL, Class, String)
+   */
+  public <F extends IFeed> ListenableFuture<F> getFeed(final URL feedUrl,
+      final Class<F> feedClass, final String etag) {
+    return submit(new Callable<F>() {
+      public F call() throws Exception {
+        return service.getFeed(feedUrl, feedClass, etag);
+      }
+    });
+  }
+
+  /**
+   * Retrieves the feed resulting from a query asynchronously.
+   *
+   * @see Service#getFeed(Query, Class)
+   */
+  public <F extends IFeed> ListenableFuture<F> getFeed(final Query query,
+      final Class<F> feedClass) {
+    return submit(new Callable<F>() {
+      public F call() throws Exception {
+        return service.getFeed(query, feedClass);
+      }
+    });
+  }
+
+  /**
+   * Retrieves the feed resulting from a query asynchronously if its entity
+   * tag has changed.
+   *
+   * @see Service#getFeed(Query, Class, String)
+   */
+  public <F extends IFeed> ListenableFuture<F> getFeed(final Query query,
+      final Class<F> feedClass, final String etag) {
+    return submit(new Callable<F>() {
+      public F call() throws Exception {
+        return service.getFeed(query, feedClass, etag);
+      }
+    });
+  }
+
+  /**
+   * Executes a query asynchronously.
+   *
+   * @see Service#query(Query, Class)
+   */
+  public <F extends IFeed> ListenableFuture<F> query(final Query query,
+      final Class<F> feedClass) {
+    return submit(new Callable<F>() {
+      public F call() throws Exception {
+        return service.query(query, feedClass);
+      }
+    });
+  }
+
+  /**
+   * Executes a query asynchronously if the entity tag of the result has
+   * changed.
+   *
+   * @see Service#query(Query, Class, String)
+   */
+  public <F extends IFeed> ListenableFuture<F> query(final Query query,
+      final Class<F> feedClass, final String etag) {
+    return submit(new Callable<F>() {
+      public F call() throws Exception {
+        return service.query(query, feedClass, etag);
+      }
+    });
+  }
+
+  /**
+   * Retrieves an entry asynchronously.
+   *
+   * @see Service#getEntry(URL, Class)
+   */
+  public <E extends IEntry> ListenableFuture<E> getEntry(final URL entryUrl,
+      final Class<E> entryClass) {
+    return submit(new Callable<E>() {
+      public E call() throws Exception {
+        return service.getEntry(entryUrl, entryClass);
+      }
+    });
+  }
+
+  /**
+   * Retrieves an entry asynchronously if its entity tag has changed.
+   *
+   * @see Service#getEntry(URL, Class, String)
+   */
+  public <E extends IEntry> ListenableFuture<E> getEntry(final URL entryUrl,
+      final Class<E> entryClass, final String etag) {
+    return submit(new Callable<E>() {
+      public E call() throws Exception {
+        return service.getEntry(entryUrl, entryClass, etag);
+      }
+    });
+  }
+
+  /**
+   * Inserts an entry asynchronously.
+   *
+   * @see Service#insert(URL, IEntry)
+   */
+  public <E extends IEntry> ListenableFuture<E> insert(final URL feedUrl,
+      final E entry) {
+    return submit(new Callable<E>() {
+      public E call() throws Exception {
+        return service.insert(feedUrl, entry);
+      }
+    });
+  }
+
+  /**
+   * Updates an entry asynchronously.
+   *
+   * @see Service#update(URL, IEntry)
+   */
+  public <E extends IEntry> ListenableFuture<E> update(final URL entryUrl,
+      final E entry) {
+    return submit(new Callable<E>() {
+      public E call() throws Exception {
+        return service.update(entryUrl, entry);
+      }
+    });
+  }
+
+  /**
+   * Updates an entry asynchronously if its entity tag matches.
+   *
+   * @see Service#update(URL, IEntry, String)
+   */
+  public <E extends IEntry> ListenableFuture<E> update(final URL entryUrl,
+      final E entry, final String etag) {
+    return submit(new Callable<E>() {
+      public E call() throws Exception {
+        return service.update(entryUrl, entry, etag);
+      }
+    });
+  }
+
+  /**
+   * Patches an entry asynchronously.
+   *
+   * @see Service#patch(URL, String, IEntry)
+   */
+  public <E extends IEntry> ListenableFuture<E> patch(final URL entryUrl,
+      final String fields, final E entry) {
+    return submit(new Callable<E>() {
+      public E call() throws Exception {
+        return service.patch(entryUrl, fields, entry);
+      }
+    });
+  }
+
+  /**
+   * Patches an entry asynchronously if its entity tag matches.
+   *
+   * @see Service#patch(URL, String, IEntry, String)
+   */
+  public <E extends IEntry> ListenableFuture<E> patch(final URL entryUrl,
+      final String fields, final E entry, final String etag) {
+    return submit(new Callable<E>() {
+      public E call() throws Exception {
+        return service.patch(entryUrl, fields, entry, etag);
+      }
+    });
+  }
+
+  /**
+   * Deletes a resource asynchronously.
+   *
+   * @see Service#delete(URL)
+   */
+  public ListenableFuture<Void> delete(final URL resourceUrl) {
+    return submit(new Callable<Void>() {
+      public Void call() throws Exception {
+        service.delete(resourceUrl);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Deletes a resource asynchronously if its entity tag matches.
+   *
+   * @see Service#delete(URL, String)
+   */
+  public ListenableFuture<Void> delete(final URL resourceUrl,
+      final String etag) {
+    return submit(new Callable<Void>() {
+      public Void call() throws Exception {
+        service.delete(resourceUrl, etag);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Executes a batch of operations asynchronously. A
+   * {@link com.google.gdata.client.batch.BatchInterruptedException} is
+   * reported as the cause of the {@link ExecutionException}.
+   *
+   * @see Service#batch(URL, IFeed)
+   */
+  public <F extends IFeed> ListenableFuture<F> batch(final URL feedUrl,
+      final F inputFeed) {
+    return submit(new Callable<F>() {
+      public F call() throws Exception {
+        return service.batch(feedUrl, inputFeed);
+      }
+    });
+  }
+
+  /**
+   * Submits a task to the executor.
+   */
+  protected <T> ListenableFuture<T> submit(Callable<T> task) {
+    ListenableFutureTask<T> future = ListenableFutureTask.create(task);
+    executor.execute(future);
+    return future;
+  }
+}
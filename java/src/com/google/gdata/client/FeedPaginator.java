@@ -0,0 +1,339 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client;
+
+import com.google.gdata.util.common.base.Preconditions;
+import com.google.gdata.data.BaseFeed;
+import com.google.gdata.data.Link;
+import com.google.gdata.util.ServiceException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * The FeedPaginator class walks through the pages of a paged feed by
+ * following the {@code rel="next"} link of each page.
+ * <p>
+ * Pages can be fetched in the background: when constructed with an
+ * {@link Executor} and a positive prefetch depth, the paginator requests the
+ * following pages on the executor while the caller is still processing the
+ * current one. At most {@code prefetchDepth} fetched pages wait to be
+ * returned by {@link #nextPage()}; once that many are waiting, no further
+ * page is requested until the caller catches up. Without an executor, each
+ * page is requested when {@link #nextPage()} is called.
+ * <p>
+ * The number of entries per page is controlled by the query, using
+ * {@link Query#setMaxResults(int)}, and the first page by
+ * {@link Query#setStartIndex(int)}.
+ * <p>
+ * A paginator should be closed once the caller is done with it, so that no
+ * further pages are prefetched. Instances are not thread-safe.
+ *
+ * <pre>
+ * FeedPaginator&lt;ContactFeed&gt; pages = new FeedPaginator&lt;ContactFeed&gt;(
+ *     service, query, ContactFeed.class, executor, 2);
+ * try {
+ *   ContactFeed page;
+ *   while ((page = pages.nextPage()) != null) {
+ *     ...
+ *   }
+ * } finally {
+ *   pages.close();
+ * }
+ * </pre>
+ *
+ * @param <F> feed type of the pages.
+ *
+ */
+public class FeedPaginator<F extends BaseFeed<?, ?>> implements Closeable {
+
+  /**
+   * Result of fetching a page, queued by the prefetching task: a page, an
+   * error, or the end of the feed when both are {@code null}.
+   */
+  private static class Result<F> {
+
+    final F page;
+    final Throwable error;
+
+    Result(F page, Throwable error) {
+      this.page = page;
+      this.error = error;
+    }
+  }
+
+  private final Service service;
+  private final Class<F> feedClass;
+  private final Executor executor;
+  private final BlockingQueue<Result<F>> prefetched;
+
+  /** Query for the first page, or {@code null} if {@link #firstUrl} is. */
+  private final Query query;
+
+  /** URL of the first page, or {@code null} if {@link #query} is. */
+  private final URL firstUrl;
+
+  /** URL of the page to fetch next when not prefetching. */
+  private URL nextUrl;
+
+  private boolean started;
+  private boolean done;
+  private volatile boolean closed;
+
+  /**
+   * Constructs a paginator that fetches each page when it is requested.
+   *
+   * @param service service used to fetch the pages.
+   * @param query query for the first page.
+   * @param feedClass class used to represent the pages.
+   */
+  public FeedPaginator(Service service, Query query, Class<F> feedClass) {
+    this(service, query, null, feedClass, null, 0);
+  }
+
+  /**
+   * Constructs a paginator that prefetches pages.
+   *
+   * @param service service used to fetch the pages.
+   * @param query query for the first page.
+   * @param feedClass class used to represent the pages.
+   * @param executor executor running the prefetching task.
+   * @param prefetchDepth maximum number of fetched pages waiting to be
+   *        returned, must be positive.
+   */
+  public FeedPaginator(Service service, Query query, Class<F> feedClass,
+      Executor executor, int prefetchDepth) {
+    this(service, query, null, feedClass,
+        Preconditions.checkNotNull(executor, "executor"), prefetchDepth);
+  }
+
+  /**
+   * Constructs a paginator that fetches each page when it is requested.
+   *
+   * @param service service used to fetch the pages.
+   * @param feedUrl URL of the first page.
+   * @param feedClass class used to represent the pages.
+   */
+  public FeedPaginator(Service service, URL feedUrl, Class<F> feedClass) {
+    this(service, null, feedUrl, feedClass, null, 0);
+  }
+
+  /**
+   * Constructs a paginator that prefetches pages.
+   *
+   * @param service service used to fetch the pages.
+   * @param feedUrl URL of the first page.
+   * @param feedClass class used to represent the pages.
+   * @param executor executor running the prefetching task.
+   * @param prefetchDepth maximum number of fetched pages waiting to be
+   *        returned, must be positive.
+   */
+  public FeedPaginator(Service service, URL feedUrl, Class<F> feedClass,
+      Executor executor, int prefetchDepth) {
+    this(service, null, feedUrl, feedClass,
+        Preconditions.checkNotNull(executor, "executor"), prefetchDepth);
+  }
+
+  private FeedPaginator(Service service, Query query, URL feedUrl,
+      Class<F> feedClass, Executor executor, int prefetchDepth) {
+    Preconditions.checkArgument(query != null || feedUrl != null,
+        "No query or feed URL");
+    Preconditions.checkArgument(executor == null || prefetchDepth > 0,
+        "Prefetch depth must be positive");
+    this.service = Preconditions.checkNotNull(service, "service");
+    this.feedClass = Preconditions.checkNotNull(feedClass, "feedClass");
+    this.query = query;
+    this.firstUrl = feedUrl;
+    this.executor = executor;
+    this.prefetched = executor == null ? null
+        : new ArrayBlockingQueue<Result<F>>(prefetchDepth);
+  }
+
+  /**
+   * Returns the next page of the feed, or {@code null} once all pages have
+   * been returned. After an exception has been thrown, no further pages are
+   * returned.
+   *
+   * @return next page of the feed or {@code null} for none.
+   * @throws IOException error sending request or reading the page.
+   * @throws ServiceException system error retrieving the page.
+   * @throws IllegalStateException if the paginator has been closed.
+   */
+  public F nextPage() throws IOException, ServiceException {
+    if (closed) {
+      throw new IllegalStateException("Paginator has been closed");
+    }
+    if (done) {
+      return null;
+    }
+    try {
+      F page = (executor == null) ? fetchNext() : takePrefetched();
+      if (page == null) {
+        done = true;
+      }
+      return page;
+    } catch (IOException e) {
+      done = true;
+      throw e;
+    } catch (ServiceException e) {
+      done = true;
+      throw e;
+    } catch (RuntimeException e) {
+      done = true;
+      throw e;
+    }
+  }
+
+  /**
+   * Closes the paginator. Pages that have been prefetched are discarded and
+   * no further page is requested, although a request already in progress
+   * completes in the background.
+   */
+  public void close() {
+    closed = true;
+    if (prefetched != null) {
+      // Unblocks the prefetching task if it waits for room in the queue.
+      prefetched.clear();
+    }
+  }
+
+  /**
+   * Fetches the next page from the calling thread.
+   */
+  private F fetchNext() throws IOException, ServiceException {
+    F page;
+    if (!started) {
+      started = true;
+      page = fetchFirst();
+    } else if (nextUrl != null) {
+      page = service.getFeed(nextUrl, feedClass);
+    } else {
+      return null;
+    }
+    nextUrl = getNextUrl(page);
+    return page;
+  }
+
+  /**
+   * Returns the next page fetched by the prefetching task, starting the task
+   * on first use.
+   */
+  private F takePrefetched() throws IOException, ServiceException {
+    if (!started) {
+      started = true;
+      executor.execute(new Prefetcher());
+    }
+    Result<F> result;
+    try {
+      result = prefetched.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for page");
+    }
+    Throwable error = result.error;
+    if (error != null) {
+      if (error instanceof IOException) {
+        throw (IOException) error;
+      } else if (error instanceof ServiceException) {
+        throw (ServiceException) error;
+      } else if (error instanceof RuntimeException) {
+        throw (RuntimeException) error;
+      }
+      throw (Error) error;
+    }
+    return result.page;
+  }
+
+  private F fetchFirst() throws IOException, ServiceException {
+    if (query != null) {
+      return service.getFeed(query, feedClass);
+    }
+    return service.getFeed(firstUrl, feedClass);
+  }
+
+  private static URL getNextUrl(BaseFeed<?, ?> page) throws IOException {
+    Link next = page.getNextLink();
+    return (next == null) ? null : new URL(next.getHref());
+  }
+
+  /**
+   * Task that fetches the pages in order and queues them, waiting for room
+   * in the queue once the prefetch depth has been reached.
+   */
+  private class Prefetcher implements Runnable {
+
+    public void run() {
+      try {
+        F page = fetchFirst();
+        while (!closed) {
+          URL url = getNextUrl(page);
+          put(new Result<F>(page, null));
+          if (url == null || closed) {
+            break;
+          }
+          page = service.getFeed(url, feedClass);
+        }
+        put(new Result<F>(null, null));
+      } catch (InterruptedException e) {
+        // The consumer may be waiting for the next page, so it must be told
+        // that none will come.
+        putError(new InterruptedIOException("Interrupted while prefetching"));
+        Thread.currentThread().interrupt();
+      } catch (IOException e) {
+        putError(e);
+      } catch (ServiceException e) {
+        putError(e);
+      } catch (RuntimeException e) {
+        putError(e);
+      } catch (Error e) {
+        putError(e);
+        throw e;
+      }
+    }
+
+    /**
+     * Queues an error as the last result. Waiting for room in the queue is
+     * not interruptible, as the consumer would otherwise wait forever; it
+     * ends once the consumer takes a page or closes the paginator.
+     */
+    private void putError(Throwable error) {
+      boolean interrupted = false;
+      while (true) {
+        try {
+          put(new Result<F>(null, error));
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void put(Result<F> result) throws InterruptedException {
+      if (!closed) {
+        prefetched.put(result);
+      }
+    }
+  }
+}
@@ -30,6 +30,7 @@ import com.google.gdata.client.GoogleService.SessionExpiredException;
 import com.google.gdata.client.GoogleService.TermsNotAgreedException;
 import com.google.gdata.client.authn.oauth.GoogleOAuthHelper;
 import com.google.gdata.client.authn.oauth.OAuthException;
+import com.google.gdata.client.authn.oauth.OAuthHelper;
 import com.google.gdata.client.authn.oauth.OAuthParameters;
 import com.google.gdata.client.authn.oauth.OAuthParameters.OAuthType;
 import com.google.gdata.client.authn.oauth.OAuthSigner;
@@ -172,6 +173,10 @@ public class GoogleAuthTokenFactory implements AuthTokenFactory {
     OAuthParameters parameters;
     final OAuthSigner signer;
 
+    /** Keeps the static parameters encoded between requests. */
+    final OAuthHelper.SignatureBaseStringBuilder baseStringBuilder =
+        new OAuthHelper.SignatureBaseStringBuilder();
+
     /**
      * Create a new {@link OAuthToken} object.  Store the
      * {@link OAuthParameters} and {@link OAuthSigner} to use when generating
@@ -201,14 +206,14 @@ public class GoogleAuthTokenFactory implements AuthTokenFactory {
     public String getAuthorizationHeader(URL requestUrl, String requestMethod) {
       try {
         if (parameters.getOAuthType() == OAuthType.TWO_LEGGED_OAUTH) {
-          TwoLeggedOAuthHelper twoLeggedOAuthHelper
-              = new TwoLeggedOAuthHelper(signer, parameters);
+          TwoLeggedOAuthHelper twoLeggedOAuthHelper = new TwoLeggedOAuthHelper(
+              signer, parameters, baseStringBuilder);
           return twoLeggedOAuthHelper.getAuthorizationHeader(requestUrl.toString(),
               requestMethod);
         } else {
           GoogleOAuthHelper oauthHelper = new GoogleOAuthHelper(signer);
           return oauthHelper.getAuthorizationHeader(requestUrl.toString(),
-            requestMethod, parameters);
+            requestMethod, parameters, baseStringBuilder);
         }
       } catch (OAuthException e) {
         throw new RuntimeException(e);
@@ -26,6 +26,8 @@ import com.google.gdata.client.authn.oauth.OAuthSigner;
 import com.google.gdata.client.batch.BatchInterruptedException;
 import com.google.gdata.client.http.GoogleGDataRequest;
 import com.google.gdata.client.http.GoogleGDataRequest.GoogleCookie;
+import com.google.gdata.data.BaseEntry;
+import com.google.gdata.data.BaseFeed;
 import com.google.gdata.data.DateTime;
 import com.google.gdata.data.IEntry;
 import com.google.gdata.data.IFeed;
@@ -683,6 +685,38 @@ public class GoogleService extends Service implements TokenListener {
     return super.getFeed(query, feedClass, etag);
   }
 
+  @Override
+  public <E extends BaseEntry<?>, F extends BaseFeed<?, E>> F streamFeed(
+      URL feedUrl, Class<F> feedClass,
+      BaseFeed.EntryListener<? super E> listener)
+      throws IOException, ServiceException {
+    try {
+      return super.streamFeed(feedUrl, feedClass, listener);
+    } catch (RedirectRequiredException e) {
+      feedUrl = handleRedirectException(e);
+    } catch (SessionExpiredException e) {
+      handleSessionExpiredException(e);
+    }
+
+    return super.streamFeed(feedUrl, feedClass, listener);
+  }
+
+  @Override
+  public <E extends BaseEntry<?>, F extends BaseFeed<?, E>> F streamFeed(
+      Query query, Class<F> feedClass,
+      BaseFeed.EntryListener<? super E> listener)
+      throws IOException, ServiceException {
+    try {
+      return super.streamFeed(query, feedClass, listener);
+    } catch (RedirectRequiredException e) {
+      query = new Query(handleRedirectException(e));
+    } catch (SessionExpiredException e) {
+      handleSessionExpiredException(e);
+    }
+
+    return super.streamFeed(query, feedClass, listener);
+  }
+
   @Override
   public void delete(URL entryUrl) throws IOException, ServiceException {
 
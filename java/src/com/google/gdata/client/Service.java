@@ -20,8 +20,12 @@ import com.google.gdata.util.common.base.Preconditions;
 import com.google.gdata.util.common.net.UriParameterMap;
 import com.google.gdata.client.AuthTokenFactory.AuthToken;
 import com.google.gdata.client.batch.BatchInterruptedException;
+import com.google.gdata.client.cache.CachedResponse;
+import com.google.gdata.client.cache.GDataResponseCache;
 import com.google.gdata.client.http.HttpGDataRequest;
 import com.google.gdata.data.AbstractExtension;
+import com.google.gdata.data.BaseEntry;
+import com.google.gdata.data.BaseFeed;
 import com.google.gdata.data.DateTime;
 import com.google.gdata.data.ExtensionProfile;
 import com.google.gdata.data.IAtom;
@@ -41,6 +45,7 @@ import com.google.gdata.model.batch.BatchUtils;
 import com.google.gdata.model.transforms.atom.AtomVersionTransforms;
 import com.google.gdata.model.transforms.atompub.AtompubVersionTransforms;
 import com.google.gdata.util.ContentType;
+import com.google.gdata.util.FieldProjection;
 import com.google.gdata.util.NotModifiedException;
 import com.google.gdata.util.ParseException;
 import com.google.gdata.util.PreconditionFailedException;
@@ -48,9 +53,12 @@ import com.google.gdata.util.ResourceNotFoundException;
 import com.google.gdata.util.ServiceException;
 import com.google.gdata.util.Version;
 import com.google.gdata.util.VersionRegistry;
+import com.google.gdata.util.XmlParser;
 import com.google.gdata.wireformats.AltFormat;
 import com.google.gdata.wireformats.AltRegistry;
+import com.google.gdata.wireformats.ContentCreationException;
 import com.google.gdata.wireformats.StreamProperties;
+import com.google.gdata.wireformats.input.AtomDataParser;
 import com.google.gdata.wireformats.input.AtomDualParser;
 import com.google.gdata.wireformats.input.AtomServiceDualParser;
 import com.google.gdata.wireformats.input.InputParser;
@@ -60,9 +68,12 @@ import com.google.gdata.wireformats.output.AtomServiceDualGenerator;
 import com.google.gdata.wireformats.output.OutputGenerator;
 import com.google.gdata.wireformats.output.OutputProperties;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.URI;
 import java.net.URL;
 import java.util.Collection;
@@ -901,6 +912,118 @@ public class Service {
     this.strictValidation = strictValidation;
   }
 
+  private boolean fieldProjection = false;
+
+  /**
+   * Set while a response is parsed on the current thread, so that requests
+   * made from a listener do not inherit the field projection of the response.
+   */
+  private static final ThreadLocal<Boolean> parsingResponse =
+      new ThreadLocal<Boolean>();
+
+  /**
+   * Returns {@code true} if the fields of partial requests are also
+   * applied when parsing responses.
+   */
+  public boolean getFieldProjection() {
+    return fieldProjection;
+  }
+
+  /**
+   * Enables or disables field projection of responses. It is disabled by
+   * default. When this flag is enabled, the fields of a request, as set by
+   * {@link Query#setFields}, are also applied by the client library while
+   * parsing the response, so that elements outside of them are skipped
+   * without being parsed even if the server returns them.
+   *
+   * @see FieldProjection
+   */
+  public void setFieldProjection(boolean fieldProjection) {
+    this.fieldProjection = fieldProjection;
+  }
+
+  private boolean deferredXmlBlobs = false;
+
+  /**
+   * Returns {@code true} if the parsing of XML blobs in responses is
+   * deferred until they are read.
+   */
+  public boolean getDeferredXmlBlobs() {
+    return deferredXmlBlobs;
+  }
+
+  /**
+   * Enables or disables deferred parsing of XML blobs in responses parsed
+   * into the old data model. It is disabled by default. When this flag is
+   * enabled, entry content in XHTML or XML and unrecognized XML are located
+   * in the response text and only parsed when first read, at the cost of
+   * keeping the response text while any of them is unread.
+   *
+   * @see XmlParser#setDeferXmlBlobs
+   */
+  public void setDeferredXmlBlobs(boolean deferredXmlBlobs) {
+    this.deferredXmlBlobs = deferredXmlBlobs;
+  }
+
+  /**
+   * Used to specify that request data is not chunked, but buffered and sent
+   * in one piece with a fixed length.
+   *
+   * @see #setChunkedRequestData(int)
+   */
+  public static final int NO_CHUNKED_REQUEST = -1;
+
+  /**
+   * The size of the chunks in which Atom and batch request data is streamed
+   * to the service, or {@link #NO_CHUNKED_REQUEST}.
+   */
+  private int requestChunkSize = NO_CHUNKED_REQUEST;
+
+  /**
+   * Sets how the entries and feeds of insert, update and batch requests are
+   * sent to the service.  By default, request data is buffered and sent in
+   * one piece, which allows requests to be redirected.  Chunked requests are
+   * sent while they are generated, using memory independent of the request
+   * size, but cannot be redirected.
+   *
+   * @param chunkSizeInBytes specifies the size (in bytes) of each chunk.
+   *     Use {@code 0} for the default size of the JDK.
+   *     Use {@link #NO_CHUNKED_REQUEST} for not using chunked requests.
+   *
+   * @see java.net.HttpURLConnection#setChunkedStreamingMode(int)
+   */
+  public void setChunkedRequestData(int chunkSizeInBytes) {
+    if (chunkSizeInBytes < NO_CHUNKED_REQUEST) {
+      throw new IllegalArgumentException(
+          "Invalid chunk size: " + chunkSizeInBytes);
+    }
+    this.requestChunkSize = chunkSizeInBytes;
+  }
+
+  /**
+   * The cache of retrieved feeds and entries, or {@code null} if responses
+   * are not cached.
+   */
+  private GDataResponseCache responseCache;
+
+  /**
+   * Returns the cache of retrieved feeds and entries, or {@code null} if
+   * responses are not cached.
+   */
+  public GDataResponseCache getResponseCache() {
+    return responseCache;
+  }
+
+  /**
+   * Sets the cache of retrieved feeds and entries.  Feed and entry requests
+   * without a precondition are revalidated against the cached response for
+   * their URL, which is returned if the server reports that it has not been
+   * modified.  A value of {@code null} disables caching.
+   */
+  public void setResponseCache(GDataResponseCache responseCache) {
+    this.responseCache = responseCache;
+  }
+
   // Helper method that narrows the scope of unchecked (but safe) class casting.
   @SuppressWarnings("unchecked")
   protected <T> Class<T> classOf(T object) {
@@ -1097,6 +1220,9 @@ public class Service {
 
     try {
       startVersionScope();
+      if (ifModifiedSince == null) {
+        return executeCachedQuery(request, feedClass);
+      }
       request.setIfModifiedSince(ifModifiedSince);
       request.execute();
       return parseResponseData(request, feedClass);
@@ -1131,6 +1257,9 @@ public class Service {
 
     try {
       startVersionScope();
+      if (etag == null) {
+        return executeCachedQuery(request, feedClass);
+      }
       request.setEtag(etag);
       request.execute();
       return parseResponseData(request, feedClass);
@@ -1140,6 +1269,136 @@ public class Service {
     }
   }
 
+  /**
+   * Retrieves the feed associated with a particular feed URL and passes each
+   * of its entries to a listener as soon as it has been parsed. Entries are
+   * not retained by the returned feed, so the memory used to read the feed
+   * does not grow with the number of entries it contains.
+   *
+   * @param feedUrl the URL associated with a feed. This URL can include GData
+   *        query parameters.
+   * @param feedClass the class used to represent a service Feed.
+   * @param listener listener receiving the feed entries in document order.
+   * @return feed containing the feed metadata and no entries.
+   * @throws IOException error sending request or reading the feed.
+   * @throws ParseException error parsing the returned feed data, or error
+   *         reported by the listener.
+   * @throws ResourceNotFoundException invalid feed URL.
+   * @throws ServiceException system error retrieving feed.
+   * @see BaseFeed#setEntryListener(BaseFeed.EntryListener)
+   */
+  public <E extends BaseEntry<?>, F extends BaseFeed<?, E>> F streamFeed(
+      URL feedUrl, Class<F> feedClass,
+      BaseFeed.EntryListener<? super E> listener)
+      throws IOException, ServiceException {
+    GDataRequest request = createFeedRequest(feedUrl);
+    return streamFeed(request, feedClass, listener);
+  }
+
+  /**
+   * Executes a query and passes each entry of the resulting feed to a
+   * listener as soon as it has been parsed. Entries are not retained by the
+   * returned feed, so the memory used to read the feed does not grow with
+   * the number of entries it contains.
+   *
+   * @param query feed query.
+   * @param feedClass the class used to represent query results.
+   * @param listener listener receiving the feed entries in document order.
+   * @return feed containing the feed metadata and no entries.
+   * @throws IOException error sending request or reading the feed.
+   * @throws ParseException error parsing the returned feed data, or error
+   *         reported by the listener.
+   * @throws ResourceNotFoundException invalid feed URL.
+   * @throws ServiceException system error retrieving feed.
+   * @see BaseFeed#setEntryListener(BaseFeed.EntryListener)
+   */
+  public <E extends BaseEntry<?>, F extends BaseFeed<?, E>> F streamFeed(
+      Query query, Class<F> feedClass,
+      BaseFeed.EntryListener<? super E> listener)
+      throws IOException, ServiceException {
+    GDataRequest request = createFeedRequest(query);
+    return streamFeed(request, feedClass, listener);
+  }
+
+  /**
+   * Executes a feed request and parses the response, passing the entries to
+   * a listener. Only Atom responses parsed into the {@link BaseFeed} data
+   * model can be streamed.
+   */
+  private <E extends BaseEntry<?>, F extends BaseFeed<?, E>> F streamFeed(
+      GDataRequest request, final Class<F> feedClass,
+      BaseFeed.EntryListener<? super E> listener)
+      throws IOException, ServiceException {
+    Preconditions.checkNotNull(listener, "listener");
+
+    // A generic feed is adapted to the most specific feed kind once parsed,
+    // so adapt each of its entries as they are delivered in the same way.
+    final BaseFeed.EntryListener<? super E> target = listener;
+    final BaseFeed.EntryListener<E> entryListener =
+        new BaseFeed.EntryListener<E>() {
+          @SuppressWarnings("unchecked")
+          public void entryParsed(E entry) throws ServiceException {
+            if (feedClass == com.google.gdata.data.Feed.class) {
+              BaseEntry<?> adaptedEntry = entry.getAdaptedEntry();
+              if (adaptedEntry != null) {
+                entry = (E) adaptedEntry;
+              }
+            }
+            target.entryParsed(entry);
+          }
+        };
+    AtomDataParser parser = new AtomDataParser() {
+      @Override
+      @SuppressWarnings("unchecked")
+      protected <R extends IAtom> R createResult(Class<R> resultClass)
+          throws ContentCreationException {
+        R result = super.createResult(resultClass);
+        ((BaseFeed<?, E>) result).setEntryListener(entryListener);
+        return result;
+      }
+    };
+    return streamFeed(request, feedClass, parser);
+  }
+
+  /**
+   * Executes a feed request and parses the Atom response with a parser
+   * whose {@link AtomDataParser#createResult} prepares the feed before it is
+   * parsed, for example by setting a listener on it.  The response is
+   * otherwise handled like the one of {@link #getFeed(URL, Class)}.
+   *
+   * @param request feed request that has not been executed.
+   * @param feedClass the class used to represent the resulting feed.
+   * @param parser parser of the response.
+   * @return the parsed feed.
+   * @throws IOException error sending request or reading the feed.
+   * @throws ServiceException system error retrieving or parsing the feed.
+   */
+  protected <F extends IFeed> F streamFeed(GDataRequest request,
+      Class<F> feedClass, AtomDataParser parser)
+      throws IOException, ServiceException {
+
+    // The cast here is safe because the parser produces any IAtom type
+    @SuppressWarnings("unchecked")
+    InputParser<F> typedParser = (InputParser<F>) (InputParser<?>) parser;
+
+    try {
+      startVersionScope();
+      request.execute();
+      InputProperties inputProperties =
+          new ClientInputProperties(request, feedClass);
+      AltFormat inputFormat = getInputFormat(inputProperties);
+      if (!AltFormat.ATOM.equals(inputFormat)) {
+        throw new ParseException("Cannot stream content type:" +
+            inputProperties.getContentType());
+      }
+      return parseResponseData(request.getParseSource(), inputProperties,
+          feedClass, typedParser);
+    } finally {
+      endVersionScope();
+      request.end();
+    }
+  }
+
   /**
    * Executes a GData feed request against the target service and returns the
    * resulting feed results via an input stream.
@@ -1308,6 +1567,9 @@ public class Service {
     GDataRequest request = createEntryRequest(entryUrl);
     try {
       startVersionScope();
+      if (ifModifiedSince == null) {
+        return executeCachedQuery(request, entryClass);
+      }
       request.setIfModifiedSince(ifModifiedSince);
       request.execute();
       return parseResponseData(request, entryClass);
@@ -1348,6 +1610,9 @@ public class Service {
     GDataRequest request = createEntryRequest(entryUrl);
     try {
       startVersionScope();
+      if (etag == null) {
+        return executeCachedQuery(request, entryClass);
+      }
       request.setEtag(etag);
       request.execute();
       return parseResponseData(request, entryClass);
@@ -1930,9 +2195,14 @@ public class Service {
 
     protected ClientInputProperties(GDataRequest req, Class<?> expectType)
         throws IOException, ServiceException {
+      this(req, req.getResponseContentType(), expectType);
+    }
+
+    protected ClientInputProperties(GDataRequest req, ContentType inputType,
+        Class<?> expectType) {
       super(req);
       this.expectType = expectType;
-      this.inputType = req.getResponseContentType();
+      this.inputType = inputType;
       init();
     }
 
@@ -2067,6 +2337,10 @@ public class Service {
     if (disableValidation) {
       AbstractExtension.disableStrictValidation();
     }
+    if (requestChunkSize != NO_CHUNKED_REQUEST
+        && req instanceof HttpGDataRequest) {
+      ((HttpGDataRequest) req).setChunkedStreamingMode(requestChunkSize);
+    }
     try {
       typedGenerator.generate(req.getRequestStream(), outProps, source);
     } finally {
@@ -2078,6 +2352,166 @@ public class Service {
 
   }
 
+  /**
+   * Executes a query request and parses the response.  If the service has a
+   * response cache, the request is made conditional on the response cached
+   * for its URL, which is returned if the resource has not been modified.
+   *
+   * @param request query request that has not been executed.
+   * @param resultType expected result type, not {@code null}.
+   * @return the parsed or cached result.
+   * @throws IOException error communicating with the GData service.
+   * @throws ServiceException error executing the request or parsing the
+   *         response.
+   */
+  private <E> E executeCachedQuery(GDataRequest request, Class<E> resultType)
+      throws IOException, ServiceException {
+    GDataResponseCache cache = responseCache;
+    if (cache == null) {
+      request.execute();
+      return parseResponseData(request, resultType);
+    }
+
+    URL url = request.getRequestUrl();
+    String authorization = (request instanceof HttpGDataRequest)
+        ? ((HttpGDataRequest) request).getAuthorizationHeader() : null;
+    CachedResponse cached = cache.lookup(url, authorization, resultType);
+    if (cached != null) {
+      if (cached.getEtag() != null) {
+        request.setEtag(cached.getEtag());
+      } else {
+        request.setIfModifiedSince(cached.getLastModified());
+      }
+    }
+    try {
+      request.execute();
+    } catch (NotModifiedException e) {
+      if (cached == null) {
+        throw e;
+      }
+      InputStream body;
+      try {
+        body = cached.openBody();
+      } catch (IOException ioe) {
+        // The cached body was evicted after the lookup, query again.
+        cache.invalidate(url, authorization);
+        GDataRequest retry = createRequest(
+            GDataRequest.RequestType.QUERY, url, contentType);
+        try {
+          return executeCachedQuery(retry, resultType);
+        } finally {
+          retry.end();
+        }
+      }
+      try {
+        E result = parseResponseData(new ParseSource(body),
+            new ClientInputProperties(
+                request, cached.getContentType(), resultType),
+            resultType);
+        cache.hit(cached);
+        return result;
+      } finally {
+        body.close();
+      }
+    }
+
+    String etag = request.getResponseHeader(GDataProtocol.Header.ETAG);
+    DateTime lastModified =
+        request.getResponseDateHeader(GDataProtocol.Header.LAST_MODIFIED);
+    ContentType responseType = request.getResponseContentType();
+    InputStream responseStream = (etag != null || lastModified != null)
+        && responseType != null ? request.getResponseStream() : null;
+    if (responseStream == null) {
+      cache.miss(url, authorization, null);
+      return parseResponseData(request, resultType);
+    }
+
+    // Keep the body as received, to parse it again for every cache hit,
+    // unless it is too large for the store.  Larger bodies are parsed as
+    // they are received and not cached.
+    InputProperties inputProperties =
+        new ClientInputProperties(request, responseType, resultType);
+    try {
+      long maxBytes = cache.getStore().getMaxBytes();
+      long contentLength = getContentLength(request);
+      ResponseBuffer buffer = null;
+      if (contentLength <= maxBytes) {
+        buffer = new ResponseBuffer(contentLength);
+        if (buffer.readFrom(responseStream, maxBytes)) {
+          CachedResponse response = new CachedResponse(resultType.getName(),
+              responseType, etag, lastModified, buffer.getBytes(),
+              buffer.size());
+          E result = parseResponseData(
+              new ParseSource(response.openBody()), inputProperties,
+              resultType);
+          cache.miss(url, authorization, response);
+          return result;
+        }
+      }
+      cache.miss(url, authorization, null);
+      InputStream body = (buffer == null) ? responseStream
+          : new SequenceInputStream(buffer.openBytes(), responseStream);
+      return parseResponseData(
+          new ParseSource(body), inputProperties, resultType);
+    } finally {
+      responseStream.close();
+    }
+  }
+
+  /**
+   * Returns the Content-Length of the response to a request, 0 if it is
+   * unknown.
+   */
+  private static long getContentLength(GDataRequest request) {
+    String contentLength = request.getResponseHeader("Content-Length");
+    if (contentLength != null) {
+      try {
+        return Math.max(0, Long.parseLong(contentLength.trim()));
+      } catch (NumberFormatException e) {
+        // Fall through to an unknown length.
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Buffer holding the start of a response body, whose bytes are read
+   * without copying them out of the buffer.
+   */
+  private static class ResponseBuffer extends ByteArrayOutputStream {
+
+    ResponseBuffer(long expectedSize) {
+      super(expectedSize > 0
+          ? (int) Math.min(expectedSize, Integer.MAX_VALUE - 8) : 8192);
+    }
+
+    /**
+     * Reads a stream into the buffer until its end or until the buffer holds
+     * more than a maximum number of bytes.
+     *
+     * @return {@code true} if the end of the stream was reached.
+     */
+    boolean readFrom(InputStream in, long maxBytes) throws IOException {
+      long limit = Math.min(maxBytes, Integer.MAX_VALUE - 8);
+      byte[] bytes = new byte[8192];
+      int read;
+      while (count <= limit && (read = in.read(bytes)) != -1) {
+        write(bytes, 0, read);
+      }
+      return count <= limit;
+    }
+
+    /** Returns the array holding the buffered bytes. */
+    byte[] getBytes() {
+      return buf;
+    }
+
+    /** Opens a stream reading the buffered bytes. */
+    InputStream openBytes() {
+      return new ByteArrayInputStream(buf, 0, count);
+    }
+  }
+
   /**
    * Parses the response stream for a request based upon request properties and
    * an expected result type.   The parser will be selected based upon the
@@ -2125,18 +2559,7 @@ public class Service {
       throws IOException, ServiceException {
     Preconditions.checkNotNull("resultType", resultType);
 
-    AltFormat inputFormat = null;
-    String alt = inputProperties.getQueryParameter(GDataProtocol.Parameter.ALT);
-    if (alt != null) {
-      inputFormat = altRegistry.lookupName(alt);
-    }
-    if (inputFormat == null) {
-      inputFormat = altRegistry.lookupType(inputProperties.getContentType());
-      if (inputFormat == null) {
-        throw new ParseException("Unrecognized content type:" +
-            inputProperties.getContentType());
-      }
-    }
+    AltFormat inputFormat = getInputFormat(inputProperties);
     InputParser<?> inputParser = altRegistry.getParser(inputFormat);
     if (inputParser == null) {
       throw new ParseException("No parser for content type:" + inputFormat);
@@ -2151,23 +2574,82 @@ public class Service {
     @SuppressWarnings("unchecked")
     InputParser<E> typedParser = (InputParser<E>) inputParser;
 
-    // Disable validation for partial request in old data model.
+    return parseResponseData(source, inputProperties, resultType, typedParser);
+  }
+
+  /**
+   * Returns the representation of response content, based upon the request
+   * alt type or the response content type.
+   */
+  private AltFormat getInputFormat(InputProperties inputProperties)
+      throws ParseException {
+    AltFormat inputFormat = null;
+    String alt = inputProperties.getQueryParameter(GDataProtocol.Parameter.ALT);
+    if (alt != null) {
+      inputFormat = altRegistry.lookupName(alt);
+    }
+    if (inputFormat == null) {
+      inputFormat = altRegistry.lookupType(inputProperties.getContentType());
+      if (inputFormat == null) {
+        throw new ParseException("Unrecognized content type:" +
+            inputProperties.getContentType());
+      }
+    }
+    return inputFormat;
+  }
+
+  /**
+   * Parses response content into the expected result type using the provided
+   * parser.
+   */
+  private <E> E parseResponseData(ParseSource source,
+      InputProperties inputProperties, Class<E> resultType,
+      InputParser<E> typedParser) throws IOException, ServiceException {
+
+    // Apply the fields of a partial request while parsing, if enabled.  A
+    // request made while a response is parsed on the same thread, such as
+    // from a streamFeed listener, does not inherit the outer projection.
     String fields =
         inputProperties.getQueryParameter(GDataProtocol.Parameter.FIELDS);
+    boolean nested = parsingResponse.get() != null;
+    FieldProjection previousProjection =
+        FieldProjection.getThreadProjection();
+    FieldProjection projection = nested ? null : previousProjection;
+    if (projection == null && fieldProjection && fields != null) {
+      projection = FieldProjection.parse(fields);
+    }
+
+    // Disable validation for partial request in old data model.
     boolean disableValidation = !strictValidation
-        || (fields != null && !Element.class.isAssignableFrom(resultType));
+        || ((fields != null || projection != null)
+            && !Element.class.isAssignableFrom(resultType));
+    boolean wasStrict = AbstractExtension.isStrictValidation();
     if (disableValidation) {
       AbstractExtension.disableStrictValidation();
     }
+    boolean deferXmlBlobs =
+        deferredXmlBlobs && !XmlParser.isDeferredXmlBlobs();
+    if (deferXmlBlobs) {
+      XmlParser.enableDeferredXmlBlobs();
+    }
 
     E result;
+    FieldProjection.setThreadProjection(projection);
+    parsingResponse.set(Boolean.TRUE);
     try {
       result = typedParser.parse(source, inputProperties, resultType);
     } finally {
-      // Re-enable validation.
-      if (disableValidation) {
+      if (!nested) {
+        parsingResponse.remove();
+      }
+      FieldProjection.setThreadProjection(previousProjection);
+      // Re-enable validation, unless an outer request disabled it.
+      if (disableValidation && wasStrict) {
         AbstractExtension.enableStrictValidation();
       }
+      if (deferXmlBlobs) {
+        XmlParser.disableDeferredXmlBlobs();
+      }
     }
 
     // Associate service with the result if atom content
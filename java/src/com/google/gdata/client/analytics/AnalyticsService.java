@@ -16,19 +16,29 @@
 
 package com.google.gdata.client.analytics;
 
+import com.google.gdata.util.common.base.Preconditions;
 import com.google.gdata.client.AuthTokenFactory;
 import com.google.gdata.client.GoogleService;
+import com.google.gdata.client.Query;
 import com.google.gdata.client.Service;
+import com.google.gdata.data.IAtom;
 import com.google.gdata.data.analytics.AbPageVariationFeed;
 import com.google.gdata.data.analytics.AccountFeed;
 import com.google.gdata.data.analytics.CombinationFeed;
 import com.google.gdata.data.analytics.DataFeed;
+import com.google.gdata.data.analytics.DataTable;
 import com.google.gdata.data.analytics.ExperimentFeed;
 import com.google.gdata.data.analytics.ManagementFeed;
 import com.google.gdata.data.analytics.SectionFeed;
 import com.google.gdata.data.analytics.VariationFeed;
+import com.google.gdata.util.ServiceException;
 import com.google.gdata.util.Version;
 import com.google.gdata.util.VersionRegistry;
+import com.google.gdata.wireformats.ContentCreationException;
+import com.google.gdata.wireformats.input.AtomDataParser;
+
+import java.io.IOException;
+import java.net.URL;
 
 /**
  * Extends the basic {@link GoogleService} abstraction to define a service that
@@ -156,6 +166,93 @@ public class AnalyticsService extends GoogleService {
     return VersionRegistry.get().getVersion(AnalyticsService.class);
   }
 
+  /**
+   * Retrieves a data feed and passes the dimensions and metrics of each of
+   * its entries to a listener as soon as they have been parsed, without
+   * creating the entries.
+   *
+   * @param feedUrl the URL of the data feed, including the query parameters.
+   * @param listener listener receiving the rows in document order.
+   * @return feed containing the feed metadata and no entries.
+   * @throws IOException error sending request or reading the feed.
+   * @throws ServiceException system error retrieving or parsing the feed, or
+   *     error reported by the listener.
+   * @see DataFeed#setRowListener(DataFeed.RowListener)
+   */
+  public DataFeed streamData(URL feedUrl, DataFeed.RowListener listener)
+      throws IOException, ServiceException {
+    return streamData(createFeedRequest(feedUrl), listener);
+  }
+
+  /**
+   * Executes a data feed query and passes the dimensions and metrics of each
+   * entry of the result to a listener as soon as they have been parsed,
+   * without creating the entries.
+   *
+   * @param query data feed query.
+   * @param listener listener receiving the rows in document order.
+   * @return feed containing the feed metadata and no entries.
+   * @throws IOException error sending request or reading the feed.
+   * @throws ServiceException system error retrieving or parsing the feed, or
+   *     error reported by the listener.
+   * @see DataFeed#setRowListener(DataFeed.RowListener)
+   */
+  public DataFeed streamData(Query query, DataFeed.RowListener listener)
+      throws IOException, ServiceException {
+    return streamData(createFeedRequest(query), listener);
+  }
+
+  /**
+   * Retrieves a data feed as a table, without creating its entries.
+   *
+   * @param feedUrl the URL of the data feed, including the query parameters.
+   * @return table with a row per entry of the feed.
+   * @throws IOException error sending request or reading the feed.
+   * @throws ServiceException system error retrieving or parsing the feed.
+   */
+  public DataTable getDataTable(URL feedUrl)
+      throws IOException, ServiceException {
+    DataTable.Builder builder = new DataTable.Builder();
+    streamData(feedUrl, builder);
+    return builder.build();
+  }
+
+  /**
+   * Executes a data feed query and returns the result as a table, without
+   * creating its entries.
+   *
+   * @param query data feed query.
+   * @return table with a row per entry of the result.
+   * @throws IOException error sending request or reading the feed.
+   * @throws ServiceException system error retrieving or parsing the feed.
+   */
+  public DataTable getDataTable(Query query)
+      throws IOException, ServiceException {
+    DataTable.Builder builder = new DataTable.Builder();
+    streamData(query, builder);
+    return builder.build();
+  }
+
+  /**
+   * Executes a data feed request and parses the response, passing the rows
+   * to a listener.
+   */
+  private DataFeed streamData(Service.GDataRequest request,
+      DataFeed.RowListener listener) throws IOException, ServiceException {
+    Preconditions.checkNotNull(listener, "listener");
+    final DataFeed.RowListener rowListener = listener;
+    AtomDataParser parser = new AtomDataParser() {
+      @Override
+      protected <R extends IAtom> R createResult(Class<R> resultClass)
+          throws ContentCreationException {
+        R result = super.createResult(resultClass);
+        ((DataFeed) result).setRowListener(rowListener);
+        return result;
+      }
+    };
+    return streamFeed(request, DataFeed.class, parser);
+  }
+
   /**
    * Declare the extensions of the feeds for the Google Analytics Data Export
    * API.
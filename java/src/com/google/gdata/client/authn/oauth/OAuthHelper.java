@@ -19,9 +19,13 @@ package com.google.gdata.client.authn.oauth;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * Helper methods to support the entire OAuth lifecycle, including generating
@@ -166,6 +170,159 @@ public class OAuthHelper {
     }
   }
 
+  /**
+   * Builds signature base strings, as computed by
+   * {@link OAuthUtil#getSignatureBaseString}, for a series of requests made
+   * with the same {@link OAuthParameters}.  The parameters that stay the same
+   * from one request to the next, such as the consumer key and the token, are
+   * sorted and encoded once and kept until their values change; only the
+   * nonce, timestamp and verifier and the query string parameters are
+   * processed for each request.
+   * <p>
+   * Percent-encoding works character by character, so the static parameters
+   * are kept in their doubly encoded form, ready to be appended to the base
+   * string.  This class is thread-safe.
+   *
+   *
+   */
+  public static class SignatureBaseStringBuilder {
+
+    /** Separator between parameters, as it appears in the base string. */
+    private static final String ENCODED_PAIR_DELIMITER = OAuthUtil.encode("&");
+
+    /** Separator between name and value, as it appears in the base string. */
+    private static final String ENCODED_KEY_VALUE_DELIMITER =
+        OAuthUtil.encode("=");
+
+    /** Parameters that differ for every request. */
+    private static final Set<String> REQUEST_PARAMETER_KEYS =
+        new HashSet<String>(Arrays.asList(OAuthParameters.OAUTH_NONCE_KEY,
+            OAuthParameters.OAUTH_TIMESTAMP_KEY,
+            OAuthParameters.OAUTH_VERIFIER_KEY));
+
+    /** Static parameters of the last request. */
+    private volatile StaticParameters staticParameters;
+
+    /**
+     * Returns the signature base string of a request.
+     *
+     * @param requestUrl the url of the request
+     * @param httpMethod the http method, for example "GET" or "PUT"
+     * @param baseParameters the request parameters (see section 9.1.3)
+     * @return the base string to be used in the OAuth signature
+     * @throws OAuthException if the input url is not formatted properly
+     */
+    public String build(String requestUrl, String httpMethod,
+        Map<String, String> baseParameters) throws OAuthException {
+
+      // Split the parameters of this request from the static ones, checking
+      // that the static ones are those already encoded.
+      StaticParameters statics = staticParameters;
+      TreeMap<String, String> requestParams = new TreeMap<String, String>();
+      int staticCount = 0;
+      boolean staticsMatch = (statics != null);
+      for (Map.Entry<String, String> e : baseParameters.entrySet()) {
+        if (REQUEST_PARAMETER_KEYS.contains(e.getKey())) {
+          requestParams.put(e.getKey(), e.getValue());
+        } else if (staticsMatch) {
+          staticsMatch = e.getValue().equals(statics.values.get(e.getKey()));
+          staticCount++;
+        }
+      }
+      if (!staticsMatch || staticCount != statics.values.size()) {
+        statics = new StaticParameters(baseParameters);
+        staticParameters = statics;
+      }
+
+      // Query string parameters take precedence over the base parameters.
+      if (requestUrl.indexOf('?') > 0) {
+        requestParams.putAll(OAuthUtil.parseQuerystring(
+            requestUrl.substring(requestUrl.indexOf('?') + 1)));
+      }
+
+      StringBuilder sb = new StringBuilder(statics.encodedLength + 256);
+      sb.append(OAuthUtil.encode(httpMethod.toUpperCase())).append('&')
+          .append(OAuthUtil.encode(OAuthUtil.normalizeUrl(requestUrl)))
+          .append('&');
+      int baseLength = sb.length();
+
+      // Merge the sorted static and request parameters.
+      String[] keys = statics.keys;
+      int i = 0;
+      for (Map.Entry<String, String> e : requestParams.entrySet()) {
+        String key = e.getKey();
+        int cmp = -1;
+        while (i < keys.length && (cmp = keys[i].compareTo(key)) < 0) {
+          appendEncodedPair(sb, baseLength, statics.encodedPairs[i++]);
+        }
+        if (cmp == 0) {
+          // Overridden by a query string parameter.
+          i++;
+        }
+        if (e.getValue().length() > 0) {
+          appendEncodedPair(sb, baseLength,
+              OAuthUtil.encode(OAuthUtil.encode(key))
+              + ENCODED_KEY_VALUE_DELIMITER
+              + OAuthUtil.encode(OAuthUtil.encode(e.getValue())));
+        }
+      }
+      while (i < keys.length) {
+        appendEncodedPair(sb, baseLength, statics.encodedPairs[i++]);
+      }
+      return sb.toString();
+    }
+
+    private static void appendEncodedPair(StringBuilder sb, int baseLength,
+        String encodedPair) {
+      if (encodedPair == null) {
+        return;
+      }
+      if (sb.length() > baseLength) {
+        sb.append(ENCODED_PAIR_DELIMITER);
+      }
+      sb.append(encodedPair);
+    }
+
+    /**
+     * Static parameters, sorted by key, with their doubly encoded
+     * {@code key=value} pairs.  Parameters with an empty value have a
+     * {@code null} pair: they are left out of the base string, but still
+     * yield to query string parameters of the same name.
+     */
+    private static class StaticParameters {
+
+      final Map<String, String> values = new HashMap<String, String>();
+      final String[] keys;
+      final String[] encodedPairs;
+      final int encodedLength;
+
+      StaticParameters(Map<String, String> baseParameters) {
+        TreeMap<String, String> sorted = new TreeMap<String, String>();
+        for (Map.Entry<String, String> e : baseParameters.entrySet()) {
+          if (!REQUEST_PARAMETER_KEYS.contains(e.getKey())) {
+            sorted.put(e.getKey(), e.getValue());
+          }
+        }
+        values.putAll(sorted);
+        keys = new String[sorted.size()];
+        encodedPairs = new String[sorted.size()];
+        int i = 0;
+        int length = 0;
+        for (Map.Entry<String, String> e : sorted.entrySet()) {
+          keys[i] = e.getKey();
+          if (e.getValue().length() > 0) {
+            encodedPairs[i] = OAuthUtil.encode(OAuthUtil.encode(e.getKey()))
+                + ENCODED_KEY_VALUE_DELIMITER
+                + OAuthUtil.encode(OAuthUtil.encode(e.getValue()));
+            length += encodedPairs[i].length() + 3;
+          }
+          i++;
+        }
+        encodedLength = length;
+      }
+    }
+  }
+
   /**
    * Create a new {@link OAuthHelper} object.
    *
@@ -597,9 +754,30 @@ public class OAuthHelper {
    */
   public String getAuthorizationHeader(String requestUrl, String httpMethod,
       OAuthParameters oauthParameters) throws OAuthException {
+    return getAuthorizationHeader(requestUrl, httpMethod, oauthParameters,
+        null);
+  }
 
-    TwoLeggedOAuthHelper helper
-        = new TwoLeggedOAuthHelper(signer, oauthParameters);
+  /**
+   * Generates the string to be used as the HTTP authorization header, like
+   * {@link #getAuthorizationHeader(String, String, OAuthParameters)}, and
+   * computes the signature base string with a builder that is kept across
+   * the requests made with the same parameters.
+   *
+   * @param requestUrl the url of the request
+   * @param httpMethod the http method of the request (for example GET)
+   * @param oauthParameters OAuth parameters for this request
+   * @param baseStringBuilder builder of the signature base string, or
+   *        {@code null} to compute it from scratch
+   * @return the full authorization header
+   * @throws OAuthException if there is an error with the OAuth request
+   */
+  public String getAuthorizationHeader(String requestUrl, String httpMethod,
+      OAuthParameters oauthParameters,
+      SignatureBaseStringBuilder baseStringBuilder) throws OAuthException {
+
+    TwoLeggedOAuthHelper helper = new TwoLeggedOAuthHelper(signer,
+        oauthParameters, baseStringBuilder);
     helper.validateInputParameters();
 
     // If a user is present in the request, it normally means that it is a
@@ -16,6 +16,7 @@
 
 package com.google.gdata.client.authn.oauth;
 
+import com.google.gdata.util.SignerCache;
 import com.google.gdata.util.common.util.Base64;
 
 import java.io.UnsupportedEncodingException;
@@ -23,11 +24,10 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 
 import javax.crypto.Mac;
-import javax.crypto.SecretKey;
-import javax.crypto.spec.SecretKeySpec;
 
 /**
- * Signs strings using HMAC-SHA1.
+ * Signs strings using HMAC-SHA1.  The MAC initialized with each key is
+ * reused across signatures on the same thread through {@link SignerCache}.
  *
  * 
  */
@@ -40,9 +40,7 @@ public class OAuthHmacSha1Signer implements OAuthSigner {
         throw new OAuthException("OAuth parameters cannot be null");
       }
       String keyString = getKey(oauthParameters);
-      SecretKey key = new SecretKeySpec(keyString.getBytes("UTF-8"), "HmacSHA1");
-      Mac mac = Mac.getInstance("HmacSHA1");
-      mac.init(key);
+      Mac mac = SignerCache.getMac("HmacSHA1", keyString.getBytes("UTF-8"));
       return Base64.encode(mac.doFinal(baseString.getBytes("UTF-8")));
     } catch (UnsupportedEncodingException e) {
       throw new OAuthException(e);
@@ -16,6 +16,7 @@
 
 package com.google.gdata.client.authn.oauth;
 
+import com.google.gdata.util.SignerCache;
 import com.google.gdata.util.common.util.Base64;
 import com.google.gdata.util.common.util.Base64DecoderException;
 
@@ -28,7 +29,9 @@ import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
 
 /**
- * Signs strings using RSA-SHA1.
+ * Signs strings using RSA-SHA1.  The signature initialized with the private
+ * key is reused across signatures on the same thread through
+ * {@link SignerCache}.
  *
  * 
  */
@@ -122,8 +125,7 @@ public class OAuthRsaSha1Signer implements OAuthSigner {
       throw new OAuthException("Private key cannot be null");
     }
     try {
-      Signature signer = Signature.getInstance("SHA1withRSA");
-      signer.initSign(privateKey);
+      Signature signer = SignerCache.getSignature("SHA1withRSA", privateKey);
       signer.update(baseString.getBytes("UTF-8"));
       return Base64.encode(signer.sign());
     } catch (NoSuchAlgorithmException e) {
@@ -18,6 +18,7 @@ package com.google.gdata.client.authn.oauth;
 
 import com.google.gdata.client.authn.oauth.OAuthHelper.HeaderKeyValuePair;
 import com.google.gdata.client.authn.oauth.OAuthHelper.KeyValuePair;
+import com.google.gdata.client.authn.oauth.OAuthHelper.SignatureBaseStringBuilder;
 
 import java.util.Map;
 
@@ -32,10 +33,26 @@ public class TwoLeggedOAuthHelper {
 
   private final OAuthSigner signer;
   private final OAuthParameters parameters;
+  private final SignatureBaseStringBuilder baseStringBuilder;
   
   public TwoLeggedOAuthHelper(OAuthSigner signer, OAuthParameters parameters) {
+    this(signer, parameters, null);
+  }
+
+  /**
+   * Creates a helper that computes signature base strings with a builder
+   * kept across the requests made with the same parameters.
+   *
+   * @param signer signer of the requests
+   * @param parameters OAuth parameters of the requests
+   * @param baseStringBuilder builder of the signature base strings, or
+   *        {@code null} to compute them from scratch
+   */
+  public TwoLeggedOAuthHelper(OAuthSigner signer, OAuthParameters parameters,
+      SignatureBaseStringBuilder baseStringBuilder) {
     this.signer = signer;
     this.parameters = parameters;
+    this.baseStringBuilder = baseStringBuilder;
   }
 
   void validateInputParameters() throws OAuthException {
@@ -76,8 +93,11 @@ public class TwoLeggedOAuthHelper {
     // add the signature if it doesn't already exist.
     // The signature is calculated by the {@link OAuthSigner}.
     if (parameters.getOAuthSignature().length() == 0) {
-      String baseString = OAuthUtil.getSignatureBaseString(baseUrl, httpMethod,
-          parameters.getBaseParameters());
+      String baseString = (baseStringBuilder != null)
+          ? baseStringBuilder.build(baseUrl, httpMethod,
+              parameters.getBaseParameters())
+          : OAuthUtil.getSignatureBaseString(baseUrl, httpMethod,
+              parameters.getBaseParameters());
       parameters.setOAuthSignature(signer.getSignature(baseString, parameters));
     }
   }
@@ -0,0 +1,58 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.batch;
+
+import com.google.gdata.util.ServiceException;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exception thrown by {@link BatchExecutor#execute(List)} when a batch
+ * request failed.  It holds the results of the operations that completed
+ * before or while the failure happened, and has the failure as its cause.
+ *
+ *
+ */
+public class BatchExecutionException extends ServiceException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final List<?> results;
+
+  /**
+   * Creates a BatchExecutionException.
+   *
+   * @param cause failure of the batch request.
+   * @param results results in the order of the operations, with
+   *        {@code null} for operations that did not complete.
+   */
+  public BatchExecutionException(Throwable cause, List<?> results) {
+    super("Batch request failed: " + cause.getMessage(), cause);
+    this.results = Collections.unmodifiableList(results);
+  }
+
+  /**
+   * Returns the results in the order of the operations, see
+   * {@link BatchExecutor.ResultListener#operationCompleted}.  Operations
+   * that did not complete, or whose outcome is unknown, have a
+   * {@code null} result.
+   */
+  public List<?> getResults() {
+    return results;
+  }
+}
@@ -0,0 +1,528 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.batch;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gdata.util.common.base.Preconditions;
+import com.google.gdata.client.Service;
+import com.google.gdata.data.BaseEntry;
+import com.google.gdata.data.BaseFeed;
+import com.google.gdata.data.batch.BatchOperationType;
+import com.google.gdata.data.batch.BatchStatus;
+import com.google.gdata.data.batch.BatchUtils;
+import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.ServiceUnavailableException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The BatchExecutor class runs any number of batch operations against a
+ * batch feed.  The operations are split into batch feeds of at most
+ * {@link #setMaxBatchSize(int) a maximum size}, several of which are sent
+ * at the same time, and the entries of the responses are matched to the
+ * operations by their batch id.
+ * <p>
+ * Each operation is an entry whose operation type has been set with
+ * {@link BatchUtils#setBatchOperationType}; entries without an operation
+ * type are inserted.  The executor assigns the batch ids of the entries, so
+ * any batch id set by the caller is replaced.
+ * <p>
+ * Operations that fail with a transient server error, such as {@code 503},
+ * are sent again after a delay that doubles with each attempt.  Operations
+ * the server did not report on, for example because the batch was
+ * interrupted, are sent again the same way unless they are inserts.  A batch
+ * request that fails as a whole is only sent again if it holds no inserts,
+ * since the server may have applied them before the failure.
+ * <p>
+ * When a batch request fails, no further batches are sent, but the batches
+ * already sent are allowed to complete.  The results of the completed
+ * operations are reported before the failure is thrown.
+ *
+ * <pre>
+ * BatchExecutor&lt;CellEntry, CellFeed&gt; executor =
+ *     new BatchExecutor&lt;CellEntry, CellFeed&gt;(
+ *         service, batchUrl, CellFeed.class);
+ * executor.execute(updates.iterator(),
+ *     new BatchExecutor.ResultListener&lt;CellEntry&gt;() {
+ *       public void operationCompleted(CellEntry operation, CellEntry result) {
+ *         ...
+ *       }
+ *     });
+ * </pre>
+ *
+ * @param <E> entry type of the operations.
+ * @param <F> batch feed type.
+ *
+ */
+public class BatchExecutor<E extends BaseEntry<?>, F extends BaseFeed<?, E>> {
+
+  /**
+   * Default maximum number of operations in a batch feed.
+   */
+  public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+  /**
+   * Default maximum number of batch feeds sent at the same time.
+   */
+  public static final int DEFAULT_MAX_CONCURRENT_BATCHES = 4;
+
+  /**
+   * Default maximum number of times an operation is retried.
+   */
+  public static final int DEFAULT_MAX_RETRIES = 3;
+
+  /**
+   * Default delay before the first retry, in milliseconds.
+   */
+  public static final long DEFAULT_RETRY_DELAY_MS = 1000;
+
+  /**
+   * Receives the result of each operation.
+   *
+   * @param <E> entry type of the operations.
+   */
+  public interface ResultListener<E> {
+
+    /**
+     * Called once an operation has completed, successfully or not.  Calls
+     * are made one at a time on the thread that called
+     * {@link BatchExecutor#execute}, in the order the operations complete.
+     *
+     * @param operation entry that was sent.
+     * @param result entry returned by the server, whose batch status tells
+     *        if the operation succeeded, or {@code null} if the server never
+     *        reported on the operation.
+     */
+    void operationCompleted(E operation, E result);
+  }
+
+  private final Service service;
+  private final URL batchUrl;
+  private final Class<F> feedClass;
+
+  private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+  private int maxConcurrentBatches = DEFAULT_MAX_CONCURRENT_BATCHES;
+  private int maxRetries = DEFAULT_MAX_RETRIES;
+  private long retryDelayMillis = DEFAULT_RETRY_DELAY_MS;
+  private ExecutorService executor;
+
+  /**
+   * Constructs an executor sending batch feeds to a batch URL.
+   *
+   * @param service service used to send the batch feeds.
+   * @param batchUrl URL of the batch feed.
+   * @param feedClass class of the batch feeds, which must have a public
+   *        no-argument constructor.
+   */
+  public BatchExecutor(Service service, URL batchUrl, Class<F> feedClass) {
+    this.service = Preconditions.checkNotNull(service, "service");
+    this.batchUrl = Preconditions.checkNotNull(batchUrl, "batchUrl");
+    this.feedClass = Preconditions.checkNotNull(feedClass, "feedClass");
+  }
+
+  /**
+   * Sets the maximum number of operations in a batch feed, which must not
+   * be greater than the limit of the server.
+   */
+  public void setMaxBatchSize(int maxBatchSize) {
+    Preconditions.checkArgument(maxBatchSize > 0,
+        "Batch size must be positive");
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * Sets the maximum number of batch feeds sent at the same time.
+   */
+  public void setMaxConcurrentBatches(int maxConcurrentBatches) {
+    Preconditions.checkArgument(maxConcurrentBatches > 0,
+        "Number of concurrent batches must be positive");
+    this.maxConcurrentBatches = maxConcurrentBatches;
+  }
+
+  /**
+   * Sets the maximum number of times an operation or a batch request is
+   * retried.
+   */
+  public void setMaxRetries(int maxRetries) {
+    Preconditions.checkArgument(maxRetries >= 0,
+        "Number of retries must not be negative");
+    this.maxRetries = maxRetries;
+  }
+
+  /**
+   * Sets the delay before the first retry, in milliseconds.  The delay
+   * doubles with each further retry.
+   */
+  public void setRetryDelay(long retryDelayMillis) {
+    Preconditions.checkArgument(retryDelayMillis >= 0,
+        "Retry delay must not be negative");
+    this.retryDelayMillis = retryDelayMillis;
+  }
+
+  /**
+   * Sets the executor sending the batch feeds.  By default, each call to
+   * {@link #execute} uses threads of its own.
+   */
+  public void setExecutor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Executes operations and reports their results to a listener.
+   * Operations are read from the iterator as batch feeds are sent, so the
+   * sequence of operations does not have to be held in memory.
+   *
+   * @param operations entries to send.
+   * @param listener receives the result of each operation.  If a batch
+   *        request fails, the results of the operations that completed are
+   *        reported before the failure is thrown.
+   * @throws IOException if a batch request could not be sent.
+   * @throws ServiceException if a batch request failed.
+   * @throws InterruptedException if interrupted while waiting for results.
+   */
+  public void execute(Iterator<? extends E> operations,
+      ResultListener<? super E> listener)
+      throws IOException, ServiceException, InterruptedException {
+    Preconditions.checkNotNull(operations, "operations");
+    Preconditions.checkNotNull(listener, "listener");
+
+    ExecutorService batchExecutor = executor;
+    if (batchExecutor == null) {
+      batchExecutor = Executors.newFixedThreadPool(maxConcurrentBatches,
+          new ThreadFactoryBuilder()
+              .setNameFormat("BatchExecutor-%d")
+              .setDaemon(true)
+              .build());
+    }
+    CompletionService<List<Result<E>>> completionService =
+        new ExecutorCompletionService<List<Result<E>>>(batchExecutor);
+    Map<Future<List<Result<E>>>, BatchTask> pending =
+        new HashMap<Future<List<Result<E>>>, BatchTask>();
+    long nextId = 0;
+    Exception failure = null;
+    try {
+      while (true) {
+        while (failure == null && pending.size() < maxConcurrentBatches
+            && operations.hasNext()) {
+          Map<String, E> batch = new LinkedHashMap<String, E>();
+          while (batch.size() < maxBatchSize && operations.hasNext()) {
+            E operation = operations.next();
+            String id = String.valueOf(nextId++);
+            BatchUtils.setBatchId(operation, id);
+            batch.put(id, operation);
+          }
+          BatchTask task = new BatchTask(batch);
+          pending.put(completionService.submit(task), task);
+        }
+        if (pending.isEmpty()) {
+          break;
+        }
+
+        // After a failure, the batches already sent still complete and
+        // their results are reported before the failure is thrown.
+        Future<List<Result<E>>> done = completionService.take();
+        BatchTask task = pending.remove(done);
+        List<Result<E>> results;
+        try {
+          results = getResults(done);
+        } catch (IOException e) {
+          failure = (failure == null) ? e : failure;
+          results = task.getCompletedResults();
+        } catch (ServiceException e) {
+          failure = (failure == null) ? e : failure;
+          results = task.getCompletedResults();
+        }
+        for (Result<E> result : results) {
+          listener.operationCompleted(result.operation, result.entry);
+        }
+      }
+    } finally {
+      for (Future<List<Result<E>>> future : pending.keySet()) {
+        future.cancel(true);
+      }
+      if (batchExecutor != executor) {
+        batchExecutor.shutdownNow();
+      }
+    }
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    } else if (failure != null) {
+      throw (ServiceException) failure;
+    }
+  }
+
+  /**
+   * Executes operations and returns their results.
+   *
+   * @param operations entries to send.
+   * @return the results in the order of the operations, see
+   *         {@link ResultListener#operationCompleted}.
+   * @throws BatchExecutionException if a batch request failed or could not
+   *         be sent, holding the results of the operations that completed.
+   * @throws InterruptedException if interrupted while waiting for results.
+   */
+  public List<E> execute(List<? extends E> operations)
+      throws BatchExecutionException, InterruptedException {
+    final Map<E, E> results = new IdentityHashMap<E, E>();
+    try {
+      execute(operations.iterator(), new ResultListener<E>() {
+        public void operationCompleted(E operation, E result) {
+          results.put(operation, result);
+        }
+      });
+    } catch (IOException e) {
+      throw new BatchExecutionException(e, toList(operations, results));
+    } catch (ServiceException e) {
+      throw new BatchExecutionException(e, toList(operations, results));
+    }
+    return toList(operations, results);
+  }
+
+  /**
+   * Returns the results of operations in the order of the operations.
+   */
+  private static <E> List<E> toList(List<? extends E> operations,
+      Map<E, E> results) {
+    List<E> resultList = new ArrayList<E>(operations.size());
+    for (E operation : operations) {
+      resultList.add(results.get(operation));
+    }
+    return resultList;
+  }
+
+  /**
+   * Returns the results of a completed batch task, rethrowing its failure.
+   */
+  private List<Result<E>> getResults(Future<List<Result<E>>> future)
+      throws IOException, ServiceException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof ServiceException) {
+        throw (ServiceException) cause;
+      } else if (cause instanceof InterruptedException) {
+        throw (InterruptedException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  /**
+   * Identifies whether an operation that failed with the given status should
+   * be sent again.  By default, operations are retried for server errors
+   * ({@code 500}, {@code 502}, {@code 503} and {@code 504}).
+   *
+   * @param status batch status of the failed operation.
+   * @return {@code true} if the operation should be retried.
+   */
+  protected boolean isRetryable(BatchStatus status) {
+    switch (status.getCode()) {
+      case 500:
+      case 502:
+      case 503:
+      case 504:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Identifies whether a batch request that failed as a whole should be sent
+   * again.  By default, requests are retried for I/O errors and when the
+   * service is unavailable.  Requests holding inserts are never sent again,
+   * whatever this method returns.
+   *
+   * @param e failure of the batch request.
+   * @return {@code true} if the request should be retried.
+   */
+  protected boolean isRetryable(Exception e) {
+    if (e instanceof InterruptedIOException) {
+      return e instanceof SocketTimeoutException;
+    }
+    return e instanceof IOException
+        || e instanceof ServiceUnavailableException;
+  }
+
+  /**
+   * Identifies whether an operation may be sent again when the server did
+   * not report on it.  All operations but inserts may be applied twice.
+   */
+  private static boolean isIdempotent(BaseEntry<?> operation) {
+    BatchOperationType type = BatchUtils.getBatchOperationType(operation);
+    return type != null && type != BatchOperationType.INSERT;
+  }
+
+  /**
+   * Result of an operation.
+   */
+  private static class Result<E> {
+    final E operation;
+    final E entry;
+
+    Result(E operation, E entry) {
+      this.operation = operation;
+      this.entry = entry;
+    }
+  }
+
+  /**
+   * Sends the operations of one batch feed, retrying failed operations.
+   */
+  private class BatchTask implements Callable<List<Result<E>>> {
+
+    private final Map<String, E> operations;
+    private final List<Result<E>> results;
+
+    BatchTask(Map<String, E> operations) {
+      this.operations = operations;
+      this.results = new ArrayList<Result<E>>(operations.size());
+    }
+
+    /**
+     * Returns the results of the operations that completed before the task
+     * failed.  Must only be called once the task is done.
+     */
+    List<Result<E>> getCompletedResults() {
+      return results;
+    }
+
+    public List<Result<E>> call() throws Exception {
+      Map<String, E> remaining = operations;
+      long delay = retryDelayMillis;
+      for (int attempt = 0; ; attempt++) {
+        boolean lastAttempt = attempt == maxRetries;
+        F resultFeed;
+        try {
+          resultFeed = send(remaining.values());
+        } catch (BatchInterruptedException e) {
+          // Operations reported before the interruption are kept, the
+          // others are sent again unless they are inserts.
+          @SuppressWarnings("unchecked")
+          F partialFeed = (F) e.getIFeed();
+          resultFeed = partialFeed;
+        } catch (Exception e) {
+          // The server may have applied inserts before failing.
+          if (lastAttempt || !isRetryable(e) || !isAllIdempotent(remaining)) {
+            throw e;
+          }
+          resultFeed = null;
+        }
+
+        Map<String, E> retry = new LinkedHashMap<String, E>();
+        if (resultFeed == null) {
+          retry.putAll(remaining);
+        } else {
+          Map<String, E> reported = new HashMap<String, E>();
+          for (E entry : resultFeed.getEntries()) {
+            String id = BatchUtils.getBatchId(entry);
+            if (id != null && remaining.containsKey(id)) {
+              reported.put(id, entry);
+            }
+          }
+          for (Map.Entry<String, E> operation : remaining.entrySet()) {
+            E entry = reported.get(operation.getKey());
+            BatchStatus status =
+                (entry == null) ? null : BatchUtils.getBatchStatus(entry);
+            boolean failed = (entry == null)
+                ? isIdempotent(operation.getValue())
+                : (status != null && BatchUtils.isFailure(entry)
+                    && isRetryable(status));
+            if (failed && !lastAttempt) {
+              retry.put(operation.getKey(), operation.getValue());
+            } else {
+              results.add(new Result<E>(operation.getValue(), entry));
+            }
+          }
+        }
+        if (retry.isEmpty()) {
+          return results;
+        }
+        remaining = retry;
+        Thread.sleep(delay);
+        delay *= 2;
+      }
+    }
+
+    /**
+     * Identifies whether all operations may be sent again.
+     */
+    private boolean isAllIdempotent(Map<String, E> operations) {
+      for (E operation : operations.values()) {
+        if (!isIdempotent(operation)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Sends one batch feed.
+     */
+    private F send(Iterable<E> entries)
+        throws IOException, ServiceException {
+      F feed;
+      try {
+        feed = feedClass.getDeclaredConstructor().newInstance();
+      } catch (InvocationTargetException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new IllegalStateException("Cannot create batch feed", cause);
+      } catch (NoSuchMethodException e) {
+        throw new IllegalStateException("Cannot create batch feed", e);
+      } catch (InstantiationException e) {
+        throw new IllegalStateException("Cannot create batch feed", e);
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException("Cannot create batch feed", e);
+      }
+      List<E> feedEntries = feed.getEntries();
+      for (E entry : entries) {
+        feedEntries.add(entry);
+      }
+      return service.batch(batchUrl, feed);
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.cache;
+
+import com.google.gdata.data.DateTime;
+import com.google.gdata.util.ContentType;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A response held by a {@link GDataResponseCache}.  The validators used to
+ * ask the server whether the response is still current are kept apart from
+ * the response body, which is only read after the server confirmed them.
+ * The body is kept as received and parsed again for every cache hit, so
+ * that each caller gets its own feed or entry.
+ *
+ *
+ */
+public class CachedResponse {
+
+  private final String resultType;
+  private final ContentType contentType;
+  private final String etag;
+  private final DateTime lastModified;
+  private final byte[] body;
+  private final int length;
+
+  /**
+   * Constructs a cached response.  The body array is kept as is, not
+   * copied, so the caller must not modify it afterwards.
+   *
+   * @param resultType name of the class the response was parsed into.
+   * @param contentType content type of the response body.
+   * @param etag entity tag of the response, or {@code null}.
+   * @param lastModified last modification time of the response, or
+   *        {@code null}.
+   * @param body response body.
+   */
+  public CachedResponse(String resultType, ContentType contentType,
+      String etag, DateTime lastModified, byte[] body) {
+    this(resultType, contentType, etag, lastModified, body,
+        checkBody(body).length);
+  }
+
+  /**
+   * Constructs a cached response whose body is the first {@code length}
+   * bytes of an array.  The array is kept as is, not copied, so the caller
+   * must not modify it afterwards.
+   *
+   * @param resultType name of the class the response was parsed into.
+   * @param contentType content type of the response body.
+   * @param etag entity tag of the response, or {@code null}.
+   * @param lastModified last modification time of the response, or
+   *        {@code null}.
+   * @param body array holding the response body.
+   * @param length number of bytes of the response body.
+   */
+  public CachedResponse(String resultType, ContentType contentType,
+      String etag, DateTime lastModified, byte[] body, int length) {
+    this(checkBody(body), length, resultType, contentType, etag,
+        lastModified);
+    if (length < 0 || length > body.length) {
+      throw new IllegalArgumentException("Invalid body length " + length);
+    }
+  }
+
+  /**
+   * Constructs a cached response whose body is read by
+   * {@link #openBody()}, which subclasses must override.
+   *
+   * @param resultType name of the class the response was parsed into.
+   * @param contentType content type of the response body.
+   * @param etag entity tag of the response, or {@code null}.
+   * @param lastModified last modification time of the response, or
+   *        {@code null}.
+   */
+  protected CachedResponse(String resultType, ContentType contentType,
+      String etag, DateTime lastModified) {
+    this(null, -1, resultType, contentType, etag, lastModified);
+  }
+
+  private CachedResponse(byte[] body, int length, String resultType,
+      ContentType contentType, String etag, DateTime lastModified) {
+    if (resultType == null) {
+      throw new NullPointerException("Null result type");
+    }
+    if (contentType == null) {
+      throw new NullPointerException("Null content type");
+    }
+    if (etag == null && lastModified == null) {
+      throw new IllegalArgumentException(
+          "An entity tag or a modification time is required");
+    }
+    this.resultType = resultType;
+    this.contentType = contentType;
+    this.etag = etag;
+    this.lastModified = lastModified;
+    this.body = body;
+    this.length = length;
+  }
+
+  private static byte[] checkBody(byte[] body) {
+    if (body == null) {
+      throw new NullPointerException("Null body");
+    }
+    return body;
+  }
+
+  /**
+   * Returns the name of the class the response was parsed into.
+   */
+  public String getResultType() {
+    return resultType;
+  }
+
+  /**
+   * Returns the content type of the response body.
+   */
+  public ContentType getContentType() {
+    return contentType;
+  }
+
+  /**
+   * Returns the entity tag of the response, or {@code null} if there is none.
+   */
+  public String getEtag() {
+    return etag;
+  }
+
+  /**
+   * Returns the last modification time of the response, or {@code null} if
+   * there is none.
+   */
+  public DateTime getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * Returns the number of bytes of the response body held in memory, or -1
+   * if the body is read from elsewhere by {@link #openBody()}.
+   */
+  public int getBodyLength() {
+    return length;
+  }
+
+  /**
+   * Opens a stream reading the response body.  The caller must close it.
+   *
+   * @throws IOException if the body is no longer available.
+   */
+  public InputStream openBody() throws IOException {
+    if (body == null) {
+      throw new IOException("No response body");
+    }
+    return new ByteArrayInputStream(body, 0, length);
+  }
+}
@@ -0,0 +1,309 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.cache;
+
+import com.google.gdata.data.DateTime;
+import com.google.gdata.util.ContentType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link ResponseStore} keeping responses in files of a directory, so that
+ * they survive a restart of the JVM.  When the files take more than a
+ * configured number of bytes, the least recently used responses are removed.
+ * <p>
+ * Each file starts with a small header record holding the key, content type
+ * and validators of the response, followed by the response body as it was
+ * received.  Looking up a response only reads the header record; the body is
+ * read when the server confirmed the response to be current.
+ *
+ *
+ */
+public class DiskResponseStore implements ResponseStore {
+
+  private static final Logger logger =
+      Logger.getLogger(DiskResponseStore.class.getName());
+
+  private static final String SUFFIX = ".response";
+
+  private static final String ENCODING = "UTF-8";
+
+  private final File directory;
+  private final long maxBytes;
+
+  /**
+   * Constructs a store keeping responses in a directory, which is created if
+   * it does not exist.
+   *
+   * @param directory to store the responses in.
+   * @param maxBytes maximum total size of the stored responses.
+   * @throws IOException if the directory cannot be created.
+   */
+  public DiskResponseStore(File directory, long maxBytes)
+      throws IOException {
+    if (directory == null) {
+      throw new IllegalArgumentException("Must provide a directory.");
+    }
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("Maximum size must be positive");
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create cache directory " + directory);
+    }
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  public synchronized CachedResponse get(String key) {
+    File file = getFile(key);
+    try {
+      DataInputStream in = openFile(file);
+      try {
+        CachedResponse response = readHeader(in, file, key);
+        if (response != null) {
+          file.setLastModified(System.currentTimeMillis());
+        }
+        return response;
+      } finally {
+        in.close();
+      }
+    } catch (FileNotFoundException e) {
+      return null;
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to read cached response " + file, e);
+    }
+    file.delete();
+    return null;
+  }
+
+  public synchronized void put(String key, CachedResponse response) {
+    File file = getFile(key);
+    File tempFile = new File(directory, file.getName() + ".tmp");
+    try {
+      write(tempFile, key, response);
+      if (!tempFile.renameTo(file)) {
+        file.delete();
+        if (!tempFile.renameTo(file)) {
+          throw new IOException("Cannot replace " + file);
+        }
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Unable to store response for " + key, e);
+      tempFile.delete();
+      return;
+    }
+    evict();
+  }
+
+  public synchronized void remove(String key) {
+    getFile(key).delete();
+  }
+
+  public synchronized void clear() {
+    for (File file : listFiles()) {
+      file.delete();
+    }
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  private static DataInputStream openFile(File file) throws IOException {
+    return new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file)));
+  }
+
+  /**
+   * Reads the header record of a stored response, or returns {@code null} if
+   * the file holds the response for another key.
+   */
+  private static StoredResponse readHeader(DataInputStream in, File file,
+      String key) throws IOException {
+    if (!key.equals(in.readUTF())) {
+      return null;
+    }
+    String resultType = in.readUTF();
+    String contentType = in.readUTF();
+    String etag = in.readUTF();
+    String lastModified = in.readUTF();
+    try {
+      return new StoredResponse(file, key, resultType,
+          new ContentType(contentType),
+          etag.length() == 0 ? null : etag,
+          lastModified.length() == 0
+              ? null : DateTime.parseDateTime(lastModified));
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid modification time in " + file);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Invalid header record in " + file);
+    }
+  }
+
+  /**
+   * Writes a response to a file.
+   */
+  private static void write(File file, String key, CachedResponse response)
+      throws IOException {
+    DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file)));
+    try {
+      out.writeUTF(key);
+      out.writeUTF(response.getResultType());
+      out.writeUTF(response.getContentType().toString());
+      out.writeUTF(response.getEtag() == null ? "" : response.getEtag());
+      out.writeUTF(response.getLastModified() == null
+          ? "" : response.getLastModified().toString());
+
+      InputStream body = response.openBody();
+      try {
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = body.read(buffer)) != -1) {
+          out.write(buffer, 0, count);
+        }
+      } finally {
+        body.close();
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * A response whose body is read from its file when it is opened.
+   */
+  private static class StoredResponse extends CachedResponse {
+
+    private final File file;
+    private final String key;
+
+    StoredResponse(File file, String key, String resultType,
+        ContentType contentType, String etag, DateTime lastModified) {
+      super(resultType, contentType, etag, lastModified);
+      this.file = file;
+      this.key = key;
+    }
+
+    /**
+     * Opens the file and skips its header record, after checking that it
+     * still holds the same response.
+     */
+    @Override
+    public InputStream openBody() throws IOException {
+      DataInputStream in = openFile(file);
+      boolean opened = false;
+      try {
+        CachedResponse current = readHeader(in, file, key);
+        if (current == null || !isSameResponse(current)) {
+          throw new IOException("Cached response was replaced: " + file);
+        }
+        opened = true;
+        return in;
+      } finally {
+        if (!opened) {
+          in.close();
+        }
+      }
+    }
+
+    private boolean isSameResponse(CachedResponse other) {
+      return getResultType().equals(other.getResultType())
+          && (getEtag() == null
+              ? other.getEtag() == null : getEtag().equals(other.getEtag()))
+          && (getLastModified() == null ? other.getLastModified() == null
+              : getLastModified().equals(other.getLastModified()));
+    }
+  }
+
+  /**
+   * Removes the least recently used responses until the stored responses
+   * take at most the maximum number of bytes.
+   */
+  private void evict() {
+    File[] files = listFiles();
+    long total = 0;
+    for (File file : files) {
+      total += file.length();
+    }
+    if (total <= maxBytes) {
+      return;
+    }
+    Arrays.sort(files, new Comparator<File>() {
+      public int compare(File a, File b) {
+        long diff = a.lastModified() - b.lastModified();
+        return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+      }
+    });
+    for (int i = 0; i < files.length && total > maxBytes; i++) {
+      long length = files[i].length();
+      if (files[i].delete()) {
+        total -= length;
+      }
+    }
+  }
+
+  private File[] listFiles() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return new File[0];
+    }
+    int count = 0;
+    for (File file : files) {
+      if (file.getName().endsWith(SUFFIX)) {
+        files[count++] = file;
+      }
+    }
+    return Arrays.copyOf(files, count);
+  }
+
+  /**
+   * Returns the file storing the response for a key.
+   */
+  private File getFile(String key) {
+    byte[] digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1").digest(
+          key.getBytes(ENCODING));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 not supported", e);
+    } catch (IOException e) {
+      throw new IllegalStateException("UTF-8 not supported", e);
+    }
+    StringBuilder name = new StringBuilder(digest.length * 2 + SUFFIX.length());
+    for (byte b : digest) {
+      name.append(Character.forDigit((b >> 4) & 0xf, 16));
+      name.append(Character.forDigit(b & 0xf, 16));
+    }
+    return new File(directory, name.append(SUFFIX).toString());
+  }
+}
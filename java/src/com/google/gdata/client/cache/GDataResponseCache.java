@@ -0,0 +1,190 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.cache;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client side cache of the feeds and entries retrieved by a
+ * {@link com.google.gdata.client.Service}.
+ * <p>
+ * When a service has a response cache, {@code getFeed} and {@code getEntry}
+ * requests without a caller supplied precondition are made conditional on
+ * the entity tag or last modification time of the cached response for the
+ * same URL and credentials.  If the server answers that the resource has not
+ * been modified, the cached response body is parsed again and returned
+ * instead of a {@link com.google.gdata.util.NotModifiedException}, so that
+ * every caller gets its own feed or entry.
+ * <p>
+ * Responses are cached separately for each value of the Authorization
+ * header, so that users never see each other's responses.  Credentials that
+ * sign each request, such as OAuth 1.0 tokens, send a different header with
+ * every request and therefore never hit the cache.
+ * <p>
+ * Responses are kept in a {@link ResponseStore}, such as a
+ * {@link MemoryResponseStore} or a {@link DiskResponseStore}.
+ *
+ *
+ */
+public class GDataResponseCache {
+
+  private final ResponseStore store;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong revalidationCount = new AtomicLong();
+
+  /**
+   * Constructs a cache keeping its responses in a store.
+   */
+  public GDataResponseCache(ResponseStore store) {
+    if (store == null) {
+      throw new NullPointerException("Null store");
+    }
+    this.store = store;
+  }
+
+  /**
+   * Returns the store holding the cached responses.
+   */
+  public ResponseStore getStore() {
+    return store;
+  }
+
+  /**
+   * Returns the cached response for a URL that was parsed into the given
+   * type, or {@code null} if there is none.  The caller is expected to
+   * revalidate the returned response with the server.
+   *
+   * @param url URL of the feed or entry.
+   * @param authorization value of the Authorization header of the request,
+   *        or {@code null}.
+   * @param resultType expected type of the result.
+   * @return cached response or {@code null}.
+   */
+  public CachedResponse lookup(URL url, String authorization,
+      Class<?> resultType) {
+    CachedResponse response = store.get(getKey(url, authorization));
+    if (response == null
+        || !resultType.getName().equals(response.getResultType())) {
+      return null;
+    }
+    revalidationCount.incrementAndGet();
+    return response;
+  }
+
+  /**
+   * Records that the server confirmed a cached response to be current.
+   *
+   * @param response the cached response returned by
+   *        {@link #lookup(URL, String, Class)}.
+   */
+  public void hit(CachedResponse response) {
+    hitCount.incrementAndGet();
+  }
+
+  /**
+   * Records a response that was retrieved from the server, caching it if it
+   * has an entity tag or last modification time.
+   *
+   * @param url URL of the feed or entry.
+   * @param authorization value of the Authorization header of the request,
+   *        or {@code null}.
+   * @param response the response to cache, or {@code null} if it cannot be
+   *        cached.
+   */
+  public void miss(URL url, String authorization, CachedResponse response) {
+    missCount.incrementAndGet();
+    if (response == null) {
+      store.remove(getKey(url, authorization));
+    } else {
+      store.put(getKey(url, authorization), response);
+    }
+  }
+
+  /**
+   * Removes the cached response for a URL and credentials.
+   *
+   * @param url URL of the feed or entry.
+   * @param authorization value of the Authorization header of the request,
+   *        or {@code null}.
+   */
+  public void invalidate(URL url, String authorization) {
+    store.remove(getKey(url, authorization));
+  }
+
+  /**
+   * Returns the number of requests answered from the cache after the server
+   * confirmed the cached response to be current.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * Returns the number of requests answered with a response retrieved from
+   * the server.
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * Returns the number of requests made conditional on a cached response.
+   */
+  public long getRevalidationCount() {
+    return revalidationCount.get();
+  }
+
+  /**
+   * Resets the hit, miss and revalidation counters.
+   */
+  public void resetStatistics() {
+    hitCount.set(0);
+    missCount.set(0);
+    revalidationCount.set(0);
+  }
+
+  /**
+   * Returns the key of the response for a URL and credentials.  The
+   * credentials are digested, so that they are not kept by the store.
+   */
+  private static String getKey(URL url, String authorization) {
+    if (authorization == null) {
+      return url.toString();
+    }
+    byte[] digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1").digest(
+          authorization.getBytes("UTF-8"));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 not supported", e);
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException("UTF-8 not supported", e);
+    }
+    StringBuilder key = new StringBuilder(url.toString()).append(' ');
+    for (byte b : digest) {
+      key.append(Character.forDigit((b >> 4) & 0xf, 16));
+      key.append(Character.forDigit(b & 0xf, 16));
+    }
+    return key.toString();
+  }
+}
@@ -0,0 +1,112 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link ResponseStore} keeping responses in memory.  When the response
+ * bodies take more than a configured number of bytes, the least recently
+ * used responses are removed.
+ *
+ *
+ */
+public class MemoryResponseStore implements ResponseStore {
+
+  private final Map<String, CachedResponse> responses =
+      new LinkedHashMap<String, CachedResponse>(16, 0.75f, true);
+  private final long maxBytes;
+  private long totalBytes;
+
+  /**
+   * Constructs a store holding responses whose bodies take up to
+   * {@code maxBytes} bytes.
+   */
+  public MemoryResponseStore(long maxBytes) {
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("Maximum size must be positive");
+    }
+    this.maxBytes = maxBytes;
+  }
+
+  public synchronized CachedResponse get(String key) {
+    return responses.get(key);
+  }
+
+  public synchronized void put(String key, CachedResponse response) {
+    remove(key);
+    long size = getSize(response);
+    if (size > maxBytes) {
+      return;
+    }
+    responses.put(key, response);
+    totalBytes += size;
+    evict();
+  }
+
+  public synchronized void remove(String key) {
+    CachedResponse response = responses.remove(key);
+    if (response != null) {
+      totalBytes -= getSize(response);
+    }
+  }
+
+  public synchronized void clear() {
+    responses.clear();
+    totalBytes = 0;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Returns the number of stored responses.
+   */
+  public synchronized int size() {
+    return responses.size();
+  }
+
+  /**
+   * Returns the total size in bytes of the stored response bodies.
+   */
+  public synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Returns the number of bytes a response body takes in memory.  Bodies
+   * read from elsewhere take none.
+   */
+  private static long getSize(CachedResponse response) {
+    return Math.max(0, response.getBodyLength());
+  }
+
+  /**
+   * Removes the least recently used responses until the stored response
+   * bodies take at most the maximum number of bytes.
+   */
+  private void evict() {
+    Iterator<CachedResponse> it = responses.values().iterator();
+    while (totalBytes > maxBytes && it.hasNext()) {
+      totalBytes -= getSize(it.next());
+      it.remove();
+    }
+  }
+}
@@ -0,0 +1,55 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.cache;
+
+/**
+ * Storage of the responses held by a {@link GDataResponseCache}.
+ * Responses are stored under a key made of the resource URL and a digest of
+ * the credentials of the request.  Implementations bound the space they use
+ * by evicting responses, and must be safe for use by several threads.
+ *
+ *
+ */
+public interface ResponseStore {
+
+  /**
+   * Returns the response stored under a key, or {@code null} if there is
+   * none.
+   */
+  public CachedResponse get(String key);
+
+  /**
+   * Stores a response under a key, replacing any previous response.
+   */
+  public void put(String key, CachedResponse response);
+
+  /**
+   * Removes the response stored under a key.
+   */
+  public void remove(String key);
+
+  /**
+   * Removes all stored responses.
+   */
+  public void clear();
+
+  /**
+   * Returns the maximum total size in bytes of the stored responses.
+   * Responses with a larger body are not worth storing.
+   */
+  public long getMaxBytes();
+}
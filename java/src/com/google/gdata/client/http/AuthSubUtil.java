@@ -22,6 +22,7 @@ import com.google.gdata.util.common.base.StringUtil;
 import com.google.gdata.util.common.io.CharStreams;
 import com.google.gdata.util.common.util.Base64;
 import com.google.gdata.util.AuthenticationException;
+import com.google.gdata.util.SignerCache;
 
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -528,8 +529,8 @@ public class AuthSubUtil {
                              SignatureAlgorithm algorithm)
       throws GeneralSecurityException {
 
-    Signature signature = Signature.getInstance(algorithm.getJCAName());
-    signature.initSign(key);
+    Signature signature =
+        SignerCache.getSignature(algorithm.getJCAName(), key);
     signature.update(data.getBytes());
     return signature.sign();
   }
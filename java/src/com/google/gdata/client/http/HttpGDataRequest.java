@@ -95,6 +95,16 @@ public class HttpGDataRequest implements GDataRequest {
       GDataProtocol.Header.METHOD_OVERRIDE;
 
 
+  /**
+   * Maximum number of redirects followed by a single request.
+   */
+  private static final int MAX_REDIRECTS = 20;
+
+  // HTTP redirect status codes not defined by HttpURLConnection
+  private static final int HTTP_TEMPORARY_REDIRECT = 307;
+  private static final int HTTP_PERMANENT_REDIRECT = 308;
+
+
   /**
    * The HttpGDataRequest.Factory class is a factory class for constructing
    * new HttpGDataRequest instances.
@@ -255,6 +265,27 @@ public class HttpGDataRequest implements GDataRequest {
    */
   private InputStream inputStream = null;
 
+  /**
+   * Request data written through {@link #getRequestStream()}, kept so that it
+   * can be sent again if the request is redirected. {@code null} if the
+   * request data is streamed directly to the connection.
+   */
+  private RequestBuffer requestBuffer = null;
+
+  /**
+   * True if request data is streamed directly to the connection, see
+   * {@link #setChunkedStreamingMode(int)}.
+   */
+  private boolean streamRequest = false;
+
+  /**
+   * Headers set through {@link #setPrivateHeader}. They are tracked here
+   * because {@link HttpURLConnection#getRequestProperties()} may hide them,
+   * and must be copied when following a redirect.
+   */
+  private final Map<String, String> privateHeaders =
+      new LinkedHashMap<String, String>();
+
   /**
    * Constructs a new HttpGDataRequest instance of the specified RequestType,
    * targeting the specified URL.
@@ -375,6 +406,14 @@ public class HttpGDataRequest implements GDataRequest {
     return inputType;
   }
 
+  /**
+   * Returns the value of the Authorization header sent with this request, or
+   * {@code null} if it has none.
+   */
+  public String getAuthorizationHeader() {
+    return privateHeaders.get("Authorization");
+  }
+
   /**
    * Obtains a connection to the GData service.
    */
@@ -392,7 +431,8 @@ public class HttpGDataRequest implements GDataRequest {
     // Should never cache GData requests/responses
     uc.setUseCaches(false);
 
-    // Always follow redirects
+    // Always follow redirects. The connection itself is only used to record
+    // this setting: redirects are followed by execute().
     uc.setInstanceFollowRedirects(true);
 
     return uc;
@@ -451,15 +491,40 @@ public class HttpGDataRequest implements GDataRequest {
     }
   }
 
+  /**
+   * Streams request data to the connection in chunks of {@code chunkLength}
+   * bytes rather than buffering it. Must be called before
+   * {@link #getRequestStream()}. A request streamed this way cannot be sent
+   * again, so redirects of it are reported as errors.
+   *
+   * @see HttpURLConnection#setChunkedStreamingMode(int)
+   */
+  public void setChunkedStreamingMode(int chunkLength) {
+    if (requestBuffer != null) {
+      throw new IllegalStateException("Request stream already opened");
+    }
+    httpConn.setChunkedStreamingMode(chunkLength);
+    streamRequest = true;
+  }
+
   public OutputStream getRequestStream() throws IOException {
 
     if (!expectsInput) {
       throw new IllegalStateException("Request doesn't accept input");
     }
+    OutputStream requestStream;
+    if (streamRequest) {
+      requestStream = httpConn.getOutputStream();
+    } else {
+      if (requestBuffer == null) {
+        requestBuffer = new RequestBuffer();
+      }
+      requestStream = requestBuffer;
+    }
     if (logger.isLoggable(Level.FINEST)){
-      return new LoggableOutputStream(logger, httpConn.getOutputStream());
+      return new LoggableOutputStream(logger, requestStream);
     }
-    return httpConn.getOutputStream();
+    return requestStream;
   }
 
 
@@ -484,11 +549,81 @@ public class HttpGDataRequest implements GDataRequest {
 
   public void setPrivateHeader(String name, String value) {
     httpConn.setRequestProperty(name, value);
+    privateHeaders.put(name, value);
     logger.finer(name + ": <Not Logged>");
   }
 
   public void execute() throws IOException, ServiceException {
 
+    // Redirects are followed here rather than by the connection, so that a
+    // redirected POST, PUT or DELETE keeps its method and data. The JDK
+    // only does that when the JVM-wide http.strictPostRedirect system
+    // property is set, which cannot be changed safely per request.
+    // See http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4023866
+    boolean followRedirects = httpConn.getInstanceFollowRedirects();
+    httpConn.setInstanceFollowRedirects(false);
+    for (int redirects = 0; ; redirects++) {
+      // Streamed request data cannot be sent again, so such requests are
+      // never redirected.
+      Map<String, List<String>> requestProperties = null;
+      if (followRedirects && !streamRequest) {
+        try {
+          requestProperties = httpConn.getRequestProperties();
+        } catch (IllegalStateException e) {
+          // Already connected by the caller, request data was streamed.
+        }
+      }
+      connect();
+      URL location =
+          (requestProperties != null) ? getRedirectLocation() : null;
+      if (location == null) {
+        break;
+      }
+      if (redirects == MAX_REDIRECTS) {
+        throw new ProtocolException(
+            "Server redirected too many times (" + MAX_REDIRECTS + ")");
+      }
+      redirect(location, requestProperties);
+    }
+
+    // The request data is not sent again once the final response arrived.
+    releaseRequestBuffer();
+
+    if (logger.isLoggable(Level.FINE)) {
+
+      // Avoid calling URL.equals() unless an object equivalence test fails,
+      // because URL.equals() requires DNS resolution. This test will
+      // fail on the first check for any URLConnection implementation
+      // that derives from java.net.URLConnection. The 2nd check would
+      // work on an alternate impl that clones the URL.
+      if (httpConn.getURL() != requestUrl
+          && !httpConn.getURL().toExternalForm().equals(
+              requestUrl.toExternalForm())) {
+        logger.fine("Redirected to:" + httpConn.getURL().toExternalForm());
+      }
+
+      // Log response information here, if enabled
+      logger.fine(httpConn.getResponseCode() + " "
+          + httpConn.getResponseMessage());
+      if (logger.isLoggable(Level.FINER)) {
+        for (Map.Entry<String, List<String>> headerField : httpConn
+            .getHeaderFields().entrySet()) {
+          for (String value : headerField.getValue()) {
+            logger.finer(headerField.getKey() + ": " + value);
+          }
+        }
+      }
+    }
+    checkResponse(); // will flush any request data
+
+    executed = true;
+  }
+
+  /**
+   * Connects to the service and sends any buffered request data.
+   */
+  private void connect() throws IOException {
+
     if (connectTimeout >= 0) {
       httpConn.setConnectTimeout(connectTimeout);
     }
@@ -497,55 +632,148 @@ public class HttpGDataRequest implements GDataRequest {
       httpConn.setReadTimeout(readTimeout);
     }
 
-    // Set the http.strictPostRedirect property to prevent redirected
-    // POST/PUT/DELETE from being mapped to a GET. This
-    // system property was a hack to fix a jdk bug w/out changing back
-    // compat behavior. It's bogus that this is a system (and not a
-    // per-connection) property, so we just change it for the duration
-    // of the connection.
-    // See http://bugs.sun.com/bugdatabase/view_bug.do?bug_id=4023866
-    String httpStrictPostRedirect =
-        System.getProperty("http.strictPostRedirect");
-    try {
-      System.setProperty("http.strictPostRedirect", "true");
-      httpConn.connect();
-
-      if (logger.isLoggable(Level.FINE)) {
-
-        // Avoid calling URL.equals() unless an object equivalence test fails,
-        // because URL.equals() requires DNS resolution. This test will
-        // fail on the first check for any URLConnection implementation
-        // that derives from java.net.URLConnection. The 2nd check would
-        // work on an alternate impl that clones the URL.
-        if (httpConn.getURL() != requestUrl
-            && !httpConn.getURL().toExternalForm().equals(
-                requestUrl.toExternalForm())) {
-          logger.fine("Redirected to:" + httpConn.getURL().toExternalForm());
-        }
-
-        // Log response information here, if enabled
-        logger.fine(httpConn.getResponseCode() + " "
-            + httpConn.getResponseMessage());
-        if (logger.isLoggable(Level.FINER)) {
-          for (Map.Entry<String, List<String>> headerField : httpConn
-              .getHeaderFields().entrySet()) {
-            for (String value : headerField.getValue()) {
-              logger.finer(headerField.getKey() + ": " + value);
-            }
-          }
+    if (requestBuffer != null) {
+      try {
+        long size = requestBuffer.size();
+        if (size <= Integer.MAX_VALUE) {
+          httpConn.setFixedLengthStreamingMode((int) size);
+        } else {
+          httpConn.setChunkedStreamingMode(RequestBuffer.SEGMENT_SIZE);
         }
+      } catch (IllegalStateException e) {
+        // A streaming mode was already set on the connection.
       }
-      checkResponse(); // will flush any request data
+      OutputStream requestStream = httpConn.getOutputStream();
+      requestBuffer.writeTo(requestStream);
+      requestStream.close();
+    }
+    httpConn.connect();
+  }
 
-    } finally {
-      if (httpStrictPostRedirect == null) {
-        System.clearProperty("http.strictPostRedirect");
-      } else {
-        System.setProperty("http.strictPostRedirect", httpStrictPostRedirect);
+  /**
+   * Returns the segments of the request data buffer to their pool.
+   */
+  private void releaseRequestBuffer() {
+    if (requestBuffer != null) {
+      requestBuffer.release();
+      requestBuffer = null;
+    }
+  }
+
+  /**
+   * Returns the target of a redirect response that can be followed, or
+   * {@code null} if the response is not such a redirect. Like the JDK, this
+   * does not follow redirects to a different protocol.
+   */
+  private URL getRedirectLocation() throws IOException {
+    switch (httpConn.getResponseCode()) {
+      case HttpURLConnection.HTTP_MOVED_PERM:
+      case HttpURLConnection.HTTP_MOVED_TEMP:
+      case HttpURLConnection.HTTP_SEE_OTHER:
+      case HTTP_TEMPORARY_REDIRECT:
+      case HTTP_PERMANENT_REDIRECT:
+        break;
+      default:
+        return null;
+    }
+    String location = httpConn.getHeaderField("Location");
+    if (location == null) {
+      return null;
+    }
+    URL target = new URL(httpConn.getURL(), location);
+    if (!target.getProtocol().equals(httpConn.getURL().getProtocol())) {
+      return null;
+    }
+    return target;
+  }
+
+  /**
+   * Replaces the connection by a new one to {@code location}, with the same
+   * method, headers and request data. A 303 (See Other) response turns the
+   * request into a {@code GET} without data, so the headers describing that
+   * data and any method override are dropped. Credentials are only sent if
+   * {@code location} is on the host and port of the original request.
+   */
+  private void redirect(URL location,
+      Map<String, List<String>> requestProperties) throws IOException {
+
+    String method = httpConn.getRequestMethod();
+    boolean seeOther =
+        httpConn.getResponseCode() == HttpURLConnection.HTTP_SEE_OTHER;
+    boolean sameHost = isSameHost(location, requestUrl);
+
+    // Read the redirect response so the connection can be reused
+    try {
+      httpConn.getInputStream().close();
+    } catch (IOException e) {
+      logger.log(Level.FINE, "Error closing redirect response", e);
+    }
+
+    HttpURLConnection redirectConn = getRequestConnection(location);
+    redirectConn.setInstanceFollowRedirects(false);
+    for (Map.Entry<String, List<String>> property
+        : requestProperties.entrySet()) {
+      String name = property.getKey();
+      if (name == null || !isRedirectedHeader(name, seeOther, sameHost)) {
+        continue;
+      }
+      for (String value : property.getValue()) {
+        redirectConn.addRequestProperty(name, value);
       }
     }
+    for (Map.Entry<String, String> header : privateHeaders.entrySet()) {
+      if (isRedirectedHeader(header.getKey(), seeOther, sameHost)) {
+        redirectConn.setRequestProperty(header.getKey(), header.getValue());
+      }
+    }
+    if (seeOther) {
+      method = "GET";
+      releaseRequestBuffer();
+    }
+    redirectConn.setRequestMethod(method);
+    redirectConn.setDoOutput(requestBuffer != null);
+    if (authToken != null && sameHost) {
+      // The authorization header may depend on the target url
+      redirectConn.setRequestProperty("Authorization",
+          authToken.getAuthorizationHeader(location, method));
+    }
+    if (logger.isLoggable(Level.FINE)) {
+      logger.fine(method + " " + location.toExternalForm());
+    }
+    httpConn = redirectConn;
+  }
 
-    executed = true;
+  /**
+   * Returns whether a request header is sent again when following a
+   * redirect.
+   *
+   * @param name header name
+   * @param seeOther true if the redirect is a 303 (See Other)
+   * @param sameHost true if the redirect stays on the original host
+   */
+  private static boolean isRedirectedHeader(String name, boolean seeOther,
+      boolean sameHost) {
+    if ("Authorization".equalsIgnoreCase(name)) {
+      return sameHost;
+    }
+    if (seeOther) {
+      return !"Content-Type".equalsIgnoreCase(name)
+          && !"Content-Length".equalsIgnoreCase(name)
+          && !Header.METHOD_OVERRIDE.equalsIgnoreCase(name);
+    }
+    return true;
+  }
+
+  /**
+   * Returns whether two urls of the same protocol point to the same host and
+   * port.
+   */
+  private static boolean isSameHost(URL url, URL other) {
+    int port = (url.getPort() != -1) ? url.getPort() : url.getDefaultPort();
+    int otherPort = (other.getPort() != -1)
+        ? other.getPort() : other.getDefaultPort();
+    return url.getHost().equalsIgnoreCase(other.getHost())
+        && port == otherPort;
   }
 
   /**
@@ -695,7 +923,12 @@ public class HttpGDataRequest implements GDataRequest {
   }
 
   public void end() {
+    releaseRequestBuffer();
     try {
+      if (inputStream == null && executed) {
+        // Close the unread response so the connection can be reused
+        inputStream = httpConn.getInputStream();
+      }
       if (inputStream != null) {
         inputStream.close();
       }
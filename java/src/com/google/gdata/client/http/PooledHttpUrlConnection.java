@@ -0,0 +1,842 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.http;
+
+import com.google.gdata.client.http.PooledHttpUrlConnectionSource.Connection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.CookieHandler;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.SocketException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An {@link HttpURLConnection} that speaks HTTP/1.1 over a connection leased
+ * from a {@link PooledHttpUrlConnectionSource}. The connection goes back to
+ * the pool as soon as the response body has been read to the end or closed,
+ * or is discarded if the server does not allow it to be reused.
+ *
+ * <p>Request bodies are buffered in memory unless a fixed-length or chunked
+ * streaming mode has been set, in the same way as the JDK implementation.
+ */
+final class PooledHttpUrlConnection extends HttpURLConnection {
+
+  private static final int MAX_REDIRECTS = 20;
+
+  /**
+   * Maximum number of unread response bytes drained when the response stream
+   * is closed early, to allow the connection to be reused.
+   */
+  private static final int MAX_DRAIN = 64 * 1024;
+
+  private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+  private static final byte[] CRLF = { '\r', '\n' };
+
+  private final PooledHttpUrlConnectionSource source;
+
+  /** Leased connection, or {@code null} if none is held. */
+  private Connection connection;
+
+  /** Request headers, captured when connecting. */
+  private Map<String, List<String>> requestHeaders;
+
+  /** Stream returned by {@link #getOutputStream()}. */
+  private OutputStream requestStream;
+
+  /** In-memory request body, if not streaming. */
+  private ByteArrayOutputStream bufferedBody;
+
+  private boolean requestSent;
+  private boolean responseRead;
+  private boolean keepAlive;
+  private String statusLine;
+  private final List<String> headerKeys = new ArrayList<String>();
+  private final List<String> headerValues = new ArrayList<String>();
+  private Map<String, List<String>> headerFields;
+  private ResponseStream responseStream;
+
+  PooledHttpUrlConnection(URL url, PooledHttpUrlConnectionSource source) {
+    super(url);
+    this.source = source;
+  }
+
+  @Override
+  public void connect() throws IOException {
+    if (connected) {
+      return;
+    }
+    if (requestHeaders == null) {
+      requestHeaders = getRequestProperties();
+    }
+    connection = source.lease(url, getConnectTimeout(), getReadTimeout());
+    connected = true;
+  }
+
+  @Override
+  public void disconnect() {
+    release(false);
+  }
+
+  @Override
+  public boolean usingProxy() {
+    return false;
+  }
+
+  @Override
+  public OutputStream getOutputStream() throws IOException {
+    if (!doOutput) {
+      throw new ProtocolException("cannot write to a URLConnection if "
+          + "doOutput=false - call setDoOutput(true)");
+    }
+    if (responseRead) {
+      throw new ProtocolException("Cannot write output after reading input.");
+    }
+    if (requestStream != null) {
+      return requestStream;
+    }
+    if ("GET".equals(method)) {
+      method = "POST";
+    }
+    connect();
+
+    long fixedLength = (fixedContentLengthLong != -1)
+        ? fixedContentLengthLong : fixedContentLength;
+    try {
+      if (fixedLength != -1) {
+        sendRequestHead(fixedLength, false);
+        requestStream = new FixedLengthOutputStream(fixedLength);
+      } else if (chunkLength != -1) {
+        sendRequestHead(-1, true);
+        requestStream = new ChunkedOutputStream(chunkLength);
+      } else {
+        bufferedBody = new ByteArrayOutputStream();
+        requestStream = bufferedBody;
+      }
+    } catch (IOException e) {
+      release(false);
+      throw e;
+    }
+    return requestStream;
+  }
+
+  @Override
+  public int getResponseCode() throws IOException {
+    readResponse();
+    return responseCode;
+  }
+
+  @Override
+  public String getResponseMessage() throws IOException {
+    readResponse();
+    return responseMessage;
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    if (!doInput) {
+      throw new ProtocolException("Cannot read from URLConnection if "
+          + "doInput=false (call setDoInput(true))");
+    }
+    readResponse();
+    if (responseCode >= 400) {
+      if (responseCode == HTTP_NOT_FOUND || responseCode == HTTP_GONE) {
+        throw new FileNotFoundException(url.toString());
+      }
+      throw new IOException("Server returned HTTP response code: "
+          + responseCode + " for URL: " + url);
+    }
+    return responseStream;
+  }
+
+  @Override
+  public InputStream getErrorStream() {
+    if (!responseRead || responseCode < 400) {
+      return null;
+    }
+    return responseStream;
+  }
+
+  @Override
+  public String getHeaderField(String name) {
+    return tryReadResponse() ? findHeader(name) : null;
+  }
+
+  @Override
+  public String getHeaderField(int n) {
+    if (!tryReadResponse()) {
+      return null;
+    }
+    if (n == 0) {
+      return statusLine;
+    }
+    return (n <= headerValues.size()) ? headerValues.get(n - 1) : null;
+  }
+
+  @Override
+  public String getHeaderFieldKey(int n) {
+    if (!tryReadResponse() || n == 0) {
+      return null;
+    }
+    return (n <= headerKeys.size()) ? headerKeys.get(n - 1) : null;
+  }
+
+  @Override
+  public Map<String, List<String>> getHeaderFields() {
+    if (!tryReadResponse()) {
+      return Collections.emptyMap();
+    }
+    return headerFields;
+  }
+
+  /**
+   * Returns the last value of response header {@code name}.
+   */
+  private String findHeader(String name) {
+    for (int i = headerKeys.size() - 1; i >= 0; i--) {
+      if (headerKeys.get(i).equalsIgnoreCase(name)) {
+        return headerValues.get(i);
+      }
+    }
+    return null;
+  }
+
+  private boolean tryReadResponse() {
+    try {
+      readResponse();
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Sends the request, if not already sent, and reads the response status
+   * and headers, following redirects if enabled.
+   */
+  private void readResponse() throws IOException {
+    if (responseRead) {
+      return;
+    }
+    try {
+      for (int redirects = 0; ; redirects++) {
+        exchange();
+        if (!prepareRedirect()) {
+          break;
+        }
+        if (redirects == MAX_REDIRECTS) {
+          throw new ProtocolException(
+              "Server redirected too many times (" + MAX_REDIRECTS + ")");
+        }
+      }
+    } catch (IOException e) {
+      release(false);
+      throw e;
+    }
+    responseRead = true;
+  }
+
+  /**
+   * Writes the request to the current connection and reads the response
+   * head. The server may have closed a pooled connection while it was idle,
+   * so a request that fails on a reused connection is sent again on another
+   * one, but only if it cannot have been processed twice: the method must be
+   * safe to repeat, its body must not have been streamed, and the failure
+   * must be an end of stream or a reset before any byte of the response has
+   * been read. A read timeout is never retried.
+   */
+  private void exchange() throws IOException {
+    boolean streaming = (requestStream != null && bufferedBody == null);
+    while (true) {
+      connect();
+      if (connection == null) {
+        throw new IOException("Connection already closed");
+      }
+      boolean responseStarted = false;
+      try {
+        if (streaming) {
+          requestStream.close();
+        } else if (!requestSent) {
+          long length = (bufferedBody != null) ? bufferedBody.size()
+              : (doOutput ? 0 : -1);
+          sendRequestHead(length, false);
+          if (bufferedBody != null) {
+            bufferedBody.writeTo(connection.out);
+          }
+        }
+        connection.out.flush();
+        connection.socket.setSoTimeout(getReadTimeout());
+        awaitResponse();
+        responseStarted = true;
+        readResponseHead();
+        return;
+      } catch (IOException e) {
+        if (streaming || responseStarted || connection == null
+            || !connection.reused || !isRetryable(method)
+            || !isStaleConnectionFailure(e)) {
+          throw e;
+        }
+        release(false);
+        connected = false;
+        requestSent = false;
+      }
+    }
+  }
+
+  /**
+   * Blocks until the first byte of the response is available.
+   *
+   * @throws EOFException if the server closed the connection instead
+   */
+  private void awaitResponse() throws IOException {
+    InputStream in = connection.in;
+    in.mark(1);
+    if (in.read() == -1) {
+      throw new EOFException("Connection closed by server");
+    }
+    in.reset();
+  }
+
+  /**
+   * Returns whether a request with the given method may be sent again after
+   * a failure. Only safe methods qualify: even an idempotent {@code PUT} or
+   * {@code DELETE} might have been applied already, and repeating it would
+   * then fail on its precondition or report a misleading error.
+   */
+  private static boolean isRetryable(String method) {
+    return "GET".equals(method) || "HEAD".equals(method)
+        || "OPTIONS".equals(method) || "TRACE".equals(method);
+  }
+
+  /**
+   * Returns whether {@code e} shows that the server had closed the
+   * connection, as opposed to a timeout or a protocol error.
+   */
+  private static boolean isStaleConnectionFailure(IOException e) {
+    return e instanceof EOFException || e instanceof SocketException;
+  }
+
+  private void sendRequestHead(long contentLength, boolean chunked)
+      throws IOException {
+    StringBuilder head = new StringBuilder(256);
+    String file = url.getFile();
+    head.append(method).append(' ').append(file.length() > 0 ? file : "/")
+        .append(" HTTP/1.1\r\n");
+    String host = url.getHost();
+    if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+      host = host + ":" + url.getPort();
+    }
+    appendHeader(head, "Host", host);
+    for (Map.Entry<String, List<String>> header : requestHeaders.entrySet()) {
+      String name = header.getKey();
+      if (name == null
+          || "Host".equalsIgnoreCase(name)
+          || "Transfer-Encoding".equalsIgnoreCase(name)
+          || ("Content-Length".equalsIgnoreCase(name)
+              && (chunked || contentLength != -1))) {
+        continue;
+      }
+      for (String value : header.getValue()) {
+        // setRequestProperty(name, null) leaves a null value behind
+        if (value != null) {
+          appendHeader(head, name, value);
+        }
+      }
+    }
+    CookieHandler cookieHandler = CookieHandler.getDefault();
+    URI uri = toUri();
+    if (cookieHandler != null && uri != null) {
+      Map<String, List<String>> cookies =
+          cookieHandler.get(uri, requestHeaders);
+      for (Map.Entry<String, List<String>> cookie : cookies.entrySet()) {
+        if ("Cookie".equalsIgnoreCase(cookie.getKey())
+            || "Cookie2".equalsIgnoreCase(cookie.getKey())) {
+          for (String value : cookie.getValue()) {
+            appendHeader(head, cookie.getKey(), value);
+          }
+        }
+      }
+    }
+    if (chunked) {
+      appendHeader(head, "Transfer-Encoding", "chunked");
+    } else if (contentLength != -1) {
+      appendHeader(head, "Content-Length", Long.toString(contentLength));
+    }
+    head.append("\r\n");
+    connection.out.write(head.toString().getBytes("ISO-8859-1"));
+    requestSent = true;
+  }
+
+  private static void appendHeader(StringBuilder head, String name,
+      String value) {
+    head.append(name).append(": ").append(value).append("\r\n");
+  }
+
+  private void readResponseHead() throws IOException {
+    do {
+      headerKeys.clear();
+      headerValues.clear();
+      statusLine = readLine(connection.in);
+      if (!statusLine.startsWith("HTTP/")) {
+        throw new ProtocolException("Invalid status line: " + statusLine);
+      }
+      int codeStart = statusLine.indexOf(' ');
+      int codeEnd = statusLine.indexOf(' ', codeStart + 1);
+      if (codeEnd < 0) {
+        codeEnd = statusLine.length();
+      }
+      try {
+        responseCode = Integer.parseInt(
+            statusLine.substring(codeStart + 1, codeEnd));
+      } catch (NumberFormatException e) {
+        throw new ProtocolException("Invalid status line: " + statusLine);
+      }
+      responseMessage = (codeEnd < statusLine.length())
+          ? statusLine.substring(codeEnd + 1) : "";
+
+      String line;
+      while ((line = readLine(connection.in)).length() > 0) {
+        if ((line.charAt(0) == ' ' || line.charAt(0) == '\t')
+            && !headerValues.isEmpty()) {
+          // Folded continuation of the previous header value
+          int last = headerValues.size() - 1;
+          headerValues.set(last, headerValues.get(last) + " " + line.trim());
+          continue;
+        }
+        int colon = line.indexOf(':');
+        if (colon <= 0) {
+          throw new ProtocolException("Invalid header: " + line);
+        }
+        headerKeys.add(line.substring(0, colon).trim());
+        headerValues.add(line.substring(colon + 1).trim());
+      }
+    } while (responseCode >= 100 && responseCode < 200);
+
+    Map<String, List<String>> fields =
+        new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+    for (int i = 0; i < headerKeys.size(); i++) {
+      List<String> values = fields.get(headerKeys.get(i));
+      if (values == null) {
+        values = new ArrayList<String>(1);
+        fields.put(headerKeys.get(i), values);
+      }
+      values.add(headerValues.get(i));
+    }
+    for (Map.Entry<String, List<String>> field : fields.entrySet()) {
+      field.setValue(Collections.unmodifiableList(field.getValue()));
+    }
+    headerFields = Collections.unmodifiableMap(fields);
+
+    CookieHandler cookieHandler = CookieHandler.getDefault();
+    URI uri = toUri();
+    if (cookieHandler != null && uri != null) {
+      cookieHandler.put(uri, headerFields);
+    }
+
+    String connectionHeader = findHeader("Connection");
+    if (statusLine.startsWith("HTTP/1.0")) {
+      keepAlive = "keep-alive".equalsIgnoreCase(connectionHeader);
+    } else {
+      keepAlive = !"close".equalsIgnoreCase(connectionHeader);
+    }
+    List<String> requestConnection = requestHeaders.get("Connection");
+    if (requestConnection != null && requestConnection.contains("close")) {
+      keepAlive = false;
+    }
+
+    String transferEncoding = findHeader("Transfer-Encoding");
+    String contentLength = findHeader("Content-Length");
+    if ("HEAD".equals(method) || responseCode == HTTP_NO_CONTENT
+        || responseCode == HTTP_NOT_MODIFIED) {
+      responseStream = new ResponseStream(0, false);
+    } else if (transferEncoding != null
+        && transferEncoding.toLowerCase().contains("chunked")) {
+      responseStream = new ResponseStream(0, true);
+    } else if (contentLength != null) {
+      try {
+        responseStream =
+            new ResponseStream(Long.parseLong(contentLength), false);
+      } catch (NumberFormatException e) {
+        throw new ProtocolException("Invalid Content-Length: "
+            + contentLength);
+      }
+    } else {
+      // Body is delimited by the server closing the connection.
+      keepAlive = false;
+      responseStream = new ResponseStream(-1, false);
+    }
+  }
+
+  /**
+   * Prepares to follow a redirect response, if it should be followed. Like
+   * the JDK implementation, only {@code GET} and {@code HEAD} requests are
+   * redirected, and never to a different protocol.
+   *
+   * @return {@code true} if the request must be sent again
+   */
+  private boolean prepareRedirect() throws IOException {
+    if (!getInstanceFollowRedirects() || !getFollowRedirects()) {
+      return false;
+    }
+    switch (responseCode) {
+      case HTTP_MOVED_PERM:
+      case HTTP_MOVED_TEMP:
+      case HTTP_SEE_OTHER:
+      case 307:
+      case 308:
+        break;
+      default:
+        return false;
+    }
+    String location = findHeader("Location");
+    if (location == null
+        || !("GET".equals(method) || "HEAD".equals(method))) {
+      return false;
+    }
+    URL target = new URL(url, location);
+    if (!target.getProtocol().equals(url.getProtocol())) {
+      return false;
+    }
+    responseStream.close();
+    url = target;
+    connected = false;
+    requestSent = false;
+    return true;
+  }
+
+  /**
+   * Returns the leased connection to the pool if {@code reusable} and the
+   * server allows it, or closes it otherwise.
+   */
+  private void release(boolean reusable) {
+    if (connection != null) {
+      source.release(connection, reusable && keepAlive);
+      connection = null;
+    }
+  }
+
+  private URI toUri() {
+    try {
+      return url.toURI();
+    } catch (URISyntaxException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Reads a CRLF or LF terminated line of ISO-8859-1 characters.
+   */
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder line = new StringBuilder(64);
+    int c;
+    while ((c = in.read()) != '\n') {
+      if (c == -1) {
+        throw new EOFException((line.length() == 0)
+            ? "Connection closed by server" : "Unexpected end of line");
+      }
+      if (line.length() == MAX_LINE_LENGTH) {
+        throw new ProtocolException("Line too long");
+      }
+      line.append((char) c);
+    }
+    int length = line.length();
+    if (length > 0 && line.charAt(length - 1) == '\r') {
+      line.setLength(length - 1);
+    }
+    return line.toString();
+  }
+
+  /**
+   * Response body stream. Releases the connection to the pool once the end
+   * of the body has been reached.
+   */
+  private final class ResponseStream extends InputStream {
+
+    private final boolean chunked;
+    private final byte[] single = new byte[1];
+
+    /**
+     * Bytes left in the body, or in the current chunk if chunked, or
+     * {@code -1} if the body ends when the connection is closed.
+     */
+    private long remaining;
+    private boolean chunkStarted;
+    private boolean eof;
+    private boolean closed;
+
+    ResponseStream(long length, boolean chunked) {
+      this.chunked = chunked;
+      this.remaining = length;
+      if (length == 0 && !chunked) {
+        endOfBody(true);
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      int n = read(single, 0, 1);
+      return (n == -1) ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+      return readBody(b, off, len);
+    }
+
+    @Override
+    public int available() throws IOException {
+      if (eof || closed || connection == null) {
+        return 0;
+      }
+      int available = connection.in.available();
+      return (remaining < 0) ? available : (int) Math.min(available, remaining);
+    }
+
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        byte[] buf = new byte[4096];
+        int drained = 0;
+        while (!eof && drained < MAX_DRAIN) {
+          int n = readBody(buf, 0, buf.length);
+          if (n == -1) {
+            break;
+          }
+          drained += n;
+        }
+      } catch (IOException e) {
+        // Connection is released as not reusable by readBody.
+      }
+      if (!eof) {
+        eof = true;
+        release(false);
+      }
+    }
+
+    private int readBody(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (eof) {
+        return -1;
+      }
+      try {
+        if (chunked && remaining == 0) {
+          if (chunkStarted) {
+            readLine(connection.in);
+          }
+          chunkStarted = true;
+          remaining = parseChunkSize(readLine(connection.in));
+          if (remaining == 0) {
+            // Skip trailers
+            while (readLine(connection.in).length() > 0) {}
+            endOfBody(true);
+            return -1;
+          }
+        }
+        int max = (remaining < 0) ? len : (int) Math.min(len, remaining);
+        int n = connection.in.read(b, off, max);
+        if (n == -1) {
+          if (remaining < 0) {
+            endOfBody(false);
+            return -1;
+          }
+          throw new EOFException("Unexpected end of response body");
+        }
+        if (remaining > 0) {
+          remaining -= n;
+          if (remaining == 0 && !chunked) {
+            endOfBody(true);
+          }
+        }
+        return n;
+      } catch (IOException e) {
+        eof = true;
+        release(false);
+        throw e;
+      }
+    }
+
+    private long parseChunkSize(String line) throws IOException {
+      int end = line.indexOf(';');
+      String size = ((end < 0) ? line : line.substring(0, end)).trim();
+      try {
+        return Long.parseLong(size, 16);
+      } catch (NumberFormatException e) {
+        throw new ProtocolException("Invalid chunk size: " + line);
+      }
+    }
+
+    private void endOfBody(boolean reusable) {
+      eof = true;
+      release(reusable);
+    }
+  }
+
+  /**
+   * Request body stream for fixed-length streaming mode.
+   */
+  private final class FixedLengthOutputStream extends OutputStream {
+
+    private long remaining;
+    private boolean closed;
+
+    FixedLengthOutputStream(long length) {
+      this.remaining = length;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+      if (len > remaining) {
+        release(false);
+        throw new IOException("too many bytes written");
+      }
+      try {
+        connection.out.write(b, off, len);
+        remaining -= len;
+      } catch (IOException e) {
+        release(false);
+        throw e;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (!closed) {
+        connection.out.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (remaining > 0) {
+        release(false);
+        throw new IOException("insufficient data written");
+      }
+    }
+  }
+
+  /**
+   * Request body stream for chunked streaming mode.
+   */
+  private final class ChunkedOutputStream extends OutputStream {
+
+    private final byte[] buffer;
+    private int count;
+    private boolean closed;
+
+    ChunkedOutputStream(int chunkLength) {
+      this.buffer = new byte[chunkLength];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+      while (len > 0) {
+        int n = Math.min(len, buffer.length - count);
+        System.arraycopy(b, off, buffer, count, n);
+        count += n;
+        off += n;
+        len -= n;
+        if (count == buffer.length) {
+          writeChunk();
+        }
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (!closed) {
+        writeChunk();
+        connection.out.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      writeChunk();
+      try {
+        connection.out.write('0');
+        connection.out.write(CRLF);
+        connection.out.write(CRLF);
+      } catch (IOException e) {
+        release(false);
+        throw e;
+      }
+    }
+
+    private void writeChunk() throws IOException {
+      if (count == 0) {
+        return;
+      }
+      try {
+        connection.out.write(
+            Integer.toHexString(count).getBytes("ISO-8859-1"));
+        connection.out.write(CRLF);
+        connection.out.write(buffer, 0, count);
+        connection.out.write(CRLF);
+        count = 0;
+      } catch (IOException e) {
+        release(false);
+        throw e;
+      }
+    }
+  }
+}
@@ -0,0 +1,472 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * An {@link HttpUrlConnectionSource} that keeps persistent HTTP/1.1
+ * connections open between requests and hands them out again to later
+ * requests for the same route (scheme, host and port). Reusing a connection
+ * saves the TCP setup and, for {@code https} urls, the TLS handshake.
+ *
+ * <p>The number of connections open to a single route is capped. A request
+ * that would exceed the cap waits until another request releases its
+ * connection, for at most the connect timeout of the request. Connections
+ * that stay idle for longer than the idle timeout are closed instead of
+ * being reused.
+ *
+ * <p>Requests that must go through a proxy according to the default
+ * {@link ProxySelector} are delegated to {@link JdkHttpUrlConnectionSource}.
+ *
+ * <p>Instances are thread-safe and are meant to be shared by all services
+ * talking to the same hosts:
+ * <pre>
+ *   PooledHttpUrlConnectionSource pool =
+ *       new PooledHttpUrlConnectionSource(16, 30000);
+ *   ((HttpGDataRequest.Factory) service.getRequestFactory())
+ *       .setConnectionSource(pool);
+ * </pre>
+ */
+public class PooledHttpUrlConnectionSource implements HttpUrlConnectionSource {
+
+  private static final Logger logger =
+      Logger.getLogger(PooledHttpUrlConnectionSource.class.getName());
+
+  /**
+   * Default maximum number of connections open to a single route.
+   */
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 8;
+
+  /**
+   * Default time in milliseconds an idle connection is kept in the pool.
+   */
+  public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+
+  /**
+   * A point-in-time snapshot of the usage of a connection pool.
+   */
+  public static final class Stats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int leased;
+    private final int idle;
+
+    private Stats(long hits, long misses, long evictions, int leased,
+        int idle) {
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.leased = leased;
+      this.idle = idle;
+    }
+
+    /** Returns the number of requests that reused a pooled connection. */
+    public long getHits() {
+      return hits;
+    }
+
+    /** Returns the number of requests that had to open a new connection. */
+    public long getMisses() {
+      return misses;
+    }
+
+    /** Returns the number of idle connections closed on expiry. */
+    public long getEvictions() {
+      return evictions;
+    }
+
+    /** Returns the number of connections currently used by requests. */
+    public int getLeased() {
+      return leased;
+    }
+
+    /** Returns the number of connections currently idle in the pool. */
+    public int getIdle() {
+      return idle;
+    }
+
+    @Override
+    public String toString() {
+      return "[hits=" + hits + ", misses=" + misses + ", evictions="
+          + evictions + ", leased=" + leased + ", idle=" + idle + "]";
+    }
+  }
+
+  /**
+   * A socket to a route, with the buffered streams used to talk over it.
+   */
+  static final class Connection {
+
+    final Route route;
+    final Socket socket;
+    final InputStream in;
+    final OutputStream out;
+
+    /** True if the connection has already served a previous request. */
+    boolean reused;
+
+    /** Time at which the connection was returned to the pool. */
+    long idleSince;
+
+    Connection(Route route, Socket socket) throws IOException {
+      this.route = route;
+      this.socket = socket;
+      this.in = new BufferedInputStream(socket.getInputStream());
+      this.out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    void close() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        logger.log(Level.FINE, "Error closing connection", e);
+      }
+    }
+  }
+
+  /**
+   * The connections of a single scheme, host and port combination.
+   */
+  static final class Route {
+
+    final String host;
+    final int port;
+    final boolean secure;
+
+    /** Idle connections, most recently used first. */
+    final LinkedList<Connection> idle = new LinkedList<Connection>();
+
+    /** Number of connections currently used by requests. */
+    int leased;
+
+    Route(String host, int port, boolean secure) {
+      this.host = host;
+      this.port = port;
+      this.secure = secure;
+    }
+
+    @Override
+    public String toString() {
+      return (secure ? "https://" : "http://") + host + ":" + port;
+    }
+  }
+
+  private final int maxConnectionsPerRoute;
+  private final long idleTimeout;
+  private volatile SSLSocketFactory sslSocketFactory;
+
+  // All of the state below is guarded by this.
+  private final Map<String, Route> routes = new HashMap<String, Route>();
+  private long hits;
+  private long misses;
+  private long evictions;
+  private boolean shutdown;
+
+  /**
+   * Creates a pool with {@link #DEFAULT_MAX_CONNECTIONS_PER_ROUTE} and
+   * {@link #DEFAULT_IDLE_TIMEOUT}.
+   */
+  public PooledHttpUrlConnectionSource() {
+    this(DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_IDLE_TIMEOUT);
+  }
+
+  /**
+   * Creates a pool.
+   *
+   * @param maxConnectionsPerRoute maximum number of connections open to a
+   *     single scheme, host and port combination
+   * @param idleTimeout time in milliseconds an idle connection is kept in the
+   *     pool, {@code 0} disables reuse
+   */
+  public PooledHttpUrlConnectionSource(int maxConnectionsPerRoute,
+      long idleTimeout) {
+    if (maxConnectionsPerRoute < 1) {
+      throw new IllegalArgumentException(
+          "maxConnectionsPerRoute must be positive");
+    }
+    if (idleTimeout < 0) {
+      throw new IllegalArgumentException("idleTimeout cannot be negative");
+    }
+    this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    this.idleTimeout = idleTimeout;
+  }
+
+  /**
+   * Sets the factory used to create {@code https} connections. Defaults to
+   * {@link HttpsURLConnection#getDefaultSSLSocketFactory()}.
+   */
+  public void setSslSocketFactory(SSLSocketFactory sslSocketFactory) {
+    if (sslSocketFactory == null) {
+      throw new NullPointerException("sslSocketFactory");
+    }
+    this.sslSocketFactory = sslSocketFactory;
+  }
+
+  public HttpURLConnection openConnection(URL url) throws IOException {
+    String protocol = url.getProtocol();
+    if (!"http".equals(protocol) && !"https".equals(protocol)) {
+      throw new IllegalArgumentException("Not an HTTP url: " + url);
+    }
+    if (requiresProxy(url)) {
+      return JdkHttpUrlConnectionSource.INSTANCE.openConnection(url);
+    }
+    return new PooledHttpUrlConnection(url, this);
+  }
+
+  /**
+   * Returns a snapshot of the current pool usage.
+   */
+  public synchronized Stats getStats() {
+    int leased = 0;
+    int idle = 0;
+    for (Route route : routes.values()) {
+      leased += route.leased;
+      idle += route.idle.size();
+    }
+    return new Stats(hits, misses, evictions, leased, idle);
+  }
+
+  /**
+   * Closes all connections that are currently idle in the pool.
+   */
+  public synchronized void closeIdleConnections() {
+    for (Route route : routes.values()) {
+      for (Connection connection : route.idle) {
+        connection.close();
+      }
+      route.idle.clear();
+    }
+  }
+
+  /**
+   * Closes all idle connections and stops pooling. Connections still used by
+   * requests are closed when released, and new requests are rejected.
+   */
+  public synchronized void shutdown() {
+    shutdown = true;
+    closeIdleConnections();
+    notifyAll();
+  }
+
+  /**
+   * Leases a connection to the route of {@code url}, reusing an idle one if
+   * possible and waiting for a free slot if the route is at capacity.
+   *
+   * @param url url to connect to
+   * @param connectTimeout maximum time in milliseconds to wait for a slot and
+   *     to establish a new connection, {@code 0} to wait indefinitely
+   * @param readTimeout read timeout for the leased connection
+   */
+  Connection lease(URL url, int connectTimeout, int readTimeout)
+      throws IOException {
+    Route route;
+    Connection connection = null;
+    synchronized (this) {
+      route = getRoute(url);
+      long deadline = (connectTimeout > 0)
+          ? System.currentTimeMillis() + connectTimeout : 0;
+      while (true) {
+        if (shutdown) {
+          throw new IllegalStateException("Connection pool is shut down");
+        }
+        evictIdle(route, System.currentTimeMillis());
+        if (!route.idle.isEmpty()) {
+          connection = route.idle.removeFirst();
+          route.leased++;
+          hits++;
+          break;
+        }
+        if (route.leased < maxConnectionsPerRoute) {
+          route.leased++;
+          misses++;
+          break;
+        }
+        long wait = 0;
+        if (deadline != 0) {
+          wait = deadline - System.currentTimeMillis();
+          if (wait <= 0) {
+            throw new SocketTimeoutException(
+                "Timed out waiting for a connection to " + route);
+          }
+        }
+        try {
+          wait(wait);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException(
+              "Interrupted waiting for a connection to " + route);
+        }
+      }
+    }
+
+    if (connection != null) {
+      connection.reused = true;
+      connection.socket.setSoTimeout(readTimeout);
+      return connection;
+    }
+
+    boolean connected = false;
+    try {
+      connection = connect(route, connectTimeout, readTimeout);
+      connected = true;
+      return connection;
+    } finally {
+      if (!connected) {
+        release(route, null);
+      }
+    }
+  }
+
+  /**
+   * Returns a leased connection. It is kept for reuse if {@code reusable},
+   * otherwise it is closed.
+   */
+  void release(Connection connection, boolean reusable) {
+    release(connection.route, reusable ? connection : null);
+    if (!reusable) {
+      connection.close();
+    }
+  }
+
+  private synchronized void release(Route route, Connection connection) {
+    route.leased--;
+    long now = System.currentTimeMillis();
+    if (connection != null) {
+      if (shutdown || idleTimeout == 0) {
+        connection.close();
+      } else {
+        connection.idleSince = now;
+        route.idle.addFirst(connection);
+      }
+    }
+    for (Route r : routes.values()) {
+      evictIdle(r, now);
+    }
+    notifyAll();
+  }
+
+  private Route getRoute(URL url) {
+    boolean secure = "https".equals(url.getProtocol());
+    String host = url.getHost().toLowerCase();
+    int port = (url.getPort() != -1) ? url.getPort() : url.getDefaultPort();
+    String key = url.getProtocol() + "://" + host + ":" + port;
+    Route route = routes.get(key);
+    if (route == null) {
+      route = new Route(host, port, secure);
+      routes.put(key, route);
+    }
+    return route;
+  }
+
+  /**
+   * Closes connections of {@code route} that have been idle too long. The
+   * idle list is ordered by recency so expired connections are at its tail.
+   */
+  private void evictIdle(Route route, long now) {
+    Iterator<Connection> it = route.idle.descendingIterator();
+    while (it.hasNext()) {
+      Connection connection = it.next();
+      if (now - connection.idleSince < idleTimeout
+          && !connection.socket.isClosed()) {
+        break;
+      }
+      it.remove();
+      connection.close();
+      evictions++;
+    }
+  }
+
+  private Connection connect(Route route, int connectTimeout, int readTimeout)
+      throws IOException {
+    Socket socket = new Socket();
+    try {
+      socket.connect(new InetSocketAddress(route.host, route.port),
+          connectTimeout);
+      socket.setTcpNoDelay(true);
+      socket.setSoTimeout(readTimeout);
+      if (route.secure) {
+        SSLSocketFactory factory = sslSocketFactory;
+        if (factory == null) {
+          factory = HttpsURLConnection.getDefaultSSLSocketFactory();
+        }
+        SSLSocket sslSocket = (SSLSocket) factory.createSocket(
+            socket, route.host, route.port, true);
+        SSLParameters params = sslSocket.getSSLParameters();
+        params.setEndpointIdentificationAlgorithm("HTTPS");
+        sslSocket.setSSLParameters(params);
+        sslSocket.startHandshake();
+        socket = sslSocket;
+      }
+      if (logger.isLoggable(Level.FINE)) {
+        logger.fine("Opened connection to " + route);
+      }
+      return new Connection(route, socket);
+    } catch (IOException e) {
+      try {
+        socket.close();
+      } catch (IOException ignored) {
+        // Report the original failure.
+      }
+      throw e;
+    }
+  }
+
+  private static boolean requiresProxy(URL url) {
+    ProxySelector selector = ProxySelector.getDefault();
+    if (selector == null) {
+      return false;
+    }
+    try {
+      for (Proxy proxy : selector.select(url.toURI())) {
+        if (proxy.type() != Proxy.Type.DIRECT) {
+          return true;
+        }
+      }
+      return false;
+    } catch (URISyntaxException e) {
+      // Leave urls we cannot reason about to the JDK.
+      return true;
+    }
+  }
+}
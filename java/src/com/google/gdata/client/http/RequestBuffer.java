@@ -0,0 +1,148 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Buffers request data in fixed size segments, so that the data can be sent
+ * with a known length and sent again when a request is redirected.
+ * <p>
+ * Unlike a {@link java.io.ByteArrayOutputStream}, the buffer never copies
+ * data it already holds to grow, so buffering a large request takes about
+ * the size of the data instead of up to three times that size.  Segments of
+ * released buffers are kept in a small pool shared by all requests.
+ *
+ *
+ */
+class RequestBuffer extends OutputStream {
+
+  /** Size of the buffer segments. */
+  static final int SEGMENT_SIZE = 8 * 1024;
+
+  /** Maximum number of segments kept in the pool. */
+  private static final int MAX_POOLED_SEGMENTS = 128;
+
+  /** Pool of unused segments. */
+  private static final LinkedList<byte[]> pool = new LinkedList<byte[]>();
+
+  private static byte[] allocateSegment() {
+    synchronized (pool) {
+      if (!pool.isEmpty()) {
+        return pool.removeFirst();
+      }
+    }
+    return new byte[SEGMENT_SIZE];
+  }
+
+  private static void releaseSegments(List<byte[]> segments) {
+    synchronized (pool) {
+      for (byte[] segment : segments) {
+        if (pool.size() >= MAX_POOLED_SEGMENTS) {
+          break;
+        }
+        pool.addFirst(segment);
+      }
+    }
+  }
+
+  /** Segments holding the data, all full except the last one. */
+  private final List<byte[]> segments = new ArrayList<byte[]>();
+
+  /** Number of bytes used in the last segment. */
+  private int position = SEGMENT_SIZE;
+
+  /** Number of bytes in the buffer. */
+  private long size;
+
+  /** True once the segments have been returned to the pool. */
+  private boolean released;
+
+  @Override
+  public void write(int b) {
+    if (position == SEGMENT_SIZE) {
+      addSegment();
+    }
+    segments.get(segments.size() - 1)[position++] = (byte) b;
+    size++;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    while (len > 0) {
+      if (position == SEGMENT_SIZE) {
+        addSegment();
+      }
+      int count = Math.min(len, SEGMENT_SIZE - position);
+      System.arraycopy(b, off, segments.get(segments.size() - 1), position,
+          count);
+      position += count;
+      off += count;
+      len -= count;
+      size += count;
+    }
+  }
+
+  private void addSegment() {
+    if (released) {
+      throw new IllegalStateException("Buffer has been released");
+    }
+    segments.add(allocateSegment());
+    position = 0;
+  }
+
+  /**
+   * Returns the number of bytes in the buffer.
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Writes the buffered data to an output stream.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    if (released) {
+      throw new IllegalStateException("Buffer has been released");
+    }
+    int last = segments.size() - 1;
+    for (int i = 0; i < last; i++) {
+      out.write(segments.get(i), 0, SEGMENT_SIZE);
+    }
+    if (last >= 0) {
+      out.write(segments.get(last), 0, position);
+    }
+  }
+
+  /**
+   * Returns the segments to the pool.  The buffer can no longer be used.
+   */
+  public void release() {
+    if (!released) {
+      released = true;
+      releaseSegments(segments);
+      segments.clear();
+    }
+  }
+}
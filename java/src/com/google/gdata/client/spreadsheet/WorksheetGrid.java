@@ -0,0 +1,581 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.spreadsheet;
+
+import com.google.gdata.util.common.base.Preconditions;
+import com.google.gdata.client.batch.BatchInterruptedException;
+import com.google.gdata.data.BaseFeed;
+import com.google.gdata.data.Link;
+import com.google.gdata.data.batch.BatchOperationType;
+import com.google.gdata.data.batch.BatchStatus;
+import com.google.gdata.data.batch.BatchUtils;
+import com.google.gdata.data.spreadsheet.Cell;
+import com.google.gdata.data.spreadsheet.CellEntry;
+import com.google.gdata.data.spreadsheet.CellFeed;
+import com.google.gdata.util.ServiceException;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds a rectangular range of the cells of a worksheet in memory and writes
+ * the changed cells back to the server in batches.
+ * <p>
+ * The range is read from the cells feed with a {@link CellQuery} that
+ * returns empty cells too, one entry at a time, and each entry is dropped
+ * once its cell has been stored.  The grid keeps arrays per column instead
+ * of a {@link CellEntry} per cell: the input values, the numeric values as
+ * {@code double} values, and the version of each cell taken from its edit
+ * link and entity tag.
+ * <p>
+ * Setting the input value of a cell marks it as changed, unless the value
+ * is the one already held.  {@link #sync()} sends the changed cells, and
+ * only them, as batch update requests of at most {@link #getBatchSize()}
+ * cells each.  Every update carries the version of the cell that was loaded,
+ * so the server rejects the update of a cell that has changed since, and the
+ * cell is reported as a {@link Failure}.
+ * <p>
+ * Instances are not thread-safe.
+ * <pre>
+ *   WorksheetGrid grid = new WorksheetGrid(service,
+ *       FeedURLFactory.getDefault().getCellFeedUrl(key, "od6",
+ *           "private", "full"));
+ *   grid.load(1, 1000, 1, 50);
+ *   for (int row = 2; row &lt;= 1000; row++) {
+ *     grid.setInputValue(row, 3,
+ *         String.valueOf(grid.getNumericValue(row, 2) * 2));
+ *   }
+ *   List&lt;WorksheetGrid.Failure&gt; failures = grid.sync();
+ * </pre>
+ *
+ *
+ */
+public class WorksheetGrid {
+
+  /** Default maximum number of cells updated by one batch request. */
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+
+  /**
+   * A cell that could not be updated, with the status the server returned
+   * for it.
+   */
+  public static class Failure {
+
+    private final int row;
+    private final int col;
+    private final BatchStatus status;
+
+    Failure(int row, int col, BatchStatus status) {
+      this.row = row;
+      this.col = col;
+      this.status = status;
+    }
+
+    /** Returns the row of the cell, starting with 1. */
+    public int getRow() {
+      return row;
+    }
+
+    /** Returns the column of the cell, starting with 1. */
+    public int getCol() {
+      return col;
+    }
+
+    /**
+     * Returns the batch status of the update, or {@code null} if the server
+     * did not return one.
+     */
+    public BatchStatus getStatus() {
+      return status;
+    }
+
+    @Override
+    public String toString() {
+      return "R" + row + "C" + col + ": "
+          + (status == null ? "no status"
+              : status.getCode() + " " + status.getReason());
+    }
+  }
+
+  private final SpreadsheetService service;
+  private final URL cellFeedUrl;
+  private int batchSize = DEFAULT_BATCH_SIZE;
+
+  /** Batch URL of the cells feed, known once a range has been loaded. */
+  private URL batchUrl;
+
+  /** Common prefix of the cell entry ids, up to the cell name. */
+  private String idPrefix;
+
+  private int minRow;
+  private int minCol;
+  private int rowCount;
+  private int colCount;
+  private Column[] columns = new Column[0];
+
+  /** Cells changed since they were loaded, by cell index. */
+  private final BitSet dirty = new BitSet();
+
+  /** Loaded input values of the changed cells, by cell index. */
+  private final Map<Integer, String> loadedInputValues =
+      new HashMap<Integer, String>();
+
+  /**
+   * Creates an empty grid for a worksheet.
+   *
+   * @param service spreadsheet service used to read and write the cells.
+   * @param cellFeedUrl URL of the cells feed of the worksheet, as returned
+   *     by {@link FeedURLFactory#getCellFeedUrl}.
+   */
+  public WorksheetGrid(SpreadsheetService service, URL cellFeedUrl) {
+    this.service = Preconditions.checkNotNull(service, "service");
+    this.cellFeedUrl = Preconditions.checkNotNull(cellFeedUrl, "cellFeedUrl");
+  }
+
+  /** Returns the URL of the cells feed of the worksheet. */
+  public URL getCellFeedUrl() {
+    return cellFeedUrl;
+  }
+
+  /** Returns the maximum number of cells updated by one batch request. */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Sets the maximum number of cells updated by one batch request.
+   *
+   * @param batchSize number of cells, at least 1.
+   */
+  public void setBatchSize(int batchSize) {
+    Preconditions.checkArgument(batchSize > 0, "batchSize must be positive");
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Loads all the cells of the worksheet, replacing the cells held by this
+   * grid and discarding their changes.
+   *
+   * @throws IOException error communicating with the server.
+   * @throws ServiceException error reported by the server.
+   */
+  public void load() throws IOException, ServiceException {
+    CellQuery query = new CellQuery(cellFeedUrl);
+    query.setMaxResults(1);
+    CellFeed feed = service.getFeed(query, CellFeed.class);
+    load(1, feed.getRowCount(), 1, feed.getColCount());
+  }
+
+  /**
+   * Loads a range of cells of the worksheet, replacing the cells held by
+   * this grid and discarding their changes.
+   *
+   * @param minRow first row of the range, starting with 1.
+   * @param maxRow last row of the range, inclusive.
+   * @param minCol first column of the range, starting with 1.
+   * @param maxCol last column of the range, inclusive.
+   * @throws IOException error communicating with the server.
+   * @throws ServiceException error reported by the server.
+   */
+  public void load(int minRow, int maxRow, int minCol, int maxCol)
+      throws IOException, ServiceException {
+    Preconditions.checkArgument(minRow >= 1 && minRow <= maxRow,
+        "Invalid row range");
+    Preconditions.checkArgument(minCol >= 1 && minCol <= maxCol,
+        "Invalid column range");
+
+    this.minRow = minRow;
+    this.minCol = minCol;
+    this.rowCount = maxRow - minRow + 1;
+    this.colCount = maxCol - minCol + 1;
+    columns = new Column[colCount];
+    for (int i = 0; i < colCount; i++) {
+      columns[i] = new Column(rowCount);
+    }
+    dirty.clear();
+    loadedInputValues.clear();
+    idPrefix = null;
+
+    CellQuery query = new CellQuery(cellFeedUrl);
+    query.setMinimumRow(minRow);
+    query.setMaximumRow(maxRow);
+    query.setMinimumCol(minCol);
+    query.setMaximumCol(maxCol);
+    query.setReturnEmpty(true);
+    CellFeed feed = service.streamFeed(query, CellFeed.class,
+        new BaseFeed.EntryListener<CellEntry>() {
+          public void entryParsed(CellEntry entry) {
+            loadEntry(entry);
+          }
+        });
+
+    Link batchLink = feed.getLink(Link.Rel.FEED_BATCH, Link.Type.ATOM);
+    if (batchLink != null) {
+      batchUrl = new URL(batchLink.getHref());
+    } else {
+      batchUrl = new URL(cellFeedUrl.toString() + "/batch");
+    }
+  }
+
+  /**
+   * Returns the first row held by this grid, starting with 1, or 0 if none
+   * is loaded.
+   */
+  public int getMinRow() {
+    return minRow;
+  }
+
+  /** Returns the last row held by this grid, or 0 if none is loaded. */
+  public int getMaxRow() {
+    return (rowCount == 0) ? 0 : minRow + rowCount - 1;
+  }
+
+  /**
+   * Returns the first column held by this grid, starting with 1, or 0 if
+   * none is loaded.
+   */
+  public int getMinCol() {
+    return minCol;
+  }
+
+  /** Returns the last column held by this grid, or 0 if none is loaded. */
+  public int getMaxCol() {
+    return (colCount == 0) ? 0 : minCol + colCount - 1;
+  }
+
+  /**
+   * Returns the input value of a cell: its formula, starting with '=', or
+   * its literal value.
+   *
+   * @param row row of the cell, starting with 1.
+   * @param col column of the cell, starting with 1.
+   * @return input value, or an empty string if the cell is empty.
+   */
+  public String getInputValue(int row, int col) {
+    return columns[colOffset(col)].getInputValue(rowOffset(row));
+  }
+
+  /**
+   * Returns the numeric value of a cell.  The value of a changed cell is
+   * only known once it has been synchronized, unless it is a literal number.
+   *
+   * @param row row of the cell, starting with 1.
+   * @param col column of the cell, starting with 1.
+   * @return numeric value, or {@link Double#NaN} if it is not a number or
+   *     is not known.
+   */
+  public double getNumericValue(int row, int col) {
+    return columns[colOffset(col)].getNumericValue(rowOffset(row));
+  }
+
+  /**
+   * Sets the input value of a cell.  The cell is changed if the value
+   * differs from the one loaded from the server.
+   *
+   * @param row row of the cell, starting with 1.
+   * @param col column of the cell, starting with 1.
+   * @param inputValue new input value: a formula, starting with '=', or a
+   *     literal value.  An empty string clears the cell.
+   */
+  public void setInputValue(int row, int col, String inputValue) {
+    Preconditions.checkNotNull(inputValue, "inputValue");
+    int r = rowOffset(row);
+    int c = colOffset(col);
+    Column column = columns[c];
+    String current = column.getInputValue(r);
+    if (current.equals(inputValue)) {
+      return;
+    }
+
+    int index = c * rowCount + r;
+    if (!dirty.get(index)) {
+      dirty.set(index);
+      loadedInputValues.put(index, current);
+    } else if (loadedInputValues.get(index).equals(inputValue)) {
+      dirty.clear(index);
+      loadedInputValues.remove(index);
+    }
+    column.set(r, inputValue, literalNumber(inputValue));
+  }
+
+  /**
+   * Returns whether a cell has been changed since it was loaded.
+   *
+   * @param row row of the cell, starting with 1.
+   * @param col column of the cell, starting with 1.
+   */
+  public boolean isChanged(int row, int col) {
+    int r = rowOffset(row);
+    return dirty.get(colOffset(col) * rowCount + r);
+  }
+
+  /** Returns the number of cells changed since they were loaded. */
+  public int getChangedCount() {
+    return dirty.cardinality();
+  }
+
+  /**
+   * Writes the changed cells to the server, in batch requests of at most
+   * {@link #getBatchSize()} cells.  The cells that have been updated take
+   * the values and versions returned by the server and are no longer
+   * changed.  The cells that could not be updated, for example because they
+   * have been changed on the server since they were loaded, stay changed
+   * and are returned.
+   *
+   * @return cells that could not be updated, in column order.
+   * @throws IOException error communicating with the server.
+   * @throws BatchInterruptedException if the server stopped processing a
+   *     batch.  The cells updated until then are no longer changed.
+   * @throws ServiceException error reported by the server.
+   */
+  public List<Failure> sync() throws IOException, ServiceException {
+    Preconditions.checkState(batchUrl != null, "No cells loaded");
+    List<Failure> failures = new ArrayList<Failure>();
+    int index = dirty.nextSetBit(0);
+    while (index >= 0) {
+      CellFeed batchRequest = new CellFeed();
+      List<CellEntry> entries = batchRequest.getEntries();
+      while (index >= 0 && entries.size() < batchSize) {
+        entries.add(createUpdateEntry(index));
+        index = dirty.nextSetBit(index + 1);
+      }
+
+      CellFeed batchResponse;
+      try {
+        batchResponse = service.batch(batchUrl, batchRequest);
+      } catch (BatchInterruptedException e) {
+        // The partial response is parsed into the class of the request.
+        applyBatchResponse((CellFeed) e.getIFeed(), failures);
+        throw e;
+      }
+      applyBatchResponse(batchResponse, failures);
+    }
+    return failures;
+  }
+
+  /** Stores the cell of an entry of the cells feed. */
+  private void loadEntry(CellEntry entry) {
+    Cell cell = entry.getCell();
+    if (cell == null) {
+      return;
+    }
+    int r = cell.getRow() - minRow;
+    int c = cell.getCol() - minCol;
+    if (r < 0 || r >= rowCount || c < 0 || c >= colCount) {
+      return;
+    }
+
+    String id = entry.getId();
+    if (idPrefix == null && id != null) {
+      idPrefix = id.substring(0, id.lastIndexOf('/') + 1);
+    }
+    Number numericValue = cell.getNumericValue();
+    Column column = columns[c];
+    column.set(r, cell.getInputValue(),
+        numericValue == null ? Double.NaN : numericValue.doubleValue());
+    Link editLink = entry.getEditLink();
+    column.editPaths[r] =
+        editLink == null ? null : toEditPath(editLink.getHref());
+    column.setEtag(r, entry.getEtag());
+  }
+
+  /** Creates the batch entry that updates a changed cell. */
+  private CellEntry createUpdateEntry(int index) {
+    int r = index % rowCount;
+    int c = index / rowCount;
+    int row = minRow + r;
+    int col = minCol + c;
+    Column column = columns[c];
+
+    CellEntry entry = new CellEntry(row, col, column.getInputValue(r));
+    String cellName = "R" + row + "C" + col;
+    entry.setId(getIdPrefix() + cellName);
+    String editPath = column.editPaths[r];
+    if (editPath != null) {
+      entry.addLink(Link.Rel.ENTRY_EDIT, Link.Type.ATOM,
+          toEditHref(editPath));
+    }
+    entry.setEtag(column.getEtag(r));
+    BatchUtils.setBatchId(entry, cellName);
+    BatchUtils.setBatchOperationType(entry, BatchOperationType.UPDATE);
+    return entry;
+  }
+
+  /** Applies the entries of a batch response to the grid. */
+  private void applyBatchResponse(CellFeed batchResponse,
+      List<Failure> failures) {
+    if (batchResponse == null) {
+      return;
+    }
+    for (CellEntry entry : batchResponse.getEntries()) {
+      int[] position = parseCellName(BatchUtils.getBatchId(entry));
+      if (position == null) {
+        continue;
+      }
+      int r = position[0] - minRow;
+      int c = position[1] - minCol;
+      if (r < 0 || r >= rowCount || c < 0 || c >= colCount) {
+        continue;
+      }
+      if (BatchUtils.isSuccess(entry)) {
+        int index = c * rowCount + r;
+        dirty.clear(index);
+        loadedInputValues.remove(index);
+        loadEntry(entry);
+      } else {
+        failures.add(new Failure(position[0], position[1],
+            BatchUtils.getBatchStatus(entry)));
+      }
+    }
+  }
+
+  private String getIdPrefix() {
+    if (idPrefix == null) {
+      return cellFeedUrl.toString() + "/";
+    }
+    return idPrefix;
+  }
+
+  /**
+   * Returns the edit link of a cell relative to the id prefix, which drops
+   * the part common to all the cells of the worksheet.
+   */
+  private String toEditPath(String editHref) {
+    String prefix = getIdPrefix();
+    return editHref.startsWith(prefix)
+        ? editHref.substring(prefix.length()) : editHref;
+  }
+
+  private String toEditHref(String editPath) {
+    return editPath.indexOf("://") < 0 ? getIdPrefix() + editPath : editPath;
+  }
+
+  private int rowOffset(int row) {
+    int r = row - minRow;
+    if (r < 0 || r >= rowCount) {
+      throw new IndexOutOfBoundsException("Row " + row + " not loaded");
+    }
+    return r;
+  }
+
+  private int colOffset(int col) {
+    int c = col - minCol;
+    if (c < 0 || c >= colCount) {
+      throw new IndexOutOfBoundsException("Column " + col + " not loaded");
+    }
+    return c;
+  }
+
+  /**
+   * Parses a cell name like {@code R2C15} into its row and column, or
+   * returns {@code null} if it is not a cell name.
+   */
+  private static int[] parseCellName(String name) {
+    if (name == null || !name.startsWith("R")) {
+      return null;
+    }
+    int colStart = name.indexOf('C');
+    if (colStart < 0) {
+      return null;
+    }
+    try {
+      return new int[] {
+          Integer.parseInt(name.substring(1, colStart)),
+          Integer.parseInt(name.substring(colStart + 1))};
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the number in a literal input value, or {@link Double#NaN} for
+   * formulas and other text, whose numeric value only the server knows.
+   */
+  private static double literalNumber(String inputValue) {
+    if (inputValue.length() == 0 || inputValue.charAt(0) == '=') {
+      return Double.NaN;
+    }
+    try {
+      return Double.parseDouble(inputValue);
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+  /**
+   * Cells of one column of the grid.  Numeric values and entity tags are
+   * only allocated once a cell of the column has one.
+   */
+  private static class Column {
+
+    /** Input values, {@code null} for empty cells. */
+    final String[] inputValues;
+
+    /** Edit links relative to the id prefix. */
+    final String[] editPaths;
+
+    double[] numericValues;
+    String[] etags;
+
+    Column(int rowCount) {
+      inputValues = new String[rowCount];
+      editPaths = new String[rowCount];
+    }
+
+    String getInputValue(int r) {
+      String inputValue = inputValues[r];
+      return inputValue == null ? "" : inputValue;
+    }
+
+    double getNumericValue(int r) {
+      return numericValues == null ? Double.NaN : numericValues[r];
+    }
+
+    String getEtag(int r) {
+      return etags == null ? null : etags[r];
+    }
+
+    void set(int r, String inputValue, double numericValue) {
+      inputValues[r] =
+          inputValue == null || inputValue.length() == 0 ? null : inputValue;
+      if (numericValues == null) {
+        if (Double.isNaN(numericValue)) {
+          return;
+        }
+        numericValues = new double[inputValues.length];
+        Arrays.fill(numericValues, Double.NaN);
+      }
+      numericValues[r] = numericValue;
+    }
+
+    void setEtag(int r, String etag) {
+      if (etags == null) {
+        if (etag == null) {
+          return;
+        }
+        etags = new String[inputValues.length];
+      }
+      etags[r] = etag;
+    }
+  }
+}
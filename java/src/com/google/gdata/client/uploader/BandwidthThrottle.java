@@ -0,0 +1,92 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.uploader;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate at which bytes are sent by one or more uploaders sharing
+ * the same instance.  Uploaders report the bytes they have written through
+ * {@link #acquire(long)}, which blocks the writing thread for as long as the
+ * total rate exceeds the limit.  Up to one second worth of unused bandwidth
+ * may be used as a burst after the uploaders have been idle.
+ *
+ *
+ */
+public class BandwidthThrottle {
+
+  /**
+   * Maximum amount of unused bandwidth, in nanoseconds of transfer, that can
+   * be saved up for a burst.
+   */
+  private static final long MAX_BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * Maximum number of bytes per second.
+   */
+  private final long bytesPerSecond;
+
+  /**
+   * Time at which the bytes acquired so far have been paid for.
+   */
+  private long nextFreeNanos = System.nanoTime();
+
+  /**
+   * Constructs a throttle.
+   *
+   * @param bytesPerSecond maximum number of bytes per second, must be
+   *     positive
+   */
+  public BandwidthThrottle(long bytesPerSecond) {
+    if (bytesPerSecond <= 0) {
+      throw new IllegalArgumentException(
+          "The rate must be a positive number of bytes per second.");
+    }
+    this.bytesPerSecond = bytesPerSecond;
+  }
+
+  /**
+   * Returns the maximum number of bytes per second.
+   */
+  public long getBytesPerSecond() {
+    return bytesPerSecond;
+  }
+
+  /**
+   * Records that bytes have been sent, waiting until sending them keeps the
+   * rate within the limit.
+   *
+   * @param numBytes number of bytes sent
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void acquire(long numBytes) throws InterruptedException {
+    long waitNanos = reserve(numBytes);
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  /**
+   * Accounts for the bytes and returns the number of nanoseconds to wait.
+   */
+  private synchronized long reserve(long numBytes) {
+    long now = System.nanoTime();
+    long costNanos = (long) (numBytes * 1e9 / bytesPerSecond);
+    nextFreeNanos = Math.max(nextFreeNanos, now - MAX_BURST_NANOS) + costNanos;
+    return nextFreeNanos - now;
+  }
+}
@@ -16,19 +16,43 @@
 
 package com.google.gdata.client.uploader;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * An implementation of {@link UploadData} that provides data from a {@code File}.
+ * <p>
+ * The file is read through a single {@link FileChannel} using positional
+ * reads, so setting the position does not reopen or skip through the file,
+ * and {@link #read(long, ByteBuffer)} and {@link #transferTo} can be used by
+ * several threads at once. The channel is opened by the first read, so
+ * data waiting in a queue holds no file descriptor, and reopened on demand
+ * after {@link #close()}. A thread interrupted during a read closes the
+ * channel; it is reopened for the next read as well.
  * 
  * 
  */
-public class FileUploadData implements UploadData {
+public class FileUploadData implements UploadData, Closeable {
 
   private final File file;
-  private FileInputStream stream;
+
+  /**
+   * Guards {@link #channel}. Reads hold the read lock so that several can
+   * run at once, while opening and closing the channel take the write lock.
+   */
+  private final ReadWriteLock channelLock = new ReentrantReadWriteLock();
+  private FileChannel channel;
+
+  private long position;
 
   public FileUploadData(File file) throws IOException {
     if (file == null) {
@@ -38,8 +62,6 @@ public class FileUploadData implements UploadData {
     if (!file.exists() || !file.canRead()) {
       throw new IOException();
     }
-    stream = new FileInputStream(file);
-    
   }
 
   public long length() {
@@ -47,17 +69,101 @@ public class FileUploadData implements UploadData {
   }
   
   public void read(byte[] destination) throws IOException {
-    stream.read(destination);
+    read(destination, 0, destination.length);
   }
   
-  public void setPosition(long position) throws IOException {
-    stream = new FileInputStream(file);
-    stream.skip(position);
+  public synchronized void setPosition(long position) throws IOException {
+    if (position < 0 || position > length()) {
+      throw new IOException("Invalid position: " + position);
+    }
+    this.position = position;
   }
   
-  public int read(byte[] chunk, int i, int length) throws IOException {
-    return stream.read(chunk, i, length);
-  }    
+  public synchronized int read(byte[] chunk, int i, int length)
+      throws IOException {
+    int numRead = read(position, ByteBuffer.wrap(chunk, i, length));
+    if (numRead > 0) {
+      position += numRead;
+    }
+    return numRead;
+  }
+
+  /**
+   * Reads bytes starting at a given offset into a buffer, independently of
+   * the current position.
+   *
+   * @param position offset from the start of the file.
+   * @param destination buffer to read into.
+   * @return the number of bytes read, or {@code -1} at the end of the file.
+   * @throws IOException if the data could not be read.
+   */
+  public int read(long position, ByteBuffer destination) throws IOException {
+    while (true) {
+      FileChannel current = lockChannel();
+      try {
+        return current.read(destination, position);
+      } catch (ClosedByInterruptException e) {
+        throw e;
+      } catch (ClosedChannelException e) {
+        // Closed by the interrupt of another thread, read again from a new
+        // channel. Nothing was read into the buffer.
+      } finally {
+        channelLock.readLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * Transfers bytes starting at a given offset to a channel, independently of
+   * the current position. The bytes are copied by the operating system
+   * without going through the Java heap when the target is a file or socket
+   * channel.
+   *
+   * @param position offset from the start of the file.
+   * @param count maximum number of bytes to transfer.
+   * @param target channel to write to.
+   * <p>
+   * Unlike {@link #read(long, ByteBuffer)}, a transfer that fails because
+   * another thread was interrupted is not retried, since part of the data
+   * may already have been written to the target.
+   *
+   * @return the number of bytes transferred.
+   * @throws IOException if the data could not be read or written.
+   */
+  public long transferTo(long position, long count, WritableByteChannel target)
+      throws IOException {
+    FileChannel current = lockChannel();
+    try {
+      return current.transferTo(position, count, target);
+    } finally {
+      channelLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Closes the underlying file once the reads in progress have completed. A
+   * later read reopens it.
+   */
+  public void close() throws IOException {
+    channelLock.writeLock().lock();
+    try {
+      if (channel != null) {
+        channel.close();
+      }
+    } finally {
+      channel = null;
+      channelLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the file.
+   *
+   * @return the local file
+   */
+  public File getFile() {
+    return file;
+  }
 
   /**
    * Gets the filename.
@@ -67,4 +173,27 @@ public class FileUploadData implements UploadData {
   public String getFileName() {
     return file.getName();
   }
+
+  /**
+   * Returns the open channel, opening it if needed, with the read lock held.
+   * The caller must release the read lock.
+   */
+  private FileChannel lockChannel() throws IOException {
+    channelLock.readLock().lock();
+    if (channel != null && channel.isOpen()) {
+      return channel;
+    }
+    channelLock.readLock().unlock();
+    channelLock.writeLock().lock();
+    try {
+      if (channel == null || !channel.isOpen()) {
+        channel = new RandomAccessFile(file, "r").getChannel();
+      }
+      // Downgrade to the read lock
+      channelLock.readLock().lock();
+      return channel;
+    } finally {
+      channelLock.writeLock().unlock();
+    }
+  }
 }
@@ -29,8 +29,12 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Uploads a file using resumable HTTP requests (see {@linkplain
@@ -50,6 +54,9 @@ import java.util.concurrent.TimeoutException;
  */
 public class ResumableHttpFileUploader {
 
+  private static final Logger logger =
+      Logger.getLogger(ResumableHttpFileUploader.class.getName());
+
   /**
    * The response message returned by the upload task when it has finished
    * uploading the last chunk. The response message instance will hold the
@@ -126,10 +133,12 @@ public class ResumableHttpFileUploader {
    * Upload state associated with this file uploader.  <code>CLIENT_ERROR</code>
    * means that the uploader was unable to execute the upload properly because
    * of a thread execution error, or if a file was manipulated between the time
-   * that the upload was started and completed.
+   * that the upload was started and completed.  <code>QUEUED</code> means that
+   * the upload has been started or resumed but waits for a thread of the
+   * executor.
    */
   public enum UploadState {
-    COMPLETE, CLIENT_ERROR, IN_PROGRESS, NOT_STARTED, PAUSED
+    COMPLETE, CLIENT_ERROR, IN_PROGRESS, NOT_STARTED, PAUSED, QUEUED
   }
 
   /**
@@ -162,19 +171,17 @@ public class ResumableHttpFileUploader {
   private class NotificationTask extends TimerTask {
     private final ResumableHttpFileUploader fileUploader;
     private final ProgressListener listener;
-    private final Timer timer;
 
     public NotificationTask(ResumableHttpFileUploader fileUploader,
-        ProgressListener listener, Timer timer) {
+        ProgressListener listener) {
       this.fileUploader = fileUploader;
       this.listener = listener;
-      this.timer = timer;
     }
 
     @Override
     public void run() {
       if (!fileUploader.getUploadState().equals(UploadState.IN_PROGRESS)) {
-        timer.cancel();
+        fileUploader.cancelProgressNotifications();
       }
       listener.progressChanged(fileUploader);
     }
@@ -197,6 +204,12 @@ public class ResumableHttpFileUploader {
    */
   private Future<ResponseMessage> uploadResultFuture;
 
+  /**
+   * The most recently submitted upload task.  An earlier task that only
+   * starts running after the upload was paused and resumed does nothing.
+   */
+  private ResumableHttpUploadTask currentTask;
+
   /**
    * The file to upload.
    */
@@ -207,6 +220,12 @@ public class ResumableHttpFileUploader {
    */
   private URL url;
 
+  /**
+   * The URL the upload was started with, which identifies the upload in the
+   * journal while {@link #url} may move to the upload session.
+   */
+  private final URL destinationUrl;
+
   /**
    * HTTP request method to use when uploading.
    */
@@ -218,10 +237,40 @@ public class ResumableHttpFileUploader {
   private Map<String, String> headers = new HashMap<String, String>();
 
   /**
-   * Timer for sending progress notifications on a fixed time interval.
+   * Timer for sending progress notifications on a fixed time interval, if no
+   * progress scheduler has been provided.
    */
   private Timer progressNotifier;
 
+  /**
+   * Shared scheduler for sending progress notifications, or {@code null} to
+   * use a timer of this uploader.
+   */
+  private final ScheduledExecutorService progressScheduler;
+
+  /**
+   * Scheduled progress notifications when using the progress scheduler.
+   */
+  private ScheduledFuture<?> progressFuture;
+
+  /**
+   * Throttle limiting the rate at which bytes are sent, or {@code null} for
+   * none.
+   */
+  private final BandwidthThrottle throttle;
+
+  /**
+   * Journal recording the state of the upload on disk, or {@code null} for
+   * none.
+   */
+  private final UploadJournal journal;
+
+  /**
+   * Identifies if the uploader continues an upload session found in the
+   * journal.
+   */
+  private boolean reattached;
+
   /**
    * Executor service to execute asynchronous upload tasks.
    */
@@ -268,6 +317,9 @@ public class ResumableHttpFileUploader {
     private long progressIntervalMillis = DEFAULT_PROGRESS_INTERVAL_MS;
     private RequestMethod requestMethod = RequestMethod.PUT;
     private BackoffPolicy backoffPolicy = BackoffPolicy.DEFAULT;
+    private ScheduledExecutorService progressScheduler;
+    private BandwidthThrottle throttle;
+    private UploadJournal journal;
 
     /**
      * @param url which locates the destination of the upload request
@@ -370,6 +422,42 @@ public class ResumableHttpFileUploader {
       return this;
     }
 
+    /**
+     * @param progressScheduler scheduler to send progress notifications
+     *     with, which can be shared by many uploaders.  By default each
+     *     uploader sends notifications from its own timer thread.
+     * @return this
+     */
+    public Builder setProgressScheduler(
+        ScheduledExecutorService progressScheduler) {
+      this.progressScheduler = progressScheduler;
+      return this;
+    }
+
+    /**
+     * @param throttle to limit the rate at which bytes are sent, which can be
+     *     shared by many uploaders to limit their total rate
+     * @return this
+     */
+    public Builder setThrottle(BandwidthThrottle throttle) {
+      this.throttle = throttle;
+      return this;
+    }
+
+    /**
+     * @param journal to record the state of a file upload in, so that it can
+     *     be continued after a restart.  If the journal holds a record for
+     *     the file that is still current, the uploader continues the
+     *     recorded upload session instead of the one given by the URL, and
+     *     starting it first asks the server which bytes it has received.
+     *     Only uploads of a {@link FileUploadData} are journaled.
+     * @return this
+     */
+    public Builder setJournal(UploadJournal journal) {
+      this.journal = journal;
+      return this;
+    }
+
     /**
      * Constructs a ResumableHttpFileUploader instance from this builder.
      *
@@ -452,6 +540,10 @@ public class ResumableHttpFileUploader {
     chunkSize = builder.chunkSize;
     httpRequestMethod = builder.requestMethod;
     backoffPolicy =  builder.backoffPolicy;
+    progressScheduler = builder.progressScheduler;
+    throttle = builder.throttle;
+    journal = builder.journal;
+    destinationUrl = url;
 
     // Ensure a valid URL is passed.
     checkArgument(url != null && url.getHost() != null
@@ -470,6 +562,21 @@ public class ResumableHttpFileUploader {
     if (RequestMethod.POST.equals(httpRequestMethod)) {
       addHeader(METHOD_OVERRIDE, RequestMethod.PUT.toString());
     }
+
+    // Reattach to a journaled upload session of the same file.
+    File file = getJournaledFile();
+    if (file != null) {
+      UploadJournal.Record record = journal.get(file, destinationUrl);
+      if (record != null) {
+        if (record.matches(file)) {
+          url = record.getSessionUrl();
+          numBytesUploaded = record.getBytesAcknowledged();
+          reattached = true;
+        } else {
+          journal.remove(file, destinationUrl);
+        }
+      }
+    }
   }
 
   /**
@@ -595,9 +702,7 @@ public class ResumableHttpFileUploader {
    */
   public synchronized void pause() {
     setUploadState(UploadState.PAUSED);
-    if (progressNotifier != null) {
-      progressNotifier.cancel();
-    }
+    cancelProgressNotifications();
   }
 
   /**
@@ -615,8 +720,9 @@ public class ResumableHttpFileUploader {
   }
 
   /**
-   * Starts an upload beginning with the first byte in the file.  This method
-   * does not block.
+   * Starts an upload beginning with the first byte in the file, or, if the
+   * uploader has reattached to a journaled upload session, with the first
+   * byte the server has not received.  This method does not block.
    *
    * @return future to access upload result
    */
@@ -678,13 +784,111 @@ public class ResumableHttpFileUploader {
     return chunkSize;
   }
 
+  /**
+   * Called by an upload task once it runs.  Moves a queued upload to the
+   * <code>IN_PROGRESS</code> state and starts sending progress notifications.
+   *
+   * @param task the running task
+   * @return <code>false</code> if the task must not upload, because the
+   *     upload has been paused or resumed by another task while it was queued
+   */
+  synchronized boolean startTask(ResumableHttpUploadTask task) {
+    if (task != currentTask || !uploadState.equals(UploadState.QUEUED)) {
+      return false;
+    }
+    setUploadState(UploadState.IN_PROGRESS);
+    if (progressListener != null) {
+      if (progressScheduler != null) {
+        progressFuture = progressScheduler.scheduleAtFixedRate(
+            new NotificationTask(this, progressListener),
+            0, progressIntervalMillis, TimeUnit.MILLISECONDS);
+      } else {
+        progressNotifier = new Timer();
+        progressNotifier.schedule(
+            new NotificationTask(this, progressListener),
+            0, progressIntervalMillis);
+      }
+    }
+    return true;
+  }
+
   /**
    * Sends a progress notification to the progress listener if one has been
    * specified.
    */
   void sendCompletionNotification() {
     if (progressListener != null) {
-      new NotificationTask(this, progressListener, progressNotifier).run();
+      new NotificationTask(this, progressListener).run();
+    }
+  }
+
+  /**
+   * Records in the journal, if any, that the server has acknowledged the
+   * bytes before an index.
+   *
+   * @param nextByteIndex index of the first byte not received by the server
+   */
+  void journalProgress(long nextByteIndex) {
+    File file = getJournaledFile();
+    if (file != null) {
+      try {
+        journal.put(file, destinationUrl, url, nextByteIndex);
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Cannot journal upload of " + file, e);
+      }
+    }
+  }
+
+  /**
+   * Removes the record of a completed upload from the journal, if any.
+   */
+  void journalCompletion() {
+    File file = getJournaledFile();
+    if (file != null) {
+      try {
+        journal.remove(file, destinationUrl);
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Cannot journal upload of " + file, e);
+      }
+    }
+  }
+
+  /**
+   * Returns the file whose upload is journaled, or {@code null} if the
+   * upload is not journaled.
+   */
+  private File getJournaledFile() {
+    if (journal != null && data instanceof FileUploadData) {
+      return ((FileUploadData) data).getFile();
+    }
+    return null;
+  }
+
+  /**
+   * Stops sending periodic progress notifications.
+   */
+  synchronized void cancelProgressNotifications() {
+    if (progressNotifier != null) {
+      progressNotifier.cancel();
+    }
+    if (progressFuture != null) {
+      progressFuture.cancel(false);
+    }
+  }
+
+  /**
+   * Waits, if a throttle has been provided, until sending bytes keeps the
+   * upload rate within its limit.
+   *
+   * @param numBytes number of bytes that have been sent
+   */
+  void throttle(long numBytes) {
+    if (throttle != null) {
+      try {
+        throttle.acquire(numBytes);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
     }
   }
 
@@ -725,22 +929,17 @@ public class ResumableHttpFileUploader {
    * the server has already received (if any), otherwise the task attempts to
    * upload from the beginning of the file.  The task blocks until the upload
    * completes, is paused, or an error occurs.  The task is submitted to the
-   * executor, however, and thus does not block in the current thread.
+   * executor, however, and thus does not block in the current thread.  The
+   * upload stays <code>QUEUED</code>, without progress notifications, until
+   * the executor runs the task.
    *
    * @param resume <code>true</code> if the file should be resumed
    */
-  private void upload(boolean resume) {
-    setUploadState(UploadState.IN_PROGRESS);
+  private synchronized void upload(boolean resume) {
+    setUploadState(UploadState.QUEUED);
     ResumableHttpUploadTask task = new ResumableHttpUploadTask(
-        urlConnectionFactory, this, resume);
-
-    if (progressListener != null) {
-      progressNotifier = new Timer();
-      progressNotifier.schedule(
-          new NotificationTask(this, progressListener, progressNotifier),
-          0, progressIntervalMillis);
-    }
-
+        urlConnectionFactory, this, resume || reattached);
+    currentTask = task;
     uploadResultFuture = executor.submit(task);
   }
 }
@@ -0,0 +1,286 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.uploader;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gdata.client.uploader.ResumableHttpFileUploader.RequestMethod;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs many resumable uploads on shared resources: a bounded pool of upload
+ * threads, a single scheduler thread for progress notifications and an
+ * optional throttle on the total upload rate.
+ *
+ * Uploads are started with {@link #submit(URL, UploadData)}, or by building
+ * uploaders with {@link #newUploaderBuilder()}.  At most the configured number
+ * of uploads send data at the same time; further uploads wait in a queue for
+ * a free thread.  A paused upload releases its thread, and keeps the state it
+ * needs to continue from the bytes the server has received once it is
+ * resumed with {@link ResumableHttpFileUploader#resume()}.
+ *
+ *
+ */
+public class ResumableHttpUploadManager {
+
+  /**
+   * Default maximum number of uploads sending data at the same time.
+   */
+  public static final int DEFAULT_MAX_CONCURRENT_UPLOADS = 4;
+
+  /**
+   * Builder class for constructing {@link ResumableHttpUploadManager}
+   * instances.
+   */
+  public static class Builder {
+    private int maxConcurrentUploads = DEFAULT_MAX_CONCURRENT_UPLOADS;
+    private long maxBytesPerSecond;
+    private UrlConnectionFactory urlConnectionFactory =
+        UrlConnectionFactory.DEFAULT;
+    private ProgressListener progressListener;
+    private long chunkSize = ResumableHttpFileUploader.DEFAULT_MAX_CHUNK_SIZE;
+    private long progressIntervalMillis =
+        ResumableHttpFileUploader.DEFAULT_PROGRESS_INTERVAL_MS;
+    private RequestMethod requestMethod = RequestMethod.PUT;
+
+    /**
+     * @param maxConcurrentUploads maximum number of uploads sending data at
+     *     the same time
+     * @return this
+     */
+    public Builder setMaxConcurrentUploads(int maxConcurrentUploads) {
+      this.maxConcurrentUploads = maxConcurrentUploads;
+      return this;
+    }
+
+    /**
+     * @param maxBytesPerSecond maximum total number of bytes per second sent
+     *     by all uploads, or {@code 0} for no limit
+     * @return this
+     */
+    public Builder setMaxBytesPerSecond(long maxBytesPerSecond) {
+      this.maxBytesPerSecond = maxBytesPerSecond;
+      return this;
+    }
+
+    /**
+     * @param urlConnectionFactory
+     * @return this
+     */
+    public Builder setUrlConnectionFactory(
+        UrlConnectionFactory urlConnectionFactory) {
+      this.urlConnectionFactory = urlConnectionFactory;
+      return this;
+    }
+
+    /**
+     * @param progressListener for receiving progress notifications of all
+     *     uploads
+     * @return this
+     */
+    public Builder setProgressListener(ProgressListener progressListener) {
+      this.progressListener = progressListener;
+      return this;
+    }
+
+    /**
+     * @param chunkSize size of the chunks that will get uploaded by individual
+     *     HTTP requests
+     * @return this
+     */
+    public Builder setChunkSize(long chunkSize) {
+      this.chunkSize = chunkSize;
+      return this;
+    }
+
+    /**
+     * @param progressIntervalMillis number of milliseconds between
+     *     progress listener notifications
+     * @return this
+     */
+    public Builder setProgressIntervalMillis(long progressIntervalMillis) {
+      this.progressIntervalMillis = progressIntervalMillis;
+      return this;
+    }
+
+    /**
+     * @param requestMethod the http request type for upload.  Use either
+     *     PUT request or POST request with x-http-method-override header set
+     *     to PUT.
+     * @return this
+     */
+    public Builder setRequestMethod(RequestMethod requestMethod) {
+      this.requestMethod = requestMethod;
+      return this;
+    }
+
+    /**
+     * Constructs a ResumableHttpUploadManager instance from this builder.
+     *
+     * @return a new ResumableHttpUploadManager according to the builder
+     *     parameters
+     */
+    public ResumableHttpUploadManager build() {
+      return new ResumableHttpUploadManager(this);
+    }
+  }
+
+  /**
+   * Executor running the upload tasks.
+   */
+  private final ThreadPoolExecutor executor;
+
+  /**
+   * Scheduler sending the progress notifications of all uploads.
+   */
+  private final ScheduledExecutorService progressScheduler;
+
+  /**
+   * Throttle shared by all uploads, or {@code null} for none.
+   */
+  private final BandwidthThrottle throttle;
+
+  private final UrlConnectionFactory urlConnectionFactory;
+  private final ProgressListener progressListener;
+  private final long chunkSize;
+  private final long progressIntervalMillis;
+  private final RequestMethod requestMethod;
+
+  /**
+   * Constructs a new manager from a builder.
+   *
+   * @param builder to use to construct this manager
+   */
+  ResumableHttpUploadManager(Builder builder) {
+    if (builder.maxConcurrentUploads <= 0) {
+      throw new IllegalArgumentException(
+          "The maximum number of concurrent uploads must be positive.");
+    }
+    if (builder.maxBytesPerSecond < 0) {
+      throw new IllegalArgumentException(
+          "The maximum number of bytes per second must not be negative.");
+    }
+    urlConnectionFactory = builder.urlConnectionFactory;
+    progressListener = builder.progressListener;
+    chunkSize = builder.chunkSize;
+    progressIntervalMillis = builder.progressIntervalMillis;
+    requestMethod = builder.requestMethod;
+    throttle = builder.maxBytesPerSecond > 0
+        ? new BandwidthThrottle(builder.maxBytesPerSecond) : null;
+
+    progressScheduler = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder()
+            .setNameFormat("ResumableHttpUploadProgress-%d")
+            .setDaemon(true)
+            .build());
+    executor = new ThreadPoolExecutor(
+        builder.maxConcurrentUploads, builder.maxConcurrentUploads,
+        60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactoryBuilder()
+            .setNameFormat("ResumableHttpUpload-%d")
+            .setDaemon(true)
+            .build()) {
+      @Override
+      protected void terminated() {
+
+        // Progress notifications are sent until the last upload finishes.
+        progressScheduler.shutdown();
+      }
+    };
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Returns a builder for an uploader that runs on the resources of this
+   * manager.  The URL and data to upload must be set on the builder.  The
+   * executor, progress scheduler and throttle should not be changed.
+   *
+   * @return uploader builder
+   */
+  public ResumableHttpFileUploader.Builder newUploaderBuilder() {
+    return new ResumableHttpFileUploader.Builder()
+        .setExecutorService(executor)
+        .setProgressScheduler(progressScheduler)
+        .setThrottle(throttle)
+        .setUrlConnectionFactory(urlConnectionFactory)
+        .setProgressListener(progressListener)
+        .setChunkSize(chunkSize)
+        .setProgressIntervalMillis(progressIntervalMillis)
+        .setRequestMethod(requestMethod);
+  }
+
+  /**
+   * Queues an upload.  The upload starts once fewer than the maximum number
+   * of uploads are sending data.
+   *
+   * @param url which locates the destination of the upload request
+   * @param data to be uploaded
+   * @return the uploader, which can be used to follow, pause and resume the
+   *     upload
+   * @throws IOException if the uploader cannot be constructed
+   */
+  public ResumableHttpFileUploader submit(URL url, UploadData data)
+      throws IOException {
+    ResumableHttpFileUploader uploader = newUploaderBuilder()
+        .setUrl(url)
+        .setData(data)
+        .build();
+    uploader.start();
+    return uploader;
+  }
+
+  /**
+   * Returns the number of uploads waiting for a free thread.
+   */
+  public int getQueuedUploadCount() {
+    return executor.getQueue().size();
+  }
+
+  /**
+   * Returns the number of uploads sending data.
+   */
+  public int getActiveUploadCount() {
+    return executor.getActiveCount();
+  }
+
+  /**
+   * Stops accepting uploads.  Uploads that have been submitted are
+   * completed, and paused uploads can no longer be resumed.
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /**
+   * Waits until all submitted uploads have finished after {@link #shutdown()}.
+   *
+   * @param timeout maximum time to wait
+   * @param unit of the timeout
+   * @return {@code true} if all uploads have finished
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean awaitTermination(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    return executor.awaitTermination(timeout, unit);
+  }
+}
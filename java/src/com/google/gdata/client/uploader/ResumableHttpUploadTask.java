@@ -23,6 +23,9 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
@@ -63,6 +66,12 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
    */
   private static final String CONTENT_RANGE_HEADER_NAME = "Content-Range";
 
+  /**
+   * Number of bytes transferred from a file between checks for a paused
+   * upload (64 KB).
+   */
+  private static final long TRANSFER_SIZE = 65536L;
+
   /**
    * Constructs an upload task.
    *
@@ -77,7 +86,16 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
   }
 
   public ResponseMessage call() throws Exception {
-    return upload();
+    try {
+      return upload();
+    } finally {
+
+      // Release the file until the upload is resumed.
+      UploadData uploadData = uploader.getData();
+      if (uploadData instanceof FileUploadData) {
+        ((FileUploadData) uploadData).close();
+      }
+    }
   }
 
   /**
@@ -189,7 +207,11 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
    * @throws IOException if no connection can be made to the server
    */
   private ResponseMessage upload() throws IOException {
+    if (!uploader.startTask(this)) {
+      return null;
+    }
     long start = resume ? getNextStartByteFromServer() : 0L;
+    uploader.journalProgress(start);
 
     while (uploader.getUploadState().equals(UploadState.IN_PROGRESS)) {
 
@@ -215,7 +237,8 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
 
         // Check for 308 and 503, and handle accordingly, otherwise return
         // the response stream.
-        switch (connection.getResponseCode()) {
+        int responseCode = connection.getResponseCode();
+        switch (responseCode) {
           case 308:
 
             // Incomplete, set the byte range to the next chunk of bytes.
@@ -232,6 +255,7 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
               uploader.setUrl(new URL(location));
             }
             uploader.getBackoffPolicy().reset();
+            uploader.journalProgress(start);
             break;
           case 503:
 
@@ -263,6 +287,11 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
             // Complete, return the input stream for the caller to read and send
             // a completion notification.
             uploader.setUploadState(UploadState.COMPLETE);
+
+            // Keep the journal record unless the upload succeeded.
+            if (responseCode >= 200 && responseCode < 300) {
+              uploader.journalCompletion();
+            }
             uploader.sendCompletionNotification();
             uploader.getBackoffPolicy().reset();
             return new ResponseMessage(connection.getContentLength(),
@@ -303,6 +332,12 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
   void writeSlice(long start, long length, OutputStream out)
       throws IOException, ServerException {
 
+    UploadData uploadData = uploader.getData();
+    if (uploadData instanceof FileUploadData) {
+      transferSlice((FileUploadData) uploadData, start, length, out);
+      return;
+    }
+
     // The number of bytes read from the file to be uploaded.
     int numRead = 0;
 
@@ -315,7 +350,6 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
     byte[] chunk = new byte[65536];
 
     // Input stream to the file to upload (starting at <code>start</code>).
-    UploadData uploadData = uploader.getData();
     uploadData.setPosition(start);
 
     synchronized (uploadData) {
@@ -346,6 +380,7 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
           out.flush();
           numRemaining -= numRead;
           uploader.addNumBytesUploaded(numRead);
+          uploader.throttle(numRead);
 
           // Break out of the loop if the end of the slice has been reached.
           if (numRemaining == 0) {
@@ -358,6 +393,85 @@ class ResumableHttpUploadTask implements Callable<ResponseMessage> {
     }
   }
 
+  /**
+   * Writes the byte range of a file beginning at <code>start</code> using
+   * positional transfers from the file channel, so that no read position is
+   * shared with other users of the data. The uploader is checked for a pause
+   * after each transfer of up to 64 KB.
+   *
+   * @param uploadData file to upload
+   * @param start byte index from which to begin sending data
+   * @param length of the byte range to send in the request
+   * @param out stream to write the request to
+   * @throws IOException if the contents of the file cannot be read
+   * @throws ServerException if the connection to the server is broken
+   */
+  private void transferSlice(FileUploadData uploadData, long start,
+      long length, OutputStream out) throws IOException, ServerException {
+    RequestChannel channel = new RequestChannel(out);
+    long position = start;
+    long numRemaining = length;
+    while (numRemaining > 0 && !uploader.isPaused()) {
+      long numTransferred;
+      try {
+        numTransferred = uploadData.transferTo(
+            position, Math.min(numRemaining, TRANSFER_SIZE), channel);
+      } catch (IOException e) {
+        if (channel.failed) {
+          throw new ServerException();
+        }
+        throw e;
+      }
+      try {
+        out.flush();
+      } catch (IOException e) {
+        throw new ServerException();
+      }
+
+      // If we expected to read more bytes from the file, but the end of
+      // the file has been reached, fail the upload.
+      if (numTransferred <= 0) {
+        uploader.setUploadState(UploadState.CLIENT_ERROR);
+        break;
+      }
+      position += numTransferred;
+      numRemaining -= numTransferred;
+      uploader.addNumBytesUploaded(numTransferred);
+      uploader.throttle(numTransferred);
+    }
+  }
+
+  /**
+   * Channel writing to the request output stream, which records whether a
+   * write failed to tell connection errors apart from file read errors.
+   */
+  private static class RequestChannel implements WritableByteChannel {
+
+    private final WritableByteChannel target;
+    boolean failed;
+
+    RequestChannel(OutputStream out) {
+      target = Channels.newChannel(out);
+    }
+
+    public int write(ByteBuffer src) throws IOException {
+      try {
+        return target.write(src);
+      } catch (IOException e) {
+        failed = true;
+        throw e;
+      }
+    }
+
+    public boolean isOpen() {
+      return target.isOpen();
+    }
+
+    public void close() throws IOException {
+      target.close();
+    }
+  }
+
   /**
    * Exception that should be thrown when a connection with the server is
    * broken.
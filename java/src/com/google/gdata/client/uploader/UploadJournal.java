@@ -0,0 +1,290 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.uploader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Records the state of resumable file uploads on disk, so that an upload
+ * interrupted by a restart of the JVM can be continued by a new uploader
+ * instead of starting again from the first byte.
+ *
+ * For each file and destination URL the journal keeps one record holding
+ * the upload session URL, the identity of the file (path, length and last
+ * modification time) and the number of bytes the server has acknowledged.
+ * The same file may thus be uploaded to several destinations at once.  An
+ * uploader built with a journal reattaches to the session
+ * of a matching record and asks the server which bytes it has received
+ * before sending the rest (see {@link
+ * ResumableHttpFileUploader.Builder#setJournal(UploadJournal)}).
+ *
+ * Records are stored as properties files in the journal directory, and are
+ * replaced atomically where the file system allows it.
+ *
+ *
+ */
+public class UploadJournal {
+
+  private static final String URL_KEY = "url";
+  private static final String DESTINATION_KEY = "destination";
+  private static final String PATH_KEY = "path";
+  private static final String LENGTH_KEY = "length";
+  private static final String LAST_MODIFIED_KEY = "lastModified";
+  private static final String BYTES_ACKNOWLEDGED_KEY = "bytesAcknowledged";
+
+  /**
+   * Journal record for a file upload.
+   */
+  public static class Record {
+    private final URL sessionUrl;
+    private final URL destinationUrl;
+    private final String path;
+    private final long length;
+    private final long lastModified;
+    private final long bytesAcknowledged;
+
+    Record(URL sessionUrl, URL destinationUrl, String path, long length,
+        long lastModified, long bytesAcknowledged) {
+      this.sessionUrl = sessionUrl;
+      this.destinationUrl = destinationUrl;
+      this.path = path;
+      this.length = length;
+      this.lastModified = lastModified;
+      this.bytesAcknowledged = bytesAcknowledged;
+    }
+
+    /**
+     * Returns the URL of the upload session.
+     */
+    public URL getSessionUrl() {
+      return sessionUrl;
+    }
+
+    /**
+     * Returns the URL the upload was started with.
+     */
+    public URL getDestinationUrl() {
+      return destinationUrl;
+    }
+
+    /**
+     * Returns the canonical path of the uploaded file.
+     */
+    public String getPath() {
+      return path;
+    }
+
+    /**
+     * Returns the length of the file when the upload was recorded.
+     */
+    public long getLength() {
+      return length;
+    }
+
+    /**
+     * Returns the last modification time of the file when the upload was
+     * recorded.
+     */
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    /**
+     * Returns the number of bytes the server had acknowledged.
+     */
+    public long getBytesAcknowledged() {
+      return bytesAcknowledged;
+    }
+
+    /**
+     * Identifies if a file is the one that was being uploaded, and has not
+     * changed since.
+     *
+     * @param file to compare with the record
+     * @return <code>true</code> if the file matches the record
+     * @throws IOException if the path of the file cannot be resolved
+     */
+    public boolean matches(File file) throws IOException {
+      return path.equals(file.getCanonicalPath())
+          && length == file.length()
+          && lastModified == file.lastModified();
+    }
+  }
+
+  /**
+   * Directory containing the records.
+   */
+  private final File directory;
+
+  /**
+   * Constructs a journal storing its records in a directory, which is created
+   * if it does not exist.
+   *
+   * @param directory to store the records in
+   * @throws IOException if the directory cannot be created
+   */
+  public UploadJournal(File directory) throws IOException {
+    if (directory == null) {
+      throw new IllegalArgumentException("Must provide a directory.");
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create journal directory " + directory);
+    }
+    this.directory = directory;
+  }
+
+  /**
+   * Returns the directory containing the records.
+   */
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Returns the record for the upload of a file to a destination, or
+   * <code>null</code> if there is none.  The record may describe an earlier
+   * version of the file; use {@link Record#matches(File)} to check.
+   *
+   * @param file being uploaded
+   * @param destinationUrl URL the upload was started with
+   * @return the record or <code>null</code>
+   * @throws IOException if the record cannot be read
+   */
+  public synchronized Record get(File file, URL destinationUrl)
+      throws IOException {
+    String path = file.getCanonicalPath();
+    String destination = destinationUrl.toString();
+    File recordFile = getRecordFile(path, destination);
+    Properties properties = new Properties();
+    InputStream in;
+    try {
+      in = new FileInputStream(recordFile);
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+    try {
+      properties.load(in);
+    } finally {
+      in.close();
+    }
+
+    // The record may belong to another upload with the same name hash.
+    if (!path.equals(properties.getProperty(PATH_KEY))
+        || !destination.equals(properties.getProperty(DESTINATION_KEY))) {
+      return null;
+    }
+    try {
+      return new Record(
+          new URL(properties.getProperty(URL_KEY)),
+          destinationUrl,
+          path,
+          Long.parseLong(properties.getProperty(LENGTH_KEY)),
+          Long.parseLong(properties.getProperty(LAST_MODIFIED_KEY)),
+          Long.parseLong(properties.getProperty(BYTES_ACKNOWLEDGED_KEY)));
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid journal record " + recordFile);
+    }
+  }
+
+  /**
+   * Records the state of the upload of a file to a destination, replacing
+   * any previous record for both.
+   *
+   * @param file being uploaded
+   * @param destinationUrl URL the upload was started with
+   * @param sessionUrl URL of the upload session
+   * @param bytesAcknowledged number of bytes the server has acknowledged
+   * @throws IOException if the record cannot be written
+   */
+  public synchronized void put(File file, URL destinationUrl, URL sessionUrl,
+      long bytesAcknowledged) throws IOException {
+    String path = file.getCanonicalPath();
+    String destination = destinationUrl.toString();
+    Properties properties = new Properties();
+    properties.setProperty(URL_KEY, sessionUrl.toString());
+    properties.setProperty(DESTINATION_KEY, destination);
+    properties.setProperty(PATH_KEY, path);
+    properties.setProperty(LENGTH_KEY, String.valueOf(file.length()));
+    properties.setProperty(LAST_MODIFIED_KEY,
+        String.valueOf(file.lastModified()));
+    properties.setProperty(BYTES_ACKNOWLEDGED_KEY,
+        String.valueOf(bytesAcknowledged));
+
+    File recordFile = getRecordFile(path, destination);
+    File tempFile = new File(directory, recordFile.getName() + ".tmp");
+    OutputStream out = new FileOutputStream(tempFile);
+    try {
+      properties.store(out, "Resumable upload of " + path);
+      out.flush();
+    } finally {
+      out.close();
+    }
+
+    // Rename does not replace an existing file on every platform.
+    if (!tempFile.renameTo(recordFile)) {
+      recordFile.delete();
+      if (!tempFile.renameTo(recordFile)) {
+        throw new IOException("Cannot write journal record " + recordFile);
+      }
+    }
+  }
+
+  /**
+   * Removes the record for the upload of a file to a destination.
+   *
+   * @param file that was being uploaded
+   * @param destinationUrl URL the upload was started with
+   * @return <code>true</code> if a record was removed
+   * @throws IOException if the path of the file cannot be resolved
+   */
+  public synchronized boolean remove(File file, URL destinationUrl)
+      throws IOException {
+    return getRecordFile(file.getCanonicalPath(), destinationUrl.toString())
+        .delete();
+  }
+
+  /**
+   * Returns the file storing the record for a path and destination.
+   */
+  private File getRecordFile(String path, String destination) {
+    byte[] digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1").digest(
+          (path + '\n' + destination).getBytes("UTF-8"));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 not supported", e);
+    } catch (IOException e) {
+      throw new IllegalStateException("UTF-8 not supported", e);
+    }
+    StringBuilder name = new StringBuilder(digest.length * 2 + 11);
+    for (byte b : digest) {
+      name.append(Character.forDigit((b >> 4) & 0xf, 16));
+      name.append(Character.forDigit(b & 0xf, 16));
+    }
+    return new File(directory, name.append(".properties").toString());
+  }
+}
@@ -191,6 +191,9 @@ public abstract class BaseEntry<E extends BaseEntry>
     /** Links of entry. */
     public LinkedList<Link> links = new LinkedList<Link>();
 
+    /** Index of the links, or {@code null} if they are not indexed. */
+    public LinkIndex<Link> linkIndex;
+
     /** Authors of entry. */
     public LinkedList<Person> authors = new LinkedList<Person>();
 
@@ -369,6 +372,9 @@ public abstract class BaseEntry<E extends BaseEntry>
 
   public void addLink(Link link) {
     state.links.add(link);
+    if (state.linkIndex != null) {
+      state.linkIndex.add(link);
+    }
   }
 
   public Link addLink(String rel, String type, String href) {
@@ -451,6 +457,11 @@ public abstract class BaseEntry<E extends BaseEntry>
    */
   public Link getLink(String rel, String type) {
 
+    LinkIndex<Link> linkIndex = getLinkIndex();
+    if (linkIndex != null && rel != null) {
+      return linkIndex.getLink(rel, type);
+    }
+
     for (Link link : state.links) {
       if (link.matches(rel, type)) {
         return link;
@@ -471,6 +482,10 @@ public abstract class BaseEntry<E extends BaseEntry>
    * @return matching links.
    */
   public List<Link> getLinks(String relToMatch, String typeToMatch) {
+    LinkIndex<Link> linkIndex = getLinkIndex();
+    if (linkIndex != null && relToMatch != null) {
+      return linkIndex.getLinks(relToMatch, typeToMatch);
+    }
     List<Link> result = new ArrayList<Link>();
     for (Link link : state.links) {
       if (link.matches(relToMatch, typeToMatch)) {
@@ -495,6 +510,9 @@ public abstract class BaseEntry<E extends BaseEntry>
       Link link = iterator.next();
       if (link.matches(relToMatch, typeToMatch)) {
         iterator.remove();
+        if (state.linkIndex != null) {
+          state.linkIndex.remove(link);
+        }
       }
     }
   }
@@ -504,6 +522,43 @@ public abstract class BaseEntry<E extends BaseEntry>
    */
   public void removeLinks() {
     state.links.clear();
+    if (state.linkIndex != null) {
+      state.linkIndex.clear();
+    }
+  }
+
+  /**
+   * Sets whether links are indexed by relation, so that {@link #getLink} and
+   * {@link #getLinks(String, String)} find the links with a given
+   * {@code rel} value without scanning all links.  This is worthwhile when
+   * there are many links, or links are looked up many times.
+   * <p>
+   * The index is kept up to date by the methods of this class, and is
+   * rebuilt when links are added to or removed from {@link #getLinks()}
+   * directly.  Changing the {@code rel} value of a link, or replacing a link
+   * in {@link #getLinks()}, is only seen once the index is rebuilt by
+   * enabling it again.
+   */
+  public void setLinkIndexEnabled(boolean enabled) {
+    state.linkIndex = enabled ? new LinkIndex<Link>(state.links) : null;
+  }
+
+  /**
+   * Returns whether links are indexed by relation.
+   */
+  public boolean isLinkIndexEnabled() {
+    return state.linkIndex != null;
+  }
+
+  /**
+   * Returns the link index, if any, in sync with the links.
+   */
+  private LinkIndex<Link> getLinkIndex() {
+    LinkIndex<Link> linkIndex = state.linkIndex;
+    if (linkIndex != null) {
+      linkIndex.sync(state.links);
+    }
+    return linkIndex;
   }
 
 
@@ -534,7 +589,7 @@ public abstract class BaseEntry<E extends BaseEntry>
       link.setTitle(title);
     }
 
-    state.links.add(link);
+    addLink(link);
   }
 
 
@@ -190,6 +190,36 @@ public abstract class BaseFeed<F extends BaseFeed, E extends BaseEntry>
   /** Feed entries. */
   protected List<E> entries = new LinkedList<E>();
 
+  /**
+   * The EntryListener interface is implemented by clients that want to
+   * process the entries of a feed one at a time while the feed is being
+   * parsed, instead of reading them from the entry list once the whole feed
+   * has been parsed.
+   *
+   * @param <E> entry type of the feed.
+   * @see BaseFeed#setEntryListener(EntryListener)
+   */
+  public interface EntryListener<E> {
+
+    /**
+     * Called once the closing tag of an entry has been parsed. The entry is
+     * complete but the remainder of the feed, including any feed elements
+     * that follow the entries, has not been parsed yet.
+     *
+     * @param entry parsed entry.
+     * @throws ServiceException to abort parsing of the feed. An exception
+     *         that is not a {@link ParseException} is reported as the cause
+     *         of a {@link ParseException} thrown by the parser.
+     */
+    void entryParsed(E entry) throws ServiceException;
+  }
+
+  /**
+   * Listener that receives the entries parsed into this feed, or {@code null}
+   * if parsed entries are added to the entry list.
+   */
+  private EntryListener<? super E> entryListener;
+
   /**
    * Copy constructor that initializes a new BaseFeed instance to have
    * identical contents to another instance, using a shared reference to
@@ -392,6 +422,28 @@ public abstract class BaseFeed<F extends BaseFeed, E extends BaseEntry>
   /** Sets the list to use for storing the entry list */
   public void setEntries(List<E> entryList) { this.entries = entryList; }
 
+  /**
+   * Returns the listener that receives the entries parsed into this feed, or
+   * {@code null} if there is none.
+   */
+  public EntryListener<? super E> getEntryListener() {
+    return entryListener;
+  }
+
+  /**
+   * Sets a listener that receives the entries parsed into this feed. While a
+   * listener is set, each entry is passed to the listener as soon as it has
+   * been parsed and is not added to the entry list, so the memory used to
+   * parse a feed does not grow with the number of entries it contains. The
+   * feed metadata is still parsed into this feed.
+   *
+   * @param listener listener receiving parsed entries, or {@code null} to
+   *        collect parsed entries in the entry list.
+   */
+  public void setEntryListener(EntryListener<? super E> listener) {
+    this.entryListener = listener;
+  }
+
   // Implementation of Adaptable methods
   //
   public void addAdaptor(Kind.Adaptor adaptor) {
@@ -889,6 +941,22 @@ public abstract class BaseFeed<F extends BaseFeed, E extends BaseEntry>
     return new FeedHandler(p);
   }
 
+  /**
+   * Returns a handler that parses an {@code <atom:entry>} element of this
+   * feed in place of the default entry parsing, or {@code null} to parse
+   * the element into a new entry of the feed.  Subclasses override this to
+   * read entries into a representation other than the entry class.
+   *
+   * @param extProfile extension profile used to parse the feed.
+   * @param attrs attributes of the entry element.
+   * @return entry element handler, or {@code null} for the default one.
+   * @throws ParseException if the entry cannot be parsed.
+   */
+  protected ElementHandler getEntryHandler(ExtensionProfile extProfile,
+      Attributes attrs) throws ParseException {
+    return null;
+  }
+
   /** {@code <atom:feed>} parser. */
   public class FeedHandler extends SourceHandler {
 
@@ -936,10 +1004,19 @@ public abstract class BaseFeed<F extends BaseFeed, E extends BaseEntry>
 
         if (localName.equals("entry")) {
 
+          ElementHandler entryHandler = getEntryHandler(extProfile, attrs);
+          if (entryHandler != null) {
+            return entryHandler;
+          }
+
           E entry = createEntry();
-          entries.add(entry);
-          return ((BaseEntry<?>) entry).new AtomHandler(
-              extProfile);
+          if (entryListener == null) {
+            entries.add(entry);
+            return ((BaseEntry<?>) entry).new AtomHandler(
+                extProfile);
+          }
+          return newListenerEntryHandler(extProfile, (BaseEntry<?>) entry,
+              entry, entryListener);
         }
 
         // All other elements in the Atom namespace are handled by
@@ -964,6 +1041,49 @@ public abstract class BaseFeed<F extends BaseFeed, E extends BaseEntry>
     }
 
 
+    /**
+     * Returns a parser for {@code entry} that passes the parsed entry to an
+     * {@link EntryListener} instead of adding it to the entry list. The
+     * entry is passed twice so that its type argument can be captured.
+     */
+    private <T extends BaseEntry<?>> ElementHandler newListenerEntryHandler(
+        ExtensionProfile extProfile, BaseEntry<T> owner, E entry,
+        EntryListener<? super E> listener) {
+      return new ListenerEntryHandler<T>(extProfile, owner, entry, listener);
+    }
+
+
+    /**
+     * Entry parser that passes the parsed entry to an {@link EntryListener}
+     * instead of adding it to the entry list.
+     */
+    private class ListenerEntryHandler<T extends BaseEntry<?>>
+        extends BaseEntry<T>.AtomHandler {
+
+      private final E entry;
+      private final EntryListener<? super E> listener;
+
+      ListenerEntryHandler(ExtensionProfile extProfile, BaseEntry<T> owner,
+          E entry, EntryListener<? super E> listener) {
+        owner.super(extProfile);
+        this.entry = entry;
+        this.listener = listener;
+      }
+
+      @Override
+      public void processEndElement() throws ParseException {
+        super.processEndElement();
+        try {
+          listener.entryParsed(entry);
+        } catch (ParseException e) {
+          throw e;
+        } catch (ServiceException e) {
+          throw new ParseException(e);
+        }
+      }
+    }
+
+
     /** {@code <opensearch:totalResults>} parser. */
     private class TotalResultsHandler extends ElementHandler {
 
@@ -16,16 +16,15 @@
 
 package com.google.gdata.data;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.gdata.util.ParseException;
 
-import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.Locale;
 import java.util.TimeZone;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 
@@ -155,29 +154,78 @@ public class DateTime implements Comparable<Object> {
                     "([Zz]|((\\+|\\-)(\\d\\d):(\\d\\d)))?");
 
 
-  /** RFC 822 date/time format. */
-  private static final SimpleDateFormat dateTimeFormat822 =
-    new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
-
   private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
 
-  static {
-    dateTimeFormat822.setTimeZone(GMT);
-  }
+  /**
+   * RFC 822 date/time format, used for the values that are not handled by
+   * {@link #parseRfc822Fast(String)} and {@link #toStringRfc822()}.  The
+   * format is not thread-safe, so each thread has its own.
+   */
+  private static final ThreadLocal<SimpleDateFormat> dateTimeFormat822 =
+      new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+          SimpleDateFormat format = new SimpleDateFormat(
+              "EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
+          format.setTimeZone(GMT);
+          return format;
+        }
+      };
+
+  private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+  /**
+   * Start of the Gregorian calendar (1582-10-15T00:00:00Z).  The value of
+   * earlier dates depends on the Julian calendar, so they are computed with
+   * a {@link GregorianCalendar}; later dates are computed directly.
+   */
+  private static final long GREGORIAN_CUTOVER = -12219292800000L;
+
+  /** First year computed directly, the first full Gregorian year. */
+  private static final int FIRST_GREGORIAN_YEAR = 1583;
+
+  /**
+   * Start of the year 10000 (10000-01-01T00:00:00Z).  Later dates have more
+   * than four year digits, so they are formatted like dates before the
+   * Gregorian cutover.
+   */
+  private static final long YEAR_10000 = 253402300800000L;
+
+  /** RFC 822 day names, starting on Sunday. */
+  private static final String[] DAY_NAMES = {
+    "Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"
+  };
+
+  /** RFC 822 month names. */
+  private static final String[] MONTH_NAMES = {
+    "Jan", "Feb", "Mar", "Apr", "May", "Jun",
+    "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+  };
 
 
   /** Formats the value as an xs:date or xs:dateTime string. */
   @Override
   public String toString() {
 
-    StringBuilder sb = new StringBuilder();
+    StringBuilder sb = new StringBuilder(29);
 
-    Calendar dateTime = new GregorianCalendar(GMT);
     long localTime = value;
     if (tzShift != null) {
      localTime += tzShift.longValue() * 60000;
     }
 
+    if (isFormattedDirectly(localTime)) {
+      long days = floorDiv(localTime, MILLIS_PER_DAY);
+      appendDate(sb, days);
+      if (!dateOnly) {
+        sb.append('T');
+        appendTime(sb, (int) (localTime - days * MILLIS_PER_DAY));
+      }
+      appendTzShift(sb);
+      return sb.toString();
+    }
+
+    Calendar dateTime = new GregorianCalendar(GMT);
     dateTime.setTimeInMillis(localTime);
 
     try {
@@ -203,70 +251,204 @@ public class DateTime implements Comparable<Object> {
         }
       }
 
-      if (tzShift != null) {
+      appendTzShift(sb);
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new RuntimeException(e);
+    }
+
+    return sb.toString();
+  }
+
+  /** Appends the yyyy-MM-dd date of a number of days since the epoch. */
+  private static void appendDate(StringBuilder sb, long days) {
+    int date = civilDate(days);
+    appendInt(sb, date / 10000, 4);
+    sb.append('-');
+    appendInt(sb, date / 100 % 100, 2);
+    sb.append('-');
+    appendInt(sb, date % 100, 2);
+  }
 
-        if (tzShift.intValue() == 0) {
+  /** Appends the HH:mm:ss.SSS time of a number of milliseconds in a day. */
+  private static void appendTime(StringBuilder sb, int millisOfDay) {
+    appendInt(sb, millisOfDay / 3600000, 2);
+    sb.append(':');
+    appendInt(sb, millisOfDay / 60000 % 60, 2);
+    sb.append(':');
+    appendInt(sb, millisOfDay / 1000 % 60, 2);
+    sb.append('.');
+    appendInt(sb, millisOfDay % 1000, 3);
+  }
 
-          sb.append('Z');
+  /** Appends the time zone shift, if any. */
+  private void appendTzShift(StringBuilder sb) {
+    if (tzShift != null) {
 
-        } else {
+      if (tzShift.intValue() == 0) {
 
-          int absTzShift = tzShift.intValue();
-          if (tzShift > 0) {
-            sb.append('+');
-          } else {
-            sb.append('-');
-            absTzShift = -absTzShift;
-          }
+        sb.append('Z');
+
+      } else {
 
-          int tzHours = absTzShift / 60;
-          int tzMinutes = absTzShift % 60;
-          appendInt(sb, tzHours, 2);
-          sb.append(':');
-          appendInt(sb, tzMinutes, 2);
+        int absTzShift = tzShift.intValue();
+        if (tzShift > 0) {
+          sb.append('+');
+        } else {
+          sb.append('-');
+          absTzShift = -absTzShift;
         }
+
+        int tzHours = absTzShift / 60;
+        int tzMinutes = absTzShift % 60;
+        appendInt(sb, tzHours, 2);
+        sb.append(':');
+        appendInt(sb, tzMinutes, 2);
       }
-    } catch (ArrayIndexOutOfBoundsException e) {
-      throw new RuntimeException(e);
     }
-
-    return sb.toString();
   }
 
 
   /** Formats the value as an RFC 822 date/time. */
   public String toStringRfc822() {
     assert !dateOnly;
-    synchronized (dateTimeFormat822) {
-      return dateTimeFormat822.format(value);
+    if (!isFormattedDirectly(value)) {
+      return dateTimeFormat822.get().format(value);
     }
+    long days = floorDiv(value, MILLIS_PER_DAY);
+    int date = civilDate(days);
+    int year = date / 10000;
+    int millisOfDay = (int) (value - days * MILLIS_PER_DAY);
+
+    StringBuilder sb = new StringBuilder(31);
+    sb.append(DAY_NAMES[(int) floorMod(days + 4, 7)]);
+    sb.append(", ");
+    appendInt(sb, date % 100, 2);
+    sb.append(' ');
+    sb.append(MONTH_NAMES[date / 100 % 100 - 1]);
+    sb.append(' ');
+    appendInt(sb, year, 4);
+    sb.append(' ');
+    appendInt(sb, millisOfDay / 3600000, 2);
+    sb.append(':');
+    appendInt(sb, millisOfDay / 60000 % 60, 2);
+    sb.append(':');
+    appendInt(sb, millisOfDay / 1000 % 60, 2);
+    sb.append(" +0000");
+    return sb.toString();
   }
 
   /** Parses the value as an RFC 822 date/time. */
   public static DateTime parseRfc822(String str) throws ParseException {
+    DateTime dateTime = (str == null) ? null : parseRfc822Fast(str);
+    if (dateTime != null) {
+      return dateTime;
+    }
+
     Date date;
-    synchronized (dateTimeFormat822) {
-      try {
-        date = dateTimeFormat822.parse(str);
-      } catch (java.text.ParseException e) {
-        throw new ParseException(e);
-      }
+    try {
+      date = dateTimeFormat822.get().parse(str);
+    } catch (java.text.ParseException e) {
+      throw new ParseException(e);
     }
 
     return new DateTime(date);
   }
 
+  /**
+   * Parses an RFC 822 date/time in the usual
+   * {@code EEE, dd MMM yyyy HH:mm:ss Z} form, with a numeric or {@code GMT}
+   * time zone.  Returns {@code null} for any other string, including the
+   * variants that {@link SimpleDateFormat} also accepts.
+   */
+  @VisibleForTesting
+  static DateTime parseRfc822Fast(String str) {
+    int length = str.length();
+    if (length < 28 || indexOfName(DAY_NAMES, str, 0) < 0
+        || str.charAt(3) != ',' || str.charAt(4) != ' ') {
+      return null;
+    }
+
+    // The day of the month has one or two digits.
+    int pos = 5;
+    int day = digit(str, pos++);
+    if (day < 0) {
+      return null;
+    }
+    if (str.charAt(pos) != ' ') {
+      int digit = digit(str, pos++);
+      if (digit < 0) {
+        return null;
+      }
+      day = day * 10 + digit;
+    }
+    // " MMM yyyy HH:mm:ss " is followed by a +hhmm or GMT zone.
+    if (length != pos + 24 && length != pos + 22) {
+      return null;
+    }
+
+    int month = indexOfName(MONTH_NAMES, str, pos + 1) + 1;
+    int year = number(str, pos + 5, 4);
+    int hour = number(str, pos + 10, 2);
+    int minute = number(str, pos + 13, 2);
+    int second = number(str, pos + 16, 2);
+    if (str.charAt(pos) != ' ' || month <= 0
+        || str.charAt(pos + 4) != ' ' || year < FIRST_GREGORIAN_YEAR
+        || str.charAt(pos + 9) != ' ' || hour < 0
+        || str.charAt(pos + 12) != ':' || minute < 0
+        || str.charAt(pos + 15) != ':' || second < 0
+        || str.charAt(pos + 18) != ' ') {
+      return null;
+    }
+
+    int zoneShift;
+    pos += 19;
+    if (length == pos + 3) {
+      if (!str.regionMatches(pos, "GMT", 0, 3)) {
+        return null;
+      }
+      zoneShift = 0;
+    } else {
+      char sign = str.charAt(pos);
+      int zoneHours = number(str, pos + 1, 2);
+      int zoneMinutes = number(str, pos + 3, 2);
+      if ((sign != '+' && sign != '-') || zoneHours < 0 || zoneHours > 23
+          || zoneMinutes < 0 || zoneMinutes > 59) {
+        return null;
+      }
+      zoneShift = zoneHours * 60 + zoneMinutes;
+      if (sign == '-') {
+        zoneShift = -zoneShift;
+      }
+    }
+
+    return new DateTime(toMillis(year, month, day, hour, minute, second, 0)
+        - zoneShift * 60000L);
+  }
+
   /** Formats the value as a human-readable string. */
   public String toUiString() {
 
-    StringBuilder sb = new StringBuilder();
+    StringBuilder sb = new StringBuilder(16);
 
-    Calendar dateTime = new GregorianCalendar(GMT);
     long localTime = value;
     if (tzShift != null) {
      localTime += tzShift.longValue() * 60000;
     }
 
+    if (isFormattedDirectly(localTime)) {
+      long days = floorDiv(localTime, MILLIS_PER_DAY);
+      appendDate(sb, days);
+      if (!dateOnly) {
+        int millisOfDay = (int) (localTime - days * MILLIS_PER_DAY);
+        sb.append(' ');
+        appendInt(sb, millisOfDay / 3600000, 2);
+        sb.append(':');
+        appendInt(sb, millisOfDay / 60000 % 60, 2);
+      }
+      return sb.toString();
+    }
+
+    Calendar dateTime = new GregorianCalendar(GMT);
     dateTime.setTimeInMillis(localTime);
 
     try {
@@ -297,61 +479,10 @@ public class DateTime implements Comparable<Object> {
   public static DateTime parseDateTime(String str)
       throws NumberFormatException {
 
-    Matcher m = str == null ? null : dateTimePattern.matcher(str);
-
-    if (str == null || !m.matches()) {
+    DateTime ret = (str == null) ? null : parse(str, false);
+    if (ret == null) {
       throw new NumberFormatException("Invalid date/time format.");
     }
-
-    /* Debugging help:
-    System.out.println("Year: " + m.group(1));
-    System.out.println("Month: " + m.group(2));
-    System.out.println("Day: " + m.group(3));
-    System.out.println("Hour: " + m.group(4));
-    System.out.println("Minute: " + m.group(5));
-    System.out.println("Second: " + m.group(6));
-    System.out.println("Second Fraction: " + m.group(8));
-    System.out.println("TZ: " + m.group(9));
-    System.out.println("TZ Shift: " + m.group(11));
-    System.out.println("TZ Hour: " + m.group(12));
-    System.out.println("TZ Minute: " + m.group(13));
-    */
-
-    DateTime ret = new DateTime();
-    ret.dateOnly = false;
-
-    if (m.group(9) == null) {
-      // No time zone specified.
-    } else if (m.group(9).equalsIgnoreCase("Z")) {
-      ret.tzShift = new Integer(0);
-    } else {
-      ret.tzShift = new Integer((Integer.valueOf(m.group(12)) * 60 +
-                                 Integer.valueOf(m.group(13))));
-      if (m.group(11).equals("-")) {
-        ret.tzShift = new Integer(-ret.tzShift.intValue());
-      }
-    }
-
-    Calendar dateTime = new GregorianCalendar(GMT);
-
-    dateTime.clear();
-    dateTime.set(Integer.valueOf(m.group(1)),
-                 Integer.valueOf(m.group(2)) - 1,
-                 Integer.valueOf(m.group(3)),
-                 Integer.valueOf(m.group(4)),
-                 Integer.valueOf(m.group(5)),
-                 Integer.valueOf(m.group(6)));
-    if (m.group(8) != null && m.group(8).length() > 0) {
-      final BigDecimal bd = new BigDecimal("0." + m.group(8));
-      // we care only for milliseconds, so movePointRight(3)
-      dateTime.set(Calendar.MILLISECOND, bd.movePointRight(3).intValue());
-    }
-
-    ret.value = dateTime.getTimeInMillis();
-    if (ret.tzShift != null) {
-      ret.value -= ret.tzShift.intValue() * 60000;
-    }
-
     return ret;
   }
 
@@ -359,45 +490,91 @@ public class DateTime implements Comparable<Object> {
   public static DateTime parseDate(String str)
       throws NumberFormatException {
 
-    Matcher m = str == null ? null : datePattern.matcher(str);
-
-    if (str == null || !m.matches()) {
+    DateTime ret = (str == null) ? null : parse(str, true);
+    if (ret == null) {
       throw new NumberFormatException("Invalid date format.");
     }
+    return ret;
+  }
+
+  /**
+   * Parses an xs:date or xs:dateTime string, with the syntax of
+   * {@link #datePattern} or {@link #dateTimePattern}.  Returns {@code null}
+   * if the string does not match.
+   */
+  private static DateTime parse(String str, boolean dateOnly) {
+
+    int length = str.length();
+    if (length < (dateOnly ? 10 : 19)) {
+      return null;
+    }
+    int year = number(str, 0, 4);
+    int month = number(str, 5, 2);
+    int day = number(str, 8, 2);
+    if (year < 0 || str.charAt(4) != '-'
+        || month < 0 || str.charAt(7) != '-' || day < 0) {
+      return null;
+    }
 
-    /* Debugging help:
-    System.out.println("Year: " + m.group(1));
-    System.out.println("Month: " + m.group(2));
-    System.out.println("Day: " + m.group(3));
-    System.out.println("TZ: " + m.group(4));
-    System.out.println("TZ Shift: " + m.group(6));
-    System.out.println("TZ Hour: " + m.group(7));
-    System.out.println("TZ Minute: " + m.group(8));
-    */
+    int pos = 10;
+    int hour = 0;
+    int minute = 0;
+    int second = 0;
+    int millis = 0;
+    if (!dateOnly) {
+      char separator = str.charAt(10);
+      hour = number(str, 11, 2);
+      minute = number(str, 14, 2);
+      second = number(str, 17, 2);
+      if ((separator != 'T' && separator != 't')
+          || hour < 0 || str.charAt(13) != ':'
+          || minute < 0 || str.charAt(16) != ':' || second < 0) {
+        return null;
+      }
+      pos = 19;
+
+      // Only milliseconds are kept from the fraction of a second.
+      if (pos < length && str.charAt(pos) == '.') {
+        int fractionStart = ++pos;
+        while (pos < length && digit(str, pos) >= 0) {
+          if (pos - fractionStart < 3) {
+            millis = millis * 10 + digit(str, pos);
+          }
+          pos++;
+        }
+        int fractionLength = pos - fractionStart;
+        if (fractionLength == 0) {
+          return null;
+        }
+        for (int i = fractionLength; i < 3; i++) {
+          millis *= 10;
+        }
+      }
+    }
 
     DateTime ret = new DateTime();
-    ret.dateOnly = true;
+    ret.dateOnly = dateOnly;
 
-    if (m.group(4) == null) {
+    if (pos == length) {
       // No time zone specified.
-    } else if (m.group(4).equalsIgnoreCase("Z")) {
-      ret.tzShift = new Integer(0);
     } else {
-      ret.tzShift = new Integer((Integer.valueOf(m.group(7)) * 60 +
-                                 Integer.valueOf(m.group(8))));
-      if (m.group(6).equals("-")) {
-        ret.tzShift = new Integer(-ret.tzShift.intValue());
+      char zone = str.charAt(pos);
+      if ((zone == 'Z' || zone == 'z') && pos + 1 == length) {
+        ret.tzShift = 0;
+      } else {
+        int zoneHours = number(str, pos + 1, 2);
+        int zoneMinutes = number(str, pos + 4, 2);
+        if ((zone != '+' && zone != '-') || pos + 6 != length
+            || zoneHours < 0 || str.charAt(pos + 3) != ':'
+            || zoneMinutes < 0) {
+          return null;
+        }
+        int shift = zoneHours * 60 + zoneMinutes;
+        ret.tzShift = (zone == '-') ? -shift : shift;
       }
     }
 
-    Calendar dateTime = new GregorianCalendar(GMT);
-
-    dateTime.clear();
-    dateTime.set(Integer.valueOf(m.group(1)),
-                 Integer.valueOf(m.group(2)) - 1,
-                 Integer.valueOf(m.group(3)));
-
-    ret.value = dateTime.getTimeInMillis();
+    ret.value = toMillis(year, month, day, hour, minute, second, millis);
     if (ret.tzShift != null) {
       ret.value -= ret.tzShift.intValue() * 60000;
     }
@@ -414,21 +591,125 @@ public class DateTime implements Comparable<Object> {
   public static DateTime parseDateTimeChoice(String value)
       throws NumberFormatException {
 
-    NumberFormatException exception;
+    // Only a date/time has a time separator after the date, so date values
+    // are parsed without first failing to parse them as a date/time.
+    if (value != null && value.length() > 10
+        && (value.charAt(10) == 'T' || value.charAt(10) == 't')) {
+      DateTime dateTime = parse(value, false);
+      if (dateTime != null) {
+        return dateTime;
+      }
+    }
+    return DateTime.parseDate(value);
+  }
 
-    try {
-      return DateTime.parseDateTime(value);
-    } catch (NumberFormatException e) {
-      exception = e;
+  /**
+   * Returns the number of milliseconds since the epoch of a UTC date and
+   * time.  Like a lenient {@link GregorianCalendar}, fields out of their
+   * range carry over to the next larger field.
+   */
+  private static long toMillis(int year, int month, int day, int hour,
+      int minute, int second, int millis) {
+
+    if (year < FIRST_GREGORIAN_YEAR) {
+      Calendar dateTime = new GregorianCalendar(GMT);
+      dateTime.clear();
+      dateTime.set(year, month - 1, day, hour, minute, second);
+      dateTime.set(Calendar.MILLISECOND, millis);
+      return dateTime.getTimeInMillis();
     }
 
-    try {
-      return DateTime.parseDate(value);
-    } catch (NumberFormatException e) {
-      exception = e;
+    // Carry months over to years, then count days from March 1st, so that
+    // leap days are at the end of the year.
+    int monthIndex = month - 1;
+    year += (int) floorDiv(monthIndex, 12);
+    month = (int) floorMod(monthIndex, 12) + 1;
+    if (month <= 2) {
+      year--;
+    }
+    int era = year / 400;
+    int yearOfEra = year - era * 400;
+    int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5;
+    long days = era * 146097L + yearOfEra * 365 + yearOfEra / 4
+        - yearOfEra / 100 + dayOfYear - 719468 + (day - 1);
+
+    return days * MILLIS_PER_DAY + hour * 3600000L + minute * 60000L
+        + second * 1000L + millis;
+  }
+
+  /**
+   * Returns whether a time is formatted with {@link #civilDate(long)}
+   * rather than with a {@link GregorianCalendar}.
+   */
+  private static boolean isFormattedDirectly(long millis) {
+    return millis >= GREGORIAN_CUTOVER && millis < YEAR_10000;
+  }
+
+  /**
+   * Returns the date of a number of days since the epoch, from the
+   * Gregorian cutover to the end of the year 9999, as a {@code yyyyMMdd}
+   * number.
+   */
+  private static int civilDate(long days) {
+    long shifted = days + 719468;
+    long era = floorDiv(shifted, 146097);
+    int dayOfEra = (int) (shifted - era * 146097);
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524
+        - dayOfEra / 146096) / 365;
+    int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4
+        - yearOfEra / 100);
+    int shiftedMonth = (5 * dayOfYear + 2) / 153;
+    int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+    int month = shiftedMonth + (shiftedMonth < 10 ? 3 : -9);
+    int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+    return year * 10000 + month * 100 + day;
+  }
+
+  private static long floorDiv(long x, long y) {
+    long q = x / y;
+    return (x % y < 0) ? q - 1 : q;
+  }
+
+  private static long floorMod(long x, long y) {
+    return x - floorDiv(x, y) * y;
+  }
+
+  /** Returns the value of an ASCII digit, or -1 if it isn't one. */
+  private static int digit(String str, int index) {
+    char c = str.charAt(index);
+    return (c >= '0' && c <= '9') ? c - '0' : -1;
+  }
+
+  /**
+   * Returns the value of a fixed number of ASCII digits, or -1 if they
+   * aren't all digits or the string is too short.
+   */
+  private static int number(String str, int start, int count) {
+    if (start + count > str.length()) {
+      return -1;
     }
+    int result = 0;
+    for (int i = start; i < start + count; i++) {
+      int digit = digit(str, i);
+      if (digit < 0) {
+        return -1;
+      }
+      result = result * 10 + digit;
+    }
+    return result;
+  }
 
-    throw exception;
+  /**
+   * Returns the index of the three letter name found at a position, ignoring
+   * case, or -1 if there is none.
+   */
+  private static int indexOfName(String[] names, String str, int start) {
+    for (int i = 0; i < names.length; i++) {
+      if (str.regionMatches(true, start, names[i], 0, 3)) {
+        return i;
+      }
+    }
+    return -1;
   }
 
 
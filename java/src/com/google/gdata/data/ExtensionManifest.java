@@ -71,6 +71,13 @@ public class ExtensionManifest {
   final List<ExtensionManifest> subclassManifests =
       new ArrayList<ExtensionManifest>();
 
+  /**
+   * Lookup table of the supported extensions by namespace URI, then local
+   * name, built when the extension profile is frozen.  {@code null} until
+   * then.
+   */
+  private Map<String, Map<String, ExtensionDescription>> compiledExtensions;
+
   /**
    * Constructs a new Manifest instance to manage the extension mappings
    * for a particular ExtensionPoint type.
@@ -89,6 +96,54 @@ public class ExtensionManifest {
     return Collections.unmodifiableMap(supportedExtensions);
   }
 
+  /**
+   * Returns the description of the extension with the given namespace URI
+   * and local name, or of the extension declared with a {@code *} local name
+   * in the namespace, or {@code null} if there is neither.
+   */
+  ExtensionDescription getExtensionDescription(String namespaceUri,
+      String localName) {
+
+    if (compiledExtensions != null) {
+      Map<String, ExtensionDescription> localNames =
+          compiledExtensions.get(namespaceUri);
+      if (localNames == null) {
+        return null;
+      }
+      ExtensionDescription extDescription = localNames.get(localName);
+      return (extDescription != null) ? extDescription : localNames.get("*");
+    }
+
+    ExtensionDescription extDescription =
+        supportedExtensions.get(Pair.of(namespaceUri, localName));
+    if (extDescription == null) {
+      extDescription = supportedExtensions.get(Pair.of(namespaceUri, "*"));
+    }
+    return extDescription;
+  }
+
+  /**
+   * Builds the lookup table used by
+   * {@link #getExtensionDescription(String, String)}.  The manifest must not
+   * change afterwards.
+   */
+  void compile() {
+    Map<String, Map<String, ExtensionDescription>> compiled =
+        new HashMap<String, Map<String, ExtensionDescription>>();
+    for (Map.Entry<Pair<String, String>, ExtensionDescription> entry
+        : supportedExtensions.entrySet()) {
+      String namespaceUri = entry.getKey().getFirst().intern();
+      Map<String, ExtensionDescription> localNames =
+          compiled.get(namespaceUri);
+      if (localNames == null) {
+        localNames = new HashMap<String, ExtensionDescription>();
+        compiled.put(namespaceUri, localNames);
+      }
+      localNames.put(entry.getKey().getSecond().intern(), entry.getValue());
+    }
+    compiledExtensions = compiled;
+  }
+
   /**
    * Retrieves a collection of namespace declarations for all possible
    * extensions based on this manifest.
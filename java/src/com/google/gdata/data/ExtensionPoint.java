@@ -16,7 +16,6 @@
 
 package com.google.gdata.data;
 
-import com.google.gdata.util.common.base.Pair;
 import com.google.gdata.util.common.xml.XmlNamespace;
 import com.google.gdata.util.common.xml.XmlWriter;
 import com.google.gdata.client.CoreErrorDomain;
@@ -544,15 +543,9 @@ public class ExtensionPoint extends AbstractExtension {
     if (profManifest == null) {
       return null;
     }
-    // look for an explicit match of the namespace URI and local name
-    ExtensionDescription extDescription =
-        profManifest.supportedExtensions.get(Pair.of(namespaceUri, localName));
-    // look for a match of the namespace URI with a wildcard local name 
-    if (extDescription == null) {
-      extDescription =
-          profManifest.supportedExtensions.get(Pair.of(namespaceUri, "*"));
-    }
-    return extDescription;
+    // look for an explicit match of the namespace URI and local name, then
+    // for a match of the namespace URI with a wildcard local name
+    return profManifest.getExtensionDescription(namespaceUri, localName);
   }
 
   /**
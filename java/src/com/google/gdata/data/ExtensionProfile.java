@@ -40,6 +40,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Specifies a complete extension profile for an extended GData schema.
@@ -49,6 +51,10 @@ import java.util.TreeSet;
  * For example, Calendar might allow {@code <gd:who>} within {@code
  * <atom:feed>}, and {@code <gd:when>}, {@code <gd:who>}, and {@code
  * <gd:where>} within {@code <atom:entry>}.
+ * <p>
+ * Once all declarations have been made, a profile can be {@link #freeze()
+ * frozen}.  A frozen profile can no longer change, and is read without
+ * locking while parsing.
  *
  * 
  * 
@@ -67,6 +73,10 @@ public class ExtensionProfile {
    */
   public void addDeclarations(Kind.Adaptor adaptor) {
     Class<? extends Kind.Adaptor> adaptorClass = adaptor.getClass();
+    if (frozen && declared.contains(adaptorClass)) {
+      return;
+    }
+    checkNotFrozen();
     if (declared.add(adaptorClass)) {
       adaptor.declareExtensions(this);
     }
@@ -85,6 +95,8 @@ public class ExtensionProfile {
    */
   public synchronized void declare(Class<? extends ExtensionPoint> extendedType,
                                    ExtensionDescription extDescription) {
+    checkNotFrozen();
+
     // When configuring an extension profile that is auto-extensible, remap
     // th extension point assocations from the specific type down to any
     // base adaptable type.  This ensures that extensions will be parseable
@@ -240,6 +252,7 @@ public class ExtensionProfile {
   public synchronized void declareArbitraryXmlExtension(
       Class<? extends ExtensionPoint> extendedType,
       boolean mixedContent) {
+    checkNotFrozen();
     ExtensionManifest manifest = getOrCreateManifest(extendedType);
     manifest.arbitraryXml = true;
     manifest.mixedContent = mixedContent;
@@ -257,33 +270,46 @@ public class ExtensionProfile {
 
   /** Specifies additional top-level namespace declarations. */
   public synchronized void declareAdditionalNamespace(XmlNamespace ns) {
+    checkNotFrozen();
     additionalNamespaces.add(ns);
   }
 
 
   /** Specifies the type of feeds nested within {@code <gd:feedLink>}. */
   public synchronized void declareFeedLinkProfile(ExtensionProfile profile) {
+    checkNotFrozen();
     feedLinkProfile = profile;
     nsDecls = null;
   }
 
 
   /** Retrieves the type of feeds nested within {@code <gd:feedLink>}. */
-  public synchronized ExtensionProfile getFeedLinkProfile() {
-    return feedLinkProfile;
+  public ExtensionProfile getFeedLinkProfile() {
+    if (frozen) {
+      return feedLinkProfile;
+    }
+    synchronized (this) {
+      return feedLinkProfile;
+    }
   }
 
 
   /** Specifies the type of entries nested within {@code <gd:entryLink>}. */
   public synchronized void declareEntryLinkProfile(ExtensionProfile profile) {
+    checkNotFrozen();
     entryLinkProfile = profile;
     nsDecls = null;
   }
 
 
   /** Retrieves the type of entries nested within {@code <gd:entryLink>}. */
-  public synchronized ExtensionProfile getEntryLinkProfile() {
-    return entryLinkProfile;
+  public ExtensionProfile getEntryLinkProfile() {
+    if (frozen) {
+      return entryLinkProfile;
+    }
+    synchronized (this) {
+      return entryLinkProfile;
+    }
   }
 
 
@@ -292,6 +318,25 @@ public class ExtensionProfile {
    * its superclasses) or {@code null} if not specified.
    */
   public ExtensionManifest getManifest(Class<?> extendedType) {
+    if (frozen && extendedType != null) {
+      ExtensionManifest manifest = resolvedManifests.get(extendedType);
+      if (manifest == null) {
+        manifest = findManifest(extendedType);
+        resolvedManifests.putIfAbsent(extendedType,
+            (manifest != null) ? manifest : NO_MANIFEST);
+        return manifest;
+      }
+      return (manifest != NO_MANIFEST) ? manifest : null;
+    }
+    return findManifest(extendedType);
+  }
+
+
+  /**
+   * Looks up the manifest for a class, or the closest superclass that has
+   * one.
+   */
+  private ExtensionManifest findManifest(Class<?> extendedType) {
     ExtensionManifest manifest = null;
     while (extendedType != null) {
       manifest = profile.get(extendedType);
@@ -314,13 +359,65 @@ public class ExtensionProfile {
 
 
   /** Retrieves a collection of all namespaces used by this profile. */
-  public synchronized Collection<XmlNamespace> getNamespaceDecls() {
+  public Collection<XmlNamespace> getNamespaceDecls() {
+
+    if (frozen) {
+      return nsDecls;
+    }
+
+    synchronized (this) {
+      if (nsDecls == null) {
+        nsDecls = computeNamespaceDecls();
+      }
+
+      return nsDecls;
+    }
+  }
 
+
+  /**
+   * Freezes the profile.  The manifest of each declared type is compiled into
+   * a lookup table keyed by namespace URI and local name, and the manifest
+   * found for each extended class is remembered, so parsing no longer
+   * allocates keys or walks up the class hierarchy.  Once frozen, the
+   * profile is read without locking.
+   * <p>
+   * Any later attempt to change the profile throws an
+   * {@link IllegalStateException}.  Profiles that are declared for nested
+   * feed and entry links are not frozen by this method.
+   *
+   * @throws IllegalStateException if the profile is auto-extending, since
+   *         it then declares extensions while parsing
+   */
+  public synchronized void freeze() {
+    if (frozen) {
+      return;
+    }
+    if (isAutoExtending) {
+      throw new IllegalStateException(
+          "An auto-extending profile cannot be frozen");
+    }
+    for (Map.Entry<Class<?>, ExtensionManifest> entry : profile.entrySet()) {
+      entry.getValue().compile();
+      resolvedManifests.put(entry.getKey(), entry.getValue());
+    }
     if (nsDecls == null) {
       nsDecls = computeNamespaceDecls();
     }
+    frozen = true;
+  }
+
 
-    return nsDecls;
+  /** Returns whether the profile has been frozen. */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+
+  private void checkNotFrozen() {
+    if (frozen) {
+      throw new IllegalStateException("Extension profile is frozen");
+    }
   }
 
 
@@ -329,6 +426,20 @@ public class ExtensionProfile {
     new HashMap<Class<?>, ExtensionManifest>();
 
 
+  /** Marker for the classes that have no manifest in a frozen profile. */
+  private static final ExtensionManifest NO_MANIFEST =
+      new ExtensionManifest(ExtensionPoint.class);
+
+
+  /** Manifests found for extended classes once the profile is frozen. */
+  private final ConcurrentMap<Class<?>, ExtensionManifest> resolvedManifests =
+      new ConcurrentHashMap<Class<?>, ExtensionManifest>();
+
+
+  /** {@code true} once the profile has been frozen. */
+  private volatile boolean frozen;
+
+
   /** Additional namespaces. */
   private Collection<XmlNamespace> additionalNamespaces =
     new LinkedHashSet<XmlNamespace>();
@@ -349,7 +460,10 @@ public class ExtensionProfile {
   /** Profile supports auto-extension declaration */
   private boolean isAutoExtending = false;
 
-  public void setAutoExtending(boolean v) { isAutoExtending = v; }
+  public void setAutoExtending(boolean v) {
+    checkNotFrozen();
+    isAutoExtending = v;
+  }
   public boolean isAutoExtending() { return isAutoExtending; }
 
   /**
@@ -372,7 +486,10 @@ public class ExtensionProfile {
    *
    * #see ExtensionPoint.getXmlBlob()
    */
-  public void setArbitraryXml(boolean v) { allowsArbitraryXml = v; }
+  public void setArbitraryXml(boolean v) {
+    checkNotFrozen();
+    allowsArbitraryXml = v;
+  }
 
   /**
    * Returns whether foreign XML elements will be preserved within any
@@ -20,6 +20,7 @@ import com.google.gdata.util.Namespaces;
 import com.google.gdata.util.ServiceException;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
@@ -27,12 +28,19 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Target;
 import java.lang.reflect.Constructor;
 import java.net.HttpURLConnection;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 /**
  * The Kind class defines annotation types, interfaces and static helper 
@@ -51,13 +59,22 @@ public class Kind {
   public static final String META_DIRECTORY = "META-INF/gdata/kinds/";
   
   /**
-   * Caches the mappings from a kind term to the {@link Adaptor} classes that
-   * handle the kind.  Since these are configured by JAR-based metadata,
-   * they are guaranteed to be constant once loaded unless/until the
-   * classloader for GData java library is bounced.
+   * Caches the mappings from a kind service name to the {@link Adaptor}
+   * classes that handle the kind.  Since these are configured by JAR-based
+   * metadata, they are guaranteed to be constant once loaded unless/until the
+   * classloader for GData java library is bounced.  The lists are never
+   * modified once cached, and an empty list records that no adaptor is
+   * available for the kind, so lookups of known kinds take no locks and do
+   * no I/O.
    */
-  private static Map<String, List<Class<Adaptor>>> kindAdaptors =
-      new HashMap<String, List<Class<Adaptor>>>();
+  private static final ConcurrentMap<String, List<Class<Adaptor>>>
+      kindAdaptors = new ConcurrentHashMap<String, List<Class<Adaptor>>>();
+
+  /**
+   * Caches the mappings from a kind term to its kind service name.
+   */
+  private static final ConcurrentMap<String, String> kindServiceNames =
+      new ConcurrentHashMap<String, String>();
 
   /**
    * The Term annnotation type is used to annotate {@link Adaptor}
@@ -234,37 +251,32 @@ public class Kind {
                                                Adaptable adaptable)
       throws AdaptorException {
 
-    ClassLoader cl = adaptable.getClass().getClassLoader();
+    String termService = kindServiceNames.get(kindTerm);
+    if (termService == null) {
+      termService = getKindServiceName(kindTerm);
+      kindServiceNames.put(kindTerm, termService);
+    }
 
-    List<Class<Adaptor>> adaptorList = kindAdaptors.get(kindTerm);
+    List<Class<Adaptor>> adaptorList = kindAdaptors.get(termService);
     if (adaptorList == null) {
       // Lazily load the adaptor list for a kind on first usage and store
       // in the cache.
-      adaptorList = new ArrayList<Class<Adaptor>>();
-      String termService = getKindServiceName(kindTerm);
-      InputStream serviceStream;
-      try {
-        serviceStream = cl.getResourceAsStream(META_DIRECTORY
-            + termService);
-        if (serviceStream == null) {
-          return null;
-        }
-        BufferedReader rdr =
-          new BufferedReader(new InputStreamReader(serviceStream));
-        String line;
-        while ((line = rdr.readLine()) != null) {
-          if (line.charAt(0) == '#') {  // comment line
-            continue;
-          }
-          
-          adaptorList.add((Class<Adaptor>) cl.loadClass(line));
-        }
-      } catch (IOException ioe) {
-        throw new AdaptorException("Unable to load Adaptor service info", ioe);
-      } catch (ClassNotFoundException cnfe) {
-        throw new AdaptorException("Unable to load Adaptor class", cnfe);
+      ClassLoader cl = adaptable.getClass().getClassLoader();
+      InputStream serviceStream =
+          cl.getResourceAsStream(META_DIRECTORY + termService);
+      if (serviceStream == null) {
+        adaptorList = Collections.emptyList();
+      } else {
+        adaptorList = loadAdaptorList(cl, serviceStream);
+      }
+      List<Class<Adaptor>> cachedList =
+          kindAdaptors.putIfAbsent(termService, adaptorList);
+      if (cachedList != null) {
+        adaptorList = cachedList;
       }
-      kindAdaptors.put(kindTerm, adaptorList);
+    }
+    if (adaptorList.isEmpty()) {
+      return null;
     }
 
     // A mix-in adaptor type will only have one mapping, that can be used
@@ -290,6 +302,118 @@ public class Kind {
     return null;
   }
 
+  /**
+   * Reads the {@link Adaptor} classes listed in a kind service file.
+   *
+   * @param cl class loader used to load the adaptor classes.
+   * @param serviceStream contents of the kind service file, closed on return.
+   * @return unmodifiable list of adaptor classes.
+   * @throws AdaptorException if the file cannot be read or lists a class
+   *         that cannot be loaded.
+   */
+  @SuppressWarnings("unchecked")
+  private static List<Class<Adaptor>> loadAdaptorList(ClassLoader cl,
+      InputStream serviceStream) throws AdaptorException {
+    List<Class<Adaptor>> adaptorList = new ArrayList<Class<Adaptor>>();
+    try {
+      try {
+        BufferedReader rdr =
+          new BufferedReader(new InputStreamReader(serviceStream, "UTF-8"));
+        String line;
+        while ((line = rdr.readLine()) != null) {
+          line = line.trim();
+          if (line.length() == 0 || line.charAt(0) == '#') {  // comment line
+            continue;
+          }
+
+          adaptorList.add((Class<Adaptor>) cl.loadClass(line));
+        }
+      } finally {
+        serviceStream.close();
+      }
+    } catch (IOException ioe) {
+      throw new AdaptorException("Unable to load Adaptor service info", ioe);
+    } catch (ClassNotFoundException cnfe) {
+      throw new AdaptorException("Unable to load Adaptor class", cnfe);
+    }
+    return Collections.unmodifiableList(adaptorList);
+  }
+
+  /**
+   * Loads the {@link Adaptor} classes of all kinds described in the
+   * {@link #META_DIRECTORY} of the jars and directories of a class loader,
+   * so that kind adaptation does not have to read them while feeds are
+   * parsed.  Kinds described by jars that are not found this way are still
+   * loaded on first use.
+   *
+   * @param cl class loader whose resources are searched.
+   * @return the number of kinds that were loaded.
+   * @throws AdaptorException if a kind description cannot be read or lists a
+   *         class that cannot be loaded.
+   */
+  public static int preloadAdaptors(ClassLoader cl) throws AdaptorException {
+    int count = 0;
+    try {
+      Enumeration<URL> directories = cl.getResources(META_DIRECTORY);
+      while (directories.hasMoreElements()) {
+        for (String termService : listKindServices(directories.nextElement())) {
+          if (kindAdaptors.containsKey(termService)) {
+            continue;
+          }
+          InputStream serviceStream =
+              cl.getResourceAsStream(META_DIRECTORY + termService);
+          if (serviceStream != null) {
+            kindAdaptors.putIfAbsent(termService,
+                loadAdaptorList(cl, serviceStream));
+            count++;
+          }
+        }
+      }
+    } catch (IOException ioe) {
+      throw new AdaptorException("Unable to list Adaptor service info", ioe);
+    }
+    return count;
+  }
+
+  /**
+   * Returns the names of the kind service files in a {@link #META_DIRECTORY}
+   * located in a jar or in the file system.
+   */
+  private static List<String> listKindServices(URL directory)
+      throws IOException {
+    List<String> termServices = new ArrayList<String>();
+    if ("file".equals(directory.getProtocol())) {
+      File[] files;
+      try {
+        files = new File(directory.toURI()).listFiles();
+      } catch (URISyntaxException e) {
+        throw new IOException("Invalid kind directory: " + directory);
+      }
+      if (files != null) {
+        for (File file : files) {
+          if (file.isFile()) {
+            termServices.add(file.getName());
+          }
+        }
+      }
+    } else {
+      URLConnection connection = directory.openConnection();
+      if (connection instanceof JarURLConnection) {
+        JarFile jarFile = ((JarURLConnection) connection).getJarFile();
+        Enumeration<JarEntry> entries = jarFile.entries();
+        while (entries.hasMoreElements()) {
+          JarEntry entry = entries.nextElement();
+          String name = entry.getName();
+          if (!entry.isDirectory() && name.startsWith(META_DIRECTORY)
+              && name.indexOf('/', META_DIRECTORY.length()) < 0) {
+            termServices.add(name.substring(META_DIRECTORY.length()));
+          }
+        }
+      }
+    }
+    return termServices;
+  }
+
   /**
    * Returns an {@link Adaptor} instance associated with the specified
    * kind that is associated with the target {@link Adaptable}.  Returns
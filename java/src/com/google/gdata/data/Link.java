@@ -251,7 +251,7 @@ public class Link extends ExtensionPoint implements ILink {
 
       if (namespace.equals("")) {
         if (localName.equals("rel")) {
-          rel = value;
+          rel = LinkIndex.internRel(value);
         } else if (localName.equals("type")) {
           type = value;
         } else if (localName.equals("href")) {
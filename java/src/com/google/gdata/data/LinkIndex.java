@@ -0,0 +1,202 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of links by their {@code rel} value, used by entries and sources to
+ * find links without scanning all of them.  Links with the same relation are
+ * kept in the order they were added.
+ * <p>
+ * Keys are interned to the {@link ILink.Rel} constants, so a lookup with one
+ * of those constants costs a single hash table probe with an identity
+ * comparison and allocates nothing.
+ * <p>
+ * The index does not observe changes made to the links themselves.  A link
+ * whose {@code rel} value changes after it is added is no longer returned
+ * for its old relation, and is only found under the new one once the index
+ * is rebuilt.  This class is not thread-safe.
+ *
+ * @param <L> link type
+ *
+ *
+ */
+public class LinkIndex<L extends ILink> {
+
+  /** Common link relations, mapped to their {@link ILink.Rel} constants. */
+  private static final Map<String, String> COMMON_RELS =
+      new HashMap<String, String>();
+
+  static {
+    String[] rels = {
+        ILink.Rel.SELF, ILink.Rel.PREVIOUS, ILink.Rel.NEXT,
+        ILink.Rel.ALTERNATE, ILink.Rel.RELATED, ILink.Rel.FEED,
+        ILink.Rel.ENTRY_POST, ILink.Rel.ENTRY_EDIT, ILink.Rel.MEDIA_EDIT,
+        ILink.Rel.RESUMABLE_CREATE_MEDIA, ILink.Rel.RESUMABLE_EDIT_MEDIA,
+        ILink.Rel.FEED_BATCH, ILink.Rel.VIA, ILink.Rel.ENCLOSURE,
+        ILink.Rel.HUB,
+        // ILink.Rel.MEDIA_EDIT_BACKCOMPAT, which is deprecated.
+        "media-edit"
+    };
+    for (String rel : rels) {
+      COMMON_RELS.put(rel, rel);
+    }
+  }
+
+  /**
+   * Returns the {@link ILink.Rel} constant equal to a link relation, or the
+   * relation itself if it is not a common one.
+   */
+  public static String internRel(String rel) {
+    if (rel == null) {
+      return null;
+    }
+    String common = COMMON_RELS.get(rel);
+    return (common != null) ? common : rel;
+  }
+
+  /** Links keyed by relation. */
+  private final Map<String, List<L>> linksByRel =
+      new HashMap<String, List<L>>();
+
+  /** Number of indexed links. */
+  private int size;
+
+  /**
+   * Constructs an empty index.
+   */
+  public LinkIndex() {}
+
+  /**
+   * Constructs an index of links.
+   */
+  public LinkIndex(Collection<? extends L> links) {
+    rebuild(links);
+  }
+
+  /**
+   * Returns the number of indexed links.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Adds a link after the links already indexed.
+   */
+  public void add(L link) {
+    String rel = internRel(link.getRel());
+    List<L> links = linksByRel.get(rel);
+    if (links == null) {
+      links = new ArrayList<L>(2);
+      linksByRel.put(rel, links);
+    }
+    links.add(link);
+    size++;
+  }
+
+  /**
+   * Removes a link from the index.
+   *
+   * @return {@code true} if the link was indexed
+   */
+  public boolean remove(L link) {
+    for (List<L> links : linksByRel.values()) {
+      for (int i = 0; i < links.size(); i++) {
+        if (links.get(i) == link) {
+          links.remove(i);
+          size--;
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Removes all links.
+   */
+  public void clear() {
+    linksByRel.clear();
+    size = 0;
+  }
+
+  /**
+   * Replaces the indexed links.
+   */
+  public void rebuild(Collection<? extends L> links) {
+    clear();
+    for (L link : links) {
+      add(link);
+    }
+  }
+
+  /**
+   * Rebuilds the index if it does not have as many links as the given
+   * collection, which happens when links are added or removed without
+   * going through the index.
+   */
+  public void sync(Collection<? extends L> links) {
+    if (size != links.size()) {
+      rebuild(links);
+    }
+  }
+
+  /**
+   * Returns the first link with the given relation and, if not {@code null},
+   * type, or {@code null} if there is none.
+   */
+  public L getLink(String rel, String type) {
+    List<L> links = linksByRel.get(rel);
+    if (links != null) {
+      for (int i = 0; i < links.size(); i++) {
+        L link = links.get(i);
+        if (matches(link, rel, type)) {
+          return link;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the links with the given relation and, if not {@code null}, type.
+   */
+  public List<L> getLinks(String rel, String type) {
+    List<L> result = new ArrayList<L>();
+    List<L> links = linksByRel.get(rel);
+    if (links != null) {
+      for (int i = 0; i < links.size(); i++) {
+        L link = links.get(i);
+        if (matches(link, rel, type)) {
+          result.add(link);
+        }
+      }
+    }
+    return result;
+  }
+
+  private static boolean matches(ILink link, String rel, String type) {
+    return rel.equals(link.getRel())
+        && (type == null || type.equals(link.getType()));
+  }
+}
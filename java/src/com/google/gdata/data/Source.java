@@ -103,6 +103,9 @@ public class Source extends ExtensionPoint {
     /** Links. */
     public LinkedList<Link> links = new LinkedList<Link>();
 
+    /** Index of the links, or {@code null} if they are not indexed. */
+    public LinkIndex<Link> linkIndex;
+
     /** Authors. */
     public LinkedList<Person> authors = new LinkedList<Person>();
 
@@ -186,6 +189,11 @@ public class Source extends ExtensionPoint {
    */
   public Link getLink(String rel, String type) {
 
+    LinkIndex<Link> linkIndex = getLinkIndex();
+    if (linkIndex != null && rel != null) {
+      return linkIndex.getLink(rel, type);
+    }
+
     for (Link link: srcState.links) {
       if (link.matches(rel, type)) {
         return link;
@@ -205,6 +213,10 @@ public class Source extends ExtensionPoint {
    * @return matching links.
    */
   public List<Link> getLinks(String relToMatch, String typeToMatch) {
+    LinkIndex<Link> linkIndex = getLinkIndex();
+    if (linkIndex != null && relToMatch != null) {
+      return linkIndex.getLinks(relToMatch, typeToMatch);
+    }
     List<Link> result = new ArrayList<Link>();
     for (Link link : srcState.links) {
       if (link.matches(relToMatch, typeToMatch)) {
@@ -216,6 +228,9 @@ public class Source extends ExtensionPoint {
 
   public void addLink(Link link) {
     srcState.links.add(link);
+    if (srcState.linkIndex != null) {
+      srcState.linkIndex.add(link);
+    }
   }
   
   public Link addLink(String rel, String type, String href) {
@@ -238,6 +253,9 @@ public class Source extends ExtensionPoint {
       Link link = iterator.next();
       if (link.matches(relToMatch, typeToMatch)) {
         iterator.remove();
+        if (srcState.linkIndex != null) {
+          srcState.linkIndex.remove(link);
+        }
       }
     }
   }
@@ -247,6 +265,43 @@ public class Source extends ExtensionPoint {
    */
   public void removeLinks() {
     srcState.links.clear();
+    if (srcState.linkIndex != null) {
+      srcState.linkIndex.clear();
+    }
+  }
+
+  /**
+   * Sets whether links are indexed by relation, so that {@link #getLink} and
+   * {@link #getLinks(String, String)} find the links with a given
+   * {@code rel} value without scanning all links.  This is worthwhile when
+   * there are many links, or links are looked up many times.
+   * <p>
+   * The index is kept up to date by the methods of this class, and is
+   * rebuilt when links are added to or removed from {@link #getLinks()}
+   * directly.  Changing the {@code rel} value of a link, or replacing a link
+   * in {@link #getLinks()}, is only seen once the index is rebuilt by
+   * enabling it again.
+   */
+  public void setLinkIndexEnabled(boolean enabled) {
+    srcState.linkIndex = enabled ? new LinkIndex<Link>(srcState.links) : null;
+  }
+
+  /**
+   * Returns whether links are indexed by relation.
+   */
+  public boolean isLinkIndexEnabled() {
+    return srcState.linkIndex != null;
+  }
+
+  /**
+   * Returns the link index, if any, in sync with the links.
+   */
+  private LinkIndex<Link> getLinkIndex() {
+    LinkIndex<Link> linkIndex = srcState.linkIndex;
+    if (linkIndex != null) {
+      linkIndex.sync(srcState.links);
+    }
+    return linkIndex;
   }
 
   /**
@@ -276,7 +331,7 @@ public class Source extends ExtensionPoint {
       link.setTitle(title);
     }
 
-    srcState.links.add(link);
+    addLink(link);
   }
 
   /**
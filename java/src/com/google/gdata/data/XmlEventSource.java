@@ -36,4 +36,20 @@ public interface XmlEventSource {
    * @throws SAXException if parsing fails.
    */
   public void parse(DefaultHandler handler) throws SAXException, IOException;
+
+  /**
+   * Interface implemented by handlers that ignore the content of some
+   * elements.  After reporting the start of an element to such a handler, an
+   * event source that can skip over markup cheaply may ask whether the
+   * content of the element is ignored and, if so, report only the end of the
+   * element.
+   */
+  public interface SkippingHandler {
+
+    /**
+     * Returns {@code true} if the handler ignores all events for the content
+     * of the element whose start it has just received.
+     */
+    public boolean isSkippingContent();
+  }
 }
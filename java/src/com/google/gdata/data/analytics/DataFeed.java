@@ -16,8 +16,14 @@
 
 package com.google.gdata.data.analytics;
 
+import com.google.gdata.client.CoreErrorDomain;
 import com.google.gdata.data.BaseFeed;
 import com.google.gdata.data.ExtensionProfile;
+import com.google.gdata.util.ParseException;
+import com.google.gdata.util.ServiceException;
+import com.google.gdata.util.XmlParser.ElementHandler;
+
+import org.xml.sax.Attributes;
 
 import java.util.List;
 
@@ -28,6 +34,36 @@ import java.util.List;
  */
 public class DataFeed extends BaseFeed<DataFeed, DataEntry> {
 
+  /**
+   * The RowListener interface is implemented by clients that want to read
+   * the dimensions and metrics of a data feed while it is being parsed,
+   * without creating a {@link DataEntry} for each of its rows.
+   *
+   * @see DataFeed#setRowListener(RowListener)
+   */
+  public interface RowListener {
+
+    /**
+     * Called once the closing tag of an entry has been parsed.
+     *
+     * @param row dimensions and metrics of the entry. The same instance is
+     *     passed for every entry of the feed.
+     * @throws ServiceException to abort parsing of the feed. An exception
+     *     that is not a {@link ParseException} is reported as the cause of a
+     *     {@link ParseException} thrown by the parser.
+     */
+    void rowParsed(DataRow row) throws ServiceException;
+  }
+
+  /**
+   * Listener that receives the rows parsed into this feed, or {@code null} if
+   * parsed entries are added to the entry list.
+   */
+  private RowListener rowListener;
+
+  /** Row passed to the row listener, holding the entry being parsed. */
+  private DataRow row;
+
   /**
    * Default mutable constructor.
    */
@@ -248,6 +284,127 @@ public class DataFeed extends BaseFeed<DataFeed, DataEntry> {
     return hasExtension(StartDate.class);
   }
 
+  /**
+   * Returns the listener that receives the rows parsed into this feed, or
+   * {@code null} if there is none.
+   */
+  public RowListener getRowListener() {
+    return rowListener;
+  }
+
+  /**
+   * Sets a listener that receives the rows parsed into this feed. While a
+   * listener is set, only the {@code dxp:dimension} and {@code dxp:metric}
+   * elements of each entry are read, into a {@link DataRow} passed to the
+   * listener, and no entry is created or added to the entry list. The feed
+   * metadata, such as the aggregates, is still parsed into this feed.
+   * <p>
+   * Setting a {@link DataTable.Builder} as the listener builds a table of
+   * the rows without creating the entries.
+   *
+   * @param listener listener receiving parsed rows, or {@code null} to
+   *     collect parsed entries in the entry list.
+   */
+  public void setRowListener(RowListener listener) {
+    this.rowListener = listener;
+    this.row = null;
+  }
+
+  /**
+   * Returns the dimensions and metrics of the entries of this feed as a
+   * table. The table is a copy and does not change with the entries.
+   *
+   * @return table with a row per entry.
+   * @throws NumberFormatException if a metric value is not a valid number.
+   */
+  public DataTable asTable() {
+    DataTable.Builder builder = new DataTable.Builder();
+    DataRow entryRow = new DataRow();
+    for (DataEntry entry : getEntries()) {
+      entryRow.clear();
+      for (Dimension dimension : entry.getDimensions()) {
+        if (dimension.getName() != null) {
+          entryRow.setDimension(dimension.getName(), dimension.getValue());
+        }
+      }
+      for (Metric metric : entry.getMetrics()) {
+        if (metric.getName() != null) {
+          entryRow.setMetric(metric.getName(), metric.getType(),
+              metric.getValue());
+        }
+      }
+      builder.rowParsed(entryRow);
+    }
+    return builder.build();
+  }
+
+  @Override
+  protected ElementHandler getEntryHandler(ExtensionProfile extProfile,
+      Attributes attrs) {
+    if (rowListener == null) {
+      return null;
+    }
+    if (row == null) {
+      row = new DataRow();
+    }
+    return new RowHandler();
+  }
+
+  /**
+   * {@code <atom:entry>} parser that reads the dimensions and metrics of the
+   * entry into the row and passes it to the row listener. All other
+   * elements of the entry are skipped.
+   */
+  private class RowHandler extends ElementHandler {
+
+    RowHandler() {
+      row.clear();
+      skipUnrecognizedXml();
+    }
+
+    @Override
+    public ElementHandler getChildHandler(String namespace, String localName,
+        Attributes attrs) throws ParseException {
+      // Dimensions and metrics are empty elements, so they are read from
+      // their attributes here and then skipped like the other elements.
+      if (namespace.equals(AnalyticsNamespace.DXP)) {
+        String name = attrs.getValue("", "name");
+        if (name != null) {
+          String value = attrs.getValue("", "value");
+          if (localName.equals(Dimension.XML_NAME)) {
+            row.setDimension(name, value);
+          } else if (localName.equals(Metric.XML_NAME)) {
+            setMetric(name, attrs.getValue("", "type"), value);
+          }
+        }
+      }
+      return null;
+    }
+
+    private void setMetric(String name, String type, String value)
+        throws ParseException {
+      try {
+        row.setMetric(name, type, value);
+      } catch (NumberFormatException e) {
+        ParseException pe = new ParseException(
+            CoreErrorDomain.ERR.invalidAttributeValue, e);
+        pe.setInternalReason("Invalid value for metric: '" + name + "'");
+        throw pe;
+      }
+    }
+
+    @Override
+    public void processEndElement() throws ParseException {
+      try {
+        rowListener.rowParsed(row);
+      } catch (ParseException e) {
+        throw e;
+      } catch (ServiceException e) {
+        throw new ParseException(e);
+      }
+    }
+  }
+
   @Override
   protected void validate() {
   }
@@ -0,0 +1,327 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.data.analytics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One row of a data feed, read straight from the {@code dxp:dimension} and
+ * {@code dxp:metric} elements of an entry without creating a
+ * {@link DataEntry}.  Metrics of type {@link Metric.Type#INTEGER} are held as
+ * {@code long} values and all other metrics as {@code double} values, as
+ * returned by {@link Metric#numericValue()}.
+ * <p>
+ * Dimensions and metrics are numbered in the order in which they first
+ * appear in the feed, and keep their index for all the rows of the feed.
+ * A dimension missing from a row has a {@code null} value and a missing
+ * metric has the value zero.  Names are compared ignoring case, like
+ * {@link DataEntry#getMetric(String)} does.
+ * <p>
+ * The same instance is passed to a {@link DataFeed.RowListener} for every
+ * row of a feed, so its values are only valid during the call.
+ *
+ *
+ */
+public class DataRow {
+
+  private static final int INITIAL_COLUMNS = 8;
+
+  private final Map<String, Integer> dimensionIndex =
+      new HashMap<String, Integer>();
+  private String[] dimensionNames = new String[INITIAL_COLUMNS];
+  private String[] dimensionValues = new String[INITIAL_COLUMNS];
+  private int dimensionCount;
+
+  private final Map<String, Integer> metricIndex =
+      new HashMap<String, Integer>();
+  private String[] metricNames = new String[INITIAL_COLUMNS];
+  private String[] metricTypes = new String[INITIAL_COLUMNS];
+  private long[] longValues = new long[INITIAL_COLUMNS];
+  private double[] doubleValues = new double[INITIAL_COLUMNS];
+  private int metricCount;
+
+  /** Positions of the next dimension and metric of the current row. */
+  private int nextDimension;
+  private int nextMetric;
+
+  /** Creates an empty row, without dimensions or metrics. */
+  DataRow() {}
+
+  /**
+   * Returns the number of dimensions seen so far in the feed.
+   */
+  public int getDimensionCount() {
+    return dimensionCount;
+  }
+
+  /**
+   * Returns the name of a dimension.
+   *
+   * @param index dimension index.
+   * @return dimension name, for example {@code ga:country}.
+   */
+  public String getDimensionName(int index) {
+    checkIndex(index, dimensionCount);
+    return dimensionNames[index];
+  }
+
+  /**
+   * Returns the index of a dimension, or -1 if there is no dimension with
+   * that name.
+   *
+   * @param name dimension name, in any case.
+   */
+  public int getDimensionIndex(String name) {
+    return indexOf(dimensionIndex, name);
+  }
+
+  /**
+   * Returns the value of a dimension in this row.
+   *
+   * @param index dimension index.
+   * @return dimension value, or {@code null} if the row does not have it.
+   */
+  public String getDimension(int index) {
+    checkIndex(index, dimensionCount);
+    return dimensionValues[index];
+  }
+
+  /**
+   * Returns the value of a dimension in this row.
+   *
+   * @param name dimension name, in any case.
+   * @return dimension value, or {@code null} if the row does not have it.
+   */
+  public String getDimension(String name) {
+    int index = getDimensionIndex(name);
+    return index < 0 ? null : dimensionValues[index];
+  }
+
+  /**
+   * Returns the number of metrics seen so far in the feed.
+   */
+  public int getMetricCount() {
+    return metricCount;
+  }
+
+  /**
+   * Returns the name of a metric.
+   *
+   * @param index metric index.
+   * @return metric name, for example {@code ga:visits}.
+   */
+  public String getMetricName(int index) {
+    checkIndex(index, metricCount);
+    return metricNames[index];
+  }
+
+  /**
+   * Returns the type of a metric, as given by the first row that has it.
+   *
+   * @param index metric index.
+   * @return one of the {@link Metric.Type} values, or {@code null}.
+   */
+  public String getMetricType(int index) {
+    checkIndex(index, metricCount);
+    return metricTypes[index];
+  }
+
+  /**
+   * Returns whether the values of a metric are held as {@code long} values.
+   *
+   * @param index metric index.
+   */
+  public boolean isLongMetric(int index) {
+    checkIndex(index, metricCount);
+    return isLongType(metricTypes[index]);
+  }
+
+  /**
+   * Returns the index of a metric, or -1 if there is no metric with that
+   * name.
+   *
+   * @param name metric name, in any case.
+   */
+  public int getMetricIndex(String name) {
+    return indexOf(metricIndex, name);
+  }
+
+  /**
+   * Returns the long value of a metric in this row.  The value of a
+   * floating-point metric is cast to type long.
+   *
+   * @param index metric index.
+   */
+  public long getLong(int index) {
+    checkIndex(index, metricCount);
+    return isLongType(metricTypes[index])
+        ? longValues[index] : (long) doubleValues[index];
+  }
+
+  /**
+   * Returns the long value of a metric in this row, or zero if there is no
+   * metric with that name.
+   *
+   * @param name metric name, in any case.
+   */
+  public long getLong(String name) {
+    int index = getMetricIndex(name);
+    return index < 0 ? 0 : getLong(index);
+  }
+
+  /**
+   * Returns the double value of a metric in this row.  The value of an
+   * integer metric is cast to type double.
+   *
+   * @param index metric index.
+   */
+  public double getDouble(int index) {
+    checkIndex(index, metricCount);
+    return isLongType(metricTypes[index])
+        ? (double) longValues[index] : doubleValues[index];
+  }
+
+  /**
+   * Returns the double value of a metric in this row, or zero if there is no
+   * metric with that name.
+   *
+   * @param name metric name, in any case.
+   */
+  public double getDouble(String name) {
+    int index = getMetricIndex(name);
+    return index < 0 ? 0 : getDouble(index);
+  }
+
+  /** Starts a new row, clearing the values of the previous one. */
+  void clear() {
+    Arrays.fill(dimensionValues, 0, dimensionCount, null);
+    Arrays.fill(longValues, 0, metricCount, 0);
+    Arrays.fill(doubleValues, 0, metricCount, 0);
+    nextDimension = 0;
+    nextMetric = 0;
+  }
+
+  /**
+   * Sets the value of a dimension in the current row.
+   *
+   * @param name dimension name.
+   * @param value dimension value.
+   */
+  void setDimension(String name, String value) {
+    int index = nextDimension;
+    if (index >= dimensionCount || !dimensionNames[index].equals(name)) {
+      index = getDimensionIndex(name);
+      if (index < 0) {
+        index = addDimension(name);
+      }
+    }
+    dimensionValues[index] = value;
+    nextDimension = index + 1;
+  }
+
+  /**
+   * Sets the value of a metric in the current row.
+   *
+   * @param name metric name.
+   * @param type metric type, used if this is the first row with the metric.
+   * @param value metric value, or {@code null} for zero.
+   * @throws NumberFormatException if the value is not a valid number.
+   */
+  void setMetric(String name, String type, String value) {
+    int index = nextMetric;
+    if (index >= metricCount || !metricNames[index].equals(name)) {
+      index = getMetricIndex(name);
+      if (index < 0) {
+        index = addMetric(name, type);
+      }
+    }
+    if (value != null) {
+      if (isLongType(metricTypes[index])) {
+        longValues[index] = Long.parseLong(value);
+      } else {
+        doubleValues[index] = Double.parseDouble(value);
+      }
+    }
+    nextMetric = index + 1;
+  }
+
+  /** Returns the long values of the current row, indexed by metric. */
+  long[] longValues() {
+    return longValues;
+  }
+
+  /** Returns the double values of the current row, indexed by metric. */
+  double[] doubleValues() {
+    return doubleValues;
+  }
+
+  /** Returns the dimension values of the current row. */
+  String[] dimensionValues() {
+    return dimensionValues;
+  }
+
+  private int addDimension(String name) {
+    if (dimensionCount == dimensionNames.length) {
+      int length = 2 * dimensionCount;
+      dimensionNames = Arrays.copyOf(dimensionNames, length);
+      dimensionValues = Arrays.copyOf(dimensionValues, length);
+    }
+    dimensionNames[dimensionCount] = name;
+    dimensionIndex.put(key(name), dimensionCount);
+    return dimensionCount++;
+  }
+
+  private int addMetric(String name, String type) {
+    if (metricCount == metricNames.length) {
+      int length = 2 * metricCount;
+      metricNames = Arrays.copyOf(metricNames, length);
+      metricTypes = Arrays.copyOf(metricTypes, length);
+      longValues = Arrays.copyOf(longValues, length);
+      doubleValues = Arrays.copyOf(doubleValues, length);
+    }
+    metricNames[metricCount] = name;
+    metricTypes[metricCount] = type;
+    metricIndex.put(key(name), metricCount);
+    return metricCount++;
+  }
+
+  /** Returns whether metrics of a type are held as long values. */
+  static boolean isLongType(String type) {
+    return Metric.Type.INTEGER.equals(type);
+  }
+
+  /** Returns the index of a name in a map keyed by {@link #key}, or -1. */
+  static int indexOf(Map<String, Integer> index, String name) {
+    Integer i = index.get(key(name));
+    return i == null ? -1 : i;
+  }
+
+  /** Returns the key of a dimension or metric name in an index map. */
+  static String key(String name) {
+    return name.toLowerCase(Locale.ENGLISH);
+  }
+
+  private static void checkIndex(int index, int count) {
+    if (index < 0 || index >= count) {
+      throw new IndexOutOfBoundsException(
+          "Index: " + index + ", count: " + count);
+    }
+  }
+}
@@ -0,0 +1,387 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.data.analytics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rows of a data feed stored by column.  Each dimension is a column of
+ * strings in which equal values share a single instance, and each metric is
+ * a column of {@code long} values for metrics of type
+ * {@link Metric.Type#INTEGER}, or of {@code double} values for all other
+ * types.  A table holds a few arrays per column instead of a
+ * {@link DataEntry} with its {@link Dimension} and {@link Metric} objects per
+ * row.
+ * <p>
+ * Columns are numbered in the order in which they first appear in the feed.
+ * Look up the index of a column by name once, with
+ * {@link #getDimensionIndex(String)} or {@link #getMetricIndex(String)}, and
+ * read the values by index.  A table is built with a {@link Builder}, either
+ * from the entries of a feed by {@link DataFeed#asTable()}, or while the
+ * feed is parsed by setting the builder as the row listener of the feed.
+ *
+ *
+ */
+public class DataTable {
+
+  private final int rowCount;
+
+  private final String[] dimensionNames;
+  private final Map<String, Integer> dimensionIndex;
+  private final String[][] dimensions;
+
+  private final String[] metricNames;
+  private final String[] metricTypes;
+  private final Map<String, Integer> metricIndex;
+  private final long[][] longMetrics;
+  private final double[][] doubleMetrics;
+
+  private DataTable(Builder builder) {
+    rowCount = builder.rowCount;
+    int dimensionCount = builder.dimensionColumns.size();
+    dimensionNames = new String[dimensionCount];
+    dimensionIndex = new HashMap<String, Integer>();
+    dimensions = new String[dimensionCount][];
+    for (int i = 0; i < dimensionCount; i++) {
+      DimensionColumn column = builder.dimensionColumns.get(i);
+      dimensionNames[i] = column.name;
+      dimensionIndex.put(DataRow.key(column.name), i);
+      dimensions[i] = Arrays.copyOf(column.values, rowCount);
+    }
+    int metricCount = builder.metricColumns.size();
+    metricNames = new String[metricCount];
+    metricTypes = new String[metricCount];
+    metricIndex = new HashMap<String, Integer>();
+    longMetrics = new long[metricCount][];
+    doubleMetrics = new double[metricCount][];
+    for (int i = 0; i < metricCount; i++) {
+      MetricColumn column = builder.metricColumns.get(i);
+      metricNames[i] = column.name;
+      metricTypes[i] = column.type;
+      metricIndex.put(DataRow.key(column.name), i);
+      if (column.longValues != null) {
+        longMetrics[i] = Arrays.copyOf(column.longValues, rowCount);
+      } else {
+        doubleMetrics[i] = Arrays.copyOf(column.doubleValues, rowCount);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of rows.
+   */
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * Returns the number of dimension columns.
+   */
+  public int getDimensionCount() {
+    return dimensionNames.length;
+  }
+
+  /**
+   * Returns the name of a dimension column.
+   *
+   * @param column dimension column index.
+   * @return dimension name, for example {@code ga:country}.
+   */
+  public String getDimensionName(int column) {
+    return dimensionNames[column];
+  }
+
+  /**
+   * Returns the index of a dimension column, or -1 if there is no dimension
+   * with that name.
+   *
+   * @param name dimension name, in any case.
+   */
+  public int getDimensionIndex(String name) {
+    return DataRow.indexOf(dimensionIndex, name);
+  }
+
+  /**
+   * Returns the value of a dimension in a row.
+   *
+   * @param row row index.
+   * @param column dimension column index.
+   * @return dimension value, or {@code null} if the row does not have it.
+   */
+  public String getDimension(int row, int column) {
+    checkRow(row);
+    return dimensions[column][row];
+  }
+
+  /**
+   * Returns the values of a dimension column.  The array has one element
+   * per row and is shared with this table, so it must not be modified.
+   *
+   * @param column dimension column index.
+   */
+  public String[] getDimensionColumn(int column) {
+    return dimensions[column];
+  }
+
+  /**
+   * Returns the number of metric columns.
+   */
+  public int getMetricCount() {
+    return metricNames.length;
+  }
+
+  /**
+   * Returns the name of a metric column.
+   *
+   * @param column metric column index.
+   * @return metric name, for example {@code ga:visits}.
+   */
+  public String getMetricName(int column) {
+    return metricNames[column];
+  }
+
+  /**
+   * Returns the type of a metric column.
+   *
+   * @param column metric column index.
+   * @return one of the {@link Metric.Type} values, or {@code null}.
+   */
+  public String getMetricType(int column) {
+    return metricTypes[column];
+  }
+
+  /**
+   * Returns the index of a metric column, or -1 if there is no metric with
+   * that name.
+   *
+   * @param name metric name, in any case.
+   */
+  public int getMetricIndex(String name) {
+    return DataRow.indexOf(metricIndex, name);
+  }
+
+  /**
+   * Returns whether a metric column holds {@code long} values.
+   *
+   * @param column metric column index.
+   */
+  public boolean isLongMetric(int column) {
+    return longMetrics[column] != null;
+  }
+
+  /**
+   * Returns the long value of a metric in a row.  The value of a
+   * floating-point metric is cast to type long.
+   *
+   * @param row row index.
+   * @param column metric column index.
+   */
+  public long getLong(int row, int column) {
+    checkRow(row);
+    long[] values = longMetrics[column];
+    return values != null ? values[row] : (long) doubleMetrics[column][row];
+  }
+
+  /**
+   * Returns the double value of a metric in a row.  The value of an integer
+   * metric is cast to type double.
+   *
+   * @param row row index.
+   * @param column metric column index.
+   */
+  public double getDouble(int row, int column) {
+    checkRow(row);
+    long[] values = longMetrics[column];
+    return values != null ? (double) values[row] : doubleMetrics[column][row];
+  }
+
+  /**
+   * Returns the values of a metric column that holds {@code long} values.
+   * The array has one element per row and is shared with this table, so it
+   * must not be modified.
+   *
+   * @param column metric column index.
+   * @return metric values, or {@code null} if the column holds
+   *     {@code double} values.
+   */
+  public long[] getLongColumn(int column) {
+    return longMetrics[column];
+  }
+
+  /**
+   * Returns the values of a metric column that holds {@code double} values.
+   * The array has one element per row and is shared with this table, so it
+   * must not be modified.
+   *
+   * @param column metric column index.
+   * @return metric values, or {@code null} if the column holds
+   *     {@code long} values.
+   */
+  public double[] getDoubleColumn(int column) {
+    return doubleMetrics[column];
+  }
+
+  @Override
+  public String toString() {
+    return "{DataTable rows=" + rowCount
+        + " dimensions=" + Arrays.toString(dimensionNames)
+        + " metrics=" + Arrays.toString(metricNames) + "}";
+  }
+
+  private void checkRow(int row) {
+    if (row < 0 || row >= rowCount) {
+      throw new IndexOutOfBoundsException(
+          "Row: " + row + ", rows: " + rowCount);
+    }
+  }
+
+  /**
+   * Collects the rows of a data feed into a {@link DataTable}.  A builder is
+   * a {@link DataFeed.RowListener}, so it can be set on a feed to build the
+   * table while the feed is parsed, without creating its entries:
+   * <pre>
+   *   DataTable.Builder builder = new DataTable.Builder();
+   *   DataFeed feed = new DataFeed();
+   *   feed.setRowListener(builder);
+   *   feed.parseAtom(extProfile, input);
+   *   DataTable table = builder.build();
+   * </pre>
+   * A builder takes the rows of a single feed.
+   */
+  public static class Builder implements DataFeed.RowListener {
+
+    private static final int INITIAL_ROWS = 64;
+
+    private final List<DimensionColumn> dimensionColumns =
+        new ArrayList<DimensionColumn>();
+    private final List<MetricColumn> metricColumns =
+        new ArrayList<MetricColumn>();
+    private int rowCount;
+    private int capacity = INITIAL_ROWS;
+
+    /**
+     * Appends a row to the table.
+     *
+     * @param row row of the feed.
+     */
+    public void rowParsed(DataRow row) {
+      for (int i = dimensionColumns.size(); i < row.getDimensionCount(); i++) {
+        dimensionColumns.add(
+            new DimensionColumn(row.getDimensionName(i), capacity));
+      }
+      for (int i = metricColumns.size(); i < row.getMetricCount(); i++) {
+        metricColumns.add(new MetricColumn(row.getMetricName(i),
+            row.getMetricType(i), capacity));
+      }
+      if (rowCount == capacity) {
+        capacity *= 2;
+        for (DimensionColumn column : dimensionColumns) {
+          column.grow(capacity);
+        }
+        for (MetricColumn column : metricColumns) {
+          column.grow(capacity);
+        }
+      }
+
+      String[] dimensionValues = row.dimensionValues();
+      for (int i = 0; i < dimensionColumns.size(); i++) {
+        dimensionColumns.get(i).set(rowCount, dimensionValues[i]);
+      }
+      long[] longValues = row.longValues();
+      double[] doubleValues = row.doubleValues();
+      for (int i = 0; i < metricColumns.size(); i++) {
+        MetricColumn column = metricColumns.get(i);
+        if (column.longValues != null) {
+          column.longValues[rowCount] = longValues[i];
+        } else {
+          column.doubleValues[rowCount] = doubleValues[i];
+        }
+      }
+      rowCount++;
+    }
+
+    /**
+     * Returns a table holding the rows appended so far.
+     */
+    public DataTable build() {
+      return new DataTable(this);
+    }
+  }
+
+  /** Dimension column of a builder. */
+  private static class DimensionColumn {
+
+    final String name;
+    String[] values;
+
+    /** Single instance of each value of the column. */
+    private final Map<String, String> instances =
+        new HashMap<String, String>();
+
+    DimensionColumn(String name, int capacity) {
+      this.name = name;
+      this.values = new String[capacity];
+    }
+
+    void set(int row, String value) {
+      if (value != null) {
+        String instance = instances.get(value);
+        if (instance == null) {
+          instances.put(value, value);
+        } else {
+          value = instance;
+        }
+      }
+      values[row] = value;
+    }
+
+    void grow(int capacity) {
+      values = Arrays.copyOf(values, capacity);
+    }
+  }
+
+  /** Metric column of a builder. */
+  private static class MetricColumn {
+
+    final String name;
+    final String type;
+    long[] longValues;
+    double[] doubleValues;
+
+    MetricColumn(String name, String type, int capacity) {
+      this.name = name;
+      this.type = type;
+      if (DataRow.isLongType(type)) {
+        longValues = new long[capacity];
+      } else {
+        doubleValues = new double[capacity];
+      }
+    }
+
+    void grow(int capacity) {
+      if (longValues != null) {
+        longValues = Arrays.copyOf(longValues, capacity);
+      } else {
+        doubleValues = Arrays.copyOf(doubleValues, capacity);
+      }
+    }
+  }
+}
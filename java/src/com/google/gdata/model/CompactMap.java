@@ -0,0 +1,269 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map for the attributes and child elements of an {@link Element}, which
+ * usually has few of them.  Up to {@link #MAX_ARRAY_SIZE} entries are kept
+ * in a single array of alternating keys and values and looked up by linear
+ * search, comparing keys by identity first.  Past that size the entries move
+ * to a {@link LinkedHashMap}.  Either way, entries iterate in the order in
+ * which their keys were first added, like a {@link LinkedHashMap}.
+ * <p>
+ * Lookups do not modify the map, so a map that is no longer modified may be
+ * read by several threads.  Iterators are not fail-fast.  Keys and values
+ * may not be {@code null}.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ *
+ *
+ */
+final class CompactMap<K, V> extends AbstractMap<K, V> {
+
+  /** Maximum number of entries kept in the array. */
+  static final int MAX_ARRAY_SIZE = 8;
+
+  /** Initial number of entries that the array can hold. */
+  private static final int INITIAL_CAPACITY = 2;
+
+  /** Keys at even and values at odd indices, or {@code null} if hashed. */
+  private Object[] table = new Object[2 * INITIAL_CAPACITY];
+
+  /** Number of entries in the array. */
+  private int size;
+
+  /** Entries past {@link #MAX_ARRAY_SIZE}, or {@code null} if in the array. */
+  private Map<K, V> map;
+
+  @Override
+  public int size() {
+    return (map != null) ? map.size() : size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return (map != null) ? map.containsKey(key) : indexOf(key) >= 0;
+  }
+
+  @Override
+  public V get(Object key) {
+    if (map != null) {
+      return map.get(key);
+    }
+    int index = indexOf(key);
+    return (index < 0) ? null : valueAt(index);
+  }
+
+  @Override
+  public V put(K key, V value) {
+    if (map != null) {
+      return map.put(key, value);
+    }
+    int index = indexOf(key);
+    if (index >= 0) {
+      V previous = valueAt(index);
+      table[index + 1] = value;
+      return previous;
+    }
+    if (size == MAX_ARRAY_SIZE) {
+      map = new LinkedHashMap<K, V>();
+      for (int i = 0; i < 2 * size; i += 2) {
+        map.put(keyAt(i), valueAt(i));
+      }
+      map.put(key, value);
+      table = null;
+      size = 0;
+      return null;
+    }
+    if (2 * size == table.length) {
+      table = Arrays.copyOf(table, 2 * table.length);
+    }
+    table[2 * size] = key;
+    table[2 * size + 1] = value;
+    size++;
+    return null;
+  }
+
+  @Override
+  public V remove(Object key) {
+    if (map != null) {
+      return map.remove(key);
+    }
+    int index = indexOf(key);
+    if (index < 0) {
+      return null;
+    }
+    V previous = valueAt(index);
+    removeAt(index);
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    map = null;
+    table = new Object[2 * INITIAL_CAPACITY];
+    size = 0;
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    if (map != null) {
+      return map.entrySet();
+    }
+    return new AbstractSet<Map.Entry<K, V>>() {
+      @Override
+      public Iterator<Map.Entry<K, V>> iterator() {
+        return (map != null) ? map.entrySet().iterator() : new EntryIterator();
+      }
+
+      @Override
+      public int size() {
+        return CompactMap.this.size();
+      }
+    };
+  }
+
+  /** Returns the array index of a key, or -1 if it is not in the array. */
+  private int indexOf(Object key) {
+    Object[] entries = table;
+    int end = 2 * size;
+    for (int i = 0; i < end; i += 2) {
+      if (entries[i] == key) {
+        return i;
+      }
+    }
+    if (key != null) {
+      for (int i = 0; i < end; i += 2) {
+        if (key.equals(entries[i])) {
+          return i;
+        }
+      }
+    }
+    return -1;
+  }
+
+  @SuppressWarnings("unchecked")
+  private K keyAt(int index) {
+    return (K) table[index];
+  }
+
+  @SuppressWarnings("unchecked")
+  private V valueAt(int index) {
+    return (V) table[index + 1];
+  }
+
+  /** Removes the entry at an array index, keeping the order of the rest. */
+  private void removeAt(int index) {
+    int end = 2 * size;
+    System.arraycopy(table, index + 2, table, index, end - index - 2);
+    table[end - 2] = null;
+    table[end - 1] = null;
+    size--;
+  }
+
+  /** Iterator over the entries of the array. */
+  private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+    /** Array index of the next entry. */
+    private int next;
+
+    /** Array index of the last entry returned, or -1. */
+    private int last = -1;
+
+    public boolean hasNext() {
+      return next < 2 * size;
+    }
+
+    public Map.Entry<K, V> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      last = next;
+      next += 2;
+      return new ArrayEntry(keyAt(last));
+    }
+
+    public void remove() {
+      if (last < 0) {
+        throw new IllegalStateException();
+      }
+      removeAt(last);
+      next = last;
+      last = -1;
+    }
+  }
+
+  /** Entry of the array, which looks up its key to read or write a value. */
+  private class ArrayEntry implements Map.Entry<K, V> {
+
+    private final K key;
+
+    ArrayEntry(K key) {
+      this.key = key;
+    }
+
+    public K getKey() {
+      return key;
+    }
+
+    public V getValue() {
+      return get(key);
+    }
+
+    public V setValue(V value) {
+      return put(key, value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry<?, ?>)) {
+        return false;
+      }
+      Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+      V value = getValue();
+      return key.equals(other.getKey())
+          && (value == null ? other.getValue() == null
+              : value.equals(other.getValue()));
+    }
+
+    @Override
+    public int hashCode() {
+      V value = getValue();
+      return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+    }
+
+    @Override
+    public String toString() {
+      return key + "=" + getValue();
+    }
+  }
+}
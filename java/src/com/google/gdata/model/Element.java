@@ -37,7 +37,6 @@ import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -116,7 +115,8 @@ public class Element {
 
     /**
      * Map of all attributes that were added to this element, in the order they
-     * were added to the element.
+     * were added to the element.  Like {@link #elements}, this is a
+     * {@link CompactMap}, since most elements have few attributes.
      */
     private Map<QName, Attribute> attributes;
 
@@ -387,7 +387,7 @@ public class Element {
   private void setAttribute(AttributeKey<?> attKey, Attribute attribute) {
     throwExceptionIfLocked();
     if (state.attributes == null) {
-      state.attributes = new LinkedHashMap<QName, Attribute>();
+      state.attributes = new CompactMap<QName, Attribute>();
     }
     state.attributes.put(attKey.getId(), attribute);
   }
@@ -474,6 +474,20 @@ public class Element {
     return elementCount;
   }
 
+  /**
+   * Returns the number of child elements with the given key.
+   *
+   * @param childKey the metadata key of the child elements to count
+   * @return number of elements.
+   */
+  public int getElementCount(ElementKey<?, ?> childKey) {
+    Object obj = getElementObject(childKey);
+    if (obj == null) {
+      return 0;
+    }
+    return (obj instanceof Element) ? 1 : castElementCollection(obj).size();
+  }
+
   /**
    * Get a child element matching the specified qualified name.
    *
@@ -794,23 +808,39 @@ public class Element {
    * @return this element for chaining
    */
   public Element addElement(ElementKey<?, ?> key, Element element) {
+    addAndGetElement(key, element);
+    return this;
+  }
+
+  /**
+   * Add a child element with the given key, like
+   * {@link #addElement(ElementKey, Element)}, and return the element that was
+   * stored.  This is a copy of the given element if the key required a
+   * different element type.
+   *
+   * @param key the key of the child.
+   * @param element child element
+   * @return the stored child element
+   */
+  protected <T extends Element> T addAndGetElement(ElementKey<?, T> key,
+      Element element) {
     throwExceptionIfLocked();
     if (state.elements == null) {
-      state.elements = new LinkedHashMap<QName, Object>();
+      state.elements = new CompactMap<QName, Object>();
     }
 
     ElementKey<?, ?> elementKey = element.getElementKey();
-    key = calculateKey(key, elementKey);
-    if (!key.equals(elementKey)) {
+    ElementKey<?, ?> actualKey = calculateKey(key, elementKey);
+    if (!actualKey.equals(elementKey)) {
       try {
-        element = createElement(key, element);
+        element = createElement(actualKey, element);
       } catch (ContentCreationException e) {
-        throw new IllegalArgumentException("Key " + key + " cannot be applied"
-            + " to element with key " + elementKey);
+        throw new IllegalArgumentException("Key " + actualKey
+            + " cannot be applied to element with key " + elementKey);
       }
     }
 
-    QName id = key.getId();
+    QName id = actualKey.getId();
     Object obj = state.elements.get(id);
     if (obj == null) {
       state.elements.put(id, element);
@@ -818,12 +848,12 @@ public class Element {
       Collection<Element> collect = castElementCollection(obj);
       collect.add(element);
     } else {
-      Collection<Element> collect = createCollection(key);
+      Collection<Element> collect = createCollection(actualKey);
       collect.add((Element) obj);
       collect.add(element);
       state.elements.put(id, collect);
     }
-    return this;
+    return key.getElementType().cast(element);
   }
 
   /**
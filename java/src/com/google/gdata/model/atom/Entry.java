@@ -22,6 +22,7 @@ import com.google.gdata.client.GDataProtocol;
 import com.google.gdata.client.Service;
 import com.google.gdata.data.DateTime;
 import com.google.gdata.data.IEntry;
+import com.google.gdata.data.LinkIndex;
 import com.google.gdata.model.Element;
 import com.google.gdata.model.ElementCreator;
 import com.google.gdata.model.ElementKey;
@@ -202,6 +203,9 @@ public class Entry extends Element implements IEntry {
 
     /** {code true} if the entry can be modified by a client. */
     public boolean canEdit = true;
+
+    /** Index of the links, or {@code null} if they are not indexed. */
+    public LinkIndex<Link> linkIndex;
   }
 
   /**
@@ -441,7 +445,10 @@ public class Entry extends Element implements IEntry {
   }
 
   public void addLink(Link v) {
-    addElement(Link.KEY, v);
+    Link link = addAndGetElement(Link.KEY, v);
+    if (state.linkIndex != null) {
+      state.linkIndex.add(link);
+    }
   }
 
   public Link addLink(String rel, String type, String href) {
@@ -455,11 +462,50 @@ public class Entry extends Element implements IEntry {
   }
 
   public boolean removeLink(Link link) {
-    return removeElement(Link.KEY, link);
+    boolean removed = removeElement(Link.KEY, link);
+    if (removed && state.linkIndex != null) {
+      state.linkIndex.remove(link);
+    }
+    return removed;
   }
 
   public void removeLinks() {
     removeElement(Link.KEY);
+    if (state.linkIndex != null) {
+      state.linkIndex.clear();
+    }
+  }
+
+  /**
+   * Sets whether links are indexed by relation, so that {@link #getLink} and
+   * {@link #getLinks(String, String)} find the links with a given
+   * {@code rel} value without scanning all links.
+   * <p>
+   * The index is kept up to date by the link methods of this class, and is
+   * rebuilt when link elements are added or removed otherwise.  Changing the
+   * {@code rel} value of a link is only seen once the index is rebuilt by
+   * enabling it again.
+   */
+  public void setLinkIndexEnabled(boolean enabled) {
+    state.linkIndex = enabled ? new LinkIndex<Link>(getLinks()) : null;
+  }
+
+  /**
+   * Returns whether links are indexed by relation.
+   */
+  public boolean isLinkIndexEnabled() {
+    return state.linkIndex != null;
+  }
+
+  /**
+   * Returns the link index, if any, in sync with the link elements.
+   */
+  private LinkIndex<Link> getLinkIndex() {
+    LinkIndex<Link> index = state.linkIndex;
+    if (index != null && index.size() != getElementCount(Link.KEY)) {
+      index.rebuild(getLinks());
+    }
+    return index;
   }
 
   @SuppressWarnings("unchecked")
@@ -585,6 +631,11 @@ public class Entry extends Element implements IEntry {
    */
   public Link getLink(String rel, String type) {
 
+    LinkIndex<Link> index = getLinkIndex();
+    if (index != null && rel != null) {
+      return index.getLink(rel, type);
+    }
+
     for (Link link : getLinks()) {
       if (link.matches(rel, type)) {
         return link;
@@ -604,6 +655,10 @@ public class Entry extends Element implements IEntry {
    * @return matching links.
    */
   public List<Link> getLinks(String relToMatch, String typeToMatch) {
+    LinkIndex<Link> index = getLinkIndex();
+    if (index != null && relToMatch != null) {
+      return index.getLinks(relToMatch, typeToMatch);
+    }
     List<Link> result = new ArrayList<Link>();
     for (Link link : getLinks()) {
       if (link.matches(relToMatch, typeToMatch)) {
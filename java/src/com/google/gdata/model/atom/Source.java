@@ -19,6 +19,7 @@ package com.google.gdata.model.atom;
 import com.google.common.collect.Lists;
 import com.google.gdata.data.DateTime;
 import com.google.gdata.data.IGenerator;
+import com.google.gdata.data.LinkIndex;
 import com.google.gdata.model.AttributeKey;
 import com.google.gdata.model.Element;
 import com.google.gdata.model.ElementCreator;
@@ -278,6 +279,9 @@ public class Source extends Element {
     }
   }
 
+  /** Index of the links, or {@code null} if they are not indexed. */
+  private LinkIndex<Link> linkIndex;
+
   /**
    * Constructs a new instance using the default metadata.
    */
@@ -473,7 +477,10 @@ public class Source extends Element {
   }
 
   public void addLink(Link v) {
-    addElement(Link.KEY, v);
+    Link link = addAndGetElement(Link.KEY, v);
+    if (linkIndex != null) {
+      linkIndex.add(link);
+    }
   }
 
   public Link addLink(String rel, String type, String href) {
@@ -487,11 +494,50 @@ public class Source extends Element {
   }
 
   public boolean removeLink(Link link) {
-    return removeElement(Link.KEY, link);
+    boolean removed = removeElement(Link.KEY, link);
+    if (removed && linkIndex != null) {
+      linkIndex.remove(link);
+    }
+    return removed;
   }
 
   public void clearLinks() {
     removeElement(Link.KEY);
+    if (linkIndex != null) {
+      linkIndex.clear();
+    }
+  }
+
+  /**
+   * Sets whether links are indexed by relation, so that {@link #getLink} and
+   * {@link #getLinks(String, String)} find the links with a given
+   * {@code rel} value without scanning all links.
+   * <p>
+   * The index is kept up to date by the link methods of this class, and is
+   * rebuilt when link elements are added or removed otherwise.  Changing the
+   * {@code rel} value of a link is only seen once the index is rebuilt by
+   * enabling it again.
+   */
+  public void setLinkIndexEnabled(boolean enabled) {
+    linkIndex = enabled ? new LinkIndex<Link>(getLinks()) : null;
+  }
+
+  /**
+   * Returns whether links are indexed by relation.
+   */
+  public boolean isLinkIndexEnabled() {
+    return linkIndex != null;
+  }
+
+  /**
+   * Returns the link index, if any, in sync with the link elements.
+   */
+  private LinkIndex<Link> getLinkIndex() {
+    LinkIndex<Link> index = linkIndex;
+    if (index != null && index.size() != getElementCount(Link.KEY)) {
+      index.rebuild(getLinks());
+    }
+    return index;
   }
 
   @SuppressWarnings("unchecked")
@@ -566,6 +612,11 @@ public class Source extends Element {
    */
   public Link getLink(String rel, String type) {
 
+    LinkIndex<Link> index = getLinkIndex();
+    if (index != null && rel != null) {
+      return index.getLink(rel, type);
+    }
+
     for (Link link : getLinks()) {
       if (link.matches(rel, type)) {
         return link;
@@ -585,6 +636,10 @@ public class Source extends Element {
    * @return matching links.
    */
   public List<Link> getLinks(String relToMatch, String typeToMatch) {
+    LinkIndex<Link> index = getLinkIndex();
+    if (index != null && relToMatch != null) {
+      return index.getLinks(relToMatch, typeToMatch);
+    }
     List<Link> result = new ArrayList<Link>();
     for (Link link : getLinks()) {
       if (link.matches(relToMatch, typeToMatch)) {
@@ -633,7 +688,7 @@ public class Source extends Element {
       if (title != null) {
         link.setTitle(title);
       }
-      addElement(Link.KEY, link);
+      addLink(link);
     } catch (URISyntaxException e) {
       throw new IllegalArgumentException(e);
     }
@@ -0,0 +1,509 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.util;
+
+import com.google.gdata.model.AttributeKey;
+import com.google.gdata.model.MetadataKey;
+import com.google.gdata.model.Path;
+import com.google.gdata.model.QName;
+import com.google.gdata.util.common.base.Preconditions;
+import com.google.gdata.util.common.xml.XmlNamespace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The elements of a document to parse, relative to its root element.  An
+ * {@link XmlParser} or {@link com.google.gdata.wireformats.XmlParser} with a
+ * projection skips every element outside of it together with its content,
+ * without creating element handlers, text buffers or XML blobs for them,
+ * so the cost of parsing follows the selected data rather than the size of
+ * the document.
+ * <p>
+ * A projection is created from a fields expression, with the syntax of the
+ * {@code fields} query parameter of partial responses, by {@link #parse}, or
+ * from a list of model paths by {@link #of(Collection)}.  Selecting an
+ * element selects all of its content.  Selecting an attribute or subfields
+ * of an element selects the element with all of its attributes and text,
+ * but only the selected child elements.  The root element is always
+ * parsed.
+ * <p>
+ * Parsers created while a projection is set for the current thread with
+ * {@link #setThreadProjection} use it by default.  A projection is
+ * immutable and may be shared between threads.
+ *
+ *
+ */
+public final class FieldProjection {
+
+  /**
+   * Resolves the namespace prefixes used by a fields expression against the
+   * namespace declarations of the parsed document.
+   */
+  public interface PrefixResolver {
+
+    /**
+     * Returns the namespace URI bound to a prefix at the current location of
+     * the document, or {@code null} if the prefix is not declared.
+     */
+    String getNamespaceUri(String prefix);
+  }
+
+  /** Projection of the parsers created by the current thread. */
+  private static final ThreadLocal<FieldProjection> threadProjection =
+      new ThreadLocal<FieldProjection>();
+
+  /** Selection of the root element. */
+  private final Selection root;
+
+  private FieldProjection(Selection root) {
+    this.root = root;
+  }
+
+  /**
+   * Creates a projection from a fields expression, for example
+   * {@code entry(title,link[@rel='alternate'](@href),gd:when)}.  Names
+   * without a prefix are in the Atom namespace and {@code *} selects all
+   * child elements.  Prefixes are resolved against the namespace
+   * declarations of the parsed document.  Conditions in brackets are not
+   * evaluated, so an element with a condition is parsed whenever its name
+   * is selected.
+   *
+   * @param fields fields expression.
+   * @return projection selecting the fields.
+   * @throws IllegalArgumentException if the expression is not valid.
+   */
+  public static FieldProjection parse(String fields) {
+    Preconditions.checkNotNull(fields, "fields");
+    Selection root = new Selection();
+    new ExpressionParser(fields).parse(root);
+    return new FieldProjection(root);
+  }
+
+  /**
+   * Creates a projection from model paths, relative to the root element.
+   * A path to an attribute selects its element without any child element.
+   *
+   * @param paths paths to select.
+   * @return projection selecting the paths.
+   */
+  public static FieldProjection of(Path... paths) {
+    return of(Arrays.asList(paths));
+  }
+
+  /**
+   * Creates a projection from model paths, relative to the root element.
+   * A path to an attribute selects its element without any child element.
+   *
+   * @param paths paths to select.
+   * @return projection selecting the paths.
+   */
+  public static FieldProjection of(Collection<Path> paths) {
+    Preconditions.checkNotNull(paths, "paths");
+    Selection root = new Selection();
+    for (Path path : paths) {
+      Selection current = root;
+      for (MetadataKey<?> step : path.getSteps()) {
+        if (step instanceof AttributeKey<?>) {
+          break;
+        }
+        QName id = step.getId();
+        XmlNamespace ns = id.getNs();
+        String namespaceUri;
+        if (id.matchesAnyNamespace()) {
+          namespaceUri = null;
+        } else {
+          namespaceUri = (ns == null) ? "" : ns.getUri();
+        }
+        current = current.addChild(null, namespaceUri,
+            id.matchesAnyLocalName() ? null : id.getLocalName());
+      }
+      if (!path.selectsAttribute()) {
+        current.selectAll();
+      }
+    }
+    return new FieldProjection(root);
+  }
+
+  /**
+   * Returns the projection used by default by parsers created on the
+   * current thread, or {@code null} if they parse whole documents.
+   */
+  public static FieldProjection getThreadProjection() {
+    return threadProjection.get();
+  }
+
+  /**
+   * Sets the projection used by default by parsers created on the current
+   * thread.  Callers should restore the previous projection when done:
+   * <pre>
+   *   FieldProjection previous = FieldProjection.setThreadProjection(
+   *       FieldProjection.parse("entry(title,updated)"));
+   *   try {
+   *     feed = service.getFeed(feedUrl, ContactFeed.class);
+   *   } finally {
+   *     FieldProjection.setThreadProjection(previous);
+   *   }
+   * </pre>
+   *
+   * @param projection projection, or {@code null} to parse whole documents.
+   * @return the previous projection of the thread, or {@code null}.
+   */
+  public static FieldProjection setThreadProjection(
+      FieldProjection projection) {
+    FieldProjection previous = threadProjection.get();
+    if (projection == null) {
+      threadProjection.remove();
+    } else {
+      threadProjection.set(projection);
+    }
+    return previous;
+  }
+
+  /**
+   * Returns a cursor that follows a parse through this projection.
+   *
+   * @param resolver resolves the prefixes of the projection in the parsed
+   *     document.
+   */
+  public Cursor newCursor(PrefixResolver resolver) {
+    return new Cursor(root, resolver);
+  }
+
+  /**
+   * Tracks the selections of the elements open during a parse.  A parser
+   * reports the start of each element that it parses, and the end of each
+   * element whose start was selected.  The elements nested in an element
+   * that was not selected must not be reported.
+   */
+  public static final class Cursor {
+
+    private final Selection root;
+    private final PrefixResolver resolver;
+    private Selection[] stack = new Selection[16];
+    private int depth;
+
+    private Cursor(Selection root, PrefixResolver resolver) {
+      this.root = root;
+      this.resolver = resolver;
+    }
+
+    /**
+     * Reports the start of an element.
+     *
+     * @param namespaceUri namespace URI of the element.
+     * @param localName local name of the element.
+     * @return {@code true} if the element is selected and must be parsed,
+     *     or {@code false} if it must be skipped with all its content.
+     */
+    public boolean startElement(String namespaceUri, String localName) {
+      Selection selection;
+      if (depth == 0) {
+        selection = root;
+      } else {
+        selection = stack[depth - 1].select(namespaceUri, localName, resolver);
+        if (selection == null) {
+          return false;
+        }
+      }
+      if (depth == stack.length) {
+        stack = Arrays.copyOf(stack, 2 * depth);
+      }
+      stack[depth++] = selection;
+      return true;
+    }
+
+    /**
+     * Reports the end of an element that was selected.
+     */
+    public void endElement() {
+      stack[--depth] = null;
+    }
+  }
+
+  /**
+   * Selected content of an element.  A complete selection selects all the
+   * content, and is its own selection for every child element.
+   */
+  private static final class Selection {
+
+    private boolean complete;
+
+    /** Selected child elements by local name. */
+    private Map<String, List<Step>> children;
+
+    /** Selected child elements of any local name. */
+    private List<Step> wildcards;
+
+    /** Selects all the content of the element. */
+    void selectAll() {
+      complete = true;
+      children = null;
+      wildcards = null;
+    }
+
+    /**
+     * Adds a child element to the selection, or returns the selection of
+     * the child if already added.
+     *
+     * @param prefix namespace prefix to resolve in the document, or
+     *     {@code null} if the namespace URI is given.
+     * @param namespaceUri namespace URI, or {@code null} for any namespace.
+     * @param localName local name, or {@code null} for any local name.
+     */
+    Selection addChild(String prefix, String namespaceUri, String localName) {
+      if (complete) {
+        return this;
+      }
+      List<Step> steps;
+      if (localName == null) {
+        if (wildcards == null) {
+          wildcards = new ArrayList<Step>(1);
+        }
+        steps = wildcards;
+      } else {
+        if (children == null) {
+          children = new HashMap<String, List<Step>>();
+        }
+        steps = children.get(localName);
+        if (steps == null) {
+          steps = new ArrayList<Step>(1);
+          children.put(localName, steps);
+        }
+      }
+      for (Step step : steps) {
+        if (step.is(prefix, namespaceUri)) {
+          return step.selection;
+        }
+      }
+      Step step = new Step(prefix, namespaceUri);
+      steps.add(step);
+      return step.selection;
+    }
+
+    /**
+     * Returns the selection of a child element, or {@code null} if the
+     * child is not selected.
+     */
+    Selection select(String namespaceUri, String localName,
+        PrefixResolver resolver) {
+      if (complete) {
+        return this;
+      }
+      if (children != null) {
+        List<Step> steps = children.get(localName);
+        if (steps != null) {
+          Selection selection = select(steps, namespaceUri, resolver);
+          if (selection != null) {
+            return selection;
+          }
+        }
+      }
+      return (wildcards == null) ? null
+          : select(wildcards, namespaceUri, resolver);
+    }
+
+    private static Selection select(List<Step> steps, String namespaceUri,
+        PrefixResolver resolver) {
+      for (int i = 0; i < steps.size(); i++) {
+        Step step = steps.get(i);
+        if (step.matches(namespaceUri, resolver)) {
+          return step.selection;
+        }
+      }
+      return null;
+    }
+  }
+
+  /** Child element step of a selection. */
+  private static final class Step {
+
+    private final String prefix;
+    private final String namespaceUri;
+    private final Selection selection = new Selection();
+
+    Step(String prefix, String namespaceUri) {
+      this.prefix = prefix;
+      this.namespaceUri = namespaceUri;
+    }
+
+    boolean is(String otherPrefix, String otherNamespaceUri) {
+      return equal(prefix, otherPrefix)
+          && equal(namespaceUri, otherNamespaceUri);
+    }
+
+    boolean matches(String elementNamespaceUri, PrefixResolver resolver) {
+      if (prefix != null) {
+        return resolver != null
+            && elementNamespaceUri.equals(resolver.getNamespaceUri(prefix));
+      }
+      return namespaceUri == null || namespaceUri.equals(elementNamespaceUri);
+    }
+
+    private static boolean equal(String a, String b) {
+      return (a == null) ? b == null : a.equals(b);
+    }
+  }
+
+  /** Parses a fields expression into a selection. */
+  private static final class ExpressionParser {
+
+    private final String fields;
+    private int pos;
+
+    ExpressionParser(String fields) {
+      this.fields = fields;
+    }
+
+    void parse(Selection root) {
+      parseList(root);
+      skipSpaces();
+      if (pos < fields.length()) {
+        throw error("Unexpected '" + fields.charAt(pos) + "'");
+      }
+    }
+
+    /** Parses comma-separated fields selected in an element. */
+    private void parseList(Selection parent) {
+      do {
+        parseField(parent);
+      } while (consume(','));
+    }
+
+    /** Parses a field, which is an attribute or an element path. */
+    private void parseField(Selection parent) {
+      Selection current = parent;
+      while (true) {
+        if (consume('@')) {
+          // The attributes of a selected element are always parsed.
+          parseName();
+          skipConditions();
+          return;
+        }
+        String name = parseName();
+        skipConditions();
+        int colon = name.indexOf(':');
+        String prefix = (colon < 0) ? null : name.substring(0, colon);
+        String localName = name.substring(colon + 1);
+        if (localName.length() == 0 || (prefix != null
+            && (prefix.length() == 0 || localName.indexOf(':') >= 0))) {
+          throw error("Invalid name '" + name + "'");
+        }
+        String namespaceUri;
+        if (prefix != null) {
+          namespaceUri = null;
+        } else if ("*".equals(localName)) {
+          namespaceUri = null;
+        } else {
+          namespaceUri = Namespaces.atom;
+        }
+        Selection child = current.addChild(prefix, namespaceUri,
+            "*".equals(localName) ? null : localName);
+        if (consume('/')) {
+          current = child;
+        } else {
+          if (consume('(')) {
+            parseList(child);
+            if (!consume(')')) {
+              throw error("Missing ')'");
+            }
+          } else {
+            child.selectAll();
+          }
+          return;
+        }
+      }
+    }
+
+    private String parseName() {
+      skipSpaces();
+      int start = pos;
+      while (pos < fields.length() && isNameChar(fields.charAt(pos))) {
+        pos++;
+      }
+      if (pos == start) {
+        throw error("Missing name");
+      }
+      return fields.substring(start, pos);
+    }
+
+    /** Skips conditions in brackets, which are not evaluated. */
+    private void skipConditions() {
+      while (consume('[')) {
+        int nesting = 1;
+        char quote = 0;
+        while (nesting > 0) {
+          if (pos == fields.length()) {
+            throw error("Missing ']'");
+          }
+          char c = fields.charAt(pos++);
+          if (quote != 0) {
+            if (c == quote) {
+              quote = 0;
+            }
+          } else if (c == '\'' || c == '"') {
+            quote = c;
+          } else if (c == '[') {
+            nesting++;
+          } else if (c == ']') {
+            nesting--;
+          }
+        }
+      }
+    }
+
+    private boolean consume(char c) {
+      skipSpaces();
+      if (pos < fields.length() && fields.charAt(pos) == c) {
+        pos++;
+        return true;
+      }
+      return false;
+    }
+
+    private void skipSpaces() {
+      while (pos < fields.length()
+          && Character.isWhitespace(fields.charAt(pos))) {
+        pos++;
+      }
+    }
+
+    private static boolean isNameChar(char c) {
+      switch (c) {
+        case ',':
+        case '(':
+        case ')':
+        case '/':
+        case '[':
+        case ']':
+        case '@':
+          return false;
+        default:
+          return !Character.isWhitespace(c);
+      }
+    }
+
+    private IllegalArgumentException error(String message) {
+      return new IllegalArgumentException(message
+          + " at position " + pos + " of fields expression: " + fields);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.util;
+
+import com.google.gdata.util.common.base.Preconditions;
+
+import org.xml.sax.EntityResolver;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Keeps one {@link SAXParser} per thread for reuse across documents, so that
+ * parsing many small documents does not pay for creating a new parser each
+ * time.
+ * <p>
+ * A parser is obtained with {@link #get()} and must be handed back with
+ * {@link #release(SAXParser)} once the document has been parsed, typically
+ * in a {@code finally} block. A parser that is in use is not shared: a
+ * nested parse on the same thread gets a new parser.
+ * <p>
+ * Released parsers are {@link SAXParser#reset() reset} to the configuration
+ * of the factory. The entity resolver installed by the factory, such as the
+ * one of {@link com.google.gdata.util.common.xml.parsing.SecureGenericXMLFactory}
+ * that blocks external entities, is kept across the reset. Parsers that
+ * cannot be reset are not reused.
+ *
+ *
+ */
+public class SaxParserCache {
+
+  private static final Logger logger =
+      Logger.getLogger(SaxParserCache.class.getName());
+
+  /** Factory creating the parsers. */
+  private final SAXParserFactory factory;
+
+  /** Idle parser of each thread. */
+  private final ThreadLocal<SAXParser> idleParser = new ThreadLocal<SAXParser>();
+
+  /**
+   * Creates a cache of parsers created by a factory.
+   *
+   * @param factory factory creating the parsers. It must not be
+   *        reconfigured afterwards.
+   */
+  public SaxParserCache(SAXParserFactory factory) {
+    this.factory = Preconditions.checkNotNull(factory, "factory");
+  }
+
+  /**
+   * Returns the factory creating the parsers.
+   */
+  public SAXParserFactory getFactory() {
+    return factory;
+  }
+
+  /**
+   * Returns a parser for the calling thread, reusing the parser released
+   * last on this thread if there is one.
+   *
+   * @return parser ready to parse a document.
+   * @throws ParserConfigurationException if no parser can be created.
+   * @throws SAXException if no parser can be created.
+   */
+  public SAXParser get() throws ParserConfigurationException, SAXException {
+    SAXParser parser = idleParser.get();
+    if (parser != null) {
+      idleParser.set(null);
+      return parser;
+    }
+    return factory.newSAXParser();
+  }
+
+  /**
+   * Resets a parser obtained from {@link #get()} on the calling thread and
+   * keeps it for the next document parsed on that thread.
+   *
+   * @param parser parser to release.
+   */
+  @SuppressWarnings("deprecation")
+  public void release(SAXParser parser) {
+    try {
+      XMLReader xmlReader = parser.getXMLReader();
+      EntityResolver entityResolver = xmlReader.getEntityResolver();
+
+      // Drop the handler of the last document, which is not covered by the
+      // reset, so that the parsed content can be garbage collected.
+      parser.getParser().setDocumentHandler(null);
+      parser.reset();
+      if (xmlReader.getEntityResolver() != entityResolver) {
+        xmlReader.setEntityResolver(entityResolver);
+      }
+      idleParser.set(parser);
+    } catch (UnsupportedOperationException e) {
+      // The parser can't be reset, so it is not reused.
+    } catch (SAXException e) {
+      LogUtils.logException(logger, Level.FINE, null, e);
+    } catch (RuntimeException e) {
+      LogUtils.logException(logger, Level.FINE, null, e);
+    }
+  }
+}
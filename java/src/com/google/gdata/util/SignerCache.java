@@ -0,0 +1,163 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.util;
+
+import com.google.gdata.util.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Keeps initialized {@link Mac} and {@link Signature} instances per thread,
+ * keyed by algorithm and key, so that signing many requests with the same
+ * credentials does not pay for the provider lookup and key setup each time.
+ * <p>
+ * An instance returned by this class is ready to sign and must be used to
+ * completion, with {@link Mac#doFinal} or {@link Signature#sign}, before the
+ * next call for the same algorithm and key on the same thread.  Instances
+ * are reset each time they are returned, so data left by a signature that
+ * failed midway is never signed.  Instances are never shared between
+ * threads.
+ * <p>
+ * Each thread keeps the instances for at most {@link #MAX_KEYS_PER_THREAD}
+ * keys, dropping the least recently used ones beyond that.  Key material
+ * stays referenced by the cache until it is dropped or {@link #clear()} is
+ * called on the thread.
+ *
+ *
+ */
+public class SignerCache {
+
+  /** Maximum number of keys for which a thread keeps instances. */
+  public static final int MAX_KEYS_PER_THREAD = 8;
+
+  /** Instances of each thread, in least recently used order. */
+  private static final ThreadLocal<Map<CacheKey, Object>> instances =
+      new ThreadLocal<Map<CacheKey, Object>>() {
+        @Override
+        protected Map<CacheKey, Object> initialValue() {
+          return new LinkedHashMap<CacheKey, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<CacheKey, Object> eldest) {
+              return size() > MAX_KEYS_PER_THREAD;
+            }
+          };
+        }
+      };
+
+  private SignerCache() {}
+
+  /**
+   * Returns a {@link Mac} for the calling thread initialized with a secret
+   * key.
+   *
+   * @param algorithm MAC algorithm, for example {@code HmacSHA1}.
+   * @param key secret key bytes.  The array is copied if it is cached.
+   * @return initialized and reset MAC.
+   * @throws NoSuchAlgorithmException if the algorithm is not available.
+   * @throws InvalidKeyException if the key is not valid for the algorithm.
+   */
+  public static Mac getMac(String algorithm, byte[] key)
+      throws NoSuchAlgorithmException, InvalidKeyException {
+    Preconditions.checkNotNull(algorithm, "algorithm");
+    Preconditions.checkNotNull(key, "key");
+    Map<CacheKey, Object> cache = instances.get();
+    Mac mac = (Mac) cache.get(new CacheKey(algorithm, ByteBuffer.wrap(key)));
+    if (mac != null) {
+      mac.reset();
+      return mac;
+    }
+    mac = Mac.getInstance(algorithm);
+    mac.init(new SecretKeySpec(key, algorithm));
+    cache.put(new CacheKey(algorithm, ByteBuffer.wrap(key.clone())), mac);
+    return mac;
+  }
+
+  /**
+   * Returns a {@link Signature} for the calling thread initialized for
+   * signing with a private key.
+   *
+   * @param algorithm signature algorithm, for example {@code SHA1withRSA}.
+   * @param key private key.
+   * @return signature freshly initialized for signing.
+   * @throws NoSuchAlgorithmException if the algorithm is not available.
+   * @throws InvalidKeyException if the key is not valid for the algorithm.
+   */
+  public static Signature getSignature(String algorithm, PrivateKey key)
+      throws NoSuchAlgorithmException, InvalidKeyException {
+    Preconditions.checkNotNull(algorithm, "algorithm");
+    Preconditions.checkNotNull(key, "key");
+    Map<CacheKey, Object> cache = instances.get();
+    CacheKey cacheKey = new CacheKey(algorithm, key);
+    Signature signature = (Signature) cache.get(cacheKey);
+    if (signature != null) {
+      // Discard any data left by a caller whose signing failed.
+      signature.initSign(key);
+      return signature;
+    }
+    signature = Signature.getInstance(algorithm);
+    signature.initSign(key);
+    cache.put(cacheKey, signature);
+    return signature;
+  }
+
+  /**
+   * Drops all instances kept for the calling thread, together with the
+   * references to their keys.
+   */
+  public static void clear() {
+    instances.remove();
+  }
+
+  /**
+   * Algorithm and key of a cached instance.  Secret keys are held in a
+   * {@link ByteBuffer}, which compares by content.
+   */
+  private static class CacheKey {
+
+    private final String algorithm;
+    private final Object key;
+
+    CacheKey(String algorithm, Object key) {
+      this.algorithm = algorithm;
+      this.key = key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof CacheKey)) {
+        return false;
+      }
+      CacheKey other = (CacheKey) o;
+      return algorithm.equals(other.algorithm) && key.equals(other.key);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * algorithm.hashCode() + key.hashCode();
+    }
+  }
+}
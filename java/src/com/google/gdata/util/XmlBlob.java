@@ -28,6 +28,14 @@ import java.util.List;
 
 /**
  * Arbitrary self-contained block of XML.
+ * <p>
+ * A blob parsed by an {@link XmlParser} that defers blobs keeps the location
+ * of its XML in the parsed document, and parses it when its contents,
+ * namespaces or full-text index are first requested.  Concurrent requests
+ * wait for that parse, so a parsed blob may be read by several threads.  If
+ * the deferred XML cannot be parsed, the accessors of the contents,
+ * namespaces and full-text index throw an {@link IllegalStateException}
+ * whose cause is the {@link ParseException}.
  *
  * 
  */
@@ -67,10 +75,12 @@ public class XmlBlob {
     new LinkedList<XmlNamespace>();
 
   public List<XmlNamespace> getNamespaces() {
+    parseDeferredXml();
     return namespaces;
   }
 
   public boolean addNamespace(XmlNamespace namespace) {
+    parseDeferredXml();
     return namespaces.add(namespace);
   }
 
@@ -80,8 +90,14 @@ public class XmlBlob {
    * top-level text() nodes mixed together with child elements.
    */
   protected String blob;
-  public String getBlob() { return blob; }
-  public void setBlob(String v) { blob = v; }
+  public String getBlob() {
+    parseDeferredXml();
+    return blob;
+  }
+  public void setBlob(String v) {
+    parseDeferredXml();
+    blob = v;
+  }
 
 
   /**
@@ -89,8 +105,45 @@ public class XmlBlob {
    * Valid only when this blob comes from {@link XmlParser}.
    */
   protected String fullText;
-  public String getFullText() { return fullText; }
-  public void setFullText(String v) { fullText = v; }
+  public String getFullText() {
+    parseDeferredXml();
+    return fullText;
+  }
+  public void setFullText(String v) {
+    parseDeferredXml();
+    fullText = v;
+  }
+
+
+  /** Location of the contents in the parsed document, if not parsed yet. */
+  private volatile XmlParser.DeferredXml deferredXml;
+
+  /** Defers the parsing of the contents until they are requested. */
+  void defer(XmlParser.DeferredXml deferredXml) {
+    this.deferredXml = deferredXml;
+  }
+
+  /**
+   * Parses the deferred contents, if any.  The location is cleared only once
+   * the parsed fields are set, so other threads wait for them.
+   *
+   * @throws IllegalStateException if the deferred contents cannot be parsed.
+   */
+  private void parseDeferredXml() {
+    if (deferredXml != null) {
+      synchronized (this) {
+        XmlParser.DeferredXml deferred = deferredXml;
+        if (deferred != null) {
+          try {
+            deferred.parseInto(this);
+          } catch (ParseException e) {
+            throw new IllegalStateException("Unable to parse deferred XML", e);
+          }
+          deferredXml = null;
+        }
+      }
+    }
+  }
 
 
   /** Generates an element opening tag containing an XML blob. */
@@ -18,10 +18,13 @@ package com.google.gdata.util;
 
 
 
+import com.google.gdata.util.common.base.StringUtil;
+import com.google.gdata.util.common.io.CharStreams;
 import com.google.gdata.util.common.xml.XmlNamespace;
 import com.google.gdata.util.common.xml.XmlWriter;
 import com.google.gdata.util.common.xml.parsing.SecureGenericXMLFactory;
 import com.google.gdata.client.CoreErrorDomain;
+import com.google.gdata.data.XmlEventSource;
 
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
@@ -33,10 +36,12 @@ import org.xml.sax.helpers.ParserAdapter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -72,15 +77,37 @@ import javax.xml.parsers.SAXParserFactory;
  * 
  * @see     XmlParser.ElementHandler
  */
-public class XmlParser extends DefaultHandler {
+public class XmlParser extends DefaultHandler
+    implements XmlEventSource.SkippingHandler {
 
 
   private static final Logger logger =
     Logger.getLogger(XmlParser.class.getName());
 
 
-  // The SAXParserFactory used to create underlying SAXParser instances.
-  private static SAXParserFactory parserFactory;
+  /**
+   * Whether parsers created by the current thread defer the parsing of
+   * {@link XmlBlob} contents.
+   */
+  private static ThreadLocal<Boolean> deferredXmlBlobs =
+      new ThreadLocal<Boolean>() {
+        @Override protected Boolean initialValue() {
+          return Boolean.FALSE;
+        }
+      };
+  public static final boolean isDeferredXmlBlobs() {
+    return deferredXmlBlobs.get();
+  }
+  public static final void enableDeferredXmlBlobs() {
+    deferredXmlBlobs.set(Boolean.TRUE);
+  }
+  public static final void disableDeferredXmlBlobs() {
+    deferredXmlBlobs.set(Boolean.FALSE);
+  }
+
+
+  // The cache of underlying SAXParser instances, reused across documents.
+  private static SaxParserCache parserCache;
 
   // Always return secure SAX parser, which is secured against XXE attacks
   private static SAXParserFactory getSAXParserFactory()
@@ -189,6 +216,13 @@ public class XmlParser extends DefaultHandler {
     boolean fullTextIndex = false;
 
 
+    /**
+     * Flag indicating whether unrecognized child elements are skipped
+     * without keeping their XML.
+     */
+    boolean skippingUnrecognizedXml = false;
+
+
     /** This element's inner XML writer. Used internally by XmlParser. */
     XmlWriter innerXml;
 
@@ -205,6 +239,13 @@ public class XmlParser extends DefaultHandler {
     StringWriter fullTextIndexWriter;
 
 
+    /**
+     * Location of this element's blob in the parsed source, if the blob is
+     * deferred instead of written by {@link #innerXml}.
+     */
+    DeferredXml deferredXml;
+
+
     /**
      * Determines a handler for a child element.
      * <p>
@@ -287,7 +328,7 @@ public class XmlParser extends DefaultHandler {
                                           Attributes attrs)
         throws ParseException, IOException {
 
-      if (xmlBlob == null) {
+      if (xmlBlob == null && !skippingUnrecognizedXml) {
         ParseException pe = new ParseException(
             CoreErrorDomain.ERR.unrecognizedElement);
         pe.setInternalReason("Unrecognized element '" + localName + "'.");
@@ -381,8 +422,16 @@ public class XmlParser extends DefaultHandler {
 
       assert okToInitializeXmlBlob;
 
+      // The writers are created by the parser when the element starts,
+      // unless the blob is deferred.
       this.xmlBlob = xmlBlob;
       this.mixedContent = mixedContent;
+      this.fullTextIndex = fullTextIndex;
+    }
+
+
+    /** Creates the writers that store the unrecognized XML of the blob. */
+    void startXmlBlob() {
       this.innerXmlStringWriter = new StringWriter();
       try {
         this.innerXml = new XmlWriter(innerXmlStringWriter);
@@ -392,13 +441,24 @@ public class XmlParser extends DefaultHandler {
       } catch (IOException impossible) {
         throw new AssertionError(impossible);
       }
-      this.fullTextIndex = fullTextIndex;
       if (fullTextIndex) {
         this.fullTextIndexWriter = new StringWriter();
       }
     }
 
 
+    /**
+     * Makes the parser skip the child elements that this handler does not
+     * recognize, together with their content, instead of reporting them as
+     * schema errors.  Unlike {@link #initializeXmlBlob}, nothing is kept of
+     * the skipped elements, so a handler interested in a few child elements
+     * can ignore the rest at little cost.
+     */
+    public void skipUnrecognizedXml() {
+      this.skippingUnrecognizedXml = true;
+    }
+
+
     /**
      * Utility routine that combines the current state of {@code xml:base}
      * with the specified URI to obtain an absolute URI.
@@ -508,6 +568,41 @@ public class XmlParser extends DefaultHandler {
   /** Number of unrecognized elements on the stack. */
   int unrecognizedElements = 0;
 
+  /** Fields to parse, or {@code null} to parse all elements. */
+  private FieldProjection projection = FieldProjection.getThreadProjection();
+
+  /** Selections of the open elements, if parsing a projection. */
+  private FieldProjection.Cursor cursor;
+
+  /** Number of elements on the stack outside of the projection. */
+  int skippedElements = 0;
+
+  /** Whether blob contents are located in the source instead of written. */
+  private boolean deferXmlBlobs = isDeferredXmlBlobs();
+
+  /** Text of the parsed document, if blobs are deferred. */
+  private String source;
+
+  /** Offsets of the lines of {@link #source}, computed on first use. */
+  private int[] lineStarts;
+
+  /** Offset of the '<' of the last tag found by {@link #locateTag}. */
+  private int tagStart;
+
+  /**
+   * Whether the document locator did not point at a tag, in which case no
+   * further blob of the document is deferred.
+   */
+  private boolean locatorMismatch;
+
+  /** Tag kinds found by {@link #locateTag}. */
+  private static final int START_TAG = 0;
+  private static final int CHILD_END_TAG = 1;
+  private static final int END_TAG = 2;
+
+  /** Namespace declarations in scope, or {@code null} if changed. */
+  private XmlNamespace[] namespacesInScope;
+
 
   /** Document locator used to get line and column numbers for SAX events. */
   Locator locator;
@@ -577,7 +672,14 @@ public class XmlParser extends DefaultHandler {
       throws IOException,
              ParseException {
 
-    InputSource is = new InputSource(reader);
+    InputSource is;
+    if (deferXmlBlobs) {
+      // Keep the text, for blobs to parse their part of it on demand.
+      source = CharStreams.toString(reader);
+      is = new InputSource(new StringReader(source));
+    } else {
+      is = new InputSource(reader);
+    }
 
     this.rootHandler = rootHandler;
     this.rootNamespace = rootNamespace;
@@ -678,20 +780,26 @@ public class XmlParser extends DefaultHandler {
 
     try {
 
-      // Lazy initialization of the parser factory.  There is a minor
+      // Lazy initialization of the parser cache.  There is a minor
       // init-time race condition here if two parsers are created
       // simultaneously, but the getSAXParserFactory() impl is thread-safe
-      // and worse case scenario is that multiple parser factories are
+      // and worse case scenario is that multiple parser caches are
       // initially created during the race.  Double-checked locking bug
       // makes it harder to do better w/out significant overhead.
-      if (parserFactory == null) {
-        parserFactory = getSAXParserFactory();
+      SaxParserCache cache = parserCache;
+      if (cache == null) {
+        cache = new SaxParserCache(getSAXParserFactory());
+        parserCache = cache;
       }
 
-      SAXParser sp = parserFactory.newSAXParser();
-      ParserAdapter pa = new ParserAdapter(sp.getParser());
-      pa.setContentHandler(this);
-      pa.parse(is);
+      SAXParser sp = cache.get();
+      try {
+        ParserAdapter pa = new ParserAdapter(sp.getParser());
+        pa.setContentHandler(this);
+        pa.parse(is);
+      } finally {
+        cache.release(sp);
+      }
 
     } catch (SAXException e) {
 
@@ -795,6 +903,14 @@ public class XmlParser extends DefaultHandler {
                            String qName,
                            Attributes attrs) throws SAXException {
 
+    // Elements outside of the projection are skipped before any other work.
+    if (skippedElements > 0 || (projection != null
+        && !startProjectedElement(namespace, localName))) {
+      ++skippedElements;
+      elementNamespaces.clear();
+      return;
+    }
+
     logger.fine("Start element " + qName);
 
     ElementHandler parentHandler = curHandler;
@@ -836,6 +952,14 @@ public class XmlParser extends DefaultHandler {
       curHandler.parent = parentHandler;
       curHandler.qName = qName;
 
+      // A recognized child is not part of the deferred mixed content blob
+      // of its parent.
+      if (parentHandler != null && parentHandler.deferredXml != null
+          && parentHandler.mixedContent) {
+        locateTag(qName, START_TAG, parentHandler.deferredXml);
+        parentHandler.deferredXml.endRange(tagStart);
+      }
+
       // Propagate xml:lang and xml:base.
       if (parentHandler != null) {
         curHandler.xmlLang = parentHandler.xmlLang;
@@ -904,6 +1028,10 @@ public class XmlParser extends DefaultHandler {
         if (curHandler.xmlBase != null) {
           curHandler.xmlBlob.setBase(curHandler.xmlBase);
         }
+
+        if (!deferXmlBlob(curHandler, qName)) {
+          curHandler.startXmlBlob();
+        }
       }
 
     } else { // curHandler == null || unrecognizedElements > 0
@@ -931,6 +1059,14 @@ public class XmlParser extends DefaultHandler {
         curHandler = parentHandler;
       }
 
+      // A deferred blob without mixed content is made of its unrecognized
+      // child elements.
+      if (unrecognizedElements == 1 && curHandler != null
+          && curHandler.deferredXml != null && !curHandler.mixedContent) {
+        locateTag(qName, START_TAG, curHandler.deferredXml);
+        curHandler.deferredXml.startRange(tagStart);
+      }
+
       // This element hasn't been recognized by the handler.
       // If the handler allows foreign XML, we'll start accumulating it as
       // a string.
@@ -974,12 +1110,26 @@ public class XmlParser extends DefaultHandler {
   public void endElement(String namespace, String localName, String qName)
       throws SAXException {
 
+    if (skippedElements > 0) {
+      --skippedElements;
+      return;
+    }
+    if (cursor != null) {
+      cursor.endElement();
+    }
+
     logger.fine("End element " + qName);
 
     if (unrecognizedElements > 0) {
 
       --unrecognizedElements;
 
+      if (unrecognizedElements == 0 && curHandler != null
+          && curHandler.deferredXml != null && !curHandler.mixedContent) {
+        curHandler.deferredXml.endRange(
+            locateTag(qName, CHILD_END_TAG, curHandler.deferredXml));
+      }
+
       if (curHandler != null && curHandler.innerXml != null) {
         try {
           curHandler.innerXml.endElement();
@@ -990,7 +1140,27 @@ public class XmlParser extends DefaultHandler {
 
     } else if (curHandler != null) {
 
-      if (curHandler.xmlBlob != null) {
+      if (curHandler.deferredXml != null) {
+
+        DeferredXml deferred = curHandler.deferredXml;
+        curHandler.deferredXml = null;
+        if (curHandler.mixedContent) {
+          locateTag(qName, END_TAG, deferred);
+          deferred.endRange(tagStart);
+        }
+        if (deferred.isScanned()) {
+          // Tags of the blob were found by scanning the source rather than
+          // at the document locator, so parse it now to report any error.
+          try {
+            deferred.parseInto(curHandler.xmlBlob);
+          } catch (ParseException e) {
+            throw new SAXException(e);
+          }
+        } else if (!deferred.isEmpty()) {
+          curHandler.xmlBlob.defer(deferred);
+        }
+
+      } else if (curHandler.innerXmlStringWriter != null) {
 
         StringBuffer blob = curHandler.innerXmlStringWriter.getBuffer();
         if (blob.length() != 0) {
@@ -1016,6 +1186,14 @@ public class XmlParser extends DefaultHandler {
       }
 
       curHandler = curHandler.parent;
+
+      // The deferred mixed content blob of the parent resumes after a
+      // recognized child.
+      if (curHandler != null && curHandler.deferredXml != null
+          && curHandler.mixedContent) {
+        curHandler.deferredXml.startRange(
+            locateTag(qName, CHILD_END_TAG, curHandler.deferredXml));
+      }
     }
   }
 
@@ -1023,7 +1201,7 @@ public class XmlParser extends DefaultHandler {
   @Override
   public void characters(char[] text, int start, int len) throws SAXException {
 
-    if (curHandler != null) {
+    if (curHandler != null && skippedElements == 0) {
 
       if (unrecognizedElements == 0) {
 
@@ -1058,6 +1236,7 @@ public class XmlParser extends DefaultHandler {
       throws SAXException {
 
     if (curHandler != null && curHandler.innerXml != null &&
+        skippedElements == 0 &&
         (curHandler.mixedContent || unrecognizedElements > 0)) {
 
       try {
@@ -1069,6 +1248,87 @@ public class XmlParser extends DefaultHandler {
   }
 
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The content of an element outside of the projection is ignored, and so
+   * is the content of an unrecognized element unless the current handler
+   * stores unrecognized XML in a blob.
+   */
+  public boolean isSkippingContent() {
+    return skippedElements > 0 || (unrecognizedElements > 0
+        && (curHandler == null || curHandler.innerXml == null));
+  }
+
+
+  /**
+   * Returns the fields parsed by this parser, or {@code null} if it parses
+   * all elements.
+   */
+  public FieldProjection getProjection() {
+    return projection;
+  }
+
+
+  /**
+   * Sets the fields to parse.  Elements outside of the projection are
+   * skipped with all their content, as if they were not in the document.
+   * By default, a parser uses the projection of the thread that created it,
+   * if any.
+   *
+   * @param projection projection, or {@code null} to parse all elements.
+   */
+  public void setProjection(FieldProjection projection) {
+    this.projection = projection;
+  }
+
+
+  /**
+   * Returns whether this parser defers the parsing of {@link XmlBlob}
+   * contents.
+   */
+  public boolean getDeferXmlBlobs() {
+    return deferXmlBlobs;
+  }
+
+
+  /**
+   * Sets whether this parser defers the parsing of {@link XmlBlob} contents.
+   * A deferred blob keeps the location of its XML in the text of the
+   * document, which is retained until the blob is read, and parses it when
+   * its contents are first requested.  This saves the cost of writing blobs
+   * that are never read, at the cost of keeping the document text.  Blobs
+   * are deferred only when parsing from a {@link Reader}.  By default, a
+   * parser defers blobs if {@link #enableDeferredXmlBlobs()} was called by
+   * the thread that created it.
+   *
+   * @param deferXmlBlobs {@code true} to defer blob contents.
+   */
+  public void setDeferXmlBlobs(boolean deferXmlBlobs) {
+    this.deferXmlBlobs = deferXmlBlobs;
+  }
+
+
+  /**
+   * Starts an element in the projection cursor, creating the cursor at the
+   * root element.
+   *
+   * @return {@code true} if the element is in the projection.
+   */
+  private boolean startProjectedElement(String namespace, String localName) {
+    if (curHandler == null && unrecognizedElements == 0) {
+      cursor = projection.newCursor(new FieldProjection.PrefixResolver() {
+        public String getNamespaceUri(String prefix) {
+          Stack<NamespaceDecl> nsDecls = namespaceMap.get(prefix);
+          return (nsDecls == null || nsDecls.isEmpty())
+              ? null : nsDecls.peek().ns.getUri();
+        }
+      });
+    }
+    return cursor.startElement(namespace, localName);
+  }
+
+
   /** SAX callback. */
   @Override
   public void setDocumentLocator(Locator locator) {
@@ -1090,6 +1350,7 @@ public class XmlParser extends DefaultHandler {
     NamespaceDecl nsDecl = new NamespaceDecl(ns);
     mapping.push(nsDecl);
     elementNamespaces.add(ns);
+    namespacesInScope = null;
   }
 
 
@@ -1097,6 +1358,359 @@ public class XmlParser extends DefaultHandler {
   @Override
   public void endPrefixMapping(String alias) {
     namespaceMap.get(alias).pop();
+    namespacesInScope = null;
+  }
+
+
+  /**
+   * Defers the blob of a handler whose element starts, if blobs are deferred
+   * and the document locator matches the source text.
+   *
+   * @return {@code true} if the blob is deferred, or {@code false} if it
+   *     must be written as the element is parsed.
+   */
+  private boolean deferXmlBlob(ElementHandler handler, String qName) {
+    if (source == null || locatorMismatch) {
+      return false;
+    }
+    int contentStart = findTagEnd();
+    if (contentStart < 0 || !isTag(qName, source.lastIndexOf('<',
+        contentStart - 1) + 1)) {
+      // Unknown locator positions; write the other blobs of this document.
+      logger.fine("Locator does not match the source, not deferring blobs");
+      locatorMismatch = true;
+      return false;
+    }
+    if (source.charAt(contentStart - 2) != '/') {
+      if (namespacesInScope == null) {
+        List<XmlNamespace> namespaces = new ArrayList<XmlNamespace>();
+        for (Stack<NamespaceDecl> nsDecls : namespaceMap.values()) {
+          if (!nsDecls.isEmpty()) {
+            namespaces.add(nsDecls.peek().ns);
+          }
+        }
+        namespacesInScope =
+            namespaces.toArray(new XmlNamespace[namespaces.size()]);
+      }
+      handler.deferredXml = new DeferredXml(source, contentStart,
+          namespacesInScope, handler.mixedContent, handler.fullTextIndex);
+      if (handler.mixedContent) {
+        handler.deferredXml.startRange(contentStart);
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * Finds in the source the tag that ends at the document locator.  If the
+   * locator does not point at the tag, the tag is found by scanning the
+   * source from the last located offset of the blob, the blob is marked to
+   * be parsed when its element ends, and no further blob of the document is
+   * deferred.
+   *
+   * @param qName qualified name of the element of the tag.
+   * @param kind {@link #START_TAG}, {@link #CHILD_END_TAG} for the end tag
+   *     or empty element tag of the element whose start tag was located
+   *     last, or {@link #END_TAG} for the end tag of the element enclosing
+   *     the last located offset.
+   * @param deferred deferred blob the tag delimits.
+   * @return offset following the tag; the offset of its '<' is stored in
+   *     {@link #tagStart}.
+   */
+  private int locateTag(String qName, int kind, DeferredXml deferred)
+      throws SAXException {
+    int end = findTagEnd();
+    if (end > 0) {
+      tagStart = source.lastIndexOf('<', end - 1);
+      if (tagStart >= deferred.getPosition()
+          && (kind != START_TAG && source.charAt(end - 2) != '/'
+              ? source.startsWith("</", tagStart)
+                  && isTag(qName, tagStart + 2)
+              : isTag(qName, tagStart + 1))) {
+        return end;
+      }
+    }
+    logger.fine("Locator does not match the source, scanning for " + qName);
+    locatorMismatch = true;
+    deferred.setScanned();
+    end = scanTag(qName, kind, deferred.getPosition());
+    if (end < 0) {
+      throw new SAXException(new ParseException(
+          "Unable to locate the tag of element " + qName + " in the source"));
+    }
+    return end;
+  }
+
+
+  /**
+   * Finds a tag by scanning the source from an offset, skipping comments,
+   * CDATA sections, processing instructions and nested elements.
+   *
+   * @return offset following the tag, or -1 if it was not found; the offset
+   *     of its '<' is stored in {@link #tagStart}.
+   */
+  private int scanTag(String qName, int kind, int from) {
+    int pos = from;
+    if (kind == CHILD_END_TAG) {
+      int end = findTagEnd(from);
+      if (end < 0) {
+        return -1;
+      }
+      if (source.charAt(end - 2) == '/') {
+        tagStart = from;
+        return end;
+      }
+      pos = end;
+    }
+    int depth = 0;
+    while (true) {
+      int start = source.indexOf('<', pos);
+      if (start < 0) {
+        return -1;
+      }
+      if (source.startsWith("<!--", start)) {
+        pos = skipPast("-->", start + 4);
+      } else if (source.startsWith("<![CDATA[", start)) {
+        pos = skipPast("]]>", start + 9);
+      } else if (source.startsWith("<?", start)) {
+        pos = skipPast("?>", start + 2);
+      } else {
+        pos = findTagEnd(start);
+        if (pos < 0) {
+          return -1;
+        }
+        if (source.charAt(start + 1) == '/') {
+          if (depth == 0) {
+            if (kind == START_TAG || !isTag(qName, start + 2)) {
+              return -1;
+            }
+            tagStart = start;
+            return pos;
+          }
+          depth--;
+        } else if (depth == 0 && kind == START_TAG
+            && isTag(qName, start + 1)) {
+          tagStart = start;
+          return pos;
+        } else if (source.charAt(pos - 2) != '/') {
+          depth++;
+        }
+      }
+      if (pos < 0) {
+        return -1;
+      }
+    }
+  }
+
+
+  /**
+   * Returns the offset following the '>' of the tag starting at an offset,
+   * or -1 if there is none.
+   */
+  private int findTagEnd(int start) {
+    char quote = 0;
+    for (int i = start + 1; i < source.length(); i++) {
+      char c = source.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+      } else if (c == '>') {
+        return i + 1;
+      }
+    }
+    return -1;
+  }
+
+
+  /**
+   * Returns the offset following the first occurrence of a delimiter at or
+   * after an offset, or -1 if there is none.
+   */
+  private int skipPast(String delimiter, int from) {
+    int index = source.indexOf(delimiter, from);
+    return (index < 0) ? -1 : index + delimiter.length();
+  }
+
+
+  /**
+   * Returns the offset following the '>' at the document locator, or -1 if
+   * there is none.  Some parsers report the column before the '>'.
+   */
+  private int findTagEnd() {
+    if (locator == null) {
+      return -1;
+    }
+    if (lineStarts == null) {
+      lineStarts = getLineStarts(source);
+    }
+    int line = locator.getLineNumber();
+    int column = locator.getColumnNumber();
+    if (line < 1 || line > lineStarts.length || column < 1) {
+      return -1;
+    }
+    int pos = lineStarts[line - 1] + column - 1;
+    if (pos > 0 && pos <= source.length() && source.charAt(pos - 1) == '>') {
+      return pos;
+    }
+    if (pos >= 0 && pos < source.length() && source.charAt(pos) == '>') {
+      return pos + 1;
+    }
+    return -1;
+  }
+
+
+  /** Returns whether an element name starts at an offset of the source. */
+  private boolean isTag(String qName, int offset) {
+    int end = offset + qName.length();
+    if (offset <= 0 || end >= source.length()
+        || !source.startsWith(qName, offset)) {
+      return false;
+    }
+    char c = source.charAt(end);
+    return c == '>' || c == '/' || Character.isWhitespace(c);
+  }
+
+
+  /**
+   * Returns the offsets at which the lines of a text start, with the line
+   * breaks of XML: CR LF, LF or CR.
+   */
+  private static int[] getLineStarts(String text) {
+    int[] starts = new int[64];
+    int count = 1;
+    int length = text.length();
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      if (c == '\n' || (c == '\r'
+          && (i + 1 == length || text.charAt(i + 1) != '\n'))) {
+        if (count == starts.length) {
+          starts = Arrays.copyOf(starts, 2 * count);
+        }
+        starts[count++] = i + 1;
+      }
+    }
+    return Arrays.copyOf(starts, count);
+  }
+
+
+  /**
+   * Location of the contents of a deferred {@link XmlBlob}: ranges of the
+   * text of the parsed document, and the namespace declarations in scope
+   * where the blob starts.  The contents are parsed on demand by
+   * {@link #parseInto}, with the same result as parsing them along with
+   * the document.
+   */
+  static class DeferredXml {
+
+    private static final String ROOT = "blob";
+
+    private final String source;
+    private final XmlNamespace[] namespaces;
+    private final boolean mixedContent;
+    private final boolean fullTextIndex;
+
+    /** Start and end offsets of the ranges of the blob. */
+    private int[] ranges = new int[2];
+    private int rangeCount;
+    private int rangeStart = -1;
+
+    /** Last located offset in the blob. */
+    private int position;
+
+    /** Whether some tags of the blob were found by scanning the source. */
+    private boolean scanned;
+
+    DeferredXml(String source, int contentStart, XmlNamespace[] namespaces,
+        boolean mixedContent, boolean fullTextIndex) {
+      this.source = source;
+      this.position = contentStart;
+      this.namespaces = namespaces;
+      this.mixedContent = mixedContent;
+      this.fullTextIndex = fullTextIndex;
+    }
+
+    void startRange(int start) {
+      rangeStart = start;
+      position = start;
+    }
+
+    void endRange(int end) {
+      if (rangeStart >= 0 && end > rangeStart) {
+        if (rangeCount == ranges.length) {
+          ranges = Arrays.copyOf(ranges, 2 * rangeCount);
+        }
+        ranges[rangeCount++] = rangeStart;
+        ranges[rangeCount++] = end;
+      }
+      rangeStart = -1;
+      position = end;
+    }
+
+    int getPosition() {
+      return position;
+    }
+
+    void setScanned() {
+      scanned = true;
+    }
+
+    boolean isScanned() {
+      return scanned;
+    }
+
+    boolean isEmpty() {
+      return rangeCount == 0;
+    }
+
+    /**
+     * Parses the blob contents into a blob, replacing its XML, full-text
+     * index and namespaces.
+     *
+     * @throws ParseException if the contents are not well-formed.
+     */
+    void parseInto(XmlBlob blob) throws ParseException {
+      StringBuilder xml = new StringBuilder();
+      String rootNamespace = "";
+      xml.append('<').append(ROOT);
+      for (XmlNamespace ns : namespaces) {
+        String alias = ns.getAlias();
+        if (alias.length() == 0) {
+          rootNamespace = ns.getUri();
+          xml.append(" xmlns='");
+        } else {
+          xml.append(" xmlns:").append(alias).append("='");
+        }
+        xml.append(StringUtil.xmlEscape(ns.getUri())).append('\'');
+      }
+      xml.append('>');
+      for (int i = 0; i < rangeCount; i += 2) {
+        xml.append(source, ranges[i], ranges[i + 1]);
+      }
+      xml.append("</").append(ROOT).append('>');
+
+      XmlBlob parsed = new XmlBlob();
+      ElementHandler handler = new ElementHandler() {
+        @Override
+        public void processEndElement() {}
+      };
+      handler.initializeXmlBlob(parsed, mixedContent, fullTextIndex);
+      XmlParser parser = new XmlParser();
+      parser.setDeferXmlBlobs(false);
+      parser.setProjection(null);
+      try {
+        parser.parse(new StringReader(xml.toString()), handler,
+            rootNamespace, ROOT);
+      } catch (IOException e) {
+        throw new ParseException("Unable to parse deferred XML", e);
+      }
+      blob.blob = parsed.blob;
+      blob.fullText = parsed.fullText;
+      blob.namespaces = parsed.namespaces;
+    }
   }
 
 
@@ -24,11 +24,11 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.EmptyStackException;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 
 /**
  * Implements a simple XML writer on top of java.io.PrintWriter.
@@ -109,6 +109,14 @@ import java.util.Stack;
  * <pre>
  * &lt;txt&gt;&lt;fooey/&gt;Kleenex&lt;/txt&gt;</pre>
  *
+ * <h2>Performance</h2>
+ * Attribute values and text are escaped straight into the output writer
+ * through a buffer owned by the XmlWriter, without building escaped
+ * strings, and namespace aliases in scope are found with a single map
+ * lookup.  Subclasses that declare namespaces should do so through
+ * {@link #ensureNamespace(XmlNamespace)}, which keeps that map up to date.
+ * An XmlWriter is not thread-safe.
+ *
  * 
  * 
  */
@@ -315,7 +323,24 @@ public class XmlWriter {
   /**
    * Stack of currently opened elements.
    */
-  private final Stack<Element> elementStack;
+  private final ArrayList<Element> elementStack;
+
+  /**
+   * Aliases of the namespaces declared in scope, keyed by namespace URI.
+   * For each URI, this is the alias that a walk of the element stack from
+   * the top would find first.
+   */
+  private final Map<String, String> namespaceAliases =
+      new HashMap<String, String>();
+
+  /** Size of the buffer used to escape text. */
+  private static final int ESCAPE_BUFFER_SIZE = 1024;
+
+  /** Buffer used to escape text, allocated when first needed. */
+  private char[] escapeBuffer;
+
+  /** Number of characters in the escape buffer. */
+  private int escapeBufferCount;
 
   /**
    * Current default namespace.
@@ -375,10 +400,10 @@ public class XmlWriter {
      * the root element without requiring special case handling of an
      * empty element stack.
      */
-    this.elementStack = new Stack<Element>();
+    this.elementStack = new ArrayList<Element>();
     Element rootElement = createElement(null, null, null);
     rootElement.openTagEnded = true;
-    elementStack.push(rootElement);
+    elementStack.add(rootElement);
   }
 
   /**
@@ -455,11 +480,8 @@ public class XmlWriter {
    * written.
    */
   protected Element currentElement() {
-    try {
-      return elementStack.peek();
-    } catch (EmptyStackException e) {
-      return null;
-    }
+    int size = elementStack.size();
+    return (size > 0) ? elementStack.get(size - 1) : null;
   }
 
   /**
@@ -526,7 +548,7 @@ public class XmlWriter {
       }
     }
 
-    elementStack.push(element);
+    elementStack.add(element);
 
     if (nextDefaultNamespace != null) {
       XmlNamespace defaultNs = new XmlNamespace(nextDefaultNamespace);
@@ -547,7 +569,9 @@ public class XmlWriter {
 
     writeOpenTagStart(element.nsAlias, name);
 
-    for (XmlNamespace ns : element.nsDecls) {
+    List<XmlNamespace> nsDecls = element.nsDecls;
+    for (int i = 0; i < nsDecls.size(); i++) {
+      XmlNamespace ns = nsDecls.get(i);
       if (ns.alias != null && ns.alias.length() > 0) {
         writeAttribute("xmlns", ns.alias, ns.uri);  // xmlns:name=uri
       } else {
@@ -616,7 +640,8 @@ public class XmlWriter {
     Element element = currentElement();
     writeCloseTag(element.nsAlias, element.name);
     defaultNamespace = element.enclosingDefaultNamespace;
-    elementStack.pop();
+    elementStack.remove(elementStack.size() - 1);
+    removeNamespaceAliases(element);
 
     // Write the footer if we're down to just the dummy element.
     if (elementStack.size() == 1) {
@@ -685,13 +710,25 @@ public class XmlWriter {
    *          {@code null} otherwise.
    */
   private String checkNamespace(String namespaceUri) {
+    return namespaceAliases.get(namespaceUri);
+  }
+
+  /**
+   * Finds the alias of a namespace declared in scope by walking the stack
+   * from the top.
+   *
+   * @return  namespace alias if declared.
+   *          {@code null} otherwise.
+   */
+  private String findNamespace(String namespaceUri) {
 
     // Walk the stack from the top to find an element with this ns declaration.
     for (int i = elementStack.size() - 1; i >= 0; --i) {
 
-      Element element = elementStack.get(i);
+      List<XmlNamespace> nsDecls = elementStack.get(i).nsDecls;
 
-      for (XmlNamespace ns : element.nsDecls) {
+      for (int j = 0; j < nsDecls.size(); j++) {
+        XmlNamespace ns = nsDecls.get(j);
         if (ns.alias != null && ns.uri.equals(namespaceUri)) {
           return ns.alias;
         }
@@ -700,6 +737,26 @@ public class XmlWriter {
     return null;
   }
 
+  /**
+   * Updates the namespace aliases in scope once an element has been removed
+   * from the stack.  Only elements that declare namespaces require a walk of
+   * the stack.
+   */
+  private void removeNamespaceAliases(Element element) {
+    List<XmlNamespace> nsDecls = element.nsDecls;
+    for (int i = 0; i < nsDecls.size(); i++) {
+      XmlNamespace ns = nsDecls.get(i);
+      if (ns.alias != null) {
+        String alias = findNamespace(ns.uri);
+        if (alias != null) {
+          namespaceAliases.put(ns.uri, alias);
+        } else {
+          namespaceAliases.remove(ns.uri);
+        }
+      }
+    }
+  }
+
   /**
    * Returns true if the feature is enabled and if the current element
    * does not contain unformatted children.
@@ -761,6 +818,9 @@ public class XmlWriter {
       namespace = ensureUniqueNamespaceAlias(current, namespace);
       current.addNamespace(namespace);
       alias = namespace.alias;
+      if (alias != null) {
+        namespaceAliases.put(namespace.uri, alias);
+      }
     }
 
     return alias;
@@ -781,7 +841,9 @@ public class XmlWriter {
 
     do {
       unique = true;
-      for (XmlNamespace ns : element.nsDecls) {
+      List<XmlNamespace> nsDecls = element.nsDecls;
+      for (int i = 0; i < nsDecls.size(); i++) {
+        XmlNamespace ns = nsDecls.get(i);
         if (namespace.alias.equals(ns.alias)) {
           unique = false;
           namespace =
@@ -965,7 +1027,7 @@ public class XmlWriter {
     writer.write('=');
     writer.write('\'');
     if (value != null) {
-      writer.write(StringUtil.xmlEscape(value));
+      writeEscaped(value, ATTRIBUTE_ESCAPE);
     }
     writer.write('\'');
   }
@@ -995,13 +1057,130 @@ public class XmlWriter {
     }
     endOpenTag();
     currentElement().unformattedChildren = true;
-    String escaped;
     if (useCData) {
-      escaped = "<![CDATA[" + StringUtil.xmlCDataEscape(s) + "]]>";
+      writer.write("<![CDATA[");
+      writeCData(s);
+      writer.write("]]>");
     } else {
-      escaped = StringUtil.xmlContentEscape(s);
+      writeEscaped(s, CONTENT_ESCAPE);
+    }
+  }
+
+  /** Escaping of attribute values, as by {@link StringUtil#xmlEscape}. */
+  private static final int ATTRIBUTE_ESCAPE = 0;
+
+  /** Escaping of text, as by {@link StringUtil#xmlContentEscape}. */
+  private static final int CONTENT_ESCAPE = 1;
+
+  /**
+   * Returns the replacement of a character for the given kind of escaping:
+   * {@code null} if the character is written as is, or an empty string if it
+   * is dropped.
+   */
+  private static String escape(char c, int kind) {
+    if (kind == ATTRIBUTE_ESCAPE) {
+      switch (c) {
+        case '"': return "&quot;";
+        case '&': return "&amp;";
+        case '\'': return "&apos;";
+        case '<': return "&lt;";
+        case '>': return "&gt;";
+        case '\n': return "&#xA;";
+        case '\r': return "&#xD;";
+        case '\t': return "&#x9;";
+        case '\0': return "";  // \0 is not a valid XML char - skip it
+        default: return null;
+      }
+    }
+    switch (c) {
+      case '&': return "&amp;";
+      case '<': return "&lt;";
+      case '\t': case '\n': case '\r': return null;
+      default:
+        // drop the disallowed C0 control characters
+        return (c < ' ') ? "" : null;
+    }
+  }
+
+  /**
+   * Writes a string with the given kind of escaping.  Strings that need no
+   * escaping are written directly, others through the escape buffer.
+   */
+  private void writeEscaped(String s, int kind) throws IOException {
+    int length = s.length();
+    int start = 0;
+    while (start < length && escape(s.charAt(start), kind) == null) {
+      start++;
+    }
+    if (start == length) {
+      writer.write(s);
+      return;
+    }
+    writer.write(s, 0, start);
+    for (int i = start; i < length; i++) {
+      char c = s.charAt(i);
+      String replacement = escape(c, kind);
+      if (replacement == null) {
+        bufferChar(c);
+      } else {
+        bufferString(replacement);
+      }
+    }
+    flushEscapeBuffer();
+  }
+
+  /**
+   * Writes the content of a CDATA section, as escaped by
+   * {@link StringUtil#xmlCDataEscape}: illegal control characters are
+   * dropped, and each {@code ]]>} is followed by text closing the section,
+   * writing {@code ]]&gt;} and opening a new section.
+   */
+  private void writeCData(String s) throws IOException {
+    int brackets = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if ((c < ' ' && c != '\t' && c != '\n' && c != '\r')
+          || c == '\uFFFE' || c == '\uFFFF') {
+        continue;
+      }
+      bufferChar(c);
+      if (c == ']') {
+        brackets++;
+      } else {
+        if (c == '>' && brackets >= 2) {
+          bufferString("]]&gt;<![CDATA[");
+        }
+        brackets = 0;
+      }
+    }
+    flushEscapeBuffer();
+  }
+
+  private void bufferChar(char c) throws IOException {
+    if (escapeBuffer == null) {
+      escapeBuffer = new char[ESCAPE_BUFFER_SIZE];
+    } else if (escapeBufferCount == escapeBuffer.length) {
+      flushEscapeBuffer();
+    }
+    escapeBuffer[escapeBufferCount++] = c;
+  }
+
+  private void bufferString(String s) throws IOException {
+    int length = s.length();
+    if (escapeBuffer == null) {
+      escapeBuffer = new char[ESCAPE_BUFFER_SIZE];
+    } else if (escapeBufferCount + length > escapeBuffer.length) {
+      flushEscapeBuffer();
+    }
+    s.getChars(0, length, escapeBuffer, escapeBufferCount);
+    escapeBufferCount += length;
+  }
+
+  private void flushEscapeBuffer() throws IOException {
+    if (escapeBufferCount > 0) {
+      writer.write(escapeBuffer, 0, escapeBufferCount);
+      escapeBufferCount = 0;
     }
-    writer.write(escaped);
   }
 
   /**
@@ -19,6 +19,7 @@ package com.google.gdata.wireformats;
 import com.google.gdata.util.common.base.Preconditions;
 import com.google.gdata.util.common.xml.parsing.SecureGenericXMLFactory;
 import com.google.gdata.data.XmlEventSource;
+import com.google.gdata.util.SaxParserCache;
 
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -41,9 +42,9 @@ public class SaxEventSource implements XmlEventSource {
   private static final Logger logger =
       Logger.getLogger(SaxEventSource.class.getCanonicalName());
 
-  /** The SAXParserFactory used to create underlying SAXParser instances. */
-  private static final SAXParserFactory parserFactory = 
-      createSAXParserFactory();
+  /** The cache of underlying SAXParser instances, reused across documents. */
+  private static final SaxParserCache parserCache =
+      new SaxParserCache(createSAXParserFactory());
 
   /** Creates a secure SAX parser, which is secured against XXE attacks. */
   private static SAXParserFactory createSAXParserFactory() {
@@ -80,14 +81,18 @@ public class SaxEventSource implements XmlEventSource {
   
   public void parse(DefaultHandler handler) throws IOException, SAXException {
     SAXParser sp = createSaxParser();
-    ParserAdapter pa = new ParserAdapter(sp.getParser());
-    pa.setContentHandler(handler);
-    pa.parse(new InputSource(reader));
+    try {
+      ParserAdapter pa = new ParserAdapter(sp.getParser());
+      pa.setContentHandler(handler);
+      pa.parse(new InputSource(reader));
+    } finally {
+      parserCache.release(sp);
+    }
   }
 
   private SAXParser createSaxParser() {
     try {
-      return parserFactory.newSAXParser();
+      return parserCache.get();
     } catch (ParserConfigurationException e) {
       // The parser factory failing for any reasons should be considered
       // a bug in this class, since the parser configuration is hardcoded.
@@ -0,0 +1,275 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.wireformats;
+
+import com.google.gdata.util.common.base.Preconditions;
+import com.google.gdata.data.XmlEventSource;
+
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * {@link XmlEventSource} implementation based on a StAX
+ * {@link XMLStreamReader}.
+ * <p>
+ * The document is pulled from the stream reader and reported to the handler
+ * as SAX events, so the same handlers can be used as with
+ * {@link SaxEventSource}. Character data is passed straight from the
+ * buffer of the stream reader and a single attribute list is reused for
+ * all elements. If the handler implements
+ * {@link XmlEventSource.SkippingHandler}, the content of elements that it
+ * ignores is skipped without reporting any event for it.
+ * <p>
+ * This only replaces the SAX parser. The handlers still allocate an element
+ * handler for each element they parse, as they do with
+ * {@link SaxEventSource}, except for the skipped content.
+ * <p>
+ * Document type declarations are not processed and external entities are
+ * not resolved.
+ *
+ *
+ */
+public class StaxEventSource implements XmlEventSource {
+  private static final Logger logger =
+      Logger.getLogger(StaxEventSource.class.getCanonicalName());
+
+  /** Property restricting the protocols used to load an external DTD. */
+  private static final String ACCESS_EXTERNAL_DTD =
+      "http://javax.xml.XMLConstants/property/accessExternalDTD";
+
+  /** The XMLInputFactory used to create underlying XMLStreamReaders. */
+  private static final XMLInputFactory inputFactory = createInputFactory();
+
+  /**
+   * Creates a stream reader factory secured against XXE attacks, which
+   * processes neither document type declarations nor external entities.
+   */
+  private static XMLInputFactory createInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+        Boolean.FALSE);
+    try {
+      factory.setProperty(ACCESS_EXTERNAL_DTD, "");
+    } catch (IllegalArgumentException e) {
+      // OK.  Not all stream readers support this property.
+      logger.log(Level.FINE, "External DTD access cannot be disabled", e);
+    }
+    return factory;
+  }
+
+  /** Reader used by this parser. */
+  private final Reader reader;
+
+  /**
+   * Creates a StAX event source backed by a reader.
+   */
+  public StaxEventSource(Reader reader) {
+    Preconditions.checkNotNull(reader, "reader");
+
+    this.reader = reader;
+  }
+
+  public void parse(DefaultHandler handler) throws IOException, SAXException {
+    XMLStreamReader xmlReader;
+    try {
+      xmlReader = inputFactory.createXMLStreamReader(reader);
+    } catch (XMLStreamException e) {
+      throw toSaxException(e);
+    }
+    try {
+      new Dispatcher(xmlReader, handler).dispatch();
+    } catch (XMLStreamException e) {
+      throw toSaxException(e);
+    } finally {
+      try {
+        xmlReader.close();
+      } catch (XMLStreamException e) {
+        logger.log(Level.FINE, "Failed to close stream reader", e);
+      }
+    }
+  }
+
+  /**
+   * Converts a stream reader error to a SAX exception, unwrapping errors of
+   * the underlying reader.
+   */
+  private static SAXException toSaxException(XMLStreamException e)
+      throws IOException {
+    Throwable cause = e.getNestedException();
+    if (cause instanceof IOException) {
+      throw (IOException) cause;
+    }
+    Location location = e.getLocation();
+    if (location != null) {
+      return new SAXParseException(e.getMessage(), location.getPublicId(),
+          location.getSystemId(), location.getLineNumber(),
+          location.getColumnNumber(), e);
+    }
+    return new SAXException(e);
+  }
+
+  /**
+   * Pulls the events of one document from a stream reader and reports them
+   * to a handler.
+   */
+  private static class Dispatcher implements Locator {
+
+    private final XMLStreamReader xmlReader;
+    private final DefaultHandler handler;
+    private final XmlEventSource.SkippingHandler skippingHandler;
+
+    /** Attribute list reused for all elements. */
+    private final AttributesImpl attributes = new AttributesImpl();
+
+    Dispatcher(XMLStreamReader xmlReader, DefaultHandler handler) {
+      this.xmlReader = xmlReader;
+      this.handler = handler;
+      this.skippingHandler = (handler instanceof XmlEventSource.SkippingHandler)
+          ? (XmlEventSource.SkippingHandler) handler : null;
+    }
+
+    void dispatch() throws XMLStreamException, SAXException {
+      handler.setDocumentLocator(this);
+      handler.startDocument();
+      while (xmlReader.hasNext()) {
+        switch (xmlReader.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            startElement();
+            if (skippingHandler != null && skippingHandler.isSkippingContent()) {
+              skipContent();
+              endElement();
+            }
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            endElement();
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+            handler.characters(xmlReader.getTextCharacters(),
+                xmlReader.getTextStart(), xmlReader.getTextLength());
+            break;
+          case XMLStreamConstants.SPACE:
+            handler.ignorableWhitespace(xmlReader.getTextCharacters(),
+                xmlReader.getTextStart(), xmlReader.getTextLength());
+            break;
+          case XMLStreamConstants.PROCESSING_INSTRUCTION:
+            handler.processingInstruction(xmlReader.getPITarget(),
+                xmlReader.getPIData());
+            break;
+          default:
+            // Comments, DTDs and entity references are not reported.
+            break;
+        }
+      }
+      handler.endDocument();
+    }
+
+    private void startElement() throws SAXException {
+      int namespaceCount = xmlReader.getNamespaceCount();
+      for (int i = 0; i < namespaceCount; i++) {
+        handler.startPrefixMapping(nonNull(xmlReader.getNamespacePrefix(i)),
+            nonNull(xmlReader.getNamespaceURI(i)));
+      }
+
+      attributes.clear();
+      int attributeCount = xmlReader.getAttributeCount();
+      for (int i = 0; i < attributeCount; i++) {
+        String localName = xmlReader.getAttributeLocalName(i);
+        attributes.addAttribute(
+            nonNull(xmlReader.getAttributeNamespace(i)),
+            localName,
+            qName(xmlReader.getAttributePrefix(i), localName),
+            xmlReader.getAttributeType(i),
+            xmlReader.getAttributeValue(i));
+      }
+
+      String localName = xmlReader.getLocalName();
+      handler.startElement(nonNull(xmlReader.getNamespaceURI()), localName,
+          qName(xmlReader.getPrefix(), localName), attributes);
+    }
+
+    private void endElement() throws SAXException {
+      String localName = xmlReader.getLocalName();
+      handler.endElement(nonNull(xmlReader.getNamespaceURI()), localName,
+          qName(xmlReader.getPrefix(), localName));
+
+      int namespaceCount = xmlReader.getNamespaceCount();
+      for (int i = 0; i < namespaceCount; i++) {
+        handler.endPrefixMapping(nonNull(xmlReader.getNamespacePrefix(i)));
+      }
+    }
+
+    /**
+     * Advances the reader to the end of the current element without
+     * reporting any events.
+     */
+    private void skipContent() throws XMLStreamException {
+      int depth = 1;
+      while (depth > 0) {
+        int event = xmlReader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          depth++;
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          depth--;
+        }
+      }
+    }
+
+    public String getPublicId() {
+      return xmlReader.getLocation().getPublicId();
+    }
+
+    public String getSystemId() {
+      return xmlReader.getLocation().getSystemId();
+    }
+
+    public int getLineNumber() {
+      return xmlReader.getLocation().getLineNumber();
+    }
+
+    public int getColumnNumber() {
+      return xmlReader.getLocation().getColumnNumber();
+    }
+  }
+
+  private static String nonNull(String value) {
+    return (value == null) ? "" : value;
+  }
+
+  private static String qName(String prefix, String localName) {
+    if (prefix == null || prefix.length() == 0) {
+      return localName;
+    }
+    return prefix + ":" + localName;
+  }
+}
@@ -27,6 +27,7 @@ import com.google.gdata.model.Element;
 import com.google.gdata.model.ElementMetadata;
 import com.google.gdata.model.QName;
 import com.google.gdata.model.ValidationContext;
+import com.google.gdata.util.FieldProjection;
 import com.google.gdata.util.LogUtils;
 import com.google.gdata.util.ParseException;
 import com.google.gdata.util.XmlBlob;
@@ -79,7 +80,8 @@ import java.util.logging.Logger;
  *
  * @see     XmlParser.ElementHandler
  */
-public class XmlParser extends DefaultHandler implements WireFormatParser {
+public class XmlParser extends DefaultHandler
+    implements WireFormatParser, XmlEventSource.SkippingHandler {
 
 
   private static final Logger logger =
@@ -175,8 +177,11 @@ public class XmlParser extends DefaultHandler implements WireFormatParser {
     XmlWriter innerXml;
 
 
-    /** Namespaces used by this blob. */
-    Set<String> blobNamespaces = new HashSet<String>();
+    /**
+     * Namespaces used by this blob, created by {@link #initializeXmlBlob}
+     * so that handlers without a blob do not allocate it.
+     */
+    Set<String> blobNamespaces;
 
 
     /** String writer underlying {@link #innerXml}. */
@@ -289,6 +294,7 @@ public class XmlParser extends DefaultHandler implements WireFormatParser {
 
       this.xmlBlob = xmlBlob;
       this.mixedContent = mixedContent;
+      this.blobNamespaces = new HashSet<String>();
       this.innerXmlStringWriter = new StringWriter();
       this.innerXml = new XmlWriter(innerXmlStringWriter);
       this.fullTextIndex = fullTextIndex;
@@ -407,6 +413,15 @@ public class XmlParser extends DefaultHandler implements WireFormatParser {
   /** Number of unrecognized elements on the stack. */
   int unrecognizedElements = 0;
 
+  /** Fields to parse, or {@code null} to parse all elements. */
+  private FieldProjection projection = FieldProjection.getThreadProjection();
+
+  /** Selections of the open elements, if parsing a projection. */
+  private FieldProjection.Cursor cursor;
+
+  /** Number of elements on the stack outside of the projection. */
+  int skippedElements = 0;
+
   /** Document locator used to get line and column numbers for SAX events. */
   Locator locator;
 
@@ -584,7 +599,17 @@ public class XmlParser extends DefaultHandler implements WireFormatParser {
                            String qName,
                            Attributes attrs) throws SAXException {
 
-    logger.fine("Start element " + qName);
+    // Elements outside of the projection are skipped before any other work.
+    if (skippedElements > 0 || (projection != null
+        && !startProjectedElement(namespace, localName))) {
+      ++skippedElements;
+      elementNamespaces.clear();
+      return;
+    }
+
+    if (logger.isLoggable(Level.FINE)) {
+      logger.fine("Start element " + qName);
+    }
 
     ElementHandler parentHandler = curHandler;
 
@@ -642,13 +667,17 @@ public class XmlParser extends DefaultHandler implements WireFormatParser {
             if (attrLocalName.equals("lang")) {
 
               curHandler.xmlLang = attrValue;
-              logger.finer("xml:lang=" + attrValue);
+              if (logger.isLoggable(Level.FINER)) {
+                logger.finer("xml:lang=" + attrValue);
+              }
 
             } else if (attrLocalName.equals("base")) {
 
               curHandler.xmlBase = getCumulativeXmlBase(curHandler.xmlBase,
                                                         attrValue);
-              logger.finer("xml:base=" + curHandler.xmlBase);
+              if (logger.isLoggable(Level.FINER)) {
+                logger.finer("xml:base=" + curHandler.xmlBase);
+              }
             }
           }
         }
@@ -661,7 +690,10 @@ public class XmlParser extends DefaultHandler implements WireFormatParser {
           String attrLocalName = attrs.getLocalName(i);
           String attrValue = attrs.getValue(i);
 
-          logger.finer("Attribute " + attrLocalName + "='" + attrValue + "'");
+          if (logger.isLoggable(Level.FINER)) {
+            logger.finer(
+                "Attribute " + attrLocalName + "='" + attrValue + "'");
+          }
 
           curHandler.processAttribute(
               createQName(attrQName, attrNamespace, attrLocalName),
@@ -762,7 +794,17 @@ public class XmlParser extends DefaultHandler implements WireFormatParser {
   public void endElement(String namespace, String localName, String qName)
       throws SAXException {
 
-    logger.fine("End element " + qName);
+    if (skippedElements > 0) {
+      --skippedElements;
+      return;
+    }
+    if (cursor != null) {
+      cursor.endElement();
+    }
+
+    if (logger.isLoggable(Level.FINE)) {
+      logger.fine("End element " + qName);
+    }
 
     if (unrecognizedElements > 0) {
 
@@ -812,7 +854,7 @@ public class XmlParser extends DefaultHandler implements WireFormatParser {
   @Override
   public void characters(char[] text, int start, int len) throws SAXException {
 
-    if (curHandler != null) {
+    if (curHandler != null && skippedElements == 0) {
 
       if (unrecognizedElements == 0) {
 
@@ -847,6 +889,7 @@ public class XmlParser extends DefaultHandler implements WireFormatParser {
       throws SAXException {
 
     if (curHandler != null && curHandler.innerXml != null &&
+        skippedElements == 0 &&
         (curHandler.mixedContent || unrecognizedElements > 0)) {
 
       try {
@@ -858,6 +901,61 @@ public class XmlParser extends DefaultHandler implements WireFormatParser {
   }
 
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The content of an element outside of the projection is ignored, and so
+   * is the content of an unrecognized element unless the current handler
+   * stores unrecognized XML in a blob.
+   */
+  public boolean isSkippingContent() {
+    return skippedElements > 0 || (unrecognizedElements > 0
+        && (curHandler == null || curHandler.innerXml == null));
+  }
+
+
+  /**
+   * Returns the fields parsed by this parser, or {@code null} if it parses
+   * all elements.
+   */
+  public FieldProjection getProjection() {
+    return projection;
+  }
+
+
+  /**
+   * Sets the fields to parse.  Elements outside of the projection are
+   * skipped with all their content, as if they were not in the document.
+   * By default, a parser uses the projection of the thread that created it,
+   * if any.
+   *
+   * @param projection projection, or {@code null} to parse all elements.
+   */
+  public void setProjection(FieldProjection projection) {
+    this.projection = projection;
+  }
+
+
+  /**
+   * Starts an element in the projection cursor, creating the cursor at the
+   * root element.
+   *
+   * @return {@code true} if the element is in the projection.
+   */
+  private boolean startProjectedElement(String namespace, String localName) {
+    if (curHandler == null && unrecognizedElements == 0) {
+      cursor = projection.newCursor(new FieldProjection.PrefixResolver() {
+        public String getNamespaceUri(String prefix) {
+          Stack<NamespaceDecl> nsDecls = namespaceMap.get(prefix);
+          return (nsDecls == null || nsDecls.isEmpty())
+              ? null : nsDecls.peek().ns.getUri();
+        }
+      });
+    }
+    return cursor.startElement(namespace, localName);
+  }
+
+
   /** SAX callback. */
   @Override
   public void setDocumentLocator(Locator newLocator) {
@@ -924,9 +1022,10 @@ public class XmlParser extends DefaultHandler implements WireFormatParser {
 
     XmlNamespace ns = null;
     if (!StringUtil.isEmpty(nsUri)) {
-      String[] parts = qName.split(":");
-      if (parts.length == 2) {
-        ns = new XmlNamespace(parts[0], nsUri);
+      int colon = qName.indexOf(':');
+      if (colon >= 0 && colon < qName.length() - 1
+          && qName.indexOf(':', colon + 1) < 0) {
+        ns = new XmlNamespace(qName.substring(0, colon), nsUri);
       } else {
         ns = new XmlNamespace(null, nsUri);
       }
@@ -0,0 +1,117 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.wireformats.input;
+
+import com.google.gdata.util.common.base.Preconditions;
+import com.google.gdata.data.IAtom;
+import com.google.gdata.data.ParseSource;
+import com.google.gdata.model.Element;
+import com.google.gdata.util.ParseException;
+import com.google.gdata.util.ServiceException;
+import com.google.gdata.wireformats.AltFormat;
+import com.google.gdata.wireformats.ContentCreationException;
+import com.google.gdata.wireformats.ContentValidationException;
+import com.google.gdata.wireformats.StaxEventSource;
+import com.google.gdata.wireformats.WireFormatParser;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The StaxAtomParser class provides an {@link InputParser} implementation
+ * for Atom content that reads the content with a StAX pull parser instead of
+ * a SAX parser.  Like {@link AtomDualParser}, it parses into classes that use
+ * the old or new data model.  The content is read by a
+ * {@link StaxEventSource}, which skips over elements that are not parsed.
+ * <p>
+ * It is selected by registering it for {@link AltFormat#ATOM} in the
+ * {@link com.google.gdata.wireformats.AltRegistry} of a service:
+ *
+ * <pre>
+ * AltRegistry registry = new AltRegistry(service.getAltRegistry());
+ * registry.register(AltFormat.ATOM, new StaxAtomParser(),
+ *     new AtomDualGenerator());
+ * service.setAltRegistry(registry);
+ * </pre>
+ *
+ *
+ */
+public class StaxAtomParser extends CharacterParser<IAtom> {
+
+  /**
+   * Parser to use for old data model results
+   */
+  private final InputParser<IAtom> dataParser = new AtomDataParser();
+
+  /**
+   * Constructs a new StaxAtomParser instance.
+   */
+  public StaxAtomParser() {
+    super(AltFormat.ATOM, IAtom.class);
+  }
+
+  @Override
+  public <R extends IAtom> R parse(ParseSource parseSource,
+      InputProperties inProps, Class<R> resultClass) throws IOException,
+      ServiceException {
+    Preconditions.checkNotNull(parseSource, "parseSource");
+    Preconditions.checkNotNull(inProps, "inProps");
+    Preconditions.checkNotNull(resultClass, "resultClass");
+
+    // Content that is already available as events is parsed as usual.
+    if (parseSource.getEventSource() != null) {
+      if (Element.class.isAssignableFrom(resultClass)) {
+        return parseElement(
+            altFormat.getWireFormat().createParser(inProps,
+                parseSource.getEventSource()),
+            resultClass);
+      }
+      return dataParser.parse(parseSource, inProps, resultClass);
+    }
+    return super.parse(parseSource, inProps, resultClass);
+  }
+
+  @Override
+  public <R extends IAtom> R parse(Reader inputReader, InputProperties inProps,
+      Class<R> resultClass) throws IOException, ServiceException {
+    StaxEventSource eventSource = new StaxEventSource(inputReader);
+    if (Element.class.isAssignableFrom(resultClass)) {
+      Preconditions.checkNotNull(inProps.getRootMetadata(),
+          "No element metadata");
+      return parseElement(
+          altFormat.getWireFormat().createParser(inProps, eventSource),
+          resultClass);
+    }
+    return dataParser.parse(new ParseSource(eventSource), inProps,
+        resultClass);
+  }
+
+  /**
+   * Parses into a new instance of a new data model result class.
+   */
+  private <R extends IAtom> R parseElement(WireFormatParser parser,
+      Class<R> resultClass) throws IOException, ServiceException {
+    R result = createResult(resultClass);
+    try {
+      return resultClass.cast(parser.parse((Element) result));
+    } catch (ContentCreationException e) {
+      throw new ParseException("Unable to create element to parse into.", e);
+    } catch (ContentValidationException e) {
+      throw new ParseException("Error trying to parse element.", e);
+    }
+  }
+}
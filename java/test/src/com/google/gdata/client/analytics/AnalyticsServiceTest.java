@@ -0,0 +1,159 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.analytics;
+
+import com.google.gdata.client.http.MockHttpServer;
+import com.google.gdata.data.analytics.DataEntry;
+import com.google.gdata.data.analytics.DataFeed;
+import com.google.gdata.data.analytics.DataTable;
+import com.google.gdata.data.analytics.Dimension;
+import com.google.gdata.data.analytics.Metric;
+
+import junit.framework.TestCase;
+
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Tests for the streaming of data feeds by {@link AnalyticsService}.
+ *
+ *
+ */
+public class AnalyticsServiceTest extends TestCase {
+
+  private static final String DATA_FEED =
+      "<?xml version='1.0' encoding='UTF-8'?>\n"
+      + "<feed xmlns='http://www.w3.org/2005/Atom'"
+      + " xmlns:dxp='http://schemas.google.com/analytics/2009'>\n"
+      + "  <id>http://www.google.com/analytics/feeds/data</id>\n"
+      + "  <title>Google Analytics Data</title>\n"
+      + "  <updated>2010-01-02T03:04:05.000Z</updated>\n"
+      + "  <entry>\n"
+      + "    <id>http://www.google.com/analytics/feeds/data?row=1</id>\n"
+      + "    <title>ga:country=Canada | ga:browser=Firefox</title>\n"
+      + "    <updated>2010-01-02T03:04:05.000Z</updated>\n"
+      + "    <dxp:dimension name='ga:country' value='Canada'/>\n"
+      + "    <dxp:dimension name='ga:browser' value='Firefox'/>\n"
+      + "    <dxp:metric name='ga:visits' type='integer' value='1234'"
+      + " confidenceInterval='0.0'/>\n"
+      + "    <dxp:metric name='ga:avgTimeOnSite' type='time'"
+      + " value='61.25' confidenceInterval='0.0'/>\n"
+      + "    <dxp:metric name='ga:visitBounceRate' type='percent'"
+      + " value='42.5' confidenceInterval='0.0'/>\n"
+      + "  </entry>\n"
+      + "  <entry>\n"
+      + "    <id>http://www.google.com/analytics/feeds/data?row=2</id>\n"
+      + "    <title>ga:country=France | ga:browser=Firefox</title>\n"
+      + "    <updated>2010-01-02T03:04:05.000Z</updated>\n"
+      + "    <dxp:dimension name='ga:country' value='France'/>\n"
+      + "    <dxp:dimension name='ga:browser' value='Firefox'/>\n"
+      + "    <dxp:metric name='ga:visits' type='integer' value='0'"
+      + " confidenceInterval='0.0'/>\n"
+      + "    <dxp:metric name='ga:avgTimeOnSite' type='time'"
+      + " value='0.0' confidenceInterval='0.0'/>\n"
+      + "    <dxp:metric name='ga:visitBounceRate' type='percent'"
+      + " value='100.0' confidenceInterval='0.0'/>\n"
+      + "  </entry>\n"
+      + "  <entry>\n"
+      + "    <id>http://www.google.com/analytics/feeds/data?row=3</id>\n"
+      + "    <title>ga:country=Japan | ga:browser=Chrome</title>\n"
+      + "    <updated>2010-01-02T03:04:05.000Z</updated>\n"
+      + "    <dxp:dimension name='ga:country' value='Japan'/>\n"
+      + "    <dxp:dimension name='ga:browser' value='Chrome'/>\n"
+      + "    <dxp:metric name='ga:visits' type='integer'"
+      + " value='9876543210' confidenceInterval='0.0'/>\n"
+      + "    <dxp:metric name='ga:avgTimeOnSite' type='time'"
+      + " value='1.5E2' confidenceInterval='0.0'/>\n"
+      + "    <dxp:metric name='ga:visitBounceRate' type='percent'"
+      + " value='0.125' confidenceInterval='0.0'/>\n"
+      + "  </entry>\n"
+      + "</feed>\n";
+
+  private MockHttpServer server;
+  private AnalyticsService service;
+
+  @Override
+  protected void setUp() throws Exception {
+    server = new MockHttpServer(new MockHttpServer.Handler() {
+      public String handle(MockHttpServer.Request request) {
+        return "HTTP/1.1 200 OK\r\n"
+            + "Content-Type: application/atom+xml; charset=UTF-8\r\n"
+            + "Content-Length: " + DATA_FEED.length() + "\r\n"
+            + "\r\n"
+            + DATA_FEED;
+      }
+    });
+    service = new AnalyticsService("gdata-test");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    server.shutdown();
+  }
+
+  public void testStreamedTableMatchesEntries() throws Exception {
+    URL url = server.url("/analytics/feeds/data");
+    DataTable.Builder builder = new DataTable.Builder();
+    DataFeed streamed = service.streamData(url, builder);
+    DataTable table = builder.build();
+    assertTrue(streamed.getEntries().isEmpty());
+    assertEquals("Google Analytics Data",
+        streamed.getTitle().getPlainText());
+
+    List<DataEntry> entries = service.getFeed(url, DataFeed.class)
+        .getEntries();
+    assertEquals(3, entries.size());
+    assertEquals(entries.size(), table.getRowCount());
+
+    DataEntry first = entries.get(0);
+    assertEquals(first.getDimensions().size(), table.getDimensionCount());
+    for (int column = 0; column < table.getDimensionCount(); column++) {
+      Dimension dimension = first.getDimensions().get(column);
+      assertEquals(dimension.getName(), table.getDimensionName(column));
+      assertEquals(column, table.getDimensionIndex(dimension.getName()));
+    }
+    assertEquals(first.getMetrics().size(), table.getMetricCount());
+    for (int column = 0; column < table.getMetricCount(); column++) {
+      Metric metric = first.getMetrics().get(column);
+      assertEquals(metric.getName(), table.getMetricName(column));
+      assertEquals(metric.getType(), table.getMetricType(column));
+      assertEquals(column, table.getMetricIndex(metric.getName()));
+      assertEquals(Metric.Type.INTEGER.equals(metric.getType()),
+          table.isLongMetric(column));
+    }
+    assertTrue(table.isLongMetric(table.getMetricIndex("ga:visits")));
+    assertFalse(table.isLongMetric(table.getMetricIndex("ga:avgTimeOnSite")));
+
+    for (int row = 0; row < entries.size(); row++) {
+      DataEntry entry = entries.get(row);
+      for (int column = 0; column < table.getDimensionCount(); column++) {
+        assertEquals(entry.stringValueOf(table.getDimensionName(column)),
+            table.getDimension(row, column));
+      }
+      for (int column = 0; column < table.getMetricCount(); column++) {
+        String name = table.getMetricName(column);
+        assertEquals(entry.longValueOf(name).longValue(),
+            table.getLong(row, column));
+        assertEquals(entry.doubleValueOf(name).doubleValue(),
+            table.getDouble(row, column));
+      }
+    }
+    assertEquals(9876543210L, table.getLong(2, 0));
+    assertEquals(150.0, table.getDouble(2, 1));
+    assertSame(table.getDimension(0, 1), table.getDimension(1, 1));
+  }
+}
@@ -0,0 +1,181 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.batch;
+
+import com.google.gdata.client.Service;
+import com.google.gdata.client.http.MockHttpServer;
+import com.google.gdata.data.Entry;
+import com.google.gdata.data.Feed;
+import com.google.gdata.data.PlainTextConstruct;
+import com.google.gdata.data.batch.BatchOperationType;
+import com.google.gdata.data.batch.BatchUtils;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tests for the retries and the batch id matching of {@link BatchExecutor}.
+ *
+ *
+ */
+public class BatchExecutorTest extends TestCase {
+
+  private static final Pattern BATCH_ID =
+      Pattern.compile("<batch:id>([^<]*)</batch:id>");
+
+  /** Response bodies returned for the successive batch requests. */
+  private final List<String> responses = new ArrayList<String>();
+
+  private MockHttpServer server;
+  private BatchExecutor<Entry, Feed> executor;
+
+  @Override
+  protected void setUp() throws Exception {
+    server = new MockHttpServer(new MockHttpServer.Handler() {
+      public String handle(MockHttpServer.Request request) {
+        int index = server.getRequests().size() - 1;
+        String body = responses.get(index);
+        return "HTTP/1.1 200 OK\r\n"
+            + "Content-Type: application/atom+xml; charset=UTF-8\r\n"
+            + "Content-Length: " + body.length() + "\r\n"
+            + "\r\n"
+            + body;
+      }
+    });
+    Service service = new Service();
+    BatchUtils.declareExtensions(service.getExtensionProfile());
+    executor = new BatchExecutor<Entry, Feed>(
+        service, server.url("/feed/batch"), Feed.class);
+    executor.setMaxConcurrentBatches(1);
+    executor.setRetryDelay(0);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    server.shutdown();
+  }
+
+  public void testPartialFailureRetriesOnlyTransientErrors()
+      throws Exception {
+    responses.add(feed(
+        status("0", 200),
+        status("1", 404),
+        status("2", 503)));
+    responses.add(feed(status("2", 200)));
+
+    List<Entry> results = executor.execute(Arrays.asList(
+        operation(BatchOperationType.UPDATE),
+        operation(BatchOperationType.UPDATE),
+        operation(BatchOperationType.UPDATE)));
+
+    assertEquals(Arrays.asList("0", "1", "2"), getSentIds(0));
+    assertEquals(Arrays.asList("2"), getSentIds(1));
+    assertEquals(2, server.getRequests().size());
+    assertStatus(200, results.get(0));
+    assertStatus(404, results.get(1));
+    assertStatus(200, results.get(2));
+  }
+
+  public void testResendSkipsCompletedInserts() throws Exception {
+    responses.add(feed(
+        status("0", 201),
+        status("1", 503),
+        status("2", 201)));
+    responses.add(feed(status("1", 201)));
+
+    List<Entry> results = executor.execute(Arrays.asList(
+        operation(null),
+        operation(BatchOperationType.INSERT),
+        operation(BatchOperationType.INSERT)));
+
+    assertEquals(Arrays.asList("0", "1", "2"), getSentIds(0));
+    assertEquals(Arrays.asList("1"), getSentIds(1));
+    assertEquals(2, server.getRequests().size());
+    assertStatus(201, results.get(0));
+    assertStatus(201, results.get(1));
+    assertStatus(201, results.get(2));
+  }
+
+  public void testInterruptedResponseResendsOnlyUpdates() throws Exception {
+    responses.add(feed(
+        status("0", 201),
+        "<entry><batch:interrupted reason='Bad data' parsed='1'"
+            + " success='1' error='0' unprocessed='2'/></entry>"));
+    responses.add(feed(status("2", 200)));
+
+    List<Entry> results = executor.execute(Arrays.asList(
+        operation(BatchOperationType.INSERT),
+        operation(BatchOperationType.INSERT),
+        operation(BatchOperationType.UPDATE)));
+
+    assertEquals(Arrays.asList("0", "1", "2"), getSentIds(0));
+    assertEquals(Arrays.asList("2"), getSentIds(1));
+    assertEquals(2, server.getRequests().size());
+    assertStatus(201, results.get(0));
+    assertNull("An insert the server did not report on is unknown",
+        results.get(1));
+    assertStatus(200, results.get(2));
+  }
+
+  private static Entry operation(BatchOperationType type) {
+    Entry entry = new Entry();
+    entry.setTitle(new PlainTextConstruct("operation"));
+    if (type != null) {
+      BatchUtils.setBatchOperationType(entry, type);
+    }
+    return entry;
+  }
+
+  private static String feed(String... entries) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<?xml version='1.0' encoding='UTF-8'?>")
+        .append("<feed xmlns='http://www.w3.org/2005/Atom'")
+        .append(" xmlns:batch='http://schemas.google.com/gdata/batch'>");
+    for (String entry : entries) {
+      sb.append(entry);
+    }
+    return sb.append("</feed>").toString();
+  }
+
+  private static String status(String id, int code) {
+    return "<entry><batch:id>" + id + "</batch:id>"
+        + "<batch:status code='" + code + "'/></entry>";
+  }
+
+  /**
+   * Returns the batch ids of the entries sent in a request.
+   */
+  private List<String> getSentIds(int request) throws Exception {
+    Matcher matcher = BATCH_ID.matcher(
+        new String(server.getRequests().get(request).body, "UTF-8"));
+    List<String> ids = new ArrayList<String>();
+    while (matcher.find()) {
+      ids.add(matcher.group(1));
+    }
+    return ids;
+  }
+
+  private static void assertStatus(int code, Entry result) {
+    assertNotNull(result);
+    assertEquals(code, BatchUtils.getBatchStatus(result).getCode());
+  }
+}
@@ -0,0 +1,66 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.cache;
+
+import com.google.gdata.util.ContentType;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link MemoryResponseStore}.
+ *
+ *
+ */
+public class MemoryResponseStoreTest extends TestCase {
+
+  private static CachedResponse response(int length) {
+    return new CachedResponse("Feed", ContentType.ATOM, "\"etag\"", null,
+        new byte[length]);
+  }
+
+  public void testEvictsLeastRecentlyUsedByBytes() {
+    MemoryResponseStore store = new MemoryResponseStore(100);
+    store.put("a", response(40));
+    store.put("b", response(40));
+    assertNotNull(store.get("a"));
+    store.put("c", response(40));
+
+    assertNotNull(store.get("a"));
+    assertNull(store.get("b"));
+    assertNotNull(store.get("c"));
+    assertEquals(80, store.getTotalBytes());
+  }
+
+  public void testDoesNotStoreResponseLargerThanStore() {
+    MemoryResponseStore store = new MemoryResponseStore(100);
+    store.put("a", response(40));
+    store.put("a", response(101));
+
+    assertNull(store.get("a"));
+    assertEquals(0, store.size());
+    assertEquals(0, store.getTotalBytes());
+  }
+
+  public void testReplaceAndRemoveUpdateTotal() {
+    MemoryResponseStore store = new MemoryResponseStore(100);
+    store.put("a", response(40));
+    store.put("a", response(10));
+    assertEquals(10, store.getTotalBytes());
+    store.remove("a");
+    assertEquals(0, store.getTotalBytes());
+  }
+}
@@ -0,0 +1,255 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package com.google.gdata.client.http;
+
+import com.google.gdata.client.GDataProtocol.Header;
+import com.google.gdata.client.Service.GDataRequest;
+import com.google.gdata.client.Service.GDataRequest.RequestType;
+import com.google.gdata.util.ContentType;
+import com.google.gdata.util.common.base.Charsets;
+import com.google.gdata.util.common.io.CharStreams;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the redirect handling of {@link HttpGDataRequest}.
+ *
+ *
+ */
+public class HttpGDataRequestTest extends TestCase {
+
+  private static final int THREADS = 200;
+  private static final int REQUESTS_PER_THREAD = 5;
+
+  /** Server receiving the requests, which redirects them. */
+  private MockHttpServer origin;
+
+  /** Another host, targeted by redirects from {@link #origin}. */
+  private MockHttpServer other;
+
+  private HttpGDataRequest.Factory factory;
+
+  /**
+   * Redirects {@code /<status>/<path>} to {@code /target/<path>} with the
+   * given status, {@code /other/<path>} to {@code /target/<path>} on
+   * {@link #other}, and answers requests to {@code /target/} with a
+   * description of the request.
+   */
+  private final MockHttpServer.Handler handler = new MockHttpServer.Handler() {
+    public String handle(MockHttpServer.Request request) throws Exception {
+      String path = request.path;
+      if (path.startsWith("/target/")) {
+        return MockHttpServer.ok(request.method
+            + "|" + new String(request.body, "UTF-8")
+            + "|" + request.getHeader("Authorization")
+            + "|" + request.getHeader("Content-Type")
+            + "|" + request.getHeader(Header.METHOD_OVERRIDE));
+      }
+      int slash = path.indexOf('/', 1);
+      String kind = path.substring(1, slash);
+      String location = "/target" + path.substring(slash);
+      int status;
+      if (kind.equals("other")) {
+        status = 302;
+        location = other.url(location).toExternalForm();
+      } else {
+        status = Integer.parseInt(kind);
+      }
+      return "HTTP/1.1 " + status + " Redirect\r\n"
+          + "Location: " + location + "\r\n"
+          + "Content-Length: 0\r\n\r\n";
+    }
+  };
+
+  @Override
+  protected void setUp() throws Exception {
+    origin = new MockHttpServer(handler);
+    other = new MockHttpServer(handler);
+    factory = new HttpGDataRequest.Factory();
+    factory.setAuthToken(new HttpAuthToken() {
+      public String getAuthorizationHeader(URL requestUrl,
+          String requestMethod) {
+        return "Token " + requestMethod + " " + requestUrl.getPath();
+      }
+    });
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      origin.shutdown();
+    } finally {
+      other.shutdown();
+    }
+  }
+
+  private String send(RequestType type, URL url, String body)
+      throws Exception {
+    GDataRequest request = factory.getRequest(type, url, ContentType.ATOM);
+    try {
+      if (body != null) {
+        OutputStream out = request.getRequestStream();
+        out.write(body.getBytes("UTF-8"));
+        out.close();
+      }
+      request.execute();
+      if (type == RequestType.DELETE) {
+        return "";
+      }
+      InputStreamReader reader = new InputStreamReader(
+          request.getResponseStream(), Charsets.UTF_8);
+      try {
+        return CharStreams.toString(reader);
+      } finally {
+        reader.close();
+      }
+    } finally {
+      request.end();
+    }
+  }
+
+  public void testTemporaryRedirectKeepsMethodAndData() throws Exception {
+    assertEquals("POST|entry|Token POST /target/a|" + ContentType.ATOM
+        + "|null",
+        send(RequestType.INSERT, origin.url("/307/a"), "entry"));
+    assertEquals("PUT|entry|Token PUT /target/b|" + ContentType.ATOM
+        + "|null",
+        send(RequestType.UPDATE, origin.url("/308/b"), "entry"));
+  }
+
+  public void testSeeOtherDropsDataHeaders() throws Exception {
+    GDataRequest request = factory.getRequest(RequestType.INSERT,
+        origin.url("/303/a"), ContentType.ATOM);
+    request.setHeader(Header.METHOD_OVERRIDE, "PUT");
+    OutputStream out = request.getRequestStream();
+    out.write("entry".getBytes("UTF-8"));
+    out.close();
+    request.execute();
+    String response = CharStreams.toString(new InputStreamReader(
+        request.getResponseStream(), Charsets.UTF_8));
+    request.end();
+    assertEquals("GET||Token GET /target/a|null|null", response);
+    MockHttpServer.Request target = origin.getRequests().get(1);
+    assertNull(target.getHeader("Content-Length"));
+  }
+
+  public void testCrossHostRedirectDropsAuthorization() throws Exception {
+    assertEquals("GET||null|null|null",
+        send(RequestType.QUERY, origin.url("/other/a"), null));
+    assertEquals("Token GET /other/a",
+        origin.getRequests().get(0).getHeader("Authorization"));
+  }
+
+  public void testConcurrentRedirects() throws Exception {
+    runConcurrently();
+  }
+
+  public void testConcurrentRedirectsOverPool() throws Exception {
+    PooledHttpUrlConnectionSource pool =
+        new PooledHttpUrlConnectionSource(16, 30000);
+    factory.setConnectionSource(pool);
+    try {
+      runConcurrently();
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Sends redirected POST, PUT and DELETE requests from {@link #THREADS}
+   * threads at once and checks that each of them reached its target with
+   * its own method and data, and that a 303 turned a POST into a GET.
+   */
+  private void runConcurrently() throws Exception {
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicInteger succeeded = new AtomicInteger();
+    final List<Throwable> failures =
+        Collections.synchronizedList(new ArrayList<Throwable>());
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < THREADS; i++) {
+      final int thread = i;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            for (int j = 0; j < REQUESTS_PER_THREAD; j++) {
+              String id = thread + "-" + j;
+              check("POST|post " + id + "|Token POST /target/" + id,
+                  send(RequestType.INSERT, origin.url("/307/" + id),
+                      "post " + id));
+              check("PUT|put " + id + "|Token PUT /target/" + id,
+                  send(RequestType.UPDATE, origin.url("/308/" + id),
+                      "put " + id));
+              check("GET||Token GET /target/" + id,
+                  send(RequestType.INSERT, origin.url("/303/" + id),
+                      "post " + id));
+              send(RequestType.DELETE, origin.url("/301/" + id), null);
+              succeeded.incrementAndGet();
+            }
+          } catch (Throwable t) {
+            failures.add(t);
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join(60000);
+    }
+    if (!failures.isEmpty()) {
+      AssertionError error = new AssertionError(
+          failures.size() + " threads failed: " + failures.get(0));
+      error.initCause(failures.get(0));
+      throw error;
+    }
+    assertEquals(THREADS * REQUESTS_PER_THREAD, succeeded.get());
+    int deleted = 0;
+    for (MockHttpServer.Request request : origin.getRequests()) {
+      if (request.method.equals("DELETE")
+          && request.path.startsWith("/target/")) {
+        assertEquals("Token DELETE " + request.path,
+            request.getHeader("Authorization"));
+        deleted++;
+      }
+    }
+    assertEquals(THREADS * REQUESTS_PER_THREAD, deleted);
+    assertNull(System.getProperty("http.strictPostRedirect"));
+  }
+
+  private static void check(String expectedPrefix, String response) {
+    if (!response.startsWith(expectedPrefix + "|")) {
+      throw new AssertionError("Expected " + expectedPrefix + " but was "
+          + response);
+    }
+  }
+}
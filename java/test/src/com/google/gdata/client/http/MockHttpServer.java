@@ -0,0 +1,307 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package com.google.gdata.client.http;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A minimal HTTP/1.1 server on a loopback port for tests of the client
+ * transport. Each connection is served by its own thread, which reads
+ * requests with a {@code Content-Length} body and writes the raw response
+ * returned by a {@link Handler}.
+ *
+ *
+ */
+public final class MockHttpServer {
+
+  /**
+   * Produces the responses of the server.
+   */
+  public interface Handler {
+
+    /**
+     * Returns the raw response to a request, status line and headers
+     * included, or {@code null} to close the connection without answering.
+     */
+    String handle(Request request) throws Exception;
+  }
+
+  /**
+   * A request received by the server.
+   */
+  public static final class Request {
+
+    /** Index of the connection the request came on, starting at 0. */
+    public final int connection;
+    public final String method;
+    public final String path;
+    public final Map<String, String> headers;
+    public final byte[] body;
+
+    private Request(int connection, String method, String path,
+        Map<String, String> headers, byte[] body) {
+      this.connection = connection;
+      this.method = method;
+      this.path = path;
+      this.headers = headers;
+      this.body = body;
+    }
+
+    /** Returns a header value, matching the name case-insensitively. */
+    public String getHeader(String name) {
+      return headers.get(name);
+    }
+  }
+
+  private final Handler handler;
+  private final ServerSocket serverSocket;
+  private final Thread acceptor;
+  private final List<Request> requests =
+      Collections.synchronizedList(new ArrayList<Request>());
+  private final List<Socket> sockets = new ArrayList<Socket>();
+
+  // Guarded by this.
+  private int accepted;
+  private int closed;
+  private int maxRequestsPerConnection = Integer.MAX_VALUE;
+  private Throwable failure;
+
+  /**
+   * Starts a server on a free loopback port.
+   */
+  public MockHttpServer(Handler handler) throws IOException {
+    this.handler = handler;
+    serverSocket = new ServerSocket(0, 256, InetAddress.getByName(null));
+    acceptor = new Thread("MockHttpServer") {
+      @Override
+      public void run() {
+        accept();
+      }
+    };
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  /**
+   * Makes the server close each connection, without telling the client,
+   * once it has answered the given number of requests on it.
+   */
+  public synchronized void setMaxRequestsPerConnection(int max) {
+    maxRequestsPerConnection = max;
+  }
+
+  /** Returns the url of {@code path} on this server. */
+  public URL url(String path) throws IOException {
+    return new URL("http", "127.0.0.1", serverSocket.getLocalPort(), path);
+  }
+
+  /** Returns the requests received so far, in order of arrival. */
+  public List<Request> getRequests() {
+    synchronized (requests) {
+      return new ArrayList<Request>(requests);
+    }
+  }
+
+  /** Returns the number of connections accepted so far. */
+  public synchronized int getConnectionCount() {
+    return accepted;
+  }
+
+  /**
+   * Waits until the server has closed at least {@code count} connections.
+   */
+  public synchronized void awaitClosedConnections(int count)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (closed < count) {
+      long wait = deadline - System.currentTimeMillis();
+      if (wait <= 0) {
+        throw new IllegalStateException("Connections still open");
+      }
+      wait(wait);
+    }
+  }
+
+  /**
+   * Stops the server and closes all of its connections, then rethrows the
+   * first exception or error a connection failed with, if any.
+   */
+  public void shutdown() throws Exception {
+    serverSocket.close();
+    synchronized (this) {
+      for (Socket socket : sockets) {
+        socket.close();
+      }
+      if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+      if (failure != null) {
+        throw (Exception) failure;
+      }
+    }
+  }
+
+  private void accept() {
+    try {
+      while (true) {
+        final Socket socket = serverSocket.accept();
+        final int index;
+        synchronized (this) {
+          index = accepted++;
+          sockets.add(socket);
+        }
+        Thread worker = new Thread("MockHttpServer-" + index) {
+          @Override
+          public void run() {
+            serve(socket, index);
+          }
+        };
+        worker.setDaemon(true);
+        worker.start();
+      }
+    } catch (IOException e) {
+      // Server socket closed by shutdown().
+    }
+  }
+
+  private void serve(Socket socket, int index) {
+    try {
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      OutputStream out = socket.getOutputStream();
+      for (int served = 1; ; served++) {
+        Request request = readRequest(in, index);
+        if (request == null) {
+          break;
+        }
+        requests.add(request);
+        String response = handler.handle(request);
+        if (response == null) {
+          break;
+        }
+        out.write(response.getBytes("ISO-8859-1"));
+        out.flush();
+        synchronized (this) {
+          if (served >= maxRequestsPerConnection) {
+            break;
+          }
+        }
+        if (response.toLowerCase().contains("\r\nconnection: close\r\n")) {
+          break;
+        }
+      }
+    } catch (SocketException e) {
+      // Connection closed by the client or by shutdown().
+    } catch (Exception e) {
+      recordFailure(e);
+    } catch (Error e) {
+      recordFailure(e);
+    } finally {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Ignore.
+      }
+      synchronized (this) {
+        closed++;
+        notifyAll();
+      }
+    }
+  }
+
+  /** Keeps the first failure of a connection for {@link #shutdown()}. */
+  private synchronized void recordFailure(Throwable e) {
+    if (failure == null) {
+      failure = e;
+    }
+  }
+
+  private static Request readRequest(InputStream in, int connection)
+      throws IOException {
+    String requestLine = readLine(in);
+    if (requestLine == null) {
+      return null;
+    }
+    String[] parts = requestLine.split(" ");
+    Map<String, String> headers =
+        new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+    String line;
+    while ((line = readLine(in)) != null && line.length() > 0) {
+      int colon = line.indexOf(':');
+      headers.put(line.substring(0, colon).trim(),
+          line.substring(colon + 1).trim());
+    }
+    String contentLength = headers.get("Content-Length");
+    byte[] body = new byte[
+        (contentLength != null) ? Integer.parseInt(contentLength) : 0];
+    for (int read = 0; read < body.length; ) {
+      int count = in.read(body, read, body.length - read);
+      if (count == -1) {
+        return null;
+      }
+      read += count;
+    }
+    return new Request(connection, parts[0], parts[1], headers, body);
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int c;
+    while ((c = in.read()) != '\n') {
+      if (c == -1) {
+        return null;
+      }
+      if (c != '\r') {
+        line.write(c);
+      }
+    }
+    return line.toString("ISO-8859-1");
+  }
+
+  /**
+   * Returns a complete {@code 200 OK} response with a text body.
+   */
+  public static String ok(String body) {
+    return response(200, "OK", body);
+  }
+
+  /**
+   * Returns a complete response with a text body.
+   */
+  public static String response(int status, String message, String body) {
+    return "HTTP/1.1 " + status + " " + message + "\r\n"
+        + "Content-Type: text/plain\r\n"
+        + "Content-Length: " + body.length() + "\r\n"
+        + "\r\n"
+        + body;
+  }
+}
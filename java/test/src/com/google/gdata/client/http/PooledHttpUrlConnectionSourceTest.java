@@ -0,0 +1,236 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package com.google.gdata.client.http;
+
+import com.google.gdata.client.http.PooledHttpUrlConnectionSource.Connection;
+import com.google.gdata.util.common.base.Charsets;
+import com.google.gdata.util.common.io.CharStreams;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Tests for {@link PooledHttpUrlConnectionSource} and the connections it
+ * opens.
+ *
+ *
+ */
+public class PooledHttpUrlConnectionSourceTest extends TestCase {
+
+  private MockHttpServer server;
+  private PooledHttpUrlConnectionSource pool;
+
+  @Override
+  protected void setUp() throws Exception {
+    pool = new PooledHttpUrlConnectionSource(2, 30000);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    pool.shutdown();
+    if (server != null) {
+      server.shutdown();
+    }
+  }
+
+  private void startServer(MockHttpServer.Handler handler)
+      throws IOException {
+    server = new MockHttpServer(handler);
+  }
+
+  /** Answers every request with its path. */
+  private void startEchoServer() throws IOException {
+    startServer(new MockHttpServer.Handler() {
+      public String handle(MockHttpServer.Request request) {
+        return MockHttpServer.ok(request.method + " " + request.path);
+      }
+    });
+  }
+
+  private String send(String method, URL url, String body)
+      throws IOException {
+    HttpURLConnection connection = pool.openConnection(url);
+    connection.setRequestMethod(method);
+    connection.setReadTimeout(5000);
+    if (body != null) {
+      connection.setDoOutput(true);
+      OutputStream out = connection.getOutputStream();
+      out.write(body.getBytes("UTF-8"));
+      out.close();
+    }
+    return read(connection);
+  }
+
+  private static String read(HttpURLConnection connection)
+      throws IOException {
+    InputStreamReader reader =
+        new InputStreamReader(connection.getInputStream(), Charsets.UTF_8);
+    try {
+      return CharStreams.toString(reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  public void testKeepAliveReusesConnection() throws Exception {
+    startEchoServer();
+    for (int i = 0; i < 5; i++) {
+      assertEquals("GET /feed/" + i, send("GET", server.url("/feed/" + i),
+          null));
+    }
+    assertEquals(1, server.getConnectionCount());
+    PooledHttpUrlConnectionSource.Stats stats = pool.getStats();
+    assertEquals(1, stats.getMisses());
+    assertEquals(4, stats.getHits());
+    assertEquals(0, stats.getLeased());
+    assertEquals(1, stats.getIdle());
+  }
+
+  public void testRequestBodyIsSentWithLength() throws Exception {
+    startServer(new MockHttpServer.Handler() {
+      public String handle(MockHttpServer.Request request) throws Exception {
+        return MockHttpServer.ok(request.getHeader("Content-Length") + ":"
+            + new String(request.body, "UTF-8"));
+      }
+    });
+    assertEquals("5:hello", send("POST", server.url("/feed"), "hello"));
+    assertEquals("5:again", send("POST", server.url("/feed"), "again"));
+    assertEquals(1, server.getConnectionCount());
+  }
+
+  public void testConnectionCloseIsNotReused() throws Exception {
+    startServer(new MockHttpServer.Handler() {
+      public String handle(MockHttpServer.Request request) {
+        return "HTTP/1.1 200 OK\r\nConnection: close\r\n"
+            + "Content-Length: 2\r\n\r\nok";
+      }
+    });
+    assertEquals("ok", send("GET", server.url("/feed"), null));
+    assertEquals("ok", send("GET", server.url("/feed"), null));
+    assertEquals(2, server.getConnectionCount());
+    assertEquals(0, pool.getStats().getHits());
+    assertEquals(0, pool.getStats().getIdle());
+  }
+
+  public void testUnreadBodyIsDrainedOnClose() throws Exception {
+    startEchoServer();
+    HttpURLConnection connection = pool.openConnection(server.url("/first"));
+    assertEquals(200, connection.getResponseCode());
+    connection.getInputStream().close();
+    assertEquals("GET /second", send("GET", server.url("/second"), null));
+    assertEquals(1, server.getConnectionCount());
+  }
+
+  public void testRouteCapacityIsEnforced() throws Exception {
+    startEchoServer();
+    URL url = server.url("/feed");
+    Connection first = pool.lease(url, 1000, 1000);
+    Connection second = pool.lease(url, 1000, 1000);
+    try {
+      pool.lease(url, 200, 1000);
+      fail("Expected a timeout waiting for a connection");
+    } catch (SocketTimeoutException e) {
+      // Expected.
+    }
+    pool.release(first, true);
+    Connection third = pool.lease(url, 200, 1000);
+    assertSame(first, third);
+    assertTrue(third.reused);
+    pool.release(second, false);
+    pool.release(third, false);
+    assertEquals(0, pool.getStats().getLeased());
+    assertEquals(0, pool.getStats().getIdle());
+  }
+
+  public void testIdleConnectionsExpire() throws Exception {
+    pool = new PooledHttpUrlConnectionSource(2, 100);
+    startEchoServer();
+    send("GET", server.url("/first"), null);
+    Thread.sleep(200);
+    send("GET", server.url("/second"), null);
+    assertEquals(2, server.getConnectionCount());
+    assertEquals(1, pool.getStats().getEvictions());
+  }
+
+  public void testStaleConnectionIsRetriedForGet() throws Exception {
+    startEchoServer();
+    server.setMaxRequestsPerConnection(1);
+    assertEquals("GET /first", send("GET", server.url("/first"), null));
+    server.awaitClosedConnections(1);
+    assertEquals("GET /second", send("GET", server.url("/second"), null));
+    assertEquals(2, server.getConnectionCount());
+    assertEquals(2, server.getRequests().size());
+  }
+
+  public void testStaleConnectionIsNotRetriedForPost() throws Exception {
+    startEchoServer();
+    server.setMaxRequestsPerConnection(1);
+    send("GET", server.url("/first"), null);
+    server.awaitClosedConnections(1);
+    try {
+      send("POST", server.url("/second"), "body");
+      fail("Expected the failure on the stale connection");
+    } catch (IOException e) {
+      // Expected.
+    }
+    assertEquals(1, server.getConnectionCount());
+  }
+
+  public void testReadTimeoutIsNotRetried() throws Exception {
+    startServer(new MockHttpServer.Handler() {
+      public String handle(MockHttpServer.Request request) throws Exception {
+        if (request.path.equals("/slow")) {
+          Thread.sleep(1000);
+        }
+        return MockHttpServer.ok("ok");
+      }
+    });
+    send("GET", server.url("/fast"), null);
+    HttpURLConnection connection = pool.openConnection(server.url("/slow"));
+    connection.setReadTimeout(200);
+    try {
+      connection.getResponseCode();
+      fail("Expected a read timeout");
+    } catch (SocketTimeoutException e) {
+      // Expected.
+    }
+    List<MockHttpServer.Request> requests = server.getRequests();
+    assertEquals(2, requests.size());
+    assertEquals(1, server.getConnectionCount());
+  }
+
+  public void testNullRequestPropertyIsNotSent() throws Exception {
+    startServer(new MockHttpServer.Handler() {
+      public String handle(MockHttpServer.Request request) {
+        return MockHttpServer.ok(String.valueOf(
+            request.headers.containsKey("Content-Type")));
+      }
+    });
+    HttpURLConnection connection = pool.openConnection(server.url("/feed"));
+    connection.setRequestProperty("Content-Type", null);
+    assertEquals("false", read(connection));
+  }
+}
@@ -0,0 +1,175 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.client.uploader;
+
+import com.google.gdata.client.uploader.ResumableHttpFileUploader.UploadState;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link ResumableHttpUploadTask}.
+ *
+ *
+ */
+public class ResumableHttpUploadTaskTest extends TestCase {
+
+  private static final byte[] CONTENT = "resumable upload content".getBytes();
+
+  private ExecutorService executor;
+  private File file;
+
+  @Override
+  protected void setUp() throws Exception {
+    executor = Executors.newSingleThreadExecutor();
+    file = File.createTempFile("upload", ".txt");
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(CONTENT);
+    } finally {
+      out.close();
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    executor.shutdownNow();
+    file.delete();
+  }
+
+  /**
+   * A connection dropped while the request body is flushed must be treated
+   * as a server error, so the upload probes the server and resumes instead
+   * of failing with a client error.
+   */
+  public void testConnectionDroppedDuringFlushResumes() throws Exception {
+    final List<MockConnection> connections = new ArrayList<MockConnection>();
+    UrlConnectionFactory factory = new UrlConnectionFactory() {
+      public HttpURLConnection create(URL url) {
+        MockConnection connection;
+        switch (connections.size()) {
+          case 0:
+            connection = new MockConnection(url, 0, true);
+            break;
+          case 1:
+            connection = new MockConnection(url, 308, false);
+            break;
+          default:
+            connection = new MockConnection(url, 201, false);
+            break;
+        }
+        connections.add(connection);
+        return connection;
+      }
+    };
+
+    ResumableHttpFileUploader uploader = new ResumableHttpFileUploader.Builder()
+        .setUrl(new URL("http://uploads.example.com/upload"))
+        .setFile(file)
+        .setExecutorService(executor)
+        .setUrlConnectionFactory(factory)
+        .build();
+    uploader.start().get(10, TimeUnit.SECONDS);
+
+    assertEquals(UploadState.COMPLETE, uploader.getUploadState());
+    assertEquals(3, connections.size());
+    assertEquals("0",
+        connections.get(1).getRequestProperty("Content-Length"));
+    assertEquals(new String(CONTENT),
+        new String(connections.get(2).body.toByteArray()));
+    assertEquals(CONTENT.length, uploader.getNumBytesUploaded());
+  }
+
+  /**
+   * Connection answering with a fixed response code, whose request body
+   * stream optionally fails when it is flushed.
+   */
+  private static class MockConnection extends HttpURLConnection {
+
+    private final int responseCode;
+    private final boolean failFlush;
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    MockConnection(URL url, int responseCode, boolean failFlush) {
+      super(url);
+      this.responseCode = responseCode;
+      this.failFlush = failFlush;
+    }
+
+    @Override
+    public void connect() {
+    }
+
+    @Override
+    public void disconnect() {
+    }
+
+    @Override
+    public boolean usingProxy() {
+      return false;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return new OutputStream() {
+        @Override
+        public void write(int b) {
+          body.write(b);
+        }
+
+        @Override
+        public void flush() throws IOException {
+          if (failFlush) {
+            throw new IOException("Connection reset");
+          }
+        }
+      };
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+      if (failFlush) {
+        throw new IOException("Connection reset");
+      }
+      return responseCode;
+    }
+
+    @Override
+    public int getContentLength() {
+      return 0;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+  }
+}
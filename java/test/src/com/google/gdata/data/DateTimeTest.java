@@ -0,0 +1,107 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.data;
+
+import junit.framework.TestCase;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Tests for {@link DateTime}.
+ *
+ *
+ */
+public class DateTimeTest extends TestCase {
+
+  public void testFormatLastDayOfYear9999() {
+    DateTime dateTime = new DateTime(253402300799999L, 0);
+    assertEquals("9999-12-31T23:59:59.999Z", dateTime.toString());
+    assertEquals("9999-12-31 23:59", dateTime.toUiString());
+    assertEquals("Fri, 31 Dec 9999 23:59:59 +0000",
+        dateTime.toStringRfc822());
+  }
+
+  public void testFormatYear10000() {
+    DateTime dateTime = new DateTime(253402390861001L, 0);
+    assertEquals("0000-01-02T01:01:01.001Z", dateTime.toString());
+    assertEquals("0000-01-02 01:01", dateTime.toUiString());
+    assertEquals("Sun, 02 Jan 10000 01:01:01 +0000",
+        dateTime.toStringRfc822());
+  }
+
+  public void testFormatYearAboveIntDate() {
+    DateTime dateTime = new DateTime(9245095863850260L, 0);
+    assertEquals("4935-06-05T08:24:10.260Z", dateTime.toString());
+    assertEquals("4935-06-05 08:24", dateTime.toUiString());
+    assertEquals("Sun, 05 Jun 294935 08:24:10 +0000",
+        dateTime.toStringRfc822());
+  }
+
+  public void testFormatShiftedIntoYear10000() {
+    DateTime dateTime = new DateTime(253402300799999L, 120);
+    assertEquals("0000-01-01T01:59:59.999+02:00", dateTime.toString());
+    assertEquals("0000-01-01 01:59", dateTime.toUiString());
+  }
+
+  public void testFormatYearBeforeZero() {
+    DateTime dateTime = new DateTime(-62233315200000L, 0);
+    assertEquals("0004-11-29T00:00:00.000Z", dateTime.toString());
+    assertEquals("0004-11-29 00:00", dateTime.toUiString());
+    assertEquals("Thu, 29 Nov 0004 00:00:00 +0000",
+        dateTime.toStringRfc822());
+  }
+
+  public void testParseRfc822TwoDigitDay() throws Exception {
+    checkParseRfc822("Thu, 01 Jan 1970 00:00:00 +0000");
+    checkParseRfc822("Fri, 31 Dec 2010 23:59:59 +0000");
+  }
+
+  public void testParseRfc822OneDigitDay() throws Exception {
+    checkParseRfc822("Mon, 7 Mar 2011 08:09:10 +0000");
+  }
+
+  public void testParseRfc822Gmt() throws Exception {
+    checkParseRfc822("Tue, 15 Jun 2010 12:30:45 GMT");
+    checkParseRfc822("Tue, 1 Jun 2010 12:30:45 GMT");
+  }
+
+  public void testParseRfc822PositiveOffset() throws Exception {
+    checkParseRfc822("Wed, 29 Feb 2012 01:02:03 +0530");
+  }
+
+  public void testParseRfc822NegativeOffset() throws Exception {
+    checkParseRfc822("Sat, 01 Jan 2000 00:00:00 -0230");
+  }
+
+  /**
+   * Checks that a string is parsed without falling back to
+   * {@link SimpleDateFormat}, to the same value.
+   */
+  private static void checkParseRfc822(String str) throws Exception {
+    SimpleDateFormat format =
+        new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
+    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+    long expected = format.parse(str).getTime();
+
+    DateTime fast = DateTime.parseRfc822Fast(str);
+    assertNotNull(str, fast);
+    assertEquals(str, expected, fast.getValue());
+    assertEquals(str, expected, DateTime.parseRfc822(str).getValue());
+  }
+}
@@ -0,0 +1,203 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.model;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tests for {@link CompactMap}, which must keep the same entries in the
+ * same order as a {@link LinkedHashMap}.
+ *
+ *
+ */
+public class CompactMapTest extends TestCase {
+
+  private final CompactMap<String, Integer> map =
+      new CompactMap<String, Integer>();
+  private final Map<String, Integer> expected =
+      new LinkedHashMap<String, Integer>();
+
+  private void put(String key, int value) {
+    assertEquals(expected.put(key, value), map.put(key, value));
+    assertSameEntries();
+  }
+
+  private void remove(String key) {
+    assertEquals(expected.remove(key), map.remove(key));
+    assertSameEntries();
+  }
+
+  public void testPutAndReplaceKeepFirstInsertionOrder() {
+    put("a", 1);
+    put("b", 2);
+    put("c", 3);
+    put("a", 4);
+    put("d", 5);
+    put("c", 6);
+    assertEquals("{a=4, b=2, c=6, d=5}", map.toString());
+  }
+
+  public void testRemoveKeepsOrderOfRemainingEntries() {
+    for (int i = 0; i < 5; i++) {
+      put("k" + i, i);
+    }
+    remove("k0");
+    remove("k2");
+    remove("missing");
+    remove("k4");
+    put("k0", 10);
+    assertEquals("{k1=1, k3=3, k0=10}", map.toString());
+  }
+
+  public void testLookupByEqualKey() {
+    put("key", 1);
+    String equalKey = new String("key");
+    assertTrue(map.containsKey(equalKey));
+    assertEquals(Integer.valueOf(1), map.get(equalKey));
+    put(equalKey, 2);
+    assertEquals(1, map.size());
+  }
+
+  public void testIteratorRemove() {
+    for (int i = 0; i < 6; i++) {
+      put("k" + i, i);
+    }
+    removeEvenValues(map.entrySet().iterator());
+    removeEvenValues(expected.entrySet().iterator());
+    assertSameEntries();
+    assertEquals("{k1=1, k3=3, k5=5}", map.toString());
+  }
+
+  public void testIteratorRemoveRequiresNext() {
+    put("a", 1);
+    Iterator<Map.Entry<String, Integer>> iterator =
+        map.entrySet().iterator();
+    try {
+      iterator.remove();
+      fail();
+    } catch (IllegalStateException e) {
+      // Expected.
+    }
+    iterator.next();
+    iterator.remove();
+    try {
+      iterator.remove();
+      fail();
+    } catch (IllegalStateException e) {
+      // Expected.
+    }
+    assertTrue(map.isEmpty());
+  }
+
+  public void testEntrySetValue() {
+    put("a", 1);
+    put("b", 2);
+    for (Map.Entry<String, Integer> entry : map.entrySet()) {
+      assertEquals(entry.getValue(), entry.setValue(entry.getValue() * 10));
+    }
+    assertEquals("{a=10, b=20}", map.toString());
+  }
+
+  public void testGrowPastMaxArraySize() {
+    for (int i = 0; i < CompactMap.MAX_ARRAY_SIZE; i++) {
+      put("k" + i, i);
+    }
+    put("k3", 30);
+    put("k" + CompactMap.MAX_ARRAY_SIZE, CompactMap.MAX_ARRAY_SIZE);
+    put("k0", 100);
+    put("new", -1);
+    assertEquals(CompactMap.MAX_ARRAY_SIZE + 2, map.size());
+  }
+
+  public void testShrinkBelowMaxArraySize() {
+    for (int i = 0; i <= CompactMap.MAX_ARRAY_SIZE + 1; i++) {
+      put("k" + i, i);
+    }
+    for (int i = 0; i <= CompactMap.MAX_ARRAY_SIZE + 1; i += 2) {
+      remove("k" + i);
+    }
+    assertTrue(map.size() < CompactMap.MAX_ARRAY_SIZE);
+    put("k0", 0);
+    put("k1", 10);
+    for (int i = 0; i < CompactMap.MAX_ARRAY_SIZE; i++) {
+      put("again" + i, i);
+    }
+    removeEvenValues(map.entrySet().iterator());
+    removeEvenValues(expected.entrySet().iterator());
+    assertSameEntries();
+  }
+
+  public void testEntrySetViewFollowsGrowth() {
+    Set<Map.Entry<String, Integer>> entries = map.entrySet();
+    for (int i = 0; i <= CompactMap.MAX_ARRAY_SIZE; i++) {
+      put("k" + i, i);
+    }
+    assertEquals(CompactMap.MAX_ARRAY_SIZE + 1, entries.size());
+    assertEquals(describe(expected.entrySet()), describe(entries));
+  }
+
+  public void testClear() {
+    for (int i = 0; i <= CompactMap.MAX_ARRAY_SIZE; i++) {
+      put("k" + i, i);
+    }
+    map.clear();
+    expected.clear();
+    assertSameEntries();
+    put("a", 1);
+    put("b", 2);
+  }
+
+  private static void removeEvenValues(
+      Iterator<Map.Entry<String, Integer>> iterator) {
+    while (iterator.hasNext()) {
+      if (iterator.next().getValue() % 2 == 0) {
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Checks that the map has the expected entries, in the expected order.
+   */
+  private void assertSameEntries() {
+    assertEquals(describe(expected.entrySet()), describe(map.entrySet()));
+    assertEquals(expected.size(), map.size());
+    assertEquals(expected.isEmpty(), map.isEmpty());
+    assertEquals(expected, map);
+    assertEquals(expected.hashCode(), map.hashCode());
+    for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+      assertTrue(map.containsKey(entry.getKey()));
+      assertEquals(entry.getValue(), map.get(entry.getKey()));
+    }
+  }
+
+  private static List<String> describe(
+      Set<Map.Entry<String, Integer>> entries) {
+    List<String> list = new ArrayList<String>();
+    for (Map.Entry<String, Integer> entry : entries) {
+      list.add(entry.getKey() + "=" + entry.getValue());
+    }
+    return list;
+  }
+}
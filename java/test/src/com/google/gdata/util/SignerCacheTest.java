@@ -0,0 +1,74 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.util;
+
+import junit.framework.TestCase;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+
+/**
+ * Tests for {@link SignerCache}.
+ *
+ *
+ */
+public class SignerCacheTest extends TestCase {
+
+  private static final byte[] DATA = "base string".getBytes();
+
+  @Override
+  protected void tearDown() {
+    SignerCache.clear();
+  }
+
+  public void testCachedSignatureDiscardsUnsignedData() throws Exception {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(1024);
+    KeyPair keyPair = generator.generateKeyPair();
+
+    // A caller that fails between update and sign leaves data behind.
+    Signature signature =
+        SignerCache.getSignature("SHA1withRSA", keyPair.getPrivate());
+    signature.update("left over".getBytes());
+
+    Signature cached =
+        SignerCache.getSignature("SHA1withRSA", keyPair.getPrivate());
+    assertSame(signature, cached);
+    cached.update(DATA);
+    byte[] signed = cached.sign();
+
+    Signature verifier = Signature.getInstance("SHA1withRSA");
+    verifier.initVerify(keyPair.getPublic());
+    verifier.update(DATA);
+    assertTrue(verifier.verify(signed));
+  }
+
+  public void testCachedMacDiscardsUnsignedData() throws Exception {
+    byte[] key = "secret".getBytes();
+    Mac mac = SignerCache.getMac("HmacSHA1", key);
+    byte[] expected = mac.doFinal(DATA);
+    mac.update("left over".getBytes());
+
+    Mac cached = SignerCache.getMac("HmacSHA1", key);
+    assertSame(mac, cached);
+    assertTrue(Arrays.equals(expected, cached.doFinal(DATA)));
+  }
+}
@@ -0,0 +1,136 @@
+/* Copyright (c) 2008 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.google.gdata.wireformats;
+
+import com.google.gdata.data.XmlEventSource;
+import com.google.gdata.model.Attribute;
+import com.google.gdata.model.Element;
+import com.google.gdata.model.MetadataRegistry;
+import com.google.gdata.model.atom.Feed;
+import com.google.gdata.util.ContentType;
+import com.google.gdata.util.FieldProjection;
+import com.google.gdata.wireformats.input.InputProperties;
+import com.google.gdata.wireformats.input.InputPropertiesBuilder;
+
+import junit.framework.TestCase;
+
+import java.io.StringReader;
+import java.util.Iterator;
+
+/**
+ * Tests for {@link StaxEventSource}, which must produce the same elements as
+ * {@link SaxEventSource}.
+ *
+ *
+ */
+public class StaxEventSourceTest extends TestCase {
+
+  private static final String FEED =
+      "<?xml version='1.0' encoding='UTF-8'?>\n"
+      + "<feed xmlns='http://www.w3.org/2005/Atom'"
+      + " xmlns:ext='http://example.com/ext'>\n"
+      + "  <id>http://example.com/feed</id>\n"
+      + "  <title type='text'>Feed &amp; title</title>\n"
+      + "  <updated>2010-01-02T03:04:05.000Z</updated>\n"
+      + "  <link rel='self' href='http://example.com/feed'/>\n"
+      + "  <ext:custom ext:flag='yes'>\n"
+      + "    <ext:nested>text<![CDATA[ <cdata> ]]></ext:nested>\n"
+      + "  </ext:custom>\n"
+      + "  <entry>\n"
+      + "    <id>http://example.com/entry/1</id>\n"
+      + "    <title>First</title>\n"
+      + "    <content type='text'>Body of the first entry</content>\n"
+      + "    <author><name>Someone</name></author>\n"
+      + "  </entry>\n"
+      + "  <entry xml:lang='fr'>\n"
+      + "    <id>http://example.com/entry/2</id>\n"
+      + "    <title>Second</title>\n"
+      + "    <content type='text'>Body of the second entry</content>\n"
+      + "  </entry>\n"
+      + "</feed>\n";
+
+  private InputProperties props;
+
+  @Override
+  protected void setUp() {
+    MetadataRegistry registry = new MetadataRegistry();
+    registry.register(Feed.KEY);
+    props = new InputPropertiesBuilder()
+        .setContentType(ContentType.ATOM)
+        .setElementMetadata(registry.createSchema().bind(Feed.KEY))
+        .setExpectType(Feed.class)
+        .build();
+  }
+
+  public void testSameElementsAsSax() throws Exception {
+    String sax = describe(parse(new SaxEventSource(new StringReader(FEED)),
+        null));
+    String stax = describe(parse(new StaxEventSource(new StringReader(FEED)),
+        null));
+    assertEquals(sax, stax);
+    assertTrue(stax, stax.contains("Body of the second entry"));
+    assertTrue(stax, stax.contains("[text <cdata>]"));
+  }
+
+  public void testSameElementsAsSaxWithSkippedSubtrees() throws Exception {
+    FieldProjection projection = FieldProjection.parse("title,entry(title)");
+    String sax = describe(parse(new SaxEventSource(new StringReader(FEED)),
+        projection));
+    String stax = describe(parse(new StaxEventSource(new StringReader(FEED)),
+        projection));
+    assertEquals(sax, stax);
+    assertTrue(stax, stax.contains("Second"));
+    assertFalse(stax, stax.contains("Body of the"));
+    assertFalse(stax, stax.contains("nested"));
+  }
+
+  private Element parse(XmlEventSource eventSource,
+      FieldProjection projection) throws Exception {
+    XmlParser parser = new XmlParser(props, eventSource);
+    parser.setProjection(projection);
+    return parser.parse(new Feed());
+  }
+
+  /**
+   * Returns a description of an element with its attributes, text value
+   * and child elements, in document order.
+   */
+  private static String describe(Element element) {
+    StringBuilder sb = new StringBuilder();
+    describe(element, sb, "");
+    return sb.toString();
+  }
+
+  private static void describe(Element element, StringBuilder sb,
+      String indent) {
+    sb.append(indent).append(element.getElementId());
+    Iterator<Attribute> attributes = element.getAttributeIterator();
+    while (attributes.hasNext()) {
+      Attribute attribute = attributes.next();
+      sb.append(' ').append(attribute.getAttributeKey().getId())
+          .append("='").append(attribute.getValue()).append('\'');
+    }
+    if (element.hasTextValue()) {
+      sb.append(" [").append(element.getTextValue()).append(']');
+    }
+    sb.append('\n');
+    Iterator<Element> children = element.getElementIterator();
+    while (children.hasNext()) {
+      describe(children.next(), sb, indent + "  ");
+    }
+  }
+}